@@ -0,0 +1,120 @@
+package com.trading.payments.config;
+
+import com.trading.payments.service.StompEventPublisher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-subscription encoding negotiation. A client on /ws/payments-raw that adds
+ * "x-encoding: binary" to SUBSCRIBE /topic/transactions is subscribed to
+ * /topic/bin/transactions instead (BinaryFeedCodec frames); "x-encoding: deflate"
+ * on any topic maps to /topic/deflate/... (raw-deflated JSON). The subscription
+ * id is unchanged, so client callbacks work as before; MESSAGE frames carry the
+ * rewritten destination.
+ *
+ * SockJS can only carry text, so the encodings are refused on /ws/payments: the
+ * header is ignored there and direct subscriptions to the encoded destinations
+ * are rejected.
+ */
+@Component
+@Slf4j
+public class FeedEncodingInterceptor implements ChannelInterceptor {
+
+    public static final String ENCODING_HEADER = "x-encoding";
+
+    /** Session attribute set during the handshake on the raw (non-SockJS) endpoint */
+    static final String BINARY_CAPABLE = "payment.binaryCapable";
+
+    private static final String TOPIC_PREFIX = "/topic/";
+
+    @Value("${payment.websocket.encoding.binary-topics:/topic/transactions,/topic/feed/live,/topic/risk/positions}")
+    private Set<String> binaryTopics;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.SUBSCRIBE) {
+            return message;
+        }
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        if (accessor.getDestination() == null) {
+            return message;
+        }
+
+        String destination = accessor.getDestination();
+        boolean binaryCapable = isBinaryCapable(accessor);
+        if (isEncodedDestination(destination)) {
+            if (!binaryCapable) {
+                throw new MessageDeliveryException(message, destination + " requires the /ws/payments-raw endpoint");
+            }
+            return message;
+        }
+
+        String encoding = accessor.getFirstNativeHeader(ENCODING_HEADER);
+        if (encoding == null || !binaryCapable) {
+            return message;
+        }
+        String encoded = encodedDestination(destination, encoding);
+        if (encoded == null) {
+            log.debug("Unsupported encoding {} for {}, subscribing to JSON", encoding, destination);
+            return message;
+        }
+
+        accessor.setDestination(encoded);
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+
+    private String encodedDestination(String destination, String encoding) {
+        if ("binary".equalsIgnoreCase(encoding) && binaryTopics.contains(destination)) {
+            return StompEventPublisher.BINARY_PREFIX + destination.substring(TOPIC_PREFIX.length());
+        }
+        if ("deflate".equalsIgnoreCase(encoding)) {
+            return StompEventPublisher.deflateVariant(destination);
+        }
+        return null;
+    }
+
+    private static boolean isEncodedDestination(String destination) {
+        return destination.startsWith(StompEventPublisher.BINARY_PREFIX)
+            || destination.startsWith(StompEventPublisher.DEFLATE_PREFIX);
+    }
+
+    private static boolean isBinaryCapable(StompHeaderAccessor accessor) {
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        return attributes != null && Boolean.TRUE.equals(attributes.get(BINARY_CAPABLE));
+    }
+
+    /**
+     * Marks sessions opened on the raw endpoint as able to receive binary frames.
+     */
+    static HandshakeInterceptor binaryCapableHandshake() {
+        return new HandshakeInterceptor() {
+            @Override
+            public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                           WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                attributes.put(BINARY_CAPABLE, Boolean.TRUE);
+                return true;
+            }
+
+            @Override
+            public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                       WebSocketHandler wsHandler, Exception exception) {
+            }
+        };
+    }
+}
@@ -0,0 +1,92 @@
+package com.trading.payments.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+
+/**
+ * Polls the replica's replay lag and takes it out of rotation while the lag is
+ * above the configured threshold or the replica cannot be reached.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    // Zero when fully caught up (or not a standby at all, e.g. a second local instance)
+    private static final String LAG_QUERY = """
+        SELECT CASE
+            WHEN NOT pg_is_in_recovery() THEN 0
+            WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+            ELSE COALESCE(EXTRACT(EPOCH FROM (now() - pg_last_xact_replay_timestamp())) * 1000, 0)
+        END
+        """;
+
+    private final JdbcTemplate replicaJdbcTemplate;
+    private final long maxLagMillis;
+    private final Counter primaryRoutes;
+    private final Counter replicaRoutes;
+
+    private volatile long lagMillis;
+    private volatile boolean usable = true;
+
+    public ReplicaLagMonitor(DataSource replicaDataSource, long maxLagMillis, MeterRegistry meterRegistry) {
+        this.replicaJdbcTemplate = new JdbcTemplate(replicaDataSource);
+        this.replicaJdbcTemplate.setQueryTimeout(2);
+        this.maxLagMillis = maxLagMillis;
+
+        Gauge.builder("payment.datasource.replica.lag", this, m -> m.lagMillis)
+            .description("Replica replay lag in milliseconds (-1 when unreachable)")
+            .baseUnit("milliseconds")
+            .register(meterRegistry);
+        Gauge.builder("payment.datasource.replica.usable", this, m -> m.usable ? 1 : 0)
+            .description("1 while read-only queries are routed to the replica")
+            .register(meterRegistry);
+
+        this.primaryRoutes = Counter.builder("payment.datasource.routed")
+            .tag("target", ReplicaRoutingDataSource.PRIMARY)
+            .register(meterRegistry);
+        this.replicaRoutes = Counter.builder("payment.datasource.routed")
+            .tag("target", ReplicaRoutingDataSource.REPLICA)
+            .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${payment.datasource.replica.lag-check-interval-ms:1000}", scheduler = SchedulingConfig.BACKGROUND_SCHEDULER)
+    public void checkLag() {
+        try {
+            Double lag = replicaJdbcTemplate.queryForObject(LAG_QUERY, Double.class);
+            update(lag != null ? lag.longValue() : 0);
+        } catch (Exception e) {
+            if (usable) {
+                log.warn("Replica unreachable, routing reads to primary: {}", e.getMessage());
+            }
+            lagMillis = -1;
+            usable = false;
+        }
+    }
+
+    void update(long lag) {
+        boolean nowUsable = lag <= maxLagMillis;
+        if (nowUsable != usable) {
+            log.warn("Replica lag {}ms (threshold {}ms) - routing reads to {}",
+                lag, maxLagMillis, nowUsable ? "replica" : "primary");
+        }
+        lagMillis = lag;
+        usable = nowUsable;
+    }
+
+    public boolean isReplicaUsable() {
+        return usable;
+    }
+
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    void recordRoute(String target) {
+        (ReplicaRoutingDataSource.REPLICA.equals(target) ? replicaRoutes : primaryRoutes).increment();
+    }
+}
@@ -0,0 +1,33 @@
+package com.trading.payments.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Routes connections by the current transaction's read-only flag: read-only
+ * transactions go to the replica unless it is lagging, everything else to the primary.
+ *
+ * Must sit behind a LazyConnectionDataSourceProxy - the transaction manager
+ * opens its connection before the read-only flag is published.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMARY = "primary";
+    public static final String REPLICA = "replica";
+
+    private final ReplicaLagMonitor lagMonitor;
+
+    public ReplicaRoutingDataSource(ReplicaLagMonitor lagMonitor) {
+        this.lagMonitor = lagMonitor;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && lagMonitor.isReplicaUsable()) {
+            lagMonitor.recordRoute(REPLICA);
+            return REPLICA;
+        }
+        lagMonitor.recordRoute(PRIMARY);
+        return PRIMARY;
+    }
+}
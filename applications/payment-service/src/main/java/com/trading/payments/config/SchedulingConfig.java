@@ -0,0 +1,38 @@
+package com.trading.payments.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Two schedulers for the @Scheduled tasks.
+ *
+ * The default one (spring.task.scheduling.*) runs the short, frequent ticks:
+ * feed conflation and dashboard pushes. Tasks that may block - the replica lag
+ * query, reference-data and model reloads, velocity replay - name the
+ * background scheduler, so a slow reload or an unreachable replica never
+ * delays a feed flush.
+ */
+@Configuration
+public class SchedulingConfig {
+
+    public static final String BACKGROUND_SCHEDULER = "backgroundTaskScheduler";
+
+    // Declaring our own schedulers turns off Boot's, so the default one is rebuilt from its builder
+    @Bean(name = "taskScheduler")
+    public ThreadPoolTaskScheduler taskScheduler(ThreadPoolTaskSchedulerBuilder builder) {
+        return builder.build();
+    }
+
+    @Bean(name = BACKGROUND_SCHEDULER)
+    public ThreadPoolTaskScheduler backgroundTaskScheduler(
+            @Value("${payment.scheduling.background.pool-size:4}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("background-scheduling-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(false);
+        return scheduler;
+    }
+}
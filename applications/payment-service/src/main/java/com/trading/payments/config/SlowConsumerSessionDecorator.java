@@ -0,0 +1,63 @@
+package com.trading.payments.config;
+
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+
+/**
+ * Spring's per-session send buffer with a configurable overflow strategy and
+ * metrics. With DROP the oldest buffered frames are discarded once the buffer
+ * limit is reached (a slow client sees a thinned-out stream); with TERMINATE the
+ * session is closed instead. Exceeding the send time limit always closes it.
+ * Dropped frames on sequenced feeds leave a gap in the "seq" header, which the
+ * dashboard client fills by resubscribing to /app/feed/{feed}/since/{seq}.
+ */
+class SlowConsumerSessionDecorator extends ConcurrentWebSocketSessionDecorator {
+
+    private final WebSocketSessionMetrics metrics;
+
+    SlowConsumerSessionDecorator(WebSocketSession session, int sendTimeLimit, int bufferSizeLimit,
+                                 OverflowStrategy overflowStrategy, WebSocketSessionMetrics metrics) {
+        super(new TimedSession(session, metrics), sendTimeLimit, bufferSizeLimit, overflowStrategy);
+        this.metrics = metrics;
+        metrics.register(this);
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        try {
+            super.sendMessage(message);
+        } catch (SessionLimitExceededException e) {
+            // Thrown once per session; the handler closes it with SESSION_NOT_RELIABLE
+            metrics.forcedDisconnect(this, getTimeSinceSendStarted() > getSendTimeLimit());
+            throw e;
+        }
+    }
+
+    /**
+     * Innermost decorator: times the actual socket write, after any buffering.
+     */
+    private static final class TimedSession extends WebSocketSessionDecorator {
+
+        private final WebSocketSessionMetrics metrics;
+
+        private TimedSession(WebSocketSession session, WebSocketSessionMetrics metrics) {
+            super(session);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            long start = System.nanoTime();
+            try {
+                super.sendMessage(message);
+            } finally {
+                metrics.recordSend(System.nanoTime() - start);
+            }
+        }
+    }
+}
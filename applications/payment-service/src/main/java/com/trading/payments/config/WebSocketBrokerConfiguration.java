@@ -0,0 +1,74 @@
+package com.trading.payments.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+/**
+ * Equivalent of @EnableWebSocketMessageBroker (WebSocketConfig still supplies the
+ * broker, endpoints, transport limits and executors) with one change: sessions
+ * are wrapped in SlowConsumerSessionDecorator, so the overflow strategy of the
+ * per-session send buffer is configurable and instrumented. Spring's own
+ * handler hard-codes TERMINATE.
+ */
+@Configuration
+public class WebSocketBrokerConfiguration extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    /** CONFLATE drops the oldest buffered frames, DISCONNECT closes the session */
+    public enum SlowConsumerPolicy { CONFLATE, DISCONNECT }
+
+    @Autowired
+    private WebSocketSessionMetrics sessionMetrics;
+
+    @Value("${payment.websocket.slow-consumer.policy:CONFLATE}")
+    private SlowConsumerPolicy slowConsumerPolicy;
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler(
+            @Qualifier("clientInboundChannel") AbstractSubscribableChannel clientInboundChannel,
+            @Qualifier("clientOutboundChannel") AbstractSubscribableChannel clientOutboundChannel) {
+        OverflowStrategy overflowStrategy = slowConsumerPolicy == SlowConsumerPolicy.CONFLATE ?
+            OverflowStrategy.DROP : OverflowStrategy.TERMINATE;
+        SubProtocolWebSocketHandler handler =
+            new SlowConsumerAwareHandler(clientInboundChannel, clientOutboundChannel, overflowStrategy, sessionMetrics);
+        handler.setPhase(getPhase());
+        return handler;
+    }
+
+    private static final class SlowConsumerAwareHandler extends SubProtocolWebSocketHandler {
+
+        private final OverflowStrategy overflowStrategy;
+        private final WebSocketSessionMetrics sessionMetrics;
+
+        private SlowConsumerAwareHandler(MessageChannel clientInboundChannel, SubscribableChannel clientOutboundChannel,
+                                         OverflowStrategy overflowStrategy, WebSocketSessionMetrics sessionMetrics) {
+            super(clientInboundChannel, clientOutboundChannel);
+            this.overflowStrategy = overflowStrategy;
+            this.sessionMetrics = sessionMetrics;
+        }
+
+        @Override
+        protected WebSocketSession decorateSession(WebSocketSession session) {
+            return new SlowConsumerSessionDecorator(session, getSendTimeLimit(), getSendBufferSizeLimit(),
+                overflowStrategy, sessionMetrics);
+        }
+
+        @Override
+        public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+            sessionMetrics.unregister(session.getId());
+            super.afterConnectionClosed(session, closeStatus);
+        }
+    }
+}
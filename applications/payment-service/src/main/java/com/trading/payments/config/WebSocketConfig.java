@@ -1,25 +1,61 @@
 package com.trading.payments.config;
 
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+// Broker infrastructure is enabled by WebSocketBrokerConfiguration (instead of @EnableWebSocketMessageBroker)
 @Configuration
-@EnableWebSocketMessageBroker
+@RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final FeedEncodingInterceptor feedEncodingInterceptor;
+
+    @Value("${payment.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMillis;
+
+    @Value("${payment.websocket.send-buffer-size-limit-bytes:524288}")
+    private int sendBufferSizeLimitBytes;
+
+    @Value("${payment.websocket.message-size-limit-bytes:65536}")
+    private int messageSizeLimitBytes;
+
+    @Value("${payment.websocket.inbound.core-pool-size:4}")
+    private int inboundCorePoolSize;
+
+    @Value("${payment.websocket.inbound.max-pool-size:16}")
+    private int inboundMaxPoolSize;
+
+    @Value("${payment.websocket.inbound.queue-capacity:2000}")
+    private int inboundQueueCapacity;
+
+    @Value("${payment.websocket.outbound.core-pool-size:8}")
+    private int outboundCorePoolSize;
+
+    @Value("${payment.websocket.outbound.max-pool-size:32}")
+    private int outboundMaxPoolSize;
+
+    @Value("${payment.websocket.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // Enable simple in-memory broker for destinations prefixed with "/topic" and "/queue"
         config.enableSimpleBroker("/topic", "/queue");
-        
+
         // Set application destination prefix for messages from clients to server
         config.setApplicationDestinationPrefixes("/app");
-        
+
         // Set user destination prefix for private user messages
         config.setUserDestinationPrefix("/user");
+
+        // Keep per-session delivery in publish order across outbound threads - clients rely on "seq"
+        config.setPreservePublishOrder(true);
     }
 
     @Override
@@ -28,9 +64,39 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws/payments")
                 .setAllowedOriginPatterns("*")  // For development - restrict in production
                 .withSockJS();  // Enable SockJS fallback for older browsers
-                
-        // Raw WebSocket endpoint (no SockJS) for better performance
+
+        // Raw WebSocket endpoint (no SockJS) for better performance; the only one that can
+        // carry binary frames, so compact feed encodings are negotiated here
         registry.addEndpoint("/ws/payments-raw")
+                .addInterceptors(FeedEncodingInterceptor.binaryCapableHandshake())
                 .setAllowedOriginPatterns("*");
     }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Per-session outbound limits: past the buffer limit a slow client is conflated or
+        // disconnected (payment.websocket.slow-consumer.policy), past the time limit it is disconnected
+        registration.setSendTimeLimit(sendTimeLimitMillis)
+                .setSendBufferSizeLimit(sendBufferSizeLimitBytes)
+                .setMessageSizeLimit(messageSizeLimitBytes);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(inboundCorePoolSize)
+                .maxPoolSize(inboundMaxPoolSize)
+                .queueCapacity(inboundQueueCapacity);
+        // x-encoding on SUBSCRIBE picks the binary or deflate variant of a topic
+        registration.interceptors(feedEncodingInterceptor);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // A blocked write only ties up one thread per slow session; everything else buffers per session
+        registration.taskExecutor()
+                .corePoolSize(outboundCorePoolSize)
+                .maxPoolSize(outboundMaxPoolSize)
+                .queueCapacity(outboundQueueCapacity);
+    }
 }
@@ -0,0 +1,80 @@
+package com.trading.payments.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound health of the STOMP WebSocket sessions: bytes queued behind slow
+ * clients (total and worst session), socket write latency and sessions closed
+ * for exceeding the send limits.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WebSocketSessionMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, SlowConsumerSessionDecorator> sessions = new ConcurrentHashMap<>();
+
+    private Timer sendLatency;
+    private Counter sendTimeDisconnects;
+    private Counter bufferDisconnects;
+
+    @PostConstruct
+    void init() {
+        sendLatency = Timer.builder("payment.websocket.send")
+            .description("Time to write one frame to a client socket")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        sendTimeDisconnects = Counter.builder("payment.websocket.forced_disconnects")
+            .tag("reason", "send_time_limit").register(meterRegistry);
+        bufferDisconnects = Counter.builder("payment.websocket.forced_disconnects")
+            .tag("reason", "buffer_limit").register(meterRegistry);
+
+        Gauge.builder("payment.websocket.sessions", sessions, Map::size).register(meterRegistry);
+        Gauge.builder("payment.websocket.queued_bytes", this, metrics -> metrics.queuedBytes(false))
+            .description("Bytes buffered for all sessions, waiting on the client")
+            .register(meterRegistry);
+        Gauge.builder("payment.websocket.queued_bytes.max", this, metrics -> metrics.queuedBytes(true))
+            .description("Bytes buffered for the slowest session")
+            .register(meterRegistry);
+    }
+
+    void register(SlowConsumerSessionDecorator session) {
+        sessions.put(session.getId(), session);
+    }
+
+    void unregister(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    void recordSend(long nanos) {
+        sendLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void forcedDisconnect(SlowConsumerSessionDecorator session, boolean sendTimeExceeded) {
+        (sendTimeExceeded ? sendTimeDisconnects : bufferDisconnects).increment();
+        log.warn("Disconnecting slow WebSocket client {}: {} bytes queued, current send blocked for {} ms",
+            session.getId(), session.getBufferSize(), session.getTimeSinceSendStarted());
+    }
+
+    private double queuedBytes(boolean max) {
+        long result = 0;
+        for (SlowConsumerSessionDecorator session : sessions.values()) {
+            int queued = session.getBufferSize();
+            result = max ? Math.max(result, queued) : result + queued;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,41 @@
+package com.trading.payments.controller;
+
+import com.trading.payments.dto.BacktestReport;
+import com.trading.payments.dto.BacktestRequest;
+import com.trading.payments.service.BacktestService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import jakarta.validation.Valid;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/backtests")
+@Slf4j
+public class BacktestController {
+
+    @Autowired private BacktestService backtestService;
+
+    // Queue a replay of stored transactions through candidate rule sets
+    @PostMapping
+    public ResponseEntity<?> submit(@Valid @RequestBody BacktestRequest request) {
+        if (!request.getFrom().isBefore(request.getTo())) {
+            return ResponseEntity.badRequest().body(Map.of("error", "from must be before to"));
+        }
+        BacktestReport report = backtestService.submit(request);
+        log.info("Queued backtest {} over [{}, {}) with {} candidates",
+            report.getId(), request.getFrom(), request.getTo(), request.getCandidates().size());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(report);
+    }
+
+    // Progress while running, results once COMPLETED
+    @GetMapping("/{id}")
+    public ResponseEntity<BacktestReport> report(@PathVariable String id) {
+        return backtestService.report(id)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -1,10 +1,15 @@
 package com.trading.payments.controller;
 
-import com.trading.payments.service.PaymentEventService;
+import com.trading.payments.dto.FeedSnapshot;
+import com.trading.payments.service.DashboardStatsEngine;
+import com.trading.payments.service.FeedReplayBuffer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -18,7 +23,8 @@ import java.util.Map;
 @Slf4j
 public class DashboardController {
     
-    private final PaymentEventService eventService;
+    private final DashboardStatsEngine statsEngine;
+    private final FeedReplayBuffer replayBuffer;
     
     /**
      * WebSocket endpoint for client subscriptions
@@ -36,18 +42,67 @@ public class DashboardController {
     @SubscribeMapping("/topic/dashboard/stats")
     public void subscribeToDashboardStats() {
         log.info("Client subscribed to dashboard stats");
-        // Immediately send current stats to new subscriber
-        eventService.broadcastDashboardStats();
+        // Send current stats to the new subscriber, unless a push just went out
+        statsEngine.requestRefresh();
     }
     
     /**
-     * Handle dashboard commands from clients
+     * Snapshot of a replayable feed for a new subscriber: SUBSCRIBE to
+     * /app/feed/{feed}/snapshot, then apply live events with a higher "seq" header.
+     * A live event that skips a seq (frames dropped for a slow connection) means
+     * resuming from the last applied seq through /since.
+     */
+    @SubscribeMapping("/feed/{feed}/snapshot")
+    public FeedSnapshot feedSnapshot(@DestinationVariable String feed) {
+        return replayBuffer.snapshot(feed)
+            .orElseThrow(() -> new IllegalArgumentException("Unknown feed: " + feed));
+    }
+    
+    /**
+     * Resume after a reconnect: events published after {@code seq}, served from
+     * memory. If the gap is no longer buffered, or the optional "node" SUBSCRIBE
+     * header names another replica, the reply is a snapshot with complete=false.
+     */
+    @SubscribeMapping("/feed/{feed}/since/{seq}")
+    public FeedSnapshot feedSince(@DestinationVariable String feed, @DestinationVariable long seq,
+                                  @Header(name = "node", required = false) String node) {
+        return replayBuffer.since(feed, seq, node)
+            .orElseThrow(() -> new IllegalArgumentException("Unknown feed: " + feed));
+    }
+    
+    /**
+     * Snapshot of one merchant's topic of a feed, e.g. /topic/transactions/merchant/{merchantId}.
+     */
+    @SubscribeMapping("/feed/{feed}/merchant/{merchantId}/snapshot")
+    public FeedSnapshot merchantFeedSnapshot(@DestinationVariable String feed, @DestinationVariable String merchantId) {
+        return feedSnapshot(feed + "/merchant/" + merchantId);
+    }
+    
+    /**
+     * Resume one merchant's topic of a feed; see {@link #feedSince}.
+     */
+    @SubscribeMapping("/feed/{feed}/merchant/{merchantId}/since/{seq}")
+    public FeedSnapshot merchantFeedSince(@DestinationVariable String feed, @DestinationVariable String merchantId,
+                                          @DestinationVariable long seq,
+                                          @Header(name = "node", required = false) String node) {
+        return feedSince(feed + "/merchant/" + merchantId, seq, node);
+    }
+    
+    @MessageExceptionHandler(IllegalArgumentException.class)
+    @SendToUser(destinations = "/queue/errors", broadcast = false)
+    public Map<String, Object> handleFeedError(IllegalArgumentException e) {
+        return Map.of("type", "ERROR", "message", e.getMessage(), "timestamp", Instant.now());
+    }
+    
+    /**
+     * Handle dashboard commands from clients. Stats are pushed on a fixed schedule
+     * anyway; refreshes are rate limited since they go to every subscriber.
      */
     @MessageMapping("/dashboard/refresh")
-    @SendTo("/topic/dashboard/stats")
     public void refreshDashboard() {
-        log.info("Dashboard refresh requested");
-        eventService.broadcastDashboardStats();
+        if (!statsEngine.requestRefresh()) {
+            log.debug("Dashboard refresh throttled");
+        }
     }
     
     /**
@@ -124,6 +179,11 @@ public class DashboardController {
                     let stompClient = null;
                     let stats = { total: 0, fraud: 0, approved: 0 };
                     
+                    // /dashboard?merchant=ID follows one merchant's topics instead of the firehose;
+                    // they are replayable feeds of their own, named e.g. transactions/merchant/ID
+                    const merchant = new URLSearchParams(window.location.search).get('merchant');
+                    const merchantPath = merchant ? '/merchant/' + encodeURIComponent(merchant) : '';
+                    
                     function connect() {
                         const socket = new SockJS('/ws/payments');
                         stompClient = Stomp.over(socket);
@@ -133,24 +193,16 @@ public class DashboardController {
                             document.getElementById('connectionStatus').innerHTML = '✅ Connected to Payment Stream';
                             document.getElementById('connectionStatus').className = 'connection-status connected';
                             
-                            // Subscribe to transaction events
-                            stompClient.subscribe('/topic/transactions', function(event) {
-                                const transaction = JSON.parse(event.body);
+                            // Subscribe to transaction events and fraud alerts - snapshot first,
+                            // or only what was missed when reconnecting
+                            subscribeFeed('transactions' + merchantPath, '/topic/transactions' + merchantPath, function(transaction) {
                                 displayTransaction(transaction);
                                 updateStats(transaction);
                             });
+                            subscribeFeed('fraud-alerts' + merchantPath, '/topic/fraud-alerts' + merchantPath, displayFraudAlert);
                             
-                            // Subscribe to fraud alerts
-                            stompClient.subscribe('/topic/fraud-alerts', function(alert) {
-                                const fraudAlert = JSON.parse(alert.body);
-                                displayFraudAlert(fraudAlert);
-                            });
-                            
-                            // Subscribe to dashboard stats
-                            stompClient.subscribe('/topic/dashboard/stats', function(statsUpdate) {
-                                const newStats = JSON.parse(statsUpdate.body);
-                                updateDashboardStats(newStats);
-                            });
+                            // Subscribe to dashboard stats; the snapshot is the latest push
+                            subscribeFeed('stats', '/topic/dashboard/stats', updateDashboardStats);
                             
                         }, function(error) {
                             console.error('WebSocket connection error:', error);
@@ -160,6 +212,72 @@ public class DashboardController {
                         });
                     }
                     
+                    // Last applied sequence per feed; survives reconnects
+                    const lastSeq = {};
+                    // Replica that issued lastSeq; sequences are per node
+                    let lastNode = null;
+                    // Live events are held while a snapshot/replay request is outstanding; past either
+                    // limit the request is abandoned and retried
+                    const REPLAY_TIMEOUT_MS = 5000;
+                    const MAX_PENDING = 1000;
+                    
+                    function subscribeFeed(feed, topic, handler) {
+                        const state = { client: stompClient, pending: [], request: null, timer: null };
+                        const onLive = function(event) {
+                            if (state.pending) {
+                                state.pending.push(event);
+                                if (state.pending.length > MAX_PENDING) resync(feed, state, handler, onLive);
+                            } else if (event.seq && lastSeq[feed] && event.seq > lastSeq[feed] + 1) {
+                                // Frames were dropped, e.g. conflated for a slow connection: fetch what was missed
+                                state.pending = [event];
+                                resync(feed, state, handler, onLive);
+                            } else {
+                                deliver(feed, event, handler);
+                            }
+                        };
+                        stompClient.subscribe(topic, function(message) {
+                            onLive({ seq: Number(message.headers.seq || 0), payload: JSON.parse(message.body) });
+                        });
+                        resync(feed, state, handler, onLive);
+                    }
+                    
+                    // Snapshot, or everything after lastSeq; live events wait in state.pending until it is applied
+                    function resync(feed, state, handler, onLive) {
+                        if (state.client !== stompClient) return; // reconnected since; the new connection resubscribes
+                        if (state.request) state.request.unsubscribe();
+                        clearTimeout(state.timer);
+                        if (state.pending.length > MAX_PENDING) {
+                            // Too far behind to catch up from the buffer: start again from a snapshot
+                            state.pending = [];
+                            lastSeq[feed] = 0;
+                        }
+                        const since = lastSeq[feed];
+                        const headers = lastNode ? { node: lastNode } : {};
+                        const request = stompClient.subscribe('/app/feed/' + feed + (since ? '/since/' + since : '/snapshot'), function(message) {
+                            if (state.request !== request) return; // reply to an abandoned request
+                            clearTimeout(state.timer);
+                            request.unsubscribe();
+                            state.request = null;
+                            const reply = JSON.parse(message.body);
+                            if (!reply.complete) lastSeq[feed] = 0;
+                            lastNode = reply.node;
+                            reply.events.forEach(e => deliver(feed, e, handler));
+                            // Keyed snapshots hold the latest event per merchant, not every seq up to reply.seq
+                            lastSeq[feed] = Math.max(lastSeq[feed] || 0, reply.seq);
+                            const pending = state.pending;
+                            state.pending = null;
+                            pending.forEach(onLive);
+                        }, headers);
+                        state.request = request;
+                        state.timer = setTimeout(() => resync(feed, state, handler, onLive), REPLAY_TIMEOUT_MS);
+                    }
+                    
+                    function deliver(feed, event, handler) {
+                        if (event.seq && event.seq <= (lastSeq[feed] || 0)) return;
+                        if (event.seq) lastSeq[feed] = event.seq;
+                        handler(event.payload);
+                    }
+                    
                     function displayTransaction(transaction) {
                         const feed = document.getElementById('transactionFeed');
                         const div = document.createElement('div');
@@ -213,6 +331,10 @@ public class DashboardController {
                         if (newStats.fraudAlerts) {
                             document.getElementById('fraudAlerts').textContent = newStats.fraudAlerts;
                         }
+                        if (newStats.windows && newStats.windows['1m'].transactions > 0) {
+                            document.getElementById('approvalRate').textContent =
+                                Math.round(newStats.windows['1m'].approvalRate * 100) + '%';
+                        }
                     }
                     
                     // Connect on page load
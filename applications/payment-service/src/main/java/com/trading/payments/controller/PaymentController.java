@@ -1,28 +1,31 @@
 package com.trading.payments.controller;
 
 import com.trading.payments.service.PaymentService;
-import com.trading.payments.service.FraudDetectionService;
-import com.trading.payments.service.PaymentEventService;
+import com.trading.payments.service.PaymentProcessingService;
 import com.trading.payments.service.RiskManagementService;
+import com.trading.payments.service.TransactionExportService;
+import com.trading.payments.service.TransactionStatusCache;
 import com.trading.payments.dto.*;
 import com.trading.payments.entity.Transaction;
 import com.trading.payments.entity.DailyPosition;
 import com.trading.payments.entity.RiskAlert;
-import com.trading.payments.repository.RiskAlertRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.apache.commons.codec.digest.DigestUtils;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
-import java.math.BigDecimal;
+import java.io.IOException;
 import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 import java.util.List;
 
 @RestController
@@ -31,10 +34,10 @@ import java.util.List;
 public class PaymentController {
     
     @Autowired private PaymentService paymentService;
-    @Autowired private FraudDetectionService fraudService;
-    @Autowired private PaymentEventService eventService;
+    @Autowired private PaymentProcessingService processingService;
     @Autowired private RiskManagementService riskService;
-    @Autowired private RiskAlertRepository riskAlertRepository;  // Add this
+    @Autowired private TransactionExportService exportService;
+    @Autowired private TransactionStatusCache statusCache;
     
     // Health check endpoint
     @GetMapping("/health")
@@ -50,81 +53,10 @@ public class PaymentController {
     @PostMapping("/process")
     public ResponseEntity<PaymentResponse> processPayment(@Valid @RequestBody PaymentRequest request) {
         try {
-            log.info("Processing payment for merchant: {} amount: {}", request.getMerchantId(), request.getAmount());
-            
-            // Generate transaction ID
-            String transactionId = "TXN_" + System.currentTimeMillis() + "_" + 
-                                  UUID.randomUUID().toString().substring(0, 8).toUpperCase();
-            
-            // Basic validation
-            if (request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
-                return ResponseEntity.badRequest()
-                    .body(PaymentResponse.builder()
-                        .transactionId(transactionId)
-                        .status("DECLINED")
-                        .message("Invalid amount")
-                        .build());
+            PaymentResponse response = processingService.process(request);
+            if (PaymentProcessingService.isInvalid(response)) {
+                return ResponseEntity.badRequest().body(response);
             }
-            
-            // Pre-transaction risk assessment
-            RiskAssessment riskAssessment = riskService.assessTransactionRisk(request);
-            if (!riskAssessment.getApproved()) {
-                return ResponseEntity.ok()
-                    .body(PaymentResponse.builder()
-                        .transactionId(transactionId)
-                        .status("BLOCKED")
-                        .fraudScore(100)
-                        .amount(request.getAmount())
-                        .currency(request.getCurrency())
-                        .message("Risk Management: " + riskAssessment.getReason())
-                        .processedAt(Instant.now())
-                        .build());
-            }
-            
-            // Fraud detection check
-            FraudResult fraudResult = fraudService.evaluateTransaction(request);
-            
-            // Determine transaction status based on fraud score
-            String status = fraudResult.getRiskScore() > 50 ? "DECLINED" : "APPROVED";
-            
-            // Save transaction to database
-            Transaction transaction = Transaction.builder()
-                .transactionId(transactionId)
-                .merchantId(request.getMerchantId())
-                .cardNumberHash(hashCardNumber(request.getCardNumber()))
-                .amount(request.getAmount())
-                .currency(request.getCurrency())
-                .status(status.toLowerCase())
-                .fraudScore(fraudResult.getRiskScore())
-                .customerIp(request.getCustomerIp())
-                .userAgent(request.getUserAgent())
-                .build();
-            
-            paymentService.saveTransaction(transaction);
-            
-            // Update risk positions (post-transaction)
-            riskService.updatePosition(request.getMerchantId(), transaction);
-            
-            // Build response
-            PaymentResponse response = PaymentResponse.builder()
-                .transactionId(transactionId)
-                .status(status)
-                .fraudScore(fraudResult.getRiskScore())
-                .amount(request.getAmount())
-                .currency(request.getCurrency())
-                .message(status.equals("APPROVED") ? "Payment approved" : "Payment declined - high fraud risk")
-                .processedAt(Instant.now())
-                .build();
-                
-            log.info("Payment processed: {} status: {} fraud_score: {}", 
-                    transactionId, status, fraudResult.getRiskScore());
-            
-            // Broadcast real-time events via STOMP WebSocket
-            eventService.broadcastTransactionEvent(response);
-            if (response.getFraudScore() != null && response.getFraudScore() > 50) {
-                eventService.sendFraudAlert(response);
-            }
-            
             return ResponseEntity.ok(response);
             
         } catch (Exception e) {
@@ -140,19 +72,19 @@ public class PaymentController {
     // Get transaction status
     @GetMapping("/status/{transactionId}")
     public ResponseEntity<TransactionStatus> getTransactionStatus(@PathVariable String transactionId) {
+        Optional<TransactionStatus> cached = statusCache.get(transactionId);
+        if (cached.isPresent()) {
+            return ResponseEntity.ok(cached.get());
+        }
+        
         Optional<Transaction> transaction = paymentService.findByTransactionId(transactionId);
         
         if (transaction.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
         
-        TransactionStatus status = TransactionStatus.builder()
-            .transactionId(transactionId)
-            .status(transaction.get().getStatus().toUpperCase())
-            .amount(transaction.get().getAmount())
-            .fraudScore(transaction.get().getFraudScore())
-            .processedAt(transaction.get().getCreatedAt())
-            .build();
+        TransactionStatus status = TransactionStatus.from(transaction.get());
+        statusCache.put(status);
             
         return ResponseEntity.ok(status);
     }
@@ -170,7 +102,7 @@ public class PaymentController {
     // NEW: Get merchant risk position
     @GetMapping("/risk/merchant/{merchantId}/position")
     public ResponseEntity<DailyPosition> getMerchantPosition(@PathVariable String merchantId) {
-        DailyPosition position = riskService.getCurrentDailyPosition(merchantId);
+        DailyPosition position = riskService.findCurrentDailyPosition(merchantId);
         return ResponseEntity.ok(position);
     }
     
@@ -184,12 +116,29 @@ public class PaymentController {
     // NEW: Get active risk alerts
     @GetMapping("/risk/alerts")
     public ResponseEntity<List<RiskAlert>> getActiveRiskAlerts() {
-        List<RiskAlert> alerts = riskAlertRepository.findByIsResolvedFalseOrderByCreatedAtDesc();
+        List<RiskAlert> alerts = riskService.getActiveAlerts();
         return ResponseEntity.ok(alerts);
     }
     
-    private String hashCardNumber(String cardNumber) {
-        // Simple hash for demo - in production use proper PCI-compliant tokenization
-        return DigestUtils.sha256Hex(cardNumber + "SALT_KEY");
+    // Stream a merchant's transactions for a time range as NDJSON or CSV
+    @GetMapping("/merchant/{merchantId}/export")
+    public void exportTransactions(
+            @PathVariable String merchantId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "ndjson") String format,
+            HttpServletResponse response) throws IOException {
+        
+        TransactionExportService.Format exportFormat = "csv".equalsIgnoreCase(format) ?
+            TransactionExportService.Format.CSV : TransactionExportService.Format.NDJSON;
+        
+        response.setContentType(exportFormat == TransactionExportService.Format.CSV ?
+            "text/csv;charset=UTF-8" : "application/x-ndjson");
+        // The merchant id comes from the path: keep the filename to characters that are safe in the header
+        String filename = merchantId.replaceAll("[^A-Za-z0-9._-]", "_") + "-transactions." +
+            (exportFormat == TransactionExportService.Format.CSV ? "csv" : "ndjson");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString());
+        
+        exportService.export(merchantId, from, to, exportFormat, response.getOutputStream());
     }
 }
@@ -0,0 +1,185 @@
+package com.trading.payments.controller;
+
+import com.trading.payments.dto.PaymentRequest;
+import com.trading.payments.dto.PaymentResponse;
+import com.trading.payments.service.PaymentProcessingService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.handler.annotation.support.MethodArgumentNotValidException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Controller;
+import org.springframework.validation.FieldError;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/**
+ * Pipelined payment ingestion over STOMP, meant for high-volume clients on
+ * /ws/payments-raw: SEND /app/payments/process with a PaymentRequest body and an
+ * optional "correlation-id" header, as many as needed without waiting for
+ * replies. Each result is a PaymentResponse on /user/queue/payment-results for
+ * the submitting session, with the correlation-id echoed as a header. Results
+ * can arrive out of submission order.
+ *
+ * Requests go through the same bean validation and PaymentProcessingService
+ * pipeline as POST /process, on a dedicated executor so the inbound channel
+ * threads are never held by database or fraud-check latency. Each session may
+ * have at most max-in-flight-per-session requests being processed; beyond that
+ * (or when the executor queue is full) requests are answered immediately with
+ * status THROTTLED and should be retried after earlier results arrive.
+ */
+@Controller
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentStreamController {
+
+    public static final String CORRELATION_ID_HEADER = "correlation-id";
+    public static final String RESULTS_DESTINATION = "/queue/payment-results";
+
+    private final PaymentProcessingService processingService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${payment.websocket.ingest.max-in-flight-per-session:256}")
+    private int maxInFlightPerSession;
+
+    @Value("${payment.websocket.ingest.core-pool-size:8}")
+    private int corePoolSize;
+
+    @Value("${payment.websocket.ingest.max-pool-size:32}")
+    private int maxPoolSize;
+
+    @Value("${payment.websocket.ingest.queue-capacity:5000}")
+    private int queueCapacity;
+
+    private final Map<String, Semaphore> inFlightBySession = new ConcurrentHashMap<>();
+
+    private ThreadPoolTaskExecutor executor;
+    private Counter processed;
+    private Counter throttled;
+    private Counter invalid;
+    private Counter failed;
+
+    @PostConstruct
+    void init() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("payment-ws-ingest-");
+        executor.initialize();
+
+        processed = Counter.builder("payment.websocket.ingest.requests").tag("result", "processed").register(meterRegistry);
+        throttled = Counter.builder("payment.websocket.ingest.requests").tag("result", "throttled").register(meterRegistry);
+        invalid = Counter.builder("payment.websocket.ingest.requests").tag("result", "invalid").register(meterRegistry);
+        failed = Counter.builder("payment.websocket.ingest.requests").tag("result", "failed").register(meterRegistry);
+        Gauge.builder("payment.websocket.ingest.in_flight", executor, e -> e.getActiveCount() + e.getQueueSize())
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @MessageMapping("/payments/process")
+    public void process(@Valid @Payload PaymentRequest request,
+                        @Header(name = CORRELATION_ID_HEADER, required = false) String correlationId,
+                        SimpMessageHeaderAccessor headers) {
+        String sessionId = headers.getSessionId();
+        Principal user = headers.getUser();
+
+        Semaphore inFlight = inFlightBySession.computeIfAbsent(sessionId, id -> new Semaphore(maxInFlightPerSession));
+        if (!inFlight.tryAcquire()) {
+            throttled.increment();
+            reply(sessionId, user, correlationId, rejection("THROTTLED",
+                "Too many payments in flight for this session (limit " + maxInFlightPerSession + ")"));
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    PaymentResponse response = processingService.process(request);
+                    (PaymentProcessingService.isInvalid(response) ? invalid : processed).increment();
+                    reply(sessionId, user, correlationId, response);
+                } catch (Exception e) {
+                    failed.increment();
+                    log.error("Payment processing failed: ", e);
+                    reply(sessionId, user, correlationId, rejection("FAILED", "Internal processing error"));
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (TaskRejectedException e) {
+            inFlight.release();
+            throttled.increment();
+            reply(sessionId, user, correlationId, rejection("THROTTLED", "Payment ingestion is at capacity"));
+        }
+    }
+
+    @MessageExceptionHandler(MethodArgumentNotValidException.class)
+    public void handleValidation(MethodArgumentNotValidException ex,
+                                 @Header(name = CORRELATION_ID_HEADER, required = false) String correlationId,
+                                 SimpMessageHeaderAccessor headers) {
+        invalid.increment();
+        String message = ex.getBindingResult() == null ? ex.getMessage() :
+            ex.getBindingResult().getFieldErrors().stream()
+                .map(FieldError::getDefaultMessage)
+                .collect(Collectors.joining("; "));
+        reply(headers.getSessionId(), headers.getUser(), correlationId, rejection("DECLINED", message));
+    }
+
+    @MessageExceptionHandler(MessageConversionException.class)
+    public void handleMalformed(MessageConversionException ex,
+                                @Header(name = CORRELATION_ID_HEADER, required = false) String correlationId,
+                                SimpMessageHeaderAccessor headers) {
+        invalid.increment();
+        reply(headers.getSessionId(), headers.getUser(), correlationId, rejection("DECLINED", "Malformed payment request"));
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        inFlightBySession.remove(event.getSessionId());
+    }
+
+    private void reply(String sessionId, Principal user, String correlationId, PaymentResponse response) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        // With a session id header the user destination resolves to this session only
+        accessor.setSessionId(sessionId);
+        if (correlationId != null) {
+            accessor.setNativeHeader(CORRELATION_ID_HEADER, correlationId);
+        }
+        accessor.setLeaveMutable(true);
+        String userName = user != null ? user.getName() : sessionId;
+        messagingTemplate.convertAndSendToUser(userName, RESULTS_DESTINATION, response, accessor.getMessageHeaders());
+    }
+
+    private static PaymentResponse rejection(String status, String message) {
+        return PaymentResponse.builder()
+            .status(status)
+            .message(message)
+            .build();
+    }
+}
@@ -0,0 +1,45 @@
+package com.trading.payments.controller;
+
+import com.trading.payments.dto.FraudRuleSet;
+import com.trading.payments.dto.ShadowStatus;
+import com.trading.payments.service.ShadowEvaluationService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/api/v1/fraud/shadow")
+@Slf4j
+public class ShadowController {
+
+    @Autowired private ShadowEvaluationService shadowService;
+
+    // Disagreement with the live decisions per candidate
+    @GetMapping
+    public ResponseEntity<ShadowStatus> status() {
+        return ResponseEntity.ok(shadowService.status());
+    }
+
+    // Replace the candidate rule sets evaluated on live traffic; an empty list stops rule set shadowing
+    @PutMapping("/rule-sets")
+    public ResponseEntity<?> setRuleSets(@RequestBody List<FraudRuleSet> candidates) {
+        Set<String> names = new HashSet<>();
+        for (FraudRuleSet candidate : candidates) {
+            if (candidate.getName() == null || !names.add(candidate.getName())) {
+                return ResponseEntity.badRequest().body(Map.of("error", "candidate names must be present and unique"));
+            }
+        }
+        try {
+            shadowService.setRuleSets(candidates);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        return ResponseEntity.ok(shadowService.status());
+    }
+}
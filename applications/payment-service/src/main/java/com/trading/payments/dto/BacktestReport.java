@@ -0,0 +1,60 @@
+package com.trading.payments.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Progress and results of a backtest; complete once status is COMPLETED.
+ * The first result is the baseline, deltas are relative to it.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BacktestReport {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private String id;
+    private Status status;
+    private String error;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private Instant startedAt;
+    private Instant completedAt;
+
+    private long transactions;
+    private long elapsedMillis;
+    private long transactionsPerSecond;
+    private double recordedApprovalRate;     // as stored in transactions.status
+    private double baselineAgreement;        // share of baseline decisions equal to the stored one
+    private int peakCards;                   // cards held in velocity state at once
+    private int peakMerchants;
+
+    private List<RuleSetResult> results;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RuleSetResult {
+        private String name;
+        private long approved;
+        private long declined;
+        private long blocked;                // stopped by a merchant limit
+        private double approvalRate;
+        private double approvalRateDelta;
+        private BigDecimal approvedAmount;
+        private long newlyApproved;          // declined or blocked by the baseline
+        private long newlyDeclined;          // approved by the baseline
+        private List<String> sampleNewlyApproved;
+        private List<String> sampleNewlyDeclined;
+    }
+}
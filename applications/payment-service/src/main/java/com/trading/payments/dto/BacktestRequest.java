@@ -0,0 +1,35 @@
+package com.trading.payments.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Replay stored transactions created in [from, to) through candidate rule
+ * sets; each is compared with the baseline (the live rules unless given).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BacktestRequest {
+    @NotNull
+    private LocalDateTime from;
+
+    @NotNull
+    private LocalDateTime to;
+
+    @Valid
+    private FraudRuleSet baseline;
+
+    @NotEmpty
+    @Valid
+    private List<FraudRuleSet> candidates;
+}
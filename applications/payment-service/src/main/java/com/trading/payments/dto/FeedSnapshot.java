@@ -0,0 +1,42 @@
+package com.trading.payments.dto;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Reply to /app/feed/{feed}/snapshot and /app/feed/{feed}/since/{seq}.
+ *
+ * complete=true means events holds exactly what the client missed after the
+ * requested sequence. complete=false means the gap is no longer buffered: events
+ * is a fresh snapshot and the client should reset its view before applying it.
+ *
+ * Sequence numbers are per node: a client that reconnects to a different
+ * replica (node differs) is always answered with a snapshot.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FeedSnapshot {
+    private String feed;
+    private String node;
+    private String destination;
+    private long seq;
+    private boolean complete;
+    private List<Event> events;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Event {
+        private long seq;
+        private String key;
+        @JsonRawValue
+        private String payload;
+    }
+}
@@ -0,0 +1,54 @@
+package com.trading.payments.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Thresholds and points of the replayable fraud rules (FraudDetectionService
+ * rules 1-8) and a scale on the MerchantRiskProfile limits, as a candidate for
+ * backtests and shadow evaluation. Defaults are the live values, so a
+ * candidate only needs the fields it changes; the spread thresholds are
+ * configured (payment.fraud.spread.*), so they are left null here and filled
+ * in from the configuration by LiveFraudRules.resolve.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class FraudRuleSet {
+    @Builder.Default private String name = "live";
+
+    @Builder.Default private BigDecimal highAmount = BigDecimal.valueOf(1000);
+    @Builder.Default private int highAmountPoints = 25;
+    @Builder.Default private BigDecimal roundAmountMinimum = BigDecimal.valueOf(5000);
+    @Builder.Default private int roundAmountPoints = 30;
+    @Builder.Default private int highRiskMerchantLevel = 3;
+    @Builder.Default private int highRiskMerchantPoints = 15;
+
+    @Builder.Default private long cardVelocityCount = 5;
+    @Builder.Default private int cardVelocityPoints = 20;
+    @Builder.Default private BigDecimal cardAmountLimit = BigDecimal.valueOf(5000);
+    @Builder.Default private int cardAmountPoints = 25;
+    @Builder.Default private long merchantVelocityCount = 50;
+    @Builder.Default private int merchantVelocityPoints = 15;
+    @Builder.Default private long amountRepeats = 3;
+    @Builder.Default private int amountRepeatPoints = 20;
+
+    @Builder.Default private int offHoursStart = 23;    // inclusive, local hour
+    @Builder.Default private int offHoursEnd = 5;       // inclusive
+    @Builder.Default private int offHoursPoints = 10;
+
+    private Long maxMerchantsPerCard;                    // null: payment.fraud.spread.max-merchants-per-card
+    @Builder.Default private int cardSpreadPoints = 25;
+    private Long maxCardsPerMerchant;                    // null: payment.fraud.spread.max-cards-per-merchant
+    @Builder.Default private int merchantSpreadPoints = 15;
+
+    @Builder.Default private int declineThreshold = 50;  // scores above this are declined
+
+    // Multiplies every MerchantRiskProfile limit (daily volume, daily count, single transaction)
+    @Builder.Default private double merchantLimitScale = 1.0;
+}
@@ -0,0 +1,64 @@
+package com.trading.payments.dto;
+
+import com.trading.payments.entity.Transaction;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * A finished transaction plus the daily position it must be applied to,
+ * as written to the local transaction journal.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class JournalEntry {
+    private String transactionId;
+    private String merchantId;
+    private String cardNumberHash;
+    private BigDecimal amount;
+    private String currency;
+    private String status;
+    private Integer fraudScore;
+    private String customerIp;
+    private String userAgent;
+    private LocalDateTime createdAt;
+    private LocalDate positionDate;
+
+    public static JournalEntry of(Transaction transaction, LocalDate positionDate) {
+        return JournalEntry.builder()
+            .transactionId(transaction.getTransactionId())
+            .merchantId(transaction.getMerchantId())
+            .cardNumberHash(transaction.getCardNumberHash())
+            .amount(transaction.getAmount())
+            .currency(transaction.getCurrency())
+            .status(transaction.getStatus())
+            .fraudScore(transaction.getFraudScore())
+            .customerIp(transaction.getCustomerIp())
+            .userAgent(transaction.getUserAgent())
+            .createdAt(transaction.getCreatedAt())
+            .positionDate(positionDate)
+            .build();
+    }
+
+    public Transaction toTransaction() {
+        return Transaction.builder()
+            .transactionId(transactionId)
+            .merchantId(merchantId)
+            .cardNumberHash(cardNumberHash)
+            .amount(amount)
+            .currency(currency)
+            .status(status)
+            .fraudScore(fraudScore)
+            .customerIp(customerIp)
+            .userAgent(userAgent)
+            .createdAt(createdAt)
+            .build();
+    }
+}
@@ -0,0 +1,38 @@
+package com.trading.payments.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shadow evaluation counters since each candidate was set; the same numbers
+ * are exported as payment.fraud.shadow.* metrics.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShadowStatus {
+    private boolean enabled;
+    private int queued;
+    private long dropped;                    // payments shed because the queue was full
+    private List<CandidateStatus> candidates;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CandidateStatus {
+        private String name;
+        private long evaluated;
+        private long newlyApproved;          // declined live
+        private long newlyDeclined;          // approved live
+        private double disagreementRate;
+        private double meanLatencyMicros;
+        private Map<String, Double> meanRuleLatencyMicros;   // rule sets only, by RuleSetEvaluator rule
+    }
+}
@@ -1,5 +1,6 @@
 package com.trading.payments.dto;
 
+import com.trading.payments.entity.Transaction;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -18,4 +19,14 @@ public class TransactionStatus {
     private BigDecimal amount;
     private Integer fraudScore;
     private LocalDateTime processedAt;
+    
+    public static TransactionStatus from(Transaction transaction) {
+        return TransactionStatus.builder()
+            .transactionId(transaction.getTransactionId())
+            .status(transaction.getStatus().toUpperCase())
+            .amount(transaction.getAmount())
+            .fraudScore(transaction.getFraudScore())
+            .processedAt(transaction.getCreatedAt())
+            .build();
+    }
 }
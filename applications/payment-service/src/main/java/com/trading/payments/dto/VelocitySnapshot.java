@@ -0,0 +1,36 @@
+package com.trading.payments.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Velocity counters for one payment, read and updated in a single Redis round
+ * trip by VelocityService. Counts are as of just before this payment, except the
+ * distinct-count (HyperLogLog) estimates, which include it. While Redis is
+ * unavailable they come from LocalVelocityStore instead (local=true).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VelocitySnapshot {
+    private long cardCount;                   // card transactions in the card window
+    private BigDecimal cardAmount;            // their total amount
+    private long merchantCount;               // merchant transactions in the merchant window
+    private long amountRepeats;               // earlier payments of this exact amount on the card
+    private long distinctMerchantsForCard;    // ~merchants this card paid in the spread window
+    private long distinctCardsForMerchant;    // ~cards seen at this merchant in the spread window
+    private boolean available;                // false when the counters could not be read
+    private boolean local;                    // counted in this pod only, while Redis is unavailable
+
+    public static VelocitySnapshot unavailable() {
+        return VelocitySnapshot.builder()
+            .cardAmount(BigDecimal.ZERO)
+            .available(false)
+            .build();
+    }
+}
@@ -8,14 +8,19 @@ import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
     
     Optional<Transaction> findByTransactionId(String transactionId);
     
+    @Query("SELECT t.transactionId FROM Transaction t WHERE t.transactionId IN :transactionIds")
+    Set<String> findExistingTransactionIds(@Param("transactionIds") Collection<String> transactionIds);
+    
     List<Transaction> findByMerchantIdAndCreatedAtAfter(String merchantId, LocalDateTime since);
     
     @Query("SELECT COUNT(t) FROM Transaction t WHERE t.merchantId = :merchantId AND t.createdAt > :since")
@@ -0,0 +1,677 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.BacktestReport;
+import com.trading.payments.dto.BacktestRequest;
+import com.trading.payments.dto.FraudRuleSet;
+import com.trading.payments.entity.Merchant;
+import com.trading.payments.entity.MerchantRiskProfile;
+import com.trading.payments.repository.MerchantRepository;
+import com.trading.payments.repository.MerchantRiskProfileRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Replays stored transactions through candidate FraudRuleSets and reports how
+ * their decisions would have differed from the baseline.
+ *
+ * Transactions are read in (created_at, id) keyset pages through a server-side
+ * cursor, as TransactionExportService does, into fixed-size batches. Each batch
+ * goes through three fork-join phases while the next one is being read:
+ *
+ *   1. velocity   one task per card partition and one per merchant partition,
+ *                 each owning the VelocityWindows (and merchant day totals) of
+ *                 its keys, so per-card and per-merchant state is updated in
+ *                 time order by a single thread without locks
+ *   2. evaluate   the batch split into chunks, every rule set scored per row
+ *                 with RuleSetEvaluator, tallied per chunk
+ *   3. merge      chunk tallies added into the run's totals
+ *
+ * Memory is two batches plus velocity state for the cards and merchants active
+ * within the longest window (idle state is evicted as replay time advances),
+ * independent of the number of rows replayed.
+ *
+ * Only rules whose inputs are stored with the transaction are replayed (rules
+ * 1-8 and the merchant limits); velocity windows are exact where the live
+ * Redis counters are approximate, so baselineAgreement shows how closely the
+ * replay reproduces the recorded decisions.
+ */
+@Service
+@Slf4j
+public class BacktestService {
+
+    private static final String PAGE_QUERY = """
+        SELECT id, transaction_id, merchant_id, card_number_hash, amount, status, created_at
+        FROM transactions
+        WHERE created_at >= ? AND created_at < ?
+          AND (created_at, id) > (?, ?)
+        ORDER BY created_at, id
+        LIMIT ?
+        """;
+
+    private static final long EVICT_EVERY_MILLIS = Duration.ofMinutes(5).toMillis();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final MerchantRepository merchantRepository;
+    private final MerchantRiskProfileRepository riskProfileRepository;
+    private final LiveFraudRules liveRules;
+
+    private final int pageSize;
+    private final int fetchSize;
+    private final int batchSize;
+    private final int partitions;
+    private final int maxEntriesPerCard;
+    private final int sampleSize;
+    private final int retainedReports;
+
+    private final long cardWindowMillis;
+    private final long merchantWindowMillis;
+    private final long amountPatternWindowMillis;
+    private final long cardSpreadWindowMillis;
+    private final long merchantSpreadWindowMillis;
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "backtest-runner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ForkJoinPool workers;
+    private final Map<String, Run> runs = new LinkedHashMap<>();
+
+    public BacktestService(JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           MerchantRepository merchantRepository,
+                           MerchantRiskProfileRepository riskProfileRepository,
+                           LiveFraudRules liveRules,
+                           @Value("${payment.backtest.page-size:50000}") int pageSize,
+                           @Value("${payment.backtest.fetch-size:1000}") int fetchSize,
+                           @Value("${payment.backtest.batch-size:8192}") int batchSize,
+                           @Value("${payment.backtest.parallelism:0}") int parallelism,
+                           @Value("${payment.backtest.max-entries-per-card:256}") int maxEntriesPerCard,
+                           @Value("${payment.backtest.sample-size:20}") int sampleSize,
+                           @Value("${payment.backtest.retained-reports:20}") int retainedReports,
+                           @Value("${payment.fraud.velocity.card-window-minutes:60}") long cardWindowMinutes,
+                           @Value("${payment.fraud.velocity.merchant-window-minutes:10}") long merchantWindowMinutes,
+                           @Value("${payment.fraud.amount-pattern.window-hours:24}") long amountPatternWindowHours,
+                           @Value("${payment.fraud.spread.card-window-minutes:60}") long cardSpreadWindowMinutes,
+                           @Value("${payment.fraud.spread.merchant-window-minutes:10}") long merchantSpreadWindowMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionManager = transactionManager;
+        this.merchantRepository = merchantRepository;
+        this.riskProfileRepository = riskProfileRepository;
+        this.liveRules = liveRules;
+        this.pageSize = pageSize;
+        this.fetchSize = fetchSize;
+        this.batchSize = batchSize;
+        this.partitions = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.maxEntriesPerCard = maxEntriesPerCard;
+        this.sampleSize = sampleSize;
+        this.retainedReports = retainedReports;
+        this.cardWindowMillis = Duration.ofMinutes(cardWindowMinutes).toMillis();
+        this.merchantWindowMillis = Duration.ofMinutes(merchantWindowMinutes).toMillis();
+        this.amountPatternWindowMillis = Duration.ofHours(amountPatternWindowHours).toMillis();
+        this.cardSpreadWindowMillis = Duration.ofMinutes(cardSpreadWindowMinutes).toMillis();
+        this.merchantSpreadWindowMillis = Duration.ofMinutes(merchantSpreadWindowMinutes).toMillis();
+        this.workers = new ForkJoinPool(partitions);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        runner.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Queue a backtest; runs execute one at a time.
+     */
+    public BacktestReport submit(BacktestRequest request) {
+        List<FraudRuleSet> ruleSets = new ArrayList<>();
+        ruleSets.add(request.getBaseline() != null ? liveRules.resolve(request.getBaseline()) : liveRules.live());
+        for (FraudRuleSet candidate : request.getCandidates()) {
+            ruleSets.add(liveRules.resolve(candidate));
+        }
+
+        Run run = new Run(UUID.randomUUID().toString(), request, ruleSets);
+        synchronized (runs) {
+            runs.put(run.id, run);
+            Iterator<Run> oldest = runs.values().iterator();
+            while (runs.size() > retainedReports && oldest.hasNext()) {
+                if (oldest.next().finished()) {
+                    oldest.remove();
+                }
+            }
+        }
+        runner.execute(() -> execute(run));
+        return run.report();
+    }
+
+    public Optional<BacktestReport> report(String id) {
+        synchronized (runs) {
+            Run run = runs.get(id);
+            return Optional.ofNullable(run).map(Run::report);
+        }
+    }
+
+    /** Run synchronously on the calling thread; used by submit's runner */
+    void execute(Run run) {
+        run.status = BacktestReport.Status.RUNNING;
+        run.startedAt = Instant.now();
+        long startNanos = System.nanoTime();
+        try {
+            Replay replay = new Replay(run, referenceData());
+            read(run.request.getFrom(), run.request.getTo(), replay);
+            replay.finish();
+            run.elapsedNanos = System.nanoTime() - startNanos;
+            run.status = BacktestReport.Status.COMPLETED;
+            log.info("Backtest {} replayed {} transactions in {} ms", run.id, run.rows, run.elapsedNanos / 1_000_000);
+        } catch (Exception e) {
+            run.elapsedNanos = System.nanoTime() - startNanos;
+            run.error = e.getMessage();
+            run.status = BacktestReport.Status.FAILED;
+            log.error("Backtest {} failed after {} transactions", run.id, run.rows, e);
+        } finally {
+            run.completedAt = Instant.now();
+        }
+    }
+
+    /** Stream rows in (created_at, id) order into the replay, page by page */
+    private void read(LocalDateTime from, LocalDateTime to, Replay replay) {
+        // Postgres only streams with a cursor inside a transaction
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        Timestamp[] cursorTime = {Timestamp.valueOf(from)};
+        long[] cursorId = {0};
+        while (true) {
+            Timestamp pageTime = cursorTime[0];
+            long pageId = cursorId[0];
+            int rows = readOnly.execute(status -> {
+                int[] count = {0};
+                jdbcTemplate.query(connection -> {
+                    var statement = connection.prepareStatement(PAGE_QUERY);
+                    statement.setFetchSize(fetchSize);
+                    statement.setTimestamp(1, Timestamp.valueOf(from));
+                    statement.setTimestamp(2, Timestamp.valueOf(to));
+                    statement.setTimestamp(3, pageTime);
+                    statement.setLong(4, pageId);
+                    statement.setInt(5, pageSize);
+                    return statement;
+                }, (RowCallbackHandler) rs -> {
+                    cursorTime[0] = rs.getTimestamp("created_at");
+                    cursorId[0] = rs.getLong("id");
+                    replay.accept(rs, cursorTime[0]);
+                    count[0]++;
+                });
+                return count[0];
+            });
+            if (rows < pageSize) {
+                return;
+            }
+        }
+    }
+
+    private ReferenceData referenceData() {
+        Map<String, Integer> riskLevels = new HashMap<>();
+        for (Merchant merchant : merchantRepository.findAll()) {
+            riskLevels.put(merchant.getMerchantId(), merchant.getRiskLevel() != null ? merchant.getRiskLevel() : 0);
+        }
+        Map<String, long[]> limits = new HashMap<>();
+        for (MerchantRiskProfile profile : riskProfileRepository.findByIsActiveTrue()) {
+            limits.put(profile.getMerchantId(), new long[] {
+                centsOrUnlimited(profile.getDailyLimit()),
+                profile.getTransactionCountLimit() != null ? profile.getTransactionCountLimit() : Long.MAX_VALUE,
+                centsOrUnlimited(profile.getMaxSingleTransaction())
+            });
+        }
+        return new ReferenceData(riskLevels, limits);
+    }
+
+    private static long centsOrUnlimited(BigDecimal amount) {
+        return amount != null ? amount.movePointRight(2).longValue() : Long.MAX_VALUE;
+    }
+
+    private record ReferenceData(Map<String, Integer> riskLevels, Map<String, long[]> limits) {
+    }
+
+    /** One backtest: request, progress and totals (guarded by the run) */
+    final class Run {
+        final String id;
+        final BacktestRequest request;
+        final RuleSetEvaluator.Compiled[] ruleSets;
+        final Tally[] totals;
+
+        volatile BacktestReport.Status status = BacktestReport.Status.QUEUED;
+        volatile String error;
+        volatile Instant startedAt;
+        volatile Instant completedAt;
+        volatile long elapsedNanos;
+        volatile long rows;
+        long recordedApproved;
+        long baselineAgreed;
+        int peakCards;
+        int peakMerchants;
+
+        Run(String id, BacktestRequest request, List<FraudRuleSet> ruleSets) {
+            this.id = id;
+            this.request = request;
+            this.ruleSets = ruleSets.stream().map(RuleSetEvaluator.Compiled::new).toArray(RuleSetEvaluator.Compiled[]::new);
+            this.totals = newTallies(this.ruleSets.length);
+        }
+
+        boolean finished() {
+            return status == BacktestReport.Status.COMPLETED || status == BacktestReport.Status.FAILED;
+        }
+
+        synchronized void merge(Tally[] chunk, long chunkRecordedApproved, long chunkBaselineAgreed) {
+            for (int k = 0; k < totals.length; k++) {
+                totals[k].add(chunk[k], sampleSize);
+            }
+            recordedApproved += chunkRecordedApproved;
+            baselineAgreed += chunkBaselineAgreed;
+        }
+
+        synchronized BacktestReport report() {
+            long n = rows;
+            long elapsedMillis = (status == BacktestReport.Status.RUNNING && startedAt != null)
+                ? Duration.between(startedAt, Instant.now()).toMillis()
+                : elapsedNanos / 1_000_000;
+            List<BacktestReport.RuleSetResult> results = new ArrayList<>();
+            double baselineRate = rate(totals[0].approved, n);
+            for (int k = 0; k < totals.length; k++) {
+                Tally tally = totals[k];
+                results.add(BacktestReport.RuleSetResult.builder()
+                    .name(ruleSets[k].name())
+                    .approved(tally.approved)
+                    .declined(tally.declined)
+                    .blocked(tally.blocked)
+                    .approvalRate(rate(tally.approved, n))
+                    .approvalRateDelta(rate(tally.approved, n) - baselineRate)
+                    .approvedAmount(BigDecimal.valueOf(tally.approvedCents, 2))
+                    .newlyApproved(tally.newlyApproved)
+                    .newlyDeclined(tally.newlyDeclined)
+                    .sampleNewlyApproved(List.copyOf(tally.sampleNewlyApproved))
+                    .sampleNewlyDeclined(List.copyOf(tally.sampleNewlyDeclined))
+                    .build());
+            }
+            return BacktestReport.builder()
+                .id(id)
+                .status(status)
+                .error(error)
+                .from(request.getFrom())
+                .to(request.getTo())
+                .startedAt(startedAt)
+                .completedAt(completedAt)
+                .transactions(n)
+                .elapsedMillis(elapsedMillis)
+                .transactionsPerSecond(elapsedMillis > 0 ? n * 1000 / elapsedMillis : 0)
+                .recordedApprovalRate(rate(recordedApproved, n))
+                .baselineAgreement(rate(baselineAgreed, n))
+                .peakCards(peakCards)
+                .peakMerchants(peakMerchants)
+                .results(results)
+                .build();
+        }
+    }
+
+    private static double rate(long count, long total) {
+        return total > 0 ? (double) count / total : 0;
+    }
+
+    private static Tally[] newTallies(int n) {
+        Tally[] tallies = new Tally[n];
+        for (int k = 0; k < n; k++) {
+            tallies[k] = new Tally();
+        }
+        return tallies;
+    }
+
+    /** Decision counts for one rule set */
+    static final class Tally {
+        long approved;
+        long declined;
+        long blocked;
+        long approvedCents;
+        long newlyApproved;
+        long newlyDeclined;
+        final List<String> sampleNewlyApproved = new ArrayList<>();
+        final List<String> sampleNewlyDeclined = new ArrayList<>();
+
+        void add(Tally other, int samples) {
+            approved += other.approved;
+            declined += other.declined;
+            blocked += other.blocked;
+            approvedCents += other.approvedCents;
+            newlyApproved += other.newlyApproved;
+            newlyDeclined += other.newlyDeclined;
+            addSamples(sampleNewlyApproved, other.sampleNewlyApproved, samples);
+            addSamples(sampleNewlyDeclined, other.sampleNewlyDeclined, samples);
+        }
+
+        private static void addSamples(List<String> into, List<String> from, int samples) {
+            for (int i = 0; i < from.size() && into.size() < samples; i++) {
+                into.add(from.get(i));
+            }
+        }
+    }
+
+    /**
+     * Replay state of one run: the batch being read, the batch being
+     * processed, and the partitioned velocity state.
+     */
+    final class Replay {
+        private final Run run;
+        private final ReferenceData reference;
+        private final VelocityWindows[] cardPartitions = new VelocityWindows[partitions];
+        private final VelocityWindows[] merchantPartitions = new VelocityWindows[partitions];
+        private final List<Map<String, long[]>> merchantDays = new ArrayList<>();   // {epoch day, volume cents, count}
+        private final long[] cardEviction = new long[partitions];
+        private final long[] merchantEviction = new long[partitions];
+
+        private Batch filling = new Batch(batchSize);
+        private Batch spare = new Batch(batchSize);
+        private ForkJoinTask<?> inFlight;
+
+        Replay(Run run, ReferenceData reference) {
+            this.run = run;
+            this.reference = reference;
+            for (int p = 0; p < partitions; p++) {
+                cardPartitions[p] = windows();
+                merchantPartitions[p] = windows();
+                merchantDays.add(new HashMap<>());
+            }
+        }
+
+        private VelocityWindows windows() {
+            return new VelocityWindows(cardWindowMillis, merchantWindowMillis, amountPatternWindowMillis,
+                cardSpreadWindowMillis, merchantSpreadWindowMillis, maxEntriesPerCard);
+        }
+
+        void accept(ResultSet rs, Timestamp createdAt) throws SQLException {
+            filling.add(rs, createdAt);
+            if (filling.size == filling.capacity) {
+                handOff();
+            }
+        }
+
+        void finish() {
+            if (filling.size > 0) {
+                handOff();
+            }
+            if (inFlight != null) {
+                inFlight.join();
+            }
+        }
+
+        /** Wait for the previous batch, start this one, and read on into the spare */
+        private void handOff() {
+            if (inFlight != null) {
+                inFlight.join();
+            }
+            Batch batch = filling;
+            filling = spare;
+            filling.size = 0;
+            spare = batch;
+            inFlight = workers.submit(() -> process(batch));
+        }
+
+        private void process(Batch batch) {
+            List<Callable<Void>> velocity = new ArrayList<>(2 * partitions);
+            for (int p = 0; p < partitions; p++) {
+                int partition = p;
+                velocity.add(() -> {
+                    updateCards(batch, partition);
+                    return null;
+                });
+                velocity.add(() -> {
+                    updateMerchants(batch, partition);
+                    return null;
+                });
+            }
+            invokeAll(velocity);
+
+            int chunk = Math.max(256, (batch.size + partitions - 1) / partitions);
+            List<Callable<Void>> evaluation = new ArrayList<>();
+            for (int from = 0; from < batch.size; from += chunk) {
+                int start = from;
+                int end = Math.min(batch.size, from + chunk);
+                evaluation.add(() -> {
+                    evaluate(batch, start, end);
+                    return null;
+                });
+            }
+            invokeAll(evaluation);
+
+            int cards = 0;
+            int merchants = 0;
+            for (int p = 0; p < partitions; p++) {
+                cards += cardPartitions[p].cards();
+                merchants += merchantPartitions[p].merchants();
+            }
+            synchronized (run) {
+                run.peakCards = Math.max(run.peakCards, cards);
+                run.peakMerchants = Math.max(run.peakMerchants, merchants);
+            }
+            run.rows += batch.size;
+        }
+
+        private void invokeAll(List<Callable<Void>> tasks) {
+            for (var future : ForkJoinTask.invokeAll(tasks.stream().map(ForkJoinTask::adapt).toList())) {
+                if (future.getException() != null) {
+                    throw new IllegalStateException("Backtest worker failed", future.getException());
+                }
+            }
+        }
+
+        private void updateCards(Batch batch, int partition) {
+            VelocityWindows windows = cardPartitions[partition];
+            long[] out = new long[4];
+            for (int i = 0; i < batch.size; i++) {
+                if (partitionOf(batch.card[i]) != partition) {
+                    continue;
+                }
+                windows.recordCard(batch.card[i], batch.merchant[i].hashCode(), batch.cents[i], batch.time[i], out);
+                batch.cardCount[i] = out[VelocityWindows.CARD_COUNT];
+                batch.cardAmountCents[i] = out[VelocityWindows.CARD_AMOUNT_CENTS];
+                batch.amountRepeats[i] = out[VelocityWindows.AMOUNT_REPEATS];
+                batch.distinctMerchants[i] = out[VelocityWindows.DISTINCT_MERCHANTS];
+            }
+            evictIfDue(windows, batch, cardEviction, partition);
+        }
+
+        private void updateMerchants(Batch batch, int partition) {
+            VelocityWindows windows = merchantPartitions[partition];
+            Map<String, long[]> days = merchantDays.get(partition);
+            long[] out = new long[2];
+            for (int i = 0; i < batch.size; i++) {
+                String merchant = batch.merchant[i];
+                if (partitionOf(merchant.hashCode()) != partition) {
+                    continue;
+                }
+                windows.recordMerchant(merchant, batch.card[i], batch.time[i], out);
+                batch.merchantCount[i] = out[VelocityWindows.MERCHANT_COUNT];
+                batch.distinctCards[i] = out[VelocityWindows.DISTINCT_CARDS];
+
+                long[] day = days.computeIfAbsent(merchant, m -> new long[3]);
+                if (day[0] != batch.day[i]) {
+                    day[0] = batch.day[i];
+                    day[1] = 0;
+                    day[2] = 0;
+                }
+                batch.dayVolumeCents[i] = day[1];
+                batch.dayCount[i] = day[2];
+                day[1] += batch.cents[i];
+                day[2]++;
+            }
+            evictIfDue(windows, batch, merchantEviction, partition);
+        }
+
+        private void evictIfDue(VelocityWindows windows, Batch batch, long[] lastEviction, int partition) {
+            long now = batch.time[batch.size - 1];
+            if (now - lastEviction[partition] >= EVICT_EVERY_MILLIS) {
+                windows.evictIdle(now);
+                lastEviction[partition] = now;
+            }
+        }
+
+        private int partitionOf(long key) {
+            long mixed = key * 0x9E3779B97F4A7C15L;
+            return (int) ((mixed >>> 32) % partitions);
+        }
+
+        private void evaluate(Batch batch, int from, int to) {
+            RuleSetEvaluator.Compiled[] ruleSets = run.ruleSets;
+            Tally[] tallies = newTallies(ruleSets.length);
+            RuleSetEvaluator.Inputs in = new RuleSetEvaluator.Inputs();
+            long recordedApproved = 0;
+            long baselineAgreed = 0;
+
+            for (int i = from; i < to; i++) {
+                String merchant = batch.merchant[i];
+                in.amountCents = batch.cents[i];
+                in.merchantRiskLevel = reference.riskLevels().getOrDefault(merchant, 0);
+                in.hour = batch.hour[i];
+                in.cardCount = batch.cardCount[i];
+                in.cardAmountCents = batch.cardAmountCents[i];
+                in.merchantCount = batch.merchantCount[i];
+                in.amountRepeats = batch.amountRepeats[i];
+                in.distinctMerchantsForCard = batch.distinctMerchants[i];
+                in.distinctCardsForMerchant = batch.distinctCards[i];
+                long[] limits = reference.limits().get(merchant);
+                in.hasLimits = limits != null;
+                if (limits != null) {
+                    in.dayVolumeCents = batch.dayVolumeCents[i];
+                    in.dayCount = batch.dayCount[i];
+                    in.dailyLimitCents = limits[0];
+                    in.countLimit = limits[1];
+                    in.maxSingleCents = limits[2];
+                }
+
+                boolean baselineApproves = false;
+                for (int k = 0; k < ruleSets.length; k++) {
+                    int score = RuleSetEvaluator.score(ruleSets[k], in);
+                    boolean approves = ruleSets[k].approves(score);
+                    Tally tally = tallies[k];
+                    if (score == RuleSetEvaluator.BLOCKED) {
+                        tally.blocked++;
+                    } else if (approves) {
+                        tally.approved++;
+                        tally.approvedCents += in.amountCents;
+                    } else {
+                        tally.declined++;
+                    }
+                    if (k == 0) {
+                        baselineApproves = approves;
+                    } else if (approves && !baselineApproves) {
+                        tally.newlyApproved++;
+                        if (tally.sampleNewlyApproved.size() < sampleSize) {
+                            tally.sampleNewlyApproved.add(batch.transactionId[i]);
+                        }
+                    } else if (!approves && baselineApproves) {
+                        tally.newlyDeclined++;
+                        if (tally.sampleNewlyDeclined.size() < sampleSize) {
+                            tally.sampleNewlyDeclined.add(batch.transactionId[i]);
+                        }
+                    }
+                }
+                if (batch.recordedApproved[i]) {
+                    recordedApproved++;
+                }
+                if (batch.recordedApproved[i] == baselineApproves) {
+                    baselineAgreed++;
+                }
+            }
+            run.merge(tallies, recordedApproved, baselineAgreed);
+        }
+    }
+
+    /** A batch of rows in time order, column by column, with the velocity inputs filled in phase 1 */
+    static final class Batch {
+        final int capacity;
+        int size;
+
+        final String[] transactionId;
+        final String[] merchant;
+        final long[] card;
+        final long[] cents;
+        final long[] time;
+        final long[] day;
+        final int[] hour;
+        final boolean[] recordedApproved;
+
+        final long[] cardCount;
+        final long[] cardAmountCents;
+        final long[] amountRepeats;
+        final long[] distinctMerchants;
+        final long[] merchantCount;
+        final long[] distinctCards;
+        final long[] dayVolumeCents;
+        final long[] dayCount;
+
+        Batch(int capacity) {
+            this.capacity = capacity;
+            transactionId = new String[capacity];
+            merchant = new String[capacity];
+            card = new long[capacity];
+            cents = new long[capacity];
+            time = new long[capacity];
+            day = new long[capacity];
+            hour = new int[capacity];
+            recordedApproved = new boolean[capacity];
+            cardCount = new long[capacity];
+            cardAmountCents = new long[capacity];
+            amountRepeats = new long[capacity];
+            distinctMerchants = new long[capacity];
+            merchantCount = new long[capacity];
+            distinctCards = new long[capacity];
+            dayVolumeCents = new long[capacity];
+            dayCount = new long[capacity];
+        }
+
+        void add(ResultSet rs, Timestamp createdAt) throws SQLException {
+            LocalDateTime local = createdAt.toLocalDateTime();
+            add(rs.getString("transaction_id"), rs.getString("merchant_id"), rs.getString("card_number_hash"),
+                rs.getBigDecimal("amount"), "approved".equalsIgnoreCase(rs.getString("status")),
+                createdAt.getTime(), local);
+        }
+
+        void add(String transactionId, String merchantId, String cardHash, BigDecimal amount,
+                 boolean approved, long epochMillis, LocalDateTime local) {
+            int i = size++;
+            this.transactionId[i] = transactionId;
+            this.merchant[i] = merchantId;
+            this.card[i] = CardBlocklist.fingerprint(cardHash);
+            this.cents[i] = amount.movePointRight(2).longValue();
+            this.time[i] = epochMillis;
+            this.day[i] = local.toLocalDate().toEpochDay();
+            this.hour[i] = local.getHour();
+            this.recordedApproved[i] = approved;
+        }
+    }
+}
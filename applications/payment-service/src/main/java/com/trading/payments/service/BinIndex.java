@@ -0,0 +1,309 @@
+package com.trading.payments.service;
+
+import com.trading.payments.config.SchedulingConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Issuer metadata for the card BIN (the leading digits of the card number),
+ * from a local range file, one range per line:
+ *
+ *   # bin_low, bin_high, issuing country, card type, prepaid
+ *   411111,411111,US,CREDIT,false
+ *   52000000,52009999,GB,DEBIT,true
+ *
+ * Bounds are 6 to 8 digits and are widened to 8 (low padded with 0s, high
+ * with 9s). Issuer tables nest 8-digit ranges inside 6-digit ones, so ranges
+ * are flattened at load time into disjoint intervals where the narrower range
+ * wins; a lookup is then one binary search over sorted int arrays on the first
+ * 8 digits of the card number, with no allocation. Country, card type and the
+ * prepaid flag are packed into one int per interval.
+ *
+ * The file is re-read when its modification time changes and the new table is
+ * swapped in atomically; a file that fails to load keeps the previous one.
+ */
+@Service
+@Slf4j
+public class BinIndex {
+
+    public static final int NO_MATCH = -1;
+
+    public enum CardType { UNKNOWN, CREDIT, DEBIT, CHARGE }
+
+    private static final CardType[] CARD_TYPES = CardType.values();
+    private static final int DIGITS = 8;
+
+    private final MeterRegistry meterRegistry;
+    private final Path path;
+
+    private volatile Table table;
+    private long loadedModifiedTime;
+
+    private Counter misses;
+
+    public BinIndex(@Value("${payment.fraud.bin.path:}") String path, MeterRegistry meterRegistry) {
+        this.path = path.isBlank() ? null : Path.of(path);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        misses = Counter.builder("payment.fraud.bin.misses").register(meterRegistry);
+        Gauge.builder("payment.fraud.bin.ranges", this, BinIndex::size).register(meterRegistry);
+        reload();
+    }
+
+    /** Whether a BIN file is loaded; without one every lookup is a miss */
+    public boolean isLoaded() {
+        return table != null;
+    }
+
+    /**
+     * @param cardNumber the raw card number; spaces and dashes are skipped
+     * @return packed issuer attributes (see {@link #country}, {@link #cardType},
+     *         {@link #isPrepaid}), or {@link #NO_MATCH} if the BIN is not listed
+     */
+    public int lookup(String cardNumber) {
+        Table current = table;
+        if (current == null || cardNumber == null) {
+            return NO_MATCH;
+        }
+        int bin = bin(cardNumber);
+        int match = bin < 0 ? NO_MATCH : current.find(bin);
+        if (match == NO_MATCH) {
+            misses.increment();
+        }
+        return match;
+    }
+
+    /** Two-letter ISO country code, or null if the file did not give one */
+    public static String country(int match) {
+        int code = match >>> 3;
+        if (code == 0) {
+            return null;
+        }
+        code--;
+        return new String(new char[] { (char) ('A' + code / 26), (char) ('A' + code % 26) });
+    }
+
+    public static CardType cardType(int match) {
+        return CARD_TYPES[match >>> 1 & 3];
+    }
+
+    public static boolean isPrepaid(int match) {
+        return (match & 1) != 0;
+    }
+
+    public int size() {
+        Table current = table;
+        return current != null ? current.starts.length : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${payment.fraud.bin.reload-interval-ms:60000}", scheduler = SchedulingConfig.BACKGROUND_SCHEDULER)
+    public void reload() {
+        if (path == null || !Files.isRegularFile(path)) {
+            return;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            if (modified == loadedModifiedTime) {
+                return;
+            }
+            Table loaded = load(path);
+            table = loaded;
+            loadedModifiedTime = modified;
+            log.info("Loaded BIN table {}: {} intervals", path, loaded.starts.length);
+        } catch (Exception e) {
+            log.error("Failed to load BIN table {}, keeping the previous one: {}", path, e.getMessage());
+        }
+    }
+
+    /** First 8 digits of the card number as an int, or -1 if it has fewer */
+    static int bin(String cardNumber) {
+        int bin = 0;
+        int digits = 0;
+        for (int i = 0; i < cardNumber.length() && digits < DIGITS; i++) {
+            char c = cardNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                bin = bin * 10 + (c - '0');
+                digits++;
+            } else if (c != ' ' && c != '-') {
+                return -1;
+            }
+        }
+        return digits == DIGITS ? bin : -1;
+    }
+
+    static int pack(String country, CardType type, boolean prepaid) {
+        int code = 0;
+        if (country != null && !country.isEmpty()) {
+            String upper = country.toUpperCase(Locale.ROOT);
+            if (upper.length() != 2 || upper.charAt(0) < 'A' || upper.charAt(0) > 'Z'
+                    || upper.charAt(1) < 'A' || upper.charAt(1) > 'Z') {
+                throw new IllegalArgumentException("Invalid country code " + country);
+            }
+            code = (upper.charAt(0) - 'A') * 26 + (upper.charAt(1) - 'A') + 1;
+        }
+        return code << 3 | type.ordinal() << 1 | (prepaid ? 1 : 0);
+    }
+
+    static Table load(Path path) throws IOException {
+        TableBuilder builder = new TableBuilder();
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    String[] fields = line.split(",", -1);
+                    if (fields.length != 5) {
+                        throw new IllegalArgumentException("expected bin_low,bin_high,country,type,prepaid");
+                    }
+                    builder.add(fields[0].trim(), fields[1].trim(),
+                        pack(fields[2].trim(), cardTypeOf(fields[3].trim()), Boolean.parseBoolean(fields[4].trim())));
+                } catch (IllegalArgumentException e) {
+                    if (skipped++ < 10) {
+                        log.warn("Skipping line {} of {}: {}", lineNumber, path, e.getMessage());
+                    }
+                }
+            }
+        }
+        if (skipped > 0) {
+            log.warn("Skipped {} malformed lines in {}", skipped, path);
+        }
+        return builder.build();
+    }
+
+    private static CardType cardTypeOf(String label) {
+        try {
+            return label.isEmpty() ? CardType.UNKNOWN : CardType.valueOf(label.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return CardType.UNKNOWN;
+        }
+    }
+
+    /** Disjoint 8-digit BIN intervals sorted by start */
+    static final class Table {
+        private final int[] starts;
+        private final int[] ends;
+        private final int[] attributes;
+
+        Table(int[] starts, int[] ends, int[] attributes) {
+            this.starts = starts;
+            this.ends = ends;
+            this.attributes = attributes;
+        }
+
+        int find(int bin) {
+            // Last interval starting at or before the BIN
+            int low = 0;
+            int high = starts.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] <= bin) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high >= 0 && bin <= ends[high] ? attributes[high] : NO_MATCH;
+        }
+    }
+
+    /**
+     * Collects ranges (bounds of 6 to 8 digits) and flattens them, narrowest
+     * on top; of two ranges of the same width the one added last wins.
+     */
+    static final class TableBuilder {
+        private int[][] ranges = new int[1024][];
+        private int count;
+
+        void add(String low, String high, int attributes) {
+            int start = widen(low, '0');
+            int end = widen(high, '9');
+            if (start > end) {
+                throw new IllegalArgumentException("bin_low above bin_high: " + low + " > " + high);
+            }
+            if (count == ranges.length) {
+                ranges = Arrays.copyOf(ranges, count * 2);
+            }
+            ranges[count] = new int[] { start, end, attributes, count };
+            count++;
+        }
+
+        Table build() {
+            int[][] byWidth = Arrays.copyOf(ranges, count);
+            // Widest first, so narrower ranges are painted over them; ties in file order
+            Arrays.sort(byWidth, Comparator.<int[]>comparingInt(r -> r[0] - r[1]).thenComparingInt(r -> r[3]));
+
+            TreeMap<Integer, int[]> intervals = new TreeMap<>();   // start -> {end, attributes}
+            for (int[] range : byWidth) {
+                int start = range[0];
+                int end = range[1];
+                Map.Entry<Integer, int[]> before = intervals.floorEntry(start);
+                if (before != null && before.getValue()[0] >= start) {
+                    int[] split = before.getValue();
+                    intervals.put(before.getKey(), new int[] { start - 1, split[1] });
+                    if (split[0] > end) {
+                        intervals.put(end + 1, new int[] { split[0], split[1] });
+                    }
+                    if (before.getKey() == start) {
+                        intervals.remove(start);
+                    }
+                }
+                Map<Integer, int[]> covered = intervals.subMap(start, true, end, true);
+                int[] last = covered.isEmpty() ? null : intervals.get(intervals.floorKey(end));
+                covered.clear();
+                if (last != null && last[0] > end) {
+                    intervals.put(end + 1, last);
+                }
+                intervals.put(start, new int[] { end, range[2] });
+            }
+
+            int n = intervals.size();
+            int[] starts = new int[n];
+            int[] ends = new int[n];
+            int[] attributes = new int[n];
+            int i = 0;
+            for (Map.Entry<Integer, int[]> interval : intervals.entrySet()) {
+                starts[i] = interval.getKey();
+                ends[i] = interval.getValue()[0];
+                attributes[i] = interval.getValue()[1];
+                i++;
+            }
+            return new Table(starts, ends, attributes);
+        }
+
+        private static int widen(String bound, char pad) {
+            if (bound.length() < 6 || bound.length() > DIGITS || !bound.chars().allMatch(c -> c >= '0' && c <= '9')) {
+                throw new IllegalArgumentException("BIN bounds must be 6 to 8 digits: " + bound);
+            }
+            StringBuilder widened = new StringBuilder(bound);
+            while (widened.length() < DIGITS) {
+                widened.append(pad);
+            }
+            return Integer.parseInt(widened.toString());
+        }
+    }
+}
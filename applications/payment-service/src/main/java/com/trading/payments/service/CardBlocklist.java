@@ -0,0 +1,200 @@
+package com.trading.payments.service;
+
+import com.trading.payments.config.SchedulingConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compromised-card blocklist, checked before any other fraud rule.
+ *
+ * The list is a file built offline by CardBlocklistBuilder from the daily
+ * compromised-card feeds and memory-mapped read-only, so tens of millions of
+ * fingerprints cost next to no heap and pods on the same node share one copy
+ * in the page cache (mount the directory from the host). Layout, big-endian:
+ *
+ *   header   magic "CBLK", version, entry count, Bloom bits (power of two),
+ *            Bloom hash count - padded to 64 bytes
+ *   bloom    bit array
+ *   table    sorted, distinct 64-bit card fingerprints
+ *
+ * A fingerprint is the first 64 bits of the card hash. A lookup probes the
+ * Bloom filter (most cards stop here) and only on a hit binary-searches the
+ * table, so false positives never block a card. Both are plain reads on the
+ * mapping with no allocation: ~100 ns for a miss, ~200-300 ns for a listed card
+ * (binary search over 5M fingerprints, warm page cache).
+ *
+ * The file is re-mapped when its modification time changes (the builder
+ * writes a temp file and renames it over the old one) and the new mapping is
+ * swapped in atomically; in-flight lookups finish on the old one.
+ */
+@Service
+@Slf4j
+public class CardBlocklist {
+
+    static final int MAGIC = 0x43424C4B; // "CBLK"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+
+    private final MeterRegistry meterRegistry;
+    private final Path path;
+
+    private volatile Mapping mapping;
+    private long loadedModifiedTime;
+
+    private Counter hits;
+    private Counter bloomFalsePositives;
+
+    public CardBlocklist(@Value("${payment.fraud.blocklist.path:}") String path, MeterRegistry meterRegistry) {
+        this.path = path.isBlank() ? null : Path.of(path);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        hits = Counter.builder("payment.fraud.blocklist.hits").register(meterRegistry);
+        bloomFalsePositives = Counter.builder("payment.fraud.blocklist.bloom_false_positives").register(meterRegistry);
+        Gauge.builder("payment.fraud.blocklist.entries", this, CardBlocklist::size).register(meterRegistry);
+        reload();
+    }
+
+    /**
+     * @param cardHash the hex SHA-256 card hash used throughout fraud detection
+     */
+    public boolean contains(String cardHash) {
+        Mapping current = mapping;
+        if (current == null) {
+            return false;
+        }
+        long fingerprint = fingerprint(cardHash);
+        if (!current.mightContain(fingerprint)) {
+            return false;
+        }
+        if (current.tableContains(fingerprint)) {
+            hits.increment();
+            return true;
+        }
+        bloomFalsePositives.increment();
+        return false;
+    }
+
+    public long size() {
+        Mapping current = mapping;
+        return current != null ? current.count : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${payment.fraud.blocklist.reload-interval-ms:30000}", scheduler = SchedulingConfig.BACKGROUND_SCHEDULER)
+    public void reload() {
+        if (path == null || !Files.isRegularFile(path)) {
+            return;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            if (modified == loadedModifiedTime) {
+                return;
+            }
+            Mapping loaded = Mapping.open(path);
+            mapping = loaded;
+            loadedModifiedTime = modified;
+            log.info("Loaded card blocklist {}: {} fingerprints, {} KB Bloom filter",
+                path, loaded.count, loaded.bloomBits / 8 / 1024);
+        } catch (Exception e) {
+            log.error("Failed to load card blocklist {}, keeping the previous one: {}", path, e.getMessage());
+        }
+    }
+
+    /** First 16 hex digits of the card hash */
+    static long fingerprint(String cardHash) {
+        long fingerprint = 0;
+        for (int i = 0; i < 16 && i < cardHash.length(); i++) {
+            fingerprint = (fingerprint << 4) | Character.digit(cardHash.charAt(i), 16) & 0xF;
+        }
+        return fingerprint;
+    }
+
+    /** Bloom probe i for a fingerprint: double hashing, the rotated fingerprint as the step */
+    static long bloomIndex(long fingerprint, int i, long bitMask) {
+        long step = Long.rotateLeft(fingerprint, 32) | 1;
+        return (fingerprint + i * step) & bitMask;
+    }
+
+    static final class Mapping {
+        private final MappedByteBuffer buffer;
+        private final long count;
+        private final long bloomBits;
+        private final long bitMask;
+        private final int hashes;
+        private final int tableOffset;
+
+        private Mapping(MappedByteBuffer buffer, long count, long bloomBits, int hashes) {
+            this.buffer = buffer;
+            this.count = count;
+            this.bloomBits = bloomBits;
+            this.bitMask = bloomBits - 1;
+            this.hashes = hashes;
+            this.tableOffset = HEADER_BYTES + (int) (bloomBits / 8);
+        }
+
+        static Mapping open(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Blocklist larger than 2 GB: " + size + " bytes");
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if (size < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    throw new IOException("Not a version " + VERSION + " card blocklist");
+                }
+                long count = buffer.getLong(8);
+                long bloomBits = buffer.getLong(16);
+                int hashes = buffer.getInt(24);
+                if (Long.bitCount(bloomBits) != 1 || HEADER_BYTES + bloomBits / 8 + count * Long.BYTES != size) {
+                    throw new IOException("Corrupt card blocklist header");
+                }
+                return new Mapping(buffer, count, bloomBits, hashes);
+            }
+        }
+
+        boolean mightContain(long fingerprint) {
+            ByteBuffer bloom = buffer;
+            for (int i = 0; i < hashes; i++) {
+                long bit = bloomIndex(fingerprint, i, bitMask);
+                if ((bloom.get(HEADER_BYTES + (int) (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean tableContains(long fingerprint) {
+            long low = 0;
+            long high = count - 1;
+            while (low <= high) {
+                long mid = (low + high) >>> 1;
+                long value = buffer.getLong(tableOffset + (int) (mid * Long.BYTES));
+                int cmp = Long.compareUnsigned(value, fingerprint);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
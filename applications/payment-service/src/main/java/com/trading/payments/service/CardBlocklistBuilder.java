@@ -0,0 +1,116 @@
+package com.trading.payments.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Offline builder for the CardBlocklist file. Input is one card per line,
+ * either a card number (hashed exactly as FraudDetectionService does) or an
+ * already computed 64-hex card hash; blank lines and "#" comments are skipped.
+ *
+ *   java -cp payment-service.jar -Dloader.main=com.trading.payments.service.CardBlocklistBuilder \
+ *        org.springframework.boot.loader.launch.PropertiesLauncher feed.txt [more feeds...] blocklist.bin
+ *
+ * The output is written next to the target and renamed over it, so a running
+ * service never maps a half-written file.
+ */
+public final class CardBlocklistBuilder {
+
+    // ~0.05% Bloom false positives; those cost one binary search, never a wrong block
+    static final int BITS_PER_ENTRY = 16;
+    static final int HASHES = 11;
+
+    private CardBlocklistBuilder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: CardBlocklistBuilder <feed>... <output>");
+            System.exit(2);
+        }
+        long[] fingerprints = new long[1 << 20];
+        int count = 0;
+        for (int i = 0; i < args.length - 1; i++) {
+            try (BufferedReader reader = Files.newBufferedReader(Path.of(args[i]))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    if (count == fingerprints.length) {
+                        fingerprints = Arrays.copyOf(fingerprints, count * 2);
+                    }
+                    fingerprints[count++] = fingerprintOf(line);
+                }
+            }
+        }
+        int distinct = build(Arrays.copyOf(fingerprints, count), Path.of(args[args.length - 1]));
+        System.out.println("Wrote " + distinct + " fingerprints to " + args[args.length - 1]);
+    }
+
+    static long fingerprintOf(String card) {
+        boolean isHash = card.length() == 64 && card.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+        return CardBlocklist.fingerprint(isHash ? card.toLowerCase() : FraudDetectionService.hashCardNumber(card));
+    }
+
+    /**
+     * Write the blocklist file for the given fingerprints (any order, duplicates allowed).
+     *
+     * @return the number of distinct fingerprints written
+     */
+    static int build(long[] fingerprints, Path output) throws IOException {
+        long[] sorted = fingerprints.clone();
+        Arrays.parallelSort(sorted);
+        // parallelSort is signed; lookups compare unsigned, so rotate the negative half to the end
+        int firstNegative = 0;
+        while (firstNegative < sorted.length && sorted[firstNegative] < 0) {
+            firstNegative++;
+        }
+        long[] ordered = new long[sorted.length];
+        System.arraycopy(sorted, firstNegative, ordered, 0, sorted.length - firstNegative);
+        System.arraycopy(sorted, 0, ordered, sorted.length - firstNegative, firstNegative);
+
+        int distinct = 0;
+        for (int i = 0; i < ordered.length; i++) {
+            if (i == 0 || ordered[i] != ordered[i - 1]) {
+                ordered[distinct++] = ordered[i];
+            }
+        }
+
+        long bloomBits = Math.max(64, Long.highestOneBit(Math.max(1, (long) distinct * BITS_PER_ENTRY - 1)) << 1);
+        long bitMask = bloomBits - 1;
+        byte[] bloom = new byte[(int) (bloomBits / 8)];
+        for (int i = 0; i < distinct; i++) {
+            for (int h = 0; h < HASHES; h++) {
+                long bit = CardBlocklist.bloomIndex(ordered[i], h, bitMask);
+                bloom[(int) (bit >>> 3)] |= (byte) (1 << (bit & 7));
+            }
+        }
+
+        Path parent = output.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, output.getFileName().toString(), ".tmp");
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(CardBlocklist.MAGIC);
+            out.writeInt(CardBlocklist.VERSION);
+            out.writeLong(distinct);
+            out.writeLong(bloomBits);
+            out.writeInt(HASHES);
+            out.write(new byte[CardBlocklist.HEADER_BYTES - 28]);
+            out.write(bloom);
+            for (int i = 0; i < distinct; i++) {
+                out.writeLong(ordered[i]);
+            }
+        }
+        Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return distinct;
+    }
+}
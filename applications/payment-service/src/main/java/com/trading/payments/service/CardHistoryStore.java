@@ -0,0 +1,312 @@
+package com.trading.payments.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Recent transaction history per card, for sequence rules (micro-authorizations
+ * before a large one, stepping amounts) that need more than counters.
+ *
+ * Each active card owns a fixed ring of the last entries-per-card payments as
+ * (amount in cents, merchant id hash, epoch millis), held in flat primitive
+ * arrays - no objects per card, per entry or per merchant. Cards are keyed by the first 64 bits of
+ * the card hash in an open-addressing table and kept on an LRU list; once the
+ * pool sized from max-memory-mb is full, the least recently used card is
+ * recycled. Everything is split into lock stripes by card.
+ *
+ * {@link #append} records a payment and returns the card's previous entries in
+ * a thread-local {@link History}, so rules run without allocating or touching
+ * Postgres/Redis. History is per pod: a card whose payments are spread over
+ * replicas is seen partially by each.
+ */
+@Service
+@Slf4j
+public class CardHistoryStore {
+
+    // amount + merchant hash + timestamp
+    private static final int ENTRY_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES;
+    // key, LRU links, ring head/size, two hash table cells
+    private static final int CARD_OVERHEAD_BYTES = Long.BYTES + 4 * Integer.BYTES + 2 * (Long.BYTES + Integer.BYTES);
+
+    private final int entriesPerCard;
+    private final long idleMillis;
+    private final Stripe[] stripes;
+    private final int stripeShift;
+
+    private final ThreadLocal<History> histories;
+
+    private final Counter evictions;
+
+    public CardHistoryStore(@Value("${payment.fraud.card-history.entries-per-card:16}") int entriesPerCard,
+                            @Value("${payment.fraud.card-history.max-memory-mb:64}") int maxMemoryMb,
+                            @Value("${payment.fraud.card-history.idle-minutes:1440}") long idleMinutes,
+                            @Value("${payment.fraud.card-history.stripes:64}") int stripeCount,
+                            MeterRegistry meterRegistry) {
+        this.entriesPerCard = entriesPerCard;
+        this.idleMillis = idleMinutes * 60_000;
+
+        int stripesPow2 = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+        long bytesPerCard = (long) entriesPerCard * ENTRY_BYTES + CARD_OVERHEAD_BYTES;
+        long maxCards = Math.max(stripesPow2, maxMemoryMb * 1024L * 1024L / bytesPerCard);
+        int cardsPerStripe = (int) Math.min(Integer.MAX_VALUE / Math.max(1, entriesPerCard), maxCards / stripesPow2);
+
+        this.stripes = new Stripe[stripesPow2];
+        for (int i = 0; i < stripesPow2; i++) {
+            stripes[i] = new Stripe(cardsPerStripe, entriesPerCard);
+        }
+        this.stripeShift = 64 - Integer.numberOfTrailingZeros(stripesPow2);
+        this.histories = ThreadLocal.withInitial(() -> new History(entriesPerCard));
+
+        this.evictions = Counter.builder("payment.fraud.card_history.evictions").register(meterRegistry);
+        Gauge.builder("payment.fraud.card_history.cards", this, CardHistoryStore::size).register(meterRegistry);
+        log.info("Card history: {} cards x {} entries in {} stripes (~{} MB)",
+            (long) cardsPerStripe * stripesPow2, entriesPerCard, stripesPow2, maxCards * bytesPerCard / (1024 * 1024));
+    }
+
+    /**
+     * Record a payment and return the card's history as it was before it, most
+     * recent first. The returned History is reused by the calling thread.
+     */
+    public History append(String cardHash, String merchantId, long amountCents, long timestamp) {
+        long key = cardKey(cardHash);
+        // Only compared for equality; a collision merely makes two merchants look alike
+        int merchant = merchantId.hashCode();
+        History history = histories.get();
+        Stripe stripe = stripes[stripeShift == 64 ? 0 : (int) (key >>> stripeShift)];
+        synchronized (stripe) {
+            if (stripe.append(key, merchant, amountCents, timestamp, idleMillis, history)) {
+                evictions.increment();
+            }
+        }
+        return history;
+    }
+
+    public long size() {
+        long cards = 0;
+        for (Stripe stripe : stripes) {
+            cards += stripe.used;
+        }
+        return cards;
+    }
+
+    public int getEntriesPerCard() {
+        return entriesPerCard;
+    }
+
+    // First 16 hex digits of the SHA-256 card hash; 0 marks an empty table cell
+    static long cardKey(String cardHash) {
+        long key = 0;
+        for (int i = 0; i < 16 && i < cardHash.length(); i++) {
+            key = (key << 4) | Character.digit(cardHash.charAt(i), 16) & 0xF;
+        }
+        return key == 0 ? 1 : key;
+    }
+
+    /**
+     * A card's previous payments, most recent first. Only valid until the owning
+     * thread's next {@link #append}.
+     */
+    public static final class History {
+        private final long[] amounts;
+        private final int[] merchants;
+        private final long[] timestamps;
+        private int size;
+
+        History(int capacity) {
+            amounts = new long[capacity];
+            merchants = new int[capacity];
+            timestamps = new long[capacity];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long amountCents(int i) {
+            return amounts[i];
+        }
+
+        /** The merchant id's {@link String#hashCode()}. */
+        public int merchant(int i) {
+            return merchants[i];
+        }
+
+        public long timestamp(int i) {
+            return timestamps[i];
+        }
+    }
+
+    /**
+     * One lock stripe: a pool of card slots with their rings, a long -> slot
+     * open-addressing table (linear probing, backward-shift deletion) and an
+     * intrusive LRU list over the slots.
+     */
+    static final class Stripe {
+        private final int capacity;
+        private final int ringSize;
+
+        private final long[] tableKeys;
+        private final int[] tableSlots;
+        private final int tableMask;
+
+        private final long[] slotKeys;
+        private final int[] prev;
+        private final int[] next;
+        private final int[] heads;
+        private final int[] sizes;
+        private int lruHead = -1;   // most recently used
+        private int lruTail = -1;
+        int used;
+
+        private final long[] amounts;
+        private final int[] merchants;
+        private final long[] timestamps;
+
+        Stripe(int capacity, int ringSize) {
+            this.capacity = Math.max(1, capacity);
+            this.ringSize = ringSize;
+            int tableSize = Integer.highestOneBit(this.capacity * 2 - 1) << 1;
+            tableKeys = new long[tableSize];
+            tableSlots = new int[tableSize];
+            tableMask = tableSize - 1;
+
+            slotKeys = new long[this.capacity];
+            prev = new int[this.capacity];
+            next = new int[this.capacity];
+            heads = new int[this.capacity];
+            sizes = new int[this.capacity];
+
+            amounts = new long[this.capacity * ringSize];
+            merchants = new int[this.capacity * ringSize];
+            timestamps = new long[this.capacity * ringSize];
+        }
+
+        /** @return true if another card was evicted to make room */
+        boolean append(long key, int merchant, long amountCents, long timestamp, long idleMillis, History out) {
+            boolean evicted = false;
+            int slot = find(key);
+            if (slot < 0) {
+                if (used < capacity) {
+                    slot = used++;
+                } else {
+                    slot = lruTail;
+                    remove(slotKeys[slot]);
+                    unlink(slot);
+                    evicted = true;
+                }
+                slotKeys[slot] = key;
+                insert(key, slot);
+                sizes[slot] = 0;
+                heads[slot] = 0;
+            } else {
+                unlink(slot);
+                // A card idle past the limit starts over
+                int last = (heads[slot] - 1 + ringSize) % ringSize;
+                if (sizes[slot] > 0 && timestamp - timestamps[slot * ringSize + last] > idleMillis) {
+                    sizes[slot] = 0;
+                }
+            }
+            pushFront(slot);
+
+            // Copy out the previous entries, newest first, then append this one
+            int base = slot * ringSize;
+            int size = sizes[slot];
+            int index = heads[slot];
+            for (int i = 0; i < size; i++) {
+                index = index == 0 ? ringSize - 1 : index - 1;
+                out.amounts[i] = amounts[base + index];
+                out.merchants[i] = merchants[base + index];
+                out.timestamps[i] = timestamps[base + index];
+            }
+            out.size = size;
+
+            int head = heads[slot];
+            amounts[base + head] = amountCents;
+            merchants[base + head] = merchant;
+            timestamps[base + head] = timestamp;
+            heads[slot] = head + 1 == ringSize ? 0 : head + 1;
+            if (size < ringSize) {
+                sizes[slot] = size + 1;
+            }
+            return evicted;
+        }
+
+        int find(long key) {
+            int i = (int) key & tableMask;
+            while (tableKeys[i] != 0) {
+                if (tableKeys[i] == key) {
+                    return tableSlots[i];
+                }
+                i = (i + 1) & tableMask;
+            }
+            return -1;
+        }
+
+        private void insert(long key, int slot) {
+            int i = (int) key & tableMask;
+            while (tableKeys[i] != 0) {
+                i = (i + 1) & tableMask;
+            }
+            tableKeys[i] = key;
+            tableSlots[i] = slot;
+        }
+
+        private void remove(long key) {
+            int i = (int) key & tableMask;
+            while (tableKeys[i] != key) {
+                if (tableKeys[i] == 0) {
+                    return;
+                }
+                i = (i + 1) & tableMask;
+            }
+            tableKeys[i] = 0;
+            // Shift later members of the probe run back so lookups never stop early
+            int j = i;
+            while (true) {
+                j = (j + 1) & tableMask;
+                if (tableKeys[j] == 0) {
+                    return;
+                }
+                int home = (int) tableKeys[j] & tableMask;
+                boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (!stays) {
+                    tableKeys[i] = tableKeys[j];
+                    tableSlots[i] = tableSlots[j];
+                    tableKeys[j] = 0;
+                    i = j;
+                }
+            }
+        }
+
+        private void pushFront(int slot) {
+            prev[slot] = -1;
+            next[slot] = lruHead;
+            if (lruHead >= 0) {
+                prev[lruHead] = slot;
+            }
+            lruHead = slot;
+            if (lruTail < 0) {
+                lruTail = slot;
+            }
+        }
+
+        private void unlink(int slot) {
+            int p = prev[slot];
+            int n = next[slot];
+            if (p >= 0) {
+                next[p] = n;
+            } else {
+                lruHead = n;
+            }
+            if (n >= 0) {
+                prev[n] = p;
+            } else {
+                lruTail = p;
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.trading.payments.service;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Consecutive-failure circuit breaker around a remote dependency.
+ *
+ *   CLOSED     calls go through; failureThreshold failures in a row open it
+ *   OPEN       calls are refused for openMillis, then one trial is let through
+ *   HALF_OPEN  the trial is in flight; success closes, failure re-opens
+ *
+ * Lock-free: allowRequest() is a couple of volatile reads on the hot path.
+ */
+final class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean trialInFlight = new AtomicBoolean();
+    private volatile long openUntil;     // 0 when closed
+
+    CircuitBreaker(int failureThreshold, long openMillis, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    State state() {
+        if (openUntil == 0) {
+            return State.CLOSED;
+        }
+        return trialInFlight.get() ? State.HALF_OPEN : State.OPEN;
+    }
+
+    /** Whether to call the dependency now; a true while open makes this caller the trial */
+    boolean allowRequest() {
+        long until = openUntil;
+        if (until == 0) {
+            return true;
+        }
+        return clock.getAsLong() >= until && trialInFlight.compareAndSet(false, true);
+    }
+
+    /** @return true if this success closed the breaker */
+    boolean recordSuccess() {
+        consecutiveFailures.set(0);
+        if (openUntil == 0) {
+            return false;
+        }
+        openUntil = 0;
+        trialInFlight.set(false);
+        return true;
+    }
+
+    /** @return true if this failure opened the breaker */
+    boolean recordFailure() {
+        if (openUntil != 0) {
+            // The trial failed, or a call that started before the breaker opened
+            openUntil = clock.getAsLong() + openMillis;
+            trialInFlight.set(false);
+            return false;
+        }
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openUntil = clock.getAsLong() + openMillis;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,300 @@
+package com.trading.payments.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cross-replica WebSocket fan-out over Redis pub/sub
+ * (payment.websocket.cluster.mode=redis).
+ *
+ * Each pod keeps its in-memory STOMP broker. Events published on this node are
+ * delivered locally as before and also queued in a bounded outbox; a flusher
+ * batches the outbox into one binary pub/sub frame per linger interval on the
+ * existing RedisConnectionFactory. Every other node decodes the batch once and
+ * delivers each event to its own subscribers only, so the per-node cost is one
+ * Redis message per batch plus O(local subscribers) per event.
+ *
+ * Event ids are per origin node and start at the process start time in
+ * microseconds; a receiver keeps the highest id seen per origin and drops
+ * anything at or below it, which also covers a restarted origin. Ids are
+ * assigned by the flusher as it takes events off the outbox, so they increase
+ * in the order events go on the wire whatever the order publishers raced in.
+ *
+ * A full STOMP broker relay (RabbitMQ/ActiveMQ via enableStompBrokerRelay) would
+ * be the alternative, but needs an external broker and reactor-netty; Redis is
+ * already part of the deployment.
+ */
+@Service
+@ConditionalOnProperty(name = "payment.websocket.cluster.mode", havingValue = "redis")
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterFanoutRelay implements StompEventPublisher.RemoteForwarder {
+
+    // 2: events carry an optional binary (/topic/bin/) frame
+    private static final byte FRAME_VERSION = 2;
+
+    private final StompEventPublisher publisher;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisConnectionFactory connectionFactory;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${payment.websocket.cluster.node-id:${HOSTNAME:local}}")
+    private String nodeId;
+
+    @Value("${payment.websocket.cluster.channel:payment:ws:fanout}")
+    private String channel;
+
+    @Value("${payment.websocket.cluster.outbox-capacity:65536}")
+    private int outboxCapacity;
+
+    @Value("${payment.websocket.cluster.max-batch-size:256}")
+    private int maxBatchSize;
+
+    @Value("${payment.websocket.cluster.linger-micros:2000}")
+    private long lingerMicros;
+
+    // Per-node views; every replica publishes its own
+    @Value("${payment.websocket.cluster.local-destinations:/topic/dashboard/stats}")
+    private Set<String> localDestinations;
+
+    // Only touched by the flusher thread
+    private long lastEventId = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    private final Map<String, Long> highestSeen = new LinkedHashMap<>();
+
+    private BlockingQueue<OutboundEvent> outbox;
+    private RedisMessageListenerContainer listenerContainer;
+    private ExecutorService receiveExecutor;
+    private Thread flusher;
+    private volatile boolean running;
+
+    private Counter eventsOut;
+    private Counter eventsIn;
+    private Counter droppedOutbox;
+    private Counter duplicates;
+    private Counter publishFailures;
+    private DistributionSummary batchSizes;
+
+    @PostConstruct
+    void init() {
+        outbox = new ArrayBlockingQueue<>(outboxCapacity);
+
+        eventsOut = Counter.builder("payment.cluster.relay.events").tag("direction", "out").register(meterRegistry);
+        eventsIn = Counter.builder("payment.cluster.relay.events").tag("direction", "in").register(meterRegistry);
+        droppedOutbox = Counter.builder("payment.cluster.relay.dropped").tag("reason", "outbox_full").register(meterRegistry);
+        duplicates = Counter.builder("payment.cluster.relay.dropped").tag("reason", "duplicate").register(meterRegistry);
+        publishFailures = Counter.builder("payment.cluster.relay.publish_failures").register(meterRegistry);
+        batchSizes = DistributionSummary.builder("payment.cluster.relay.batch_size").register(meterRegistry);
+        Gauge.builder("payment.cluster.relay.outbox", outbox, BlockingQueue::size).register(meterRegistry);
+
+        publisher.setRemoteForwarder(this);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // One receive thread keeps each origin's events in publish order
+        receiveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-fanout-receiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.setTaskExecutor(receiveExecutor);
+        listenerContainer.addMessageListener(this::onMessage, new ChannelTopic(channel));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+
+        running = true;
+        flusher = new Thread(this::runFlusher, "cluster-fanout-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+
+        log.info("Cluster fan-out relay started: node {}, channel {}", nodeId, channel);
+    }
+
+    @PreDestroy
+    void stop() throws Exception {
+        running = false;
+        if (flusher != null) {
+            flusher.interrupt();
+        }
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+        if (receiveExecutor != null) {
+            receiveExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean forwards(String destination) {
+        return !localDestinations.contains(destination);
+    }
+
+    @Override
+    public void forward(String[] destinations, String key, byte[] body, byte[] binary) {
+        List<String> forwarded = new ArrayList<>(destinations.length);
+        for (String destination : destinations) {
+            if (forwards(destination)) {
+                forwarded.add(destination);
+            }
+        }
+        // The binary frame mirrors destinations[0], which must stay first on the remote side
+        byte[] forwardedBinary = forwards(destinations[0]) ? binary : null;
+        if (!outbox.offer(new OutboundEvent(forwarded, key, body, forwardedBinary))) {
+            droppedOutbox.increment();
+        }
+    }
+
+    private void runFlusher() {
+        List<OutboundEvent> batch = new ArrayList<>(maxBatchSize);
+        long lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+
+        while (running) {
+            try {
+                OutboundEvent first = outbox.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Give concurrent publishers the linger interval to join this batch
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize && System.nanoTime() < deadline) {
+                    if (outbox.drainTo(batch, maxBatchSize - batch.size()) == 0) {
+                        LockSupport.parkNanos(Math.min(50_000, lingerNanos));
+                    }
+                }
+
+                byte[] frame = encode(batch);
+                redisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.publish(channel.getBytes(StandardCharsets.UTF_8), frame));
+                eventsOut.increment(batch.size());
+                batchSizes.record(batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                publishFailures.increment();
+                log.warn("Failed to relay {} events to other replicas: {}", batch.size(), e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(message.getBody()))) {
+            if (in.readByte() != FRAME_VERSION) {
+                return;
+            }
+            String origin = in.readUTF();
+            if (nodeId.equals(origin)) {
+                return; // already delivered locally
+            }
+
+            long highest = highestSeen.getOrDefault(origin, Long.MIN_VALUE);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                String[] destinations = new String[in.readUnsignedByte()];
+                for (int d = 0; d < destinations.length; d++) {
+                    destinations[d] = in.readUTF();
+                }
+                String key = in.readBoolean() ? in.readUTF() : null;
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                byte[] binary = null;
+                if (in.readBoolean()) {
+                    binary = new byte[in.readInt()];
+                    in.readFully(binary);
+                }
+
+                if (id <= highest) {
+                    duplicates.increment();
+                    continue;
+                }
+                highest = id;
+                publisher.deliverRemote(destinations, key, body, binary);
+                eventsIn.increment();
+            }
+            rememberHighest(origin, highest);
+        } catch (Exception e) {
+            log.warn("Failed to deliver relayed events: {}", e.getMessage());
+        }
+    }
+
+    private void rememberHighest(String origin, long highest) {
+        highestSeen.put(origin, highest);
+        // Replicas come and go (pod names change on every rollout); keep the map bounded
+        if (highestSeen.size() > 1024) {
+            highestSeen.remove(highestSeen.keySet().iterator().next());
+        }
+    }
+
+    private byte[] encode(List<OutboundEvent> batch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(batch.size() * 512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FRAME_VERSION);
+            out.writeUTF(nodeId);
+            out.writeInt(batch.size());
+            for (OutboundEvent event : batch) {
+                out.writeLong(++lastEventId);
+                out.writeByte(event.destinations().size());
+                for (String destination : event.destinations()) {
+                    out.writeUTF(destination);
+                }
+                out.writeBoolean(event.key() != null);
+                if (event.key() != null) {
+                    out.writeUTF(event.key());
+                }
+                out.writeInt(event.body().length);
+                out.write(event.body());
+                out.writeBoolean(event.binary() != null);
+                if (event.binary() != null) {
+                    out.writeInt(event.binary().length);
+                    out.write(event.binary());
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private record OutboundEvent(List<String> destinations, String key, byte[] body, byte[] binary) {
+    }
+}
@@ -0,0 +1,317 @@
+package com.trading.payments.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rolling-window dashboard statistics: TPS, approval rate, p50/p99 processing
+ * time and per-merchant fraud rate over the last 1s, 1m and 5m.
+ *
+ * The payment path only increments striped counters (LongAdder) and one
+ * log-linear latency histogram slot in the current one-second bucket; a ring of
+ * 300 buckets covers the longest window. Aggregation happens on the push
+ * schedule, and only if someone is subscribed to /topic/dashboard/stats.
+ * Client refresh requests are rate limited so one client cannot make the
+ * service rebroadcast to every subscriber on demand.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DashboardStatsEngine {
+
+    static final int WINDOW_SECONDS = 300;
+    private static final int[] WINDOWS = {1, 60, 300};
+    private static final String[] WINDOW_NAMES = {"1s", "1m", "5m"};
+    private static final String STATS_TOPIC = "/topic/dashboard/stats";
+
+    private final StompEventPublisher publisher;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${payment.dashboard.stats.min-refresh-interval-ms:1000}")
+    private long minRefreshIntervalMillis;
+
+    private final Bucket[] buckets = new Bucket[WINDOW_SECONDS];
+    private final Map<String, MerchantWindow> merchants = new ConcurrentHashMap<>();
+    private final LongAdder totalTransactions = new LongAdder();
+    private final LongAdder totalFraudAlerts = new LongAdder();
+    private final AtomicLong lastPush = new AtomicLong();
+    private final long startSecond = currentSecond();
+
+    private Counter refreshThrottled;
+
+    @PostConstruct
+    void init() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+        refreshThrottled = Counter.builder("payment.dashboard.refresh_throttled")
+            .description("Client refresh requests ignored because a push went out recently")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Record one processed payment. Lock-free apart from the first write into a
+     * new second, which resets the recycled bucket.
+     */
+    public void record(String merchantId, String status, boolean fraudAlert, long latencyNanos) {
+        record(merchantId, status, fraudAlert, latencyNanos, currentSecond());
+    }
+
+    void record(String merchantId, String status, boolean fraudAlert, long latencyNanos, long second) {
+        Bucket bucket = buckets[(int) (second % WINDOW_SECONDS)];
+        if (bucket.second != second) {
+            bucket.roll(second);
+        }
+
+        bucket.total.increment();
+        if ("APPROVED".equals(status)) {
+            bucket.approved.increment();
+        }
+        if (fraudAlert) {
+            bucket.fraud.increment();
+            totalFraudAlerts.increment();
+        }
+        bucket.latency.incrementAndGet(LatencyHistogram.indexOf(TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+        totalTransactions.increment();
+
+        merchants.computeIfAbsent(merchantId, id -> new MerchantWindow()).record(second, fraudAlert);
+    }
+
+    @Scheduled(fixedRateString = "${payment.dashboard.stats.push-interval-ms:1000}")
+    public void push() {
+        lastPush.set(System.currentTimeMillis());
+        try {
+            publisher.publish(this::snapshot, STATS_TOPIC);
+        } catch (Exception e) {
+            log.error("Failed to push dashboard stats: ", e);
+        }
+        evictIdleMerchants();
+    }
+
+    /**
+     * Push now on behalf of a client, unless a push already went out within the
+     * minimum refresh interval.
+     *
+     * @return true if a push was triggered
+     */
+    public boolean requestRefresh() {
+        long now = System.currentTimeMillis();
+        long last = lastPush.get();
+        if (now - last < minRefreshIntervalMillis || !lastPush.compareAndSet(last, now)) {
+            refreshThrottled.increment();
+            return false;
+        }
+        publisher.publish(this::snapshot, STATS_TOPIC);
+        return true;
+    }
+
+    /**
+     * Aggregate the completed seconds of each window. The current, still filling
+     * second is left out so the 1s figures are not biased low.
+     */
+    public Map<String, Object> snapshot() {
+        return snapshot(currentSecond());
+    }
+
+    Map<String, Object> snapshot(long now) {
+        long total = 0;
+        long approved = 0;
+        long fraud = 0;
+        long latencyCount = 0;
+        long[] histogram = new long[LatencyHistogram.BUCKETS];
+
+        Map<String, Object> windows = new LinkedHashMap<>();
+        int next = 0;
+        for (int age = 1; age <= WINDOW_SECONDS; age++) {
+            long second = now - age;
+            Bucket bucket = buckets[(int) (second % WINDOW_SECONDS)];
+            if (bucket.second == second) {
+                total += bucket.total.sum();
+                approved += bucket.approved.sum();
+                fraud += bucket.fraud.sum();
+                for (int i = 0; i < histogram.length; i++) {
+                    long count = bucket.latency.get(i);
+                    histogram[i] += count;
+                    latencyCount += count;
+                }
+            }
+            if (age == WINDOWS[next]) {
+                windows.put(WINDOW_NAMES[next], windowStats(WINDOWS[next], now, total, approved, fraud, histogram, latencyCount));
+                next++;
+            }
+        }
+
+        Map<String, Object> byMerchant = new LinkedHashMap<>();
+        merchants.forEach((merchantId, window) -> byMerchant.put(merchantId, window.stats(now)));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "DASHBOARD_STATS");
+        stats.put("totalTransactions", totalTransactions.sum());
+        stats.put("fraudAlerts", totalFraudAlerts.sum());
+        stats.put("windows", windows);
+        stats.put("merchants", byMerchant);
+        stats.put("timestamp", Instant.now());
+        return stats;
+    }
+
+    private Map<String, Object> windowStats(int windowSeconds, long now, long total, long approved,
+                                            long fraud, long[] histogram, long latencyCount) {
+        // Until the service has been up for a full window, rate over the time it has been up
+        long elapsed = Math.max(1, Math.min(windowSeconds, now - startSecond));
+        Map<String, Object> window = new LinkedHashMap<>();
+        window.put("transactions", total);
+        window.put("tps", (double) total / elapsed);
+        window.put("approvalRate", total > 0 ? (double) approved / total : 0.0);
+        window.put("fraudRate", total > 0 ? (double) fraud / total : 0.0);
+        window.put("p50Ms", LatencyHistogram.percentile(histogram, latencyCount, 0.50) / 1000.0);
+        window.put("p99Ms", LatencyHistogram.percentile(histogram, latencyCount, 0.99) / 1000.0);
+        return window;
+    }
+
+    private void evictIdleMerchants() {
+        long cutoff = currentSecond() - WINDOW_SECONDS;
+        merchants.values().removeIf(window -> window.lastSecond < cutoff);
+    }
+
+    private static long currentSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static final class Bucket {
+        private volatile long second = -1;
+        private final LongAdder total = new LongAdder();
+        private final LongAdder approved = new LongAdder();
+        private final LongAdder fraud = new LongAdder();
+        private final AtomicLongArray latency = new AtomicLongArray(LatencyHistogram.BUCKETS);
+
+        private synchronized void roll(long newSecond) {
+            if (second == newSecond) {
+                return;
+            }
+            total.reset();
+            approved.reset();
+            fraud.reset();
+            for (int i = 0; i < latency.length(); i++) {
+                latency.set(i, 0);
+            }
+            second = newSecond;
+        }
+    }
+
+    /**
+     * Per-merchant counts and fraud alerts per second, in flat arrays (a few KB
+     * per merchant). Merchants idle for a full window are evicted on push.
+     */
+    private static final class MerchantWindow {
+        private final AtomicLongArray seconds = new AtomicLongArray(WINDOW_SECONDS);
+        private final AtomicLongArray counts = new AtomicLongArray(WINDOW_SECONDS);
+        private final AtomicLongArray frauds = new AtomicLongArray(WINDOW_SECONDS);
+        private volatile long lastSecond;
+
+        private void record(long second, boolean fraudAlert) {
+            int slot = (int) (second % WINDOW_SECONDS);
+            if (seconds.get(slot) != second) {
+                synchronized (this) {
+                    if (seconds.get(slot) != second) {
+                        counts.set(slot, 0);
+                        frauds.set(slot, 0);
+                        seconds.set(slot, second);
+                    }
+                }
+            }
+            counts.incrementAndGet(slot);
+            if (fraudAlert) {
+                frauds.incrementAndGet(slot);
+            }
+            lastSecond = second;
+        }
+
+        private Map<String, Object> stats(long now) {
+            long count = 0;
+            long fraud = 0;
+            Map<String, Object> stats = new LinkedHashMap<>();
+            for (int age = 1; age <= WINDOW_SECONDS; age++) {
+                long second = now - age;
+                int slot = (int) (second % WINDOW_SECONDS);
+                if (seconds.get(slot) == second) {
+                    count += counts.get(slot);
+                    fraud += frauds.get(slot);
+                }
+                if (age == 60 || age == WINDOW_SECONDS) {
+                    Map<String, Object> window = new LinkedHashMap<>();
+                    window.put("transactions", count);
+                    window.put("tps", (double) count / age);
+                    window.put("fraudRate", count > 0 ? (double) fraud / count : 0.0);
+                    stats.put(age == 60 ? "1m" : "5m", window);
+                }
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * HDR-style log-linear histogram layout over microseconds: 16 linear
+     * sub-buckets per power of two, so any recorded value is within 1/16 (6.25%)
+     * of its bucket's bounds. Values up to 2^32us (~71 min) are tracked exactly to
+     * that precision; anything larger lands in the last bucket.
+     */
+    static final class LatencyHistogram {
+        static final int SUB_BUCKET_BITS = 4;
+        static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        static final int MAX_EXPONENT = 32;
+        static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+        private LatencyHistogram() {
+        }
+
+        static int indexOf(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) Math.max(0, micros);
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            int shift = exponent - SUB_BUCKET_BITS;
+            long index = (long) (shift + 1) * SUB_BUCKETS + ((micros >> shift) - SUB_BUCKETS);
+            return (int) Math.min(index, BUCKETS - 1);
+        }
+
+        /** Midpoint of the bucket's value range, in microseconds. */
+        static long valueOf(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int shift = index / SUB_BUCKETS - 1;
+            long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+            return lower + ((1L << shift) >> 1);
+        }
+
+        static long percentile(long[] counts, long total, double quantile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * quantile));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return valueOf(i);
+                }
+            }
+            return valueOf(counts.length - 1);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.PaymentResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Market-data style conflation of the live payment feed.
+ *
+ * Every payment updates the per-merchant symbol state (last price/status/risk plus
+ * accumulated count and notional). A flusher publishes each symbol that changed at
+ * most once per {@code interval-ms}, so the outbound rate is bounded by
+ * symbols / interval instead of by payment throughput. A symbol with nothing to
+ * publish for {@code idle-evict-ms} is dropped, so the map and each flush only
+ * cover merchants that are trading.
+ *
+ * Destinations: /topic/feed/conflated and /topic/feed/conflated/merchant/{merchantId}.
+ * The raw per-payment ticks stay on /topic/feed/live for clients that want them.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FeedConflator {
+
+    private final StompEventPublisher publisher;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${payment.feed.conflation.interval-ms:250}")
+    private long intervalMillis;
+
+    @Value("${payment.feed.conflation.idle-evict-ms:60000}")
+    private long idleEvictMillis;
+
+    private final Map<String, SymbolState> symbols = new ConcurrentHashMap<>();
+
+    private Counter ticksIn;
+    private Counter updatesOut;
+
+    @PostConstruct
+    void init() {
+        ticksIn = Counter.builder("payment.feed.conflation.ticks_in").register(meterRegistry);
+        updatesOut = Counter.builder("payment.feed.conflation.updates_out").register(meterRegistry);
+    }
+
+    /**
+     * Fold a payment into its merchant's symbol state. Cheap; never publishes.
+     */
+    public void onPayment(String merchantId, PaymentResponse payment) {
+        // A state evicted between lookup and update refuses it; the next lookup creates a fresh one
+        while (!symbols.computeIfAbsent(merchantId, SymbolState::new).update(payment)) {
+            Thread.onSpinWait();
+        }
+        ticksIn.increment();
+    }
+
+    @Scheduled(fixedRateString = "${payment.feed.conflation.tick-ms:50}")
+    public void flush() {
+        flush(System.currentTimeMillis());
+    }
+
+    void flush(long now) {
+        for (Iterator<SymbolState> it = symbols.values().iterator(); it.hasNext(); ) {
+            SymbolState state = it.next();
+            Map<String, Object> update = state.drainIfDue(now, intervalMillis);
+            if (update == null) {
+                if (state.evictIfIdle(now, idleEvictMillis)) {
+                    it.remove();
+                }
+                continue;
+            }
+            try {
+                publisher.publishKeyed(state.merchantId, () -> update, "/topic/feed/conflated", "/topic/feed/conflated/merchant/" + state.merchantId);
+                updatesOut.increment();
+            } catch (Exception e) {
+                log.error("Failed to publish conflated feed for {}: ", state.merchantId, e);
+            }
+        }
+    }
+
+    private static final class SymbolState {
+        private final String merchantId;
+        private final String symbol;
+
+        private BigDecimal lastPrice;
+        private String lastStatus;
+        private Integer lastRisk;
+        private long count;
+        private long approved;
+        private BigDecimal notional = BigDecimal.ZERO;
+        private long firstTimestamp;
+        private long lastTimestamp;
+        private long lastPublished;
+        private boolean dirty;
+        private boolean evicted;
+
+        private SymbolState(String merchantId) {
+            this.merchantId = merchantId;
+            this.symbol = "PAY_" + merchantId;
+        }
+
+        private synchronized boolean update(PaymentResponse payment) {
+            if (evicted) {
+                return false;
+            }
+            long timestamp = payment.getProcessedAt().toEpochMilli();
+            if (!dirty) {
+                firstTimestamp = timestamp;
+            }
+            lastPrice = payment.getAmount();
+            lastStatus = payment.getStatus();
+            lastRisk = payment.getFraudScore();
+            lastTimestamp = timestamp;
+            count++;
+            if ("APPROVED".equals(payment.getStatus())) {
+                approved++;
+            }
+            notional = notional.add(payment.getAmount());
+            dirty = true;
+            return true;
+        }
+
+        /**
+         * Mark the state evicted if everything it accumulated was published at
+         * least {@code idleMillis} ago.
+         */
+        private synchronized boolean evictIfIdle(long now, long idleMillis) {
+            evicted = !dirty && now - lastPublished >= idleMillis;
+            return evicted;
+        }
+
+        private synchronized Map<String, Object> drainIfDue(long now, long intervalMillis) {
+            if (!dirty || now - lastPublished < intervalMillis) {
+                return null;
+            }
+
+            Map<String, Object> update = new LinkedHashMap<>();
+            update.put("type", "PAYMENT_CONFLATED");
+            update.put("symbol", symbol);
+            update.put("merchantId", merchantId);
+            update.put("price", lastPrice);
+            update.put("status", lastStatus);
+            update.put("risk", lastRisk);
+            update.put("volume", count);
+            update.put("approved", approved);
+            update.put("notional", notional);
+            update.put("firstTimestamp", firstTimestamp);
+            update.put("timestamp", lastTimestamp);
+
+            count = 0;
+            approved = 0;
+            notional = BigDecimal.ZERO;
+            dirty = false;
+            lastPublished = now;
+            return update;
+        }
+    }
+}
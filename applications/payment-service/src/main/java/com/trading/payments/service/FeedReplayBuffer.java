@@ -0,0 +1,363 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.FeedSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Sequence numbers and in-memory replay for the dashboard feeds.
+ *
+ * Every event published to a replayable topic gets the next per-topic sequence
+ * number (sent to clients as the "seq" STOMP header) and its serialized body is
+ * kept in a fixed-size ring. A new subscriber asks for a snapshot, a reconnecting
+ * one for everything after its last seq; neither touches Postgres. Snapshots of
+ * keyed feeds (positions, conflated ticks) are the latest event per merchant, the
+ * dashboard stats feed is its latest push, the others are the tail of the ring.
+ *
+ * Per-merchant destinations ({@code /topic/transactions/merchant/{id}} and the
+ * like) are sequenced the same way, addressed as feed {@code transactions/merchant/{id}}.
+ * Their logs are smaller, created on a merchant's first event and bounded in
+ * number: the least recently published-to is dropped, and a client resuming
+ * from it gets a snapshot.
+ *
+ * Sequences start at the process start time in microseconds, so they keep
+ * increasing across restarts and a seq from a previous process is always
+ * treated as a gap (full snapshot) rather than matched against new events.
+ * With several replicas each node numbers every event it delivers (local or
+ * relayed) itself; a since request naming another node gets a snapshot.
+ */
+@Service
+@Slf4j
+public class FeedReplayBuffer {
+
+    private static final Map<String, String> FEEDS = Map.of(
+        "transactions", "/topic/transactions",
+        "fraud-alerts", "/topic/fraud-alerts",
+        "live", "/topic/feed/live",
+        "conflated", "/topic/feed/conflated",
+        "positions", "/topic/risk/positions",
+        "risk-alerts", "/topic/risk/alerts",
+        "stats", "/topic/dashboard/stats"
+    );
+    private static final Set<String> KEYED_FEEDS = Set.of("conflated", "positions");
+    private static final Set<String> LATEST_ONLY_FEEDS = Set.of("stats");
+
+    private static final String MERCHANT_SEGMENT = "/merchant/";
+    // Feeds with a per-merchant destination: the global destination plus /merchant/{id}
+    private static final List<String> MERCHANT_FEEDS = List.of("transactions", "fraud-alerts", "live", "conflated", "positions");
+    private static final Map<String, String> MERCHANT_DESTINATION_PREFIXES = Map.of(
+        "transactions", "/topic/transactions/merchant/",
+        "fraud-alerts", "/topic/fraud-alerts/merchant/",
+        "live", "/topic/feed/merchant/",
+        "conflated", "/topic/feed/conflated/merchant/",
+        "positions", "/topic/risk/merchant/"
+    );
+
+    private final boolean enabled;
+    private final int snapshotSize;
+    private final String nodeId;
+    private final Map<String, TopicLog> logsByFeed = new HashMap<>();
+    private final Map<String, TopicLog> logsByDestination = new HashMap<>();
+    private final int merchantCapacity;
+    // Per-merchant logs by destination, least recently appended to first; guarded by itself
+    private final LinkedHashMap<String, TopicLog> merchantLogs;
+    // Highest seq any dropped merchant log handed out, guarded by merchantLogs
+    private long droppedSeq;
+
+    private final Counter deltaReplays;
+    private final Counter resetReplays;
+
+    public FeedReplayBuffer(@Value("${payment.feed.replay.enabled:true}") boolean enabled,
+                            @Value("${payment.feed.replay.capacity:4096}") int capacity,
+                            @Value("${payment.feed.replay.snapshot-size:100}") int snapshotSize,
+                            @Value("${payment.feed.replay.merchant-capacity:128}") int merchantCapacity,
+                            @Value("${payment.feed.replay.max-merchant-feeds:256}") int maxMerchantFeeds,
+                            @Value("${payment.websocket.cluster.node-id:${HOSTNAME:local}}") String nodeId,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.snapshotSize = snapshotSize;
+        this.merchantCapacity = merchantCapacity;
+        this.nodeId = nodeId;
+
+        long firstSeq = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        FEEDS.forEach((feed, destination) -> {
+            TopicLog log = new TopicLog(feed, destination, capacity, KEYED_FEEDS.contains(feed),
+                LATEST_ONLY_FEEDS.contains(feed) ? 1 : snapshotSize, firstSeq);
+            logsByFeed.put(feed, log);
+            logsByDestination.put(destination, log);
+        });
+        this.merchantLogs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TopicLog> eldest) {
+                if (size() <= maxMerchantFeeds) {
+                    return false;
+                }
+                droppedSeq = Math.max(droppedSeq, eldest.getValue().lastSeq());
+                return true;
+            }
+        };
+
+        deltaReplays = Counter.builder("payment.feed.replay.requests").tag("result", "delta").register(meterRegistry);
+        resetReplays = Counter.builder("payment.feed.replay.requests").tag("result", "reset").register(meterRegistry);
+    }
+
+    /**
+     * Whether events for this destination are sequenced and retained. Retained
+     * topics are serialized even without subscribers so a reconnect can replay them.
+     */
+    public boolean isSequenced(String destination) {
+        return enabled && (logsByDestination.containsKey(destination) || merchantFeed(destination) != null);
+    }
+
+    /**
+     * Retain an event, assign its sequence number and hand it to {@code sender}.
+     *
+     * The sender runs under the feed's lock, so events are sent in the order
+     * their sequence numbers were assigned; a subscriber never sees seq N+1
+     * before seq N. It should only hand the frame to the broker.
+     *
+     * @param key    merchant the event belongs to, used for keyed snapshots; may be null
+     * @param sender called with the sequence number, or -1 if the destination is not sequenced
+     * @return the sequence number, or -1 if the destination is not sequenced
+     */
+    public long append(String destination, String key, byte[] body, LongConsumer sender) {
+        TopicLog log = enabled ? logsByDestination.get(destination) : null;
+        if (log == null && enabled) {
+            log = merchantLog(destination, true);
+        }
+        if (log == null) {
+            sender.accept(-1);
+            return -1;
+        }
+        return log.append(key, body, sender);
+    }
+
+    public Optional<FeedSnapshot> snapshot(String feed) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        TopicLog log = logsByFeed.get(feed);
+        if (log != null) {
+            return Optional.of(withNode(log.snapshot()));
+        }
+        String destination = merchantDestination(feed);
+        if (destination == null) {
+            return Optional.empty();
+        }
+        TopicLog merchantLog = merchantLog(destination, false);
+        return Optional.of(withNode(merchantLog != null ? merchantLog.snapshot() : empty(feed, destination)));
+    }
+
+    /**
+     * Everything published after {@code seq}, or a snapshot (complete=false) if
+     * part of that range has already been overwritten or the seq was issued by
+     * another node.
+     *
+     * @param node node the client got {@code seq} from; null if unknown
+     */
+    public Optional<FeedSnapshot> since(String feed, long seq, String node) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        TopicLog log = logsByFeed.get(feed);
+        String destination = log == null ? merchantDestination(feed) : log.destination;
+        if (destination == null) {
+            return Optional.empty();
+        }
+        if (log == null) {
+            log = merchantLog(destination, false);
+        }
+        FeedSnapshot replay = log != null && (node == null || nodeId.equals(node)) ? log.since(seq) : null;
+        if (replay == null) {
+            // A merchant log dropped since the client's seq: nothing of it is retained
+            resetReplays.increment();
+            return Optional.of(withNode(log != null ? log.snapshot() : empty(feed, destination)));
+        }
+        deltaReplays.increment();
+        return Optional.of(withNode(replay));
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * The per-merchant log of a destination; with {@code create}, one is started
+     * for a merchant's first event.
+     */
+    private TopicLog merchantLog(String destination, boolean create) {
+        String feed = merchantFeed(destination);
+        if (feed == null) {
+            return null;
+        }
+        synchronized (merchantLogs) {
+            TopicLog log = merchantLogs.get(destination);
+            if (log == null && create) {
+                // Past any seq a dropped log handed out, so resuming from one is always a gap
+                long firstSeq = Math.max(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()), droppedSeq + 2);
+                String merchantId = destination.substring(MERCHANT_DESTINATION_PREFIXES.get(feed).length());
+                log = new TopicLog(feed + MERCHANT_SEGMENT + merchantId, destination, merchantCapacity,
+                    KEYED_FEEDS.contains(feed), snapshotSize, firstSeq);
+                merchantLogs.put(destination, log);
+            }
+            return log;
+        }
+    }
+
+    /** Feed of a per-merchant destination, or null */
+    private static String merchantFeed(String destination) {
+        for (String feed : MERCHANT_FEEDS) {
+            String prefix = MERCHANT_DESTINATION_PREFIXES.get(feed);
+            if (destination.startsWith(prefix) && destination.length() > prefix.length()) {
+                return feed;
+            }
+        }
+        return null;
+    }
+
+    /** Destination of a {@code feed/merchant/id} feed name, or null */
+    private static String merchantDestination(String feed) {
+        int separator = feed.indexOf(MERCHANT_SEGMENT);
+        if (separator <= 0 || separator + MERCHANT_SEGMENT.length() == feed.length()) {
+            return null;
+        }
+        String prefix = MERCHANT_DESTINATION_PREFIXES.get(feed.substring(0, separator));
+        return prefix == null ? null : prefix + feed.substring(separator + MERCHANT_SEGMENT.length());
+    }
+
+    private static FeedSnapshot empty(String feed, String destination) {
+        return FeedSnapshot.builder()
+            .feed(feed)
+            .destination(destination)
+            .complete(false)
+            .events(List.of())
+            .build();
+    }
+
+    private FeedSnapshot withNode(FeedSnapshot snapshot) {
+        snapshot.setNode(nodeId);
+        return snapshot;
+    }
+
+    private static final class TopicLog {
+        private final String feed;
+        private final String destination;
+        private final int capacity;
+        private final boolean keyed;
+        private final int snapshotSize;
+
+        // Ring slots, guarded by this
+        private final long[] seqs;
+        private final String[] keys;
+        private final byte[][] bodies;
+        private final LinkedHashMap<String, Object[]> latestByKey;
+        private final long firstSeq;
+        private long lastSeq;
+
+        private TopicLog(String feed, String destination, int capacity, boolean keyed, int snapshotSize, long firstSeq) {
+            this.feed = feed;
+            this.destination = destination;
+            this.capacity = capacity;
+            this.keyed = keyed;
+            this.snapshotSize = snapshotSize;
+            this.seqs = new long[capacity];
+            this.keys = new String[capacity];
+            this.bodies = new byte[capacity][];
+            // Latest event per merchant, kept independently of the ring so quiet merchants stay in snapshots
+            this.latestByKey = new LinkedHashMap<>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Object[]> eldest) {
+                    return size() > capacity;
+                }
+            };
+            this.firstSeq = firstSeq;
+            this.lastSeq = firstSeq - 1;
+        }
+
+        private synchronized long append(String key, byte[] body, LongConsumer sender) {
+            long seq = ++lastSeq;
+            int slot = (int) (seq % capacity);
+            seqs[slot] = seq;
+            keys[slot] = key;
+            bodies[slot] = body;
+            if (keyed && key != null) {
+                // Re-insert so iteration order follows the latest update
+                latestByKey.remove(key);
+                latestByKey.put(key, new Object[]{seq, key, body});
+            }
+            sender.accept(seq);
+            return seq;
+        }
+
+        private synchronized long lastSeq() {
+            return lastSeq;
+        }
+
+        private FeedSnapshot snapshot() {
+            long seq;
+            List<Object[]> retained = new ArrayList<>();
+            synchronized (this) {
+                seq = lastSeq;
+                if (keyed) {
+                    retained.addAll(latestByKey.values());
+                } else {
+                    collect(Math.max(oldestSeq(), lastSeq - snapshotSize + 1), retained);
+                }
+            }
+            return toSnapshot(seq, false, retained);
+        }
+
+        private FeedSnapshot since(long seq) {
+            long last;
+            List<Object[]> retained = new ArrayList<>();
+            synchronized (this) {
+                last = lastSeq;
+                if (seq > lastSeq || seq + 1 < oldestSeq()) {
+                    return null;
+                }
+                collect(seq + 1, retained);
+            }
+            return toSnapshot(last, true, retained);
+        }
+
+        private long oldestSeq() {
+            return Math.max(firstSeq, lastSeq - capacity + 1);
+        }
+
+        private void collect(long fromSeq, List<Object[]> out) {
+            for (long s = fromSeq; s <= lastSeq; s++) {
+                int slot = (int) (s % capacity);
+                out.add(new Object[]{seqs[slot], keys[slot], bodies[slot]});
+            }
+        }
+
+        private FeedSnapshot toSnapshot(long seq, boolean complete, List<Object[]> retained) {
+            List<FeedSnapshot.Event> events = new ArrayList<>(retained.size());
+            for (Object[] entry : retained) {
+                events.add(new FeedSnapshot.Event((long) entry[0], (String) entry[1],
+                    new String((byte[]) entry[2], StandardCharsets.UTF_8)));
+            }
+            return FeedSnapshot.builder()
+                .feed(feed)
+                .destination(destination)
+                .seq(seq)
+                .complete(complete)
+                .events(events)
+                .build();
+        }
+    }
+}
@@ -1,21 +1,23 @@
 package com.trading.payments.service;
 
 import com.trading.payments.dto.FraudResult;
+import com.trading.payments.dto.FraudRuleSet;
 import com.trading.payments.dto.PaymentRequest;
+import com.trading.payments.dto.VelocitySnapshot;
 import com.trading.payments.repository.TransactionRepository;
 import com.trading.payments.repository.MerchantRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDateTime;
-import java.time.Duration;
-import java.util.concurrent.TimeUnit;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
@@ -24,198 +26,326 @@ public class FraudDetectionService {
     
     private final TransactionRepository transactionRepository;
     private final MerchantRepository merchantRepository;
-    private final RedisTemplate<String, String> redisTemplate;
+    private final VelocityService velocityService;
+    private final CardHistoryStore cardHistory;
+    private final CardBlocklist cardBlocklist;
+    private final IpReputationService ipReputation;
+    private final BinIndex binIndex;
+    private final FraudModel fraudModel;
+    private final ShadowEvaluationService shadowEvaluation;
+    private final LiveFraudRules liveRules;
+    
+    @Value("${payment.fraud.sequence.window-minutes:60}")
+    private long sequenceWindowMinutes;
+    
+    @Value("${payment.fraud.sequence.micro-auth-max-cents:200}")
+    private long microAuthMaxCents;
+    
+    @Value("${payment.fraud.sequence.micro-auth-count:3}")
+    private int microAuthCount;
+    
+    @Value("${payment.fraud.sequence.large-amount-cents:10000}")
+    private long largeAmountCents;
+    
+    @Value("${payment.fraud.sequence.step-up-count:4}")
+    private int stepUpCount;
+    
+    @Value("${payment.fraud.ip-reputation.max-points:40}")
+    private int ipReputationMaxPoints;
+    
+    @Value("${payment.fraud.bin.high-risk-countries:}")
+    private Set<String> highRiskIssuerCountries;
+    
+    @Value("${payment.fraud.model.max-points:40}")
+    private int modelMaxPoints;
     
     public FraudResult evaluateTransaction(PaymentRequest request) {
         int riskScore = 0;
         List<String> triggeredRules = new ArrayList<>();
         
         String cardHash = hashCardNumber(request.getCardNumber());
+        int bin = binIndex.lookup(request.getCardNumber());
         String merchantId = request.getMerchantId();
         BigDecimal amount = request.getAmount();
+        // Thresholds and points of rules 1-8, shared with backtests and shadow evaluation
+        FraudRuleSet rules = liveRules.live();
+        
+        // Known compromised card: decline before any of the costlier checks run
+        if (cardBlocklist.contains(cardHash)) {
+            log.warn("Blocklisted card at merchant {}", merchantId);
+            return FraudResult.builder()
+                .riskScore(100)
+                .approved(false)
+                .reason("High risk - transaction declined - Compromised card")
+                .build();
+        }
         
         // Rule 1: High amount check
-        if (amount.compareTo(BigDecimal.valueOf(1000)) > 0) {
-            riskScore += 25;
+        if (amount.compareTo(rules.getHighAmount()) > 0) {
+            riskScore += rules.getHighAmountPoints();
             triggeredRules.add("High amount transaction");
             log.debug("High amount detected: {}", amount);
         }
         
         // Rule 2: Suspicious round amounts
-        if (amount.remainder(BigDecimal.valueOf(1000)).equals(BigDecimal.ZERO) &&
-            amount.compareTo(BigDecimal.valueOf(5000)) > 0) {
-            riskScore += 30;
+        if (amount.remainder(BigDecimal.valueOf(1000)).signum() == 0 &&
+            amount.compareTo(rules.getRoundAmountMinimum()) > 0) {
+            riskScore += rules.getRoundAmountPoints();
             triggeredRules.add("Suspicious round amount");
             log.debug("Suspicious round amount: {}", amount);
         }
         
         // Rule 3: High-risk merchant category
         var merchant = merchantRepository.findByMerchantId(merchantId);
-        if (merchant.isPresent() && merchant.get().getRiskLevel() >= 3) {
-            riskScore += 15;
+        int merchantRiskLevel = merchant.map(m -> m.getRiskLevel() != null ? m.getRiskLevel() : 0).orElse(0);
+        if (merchant.isPresent() && merchantRiskLevel >= rules.getHighRiskMerchantLevel()) {
+            riskScore += rules.getHighRiskMerchantPoints();
             triggeredRules.add("High-risk merchant");
             log.debug("High-risk merchant: {} (level {})", merchantId, merchant.get().getRiskLevel());
         }
         
+        // Velocity counters for rules 4-6 and 8, read and updated in one Redis round trip
+        VelocitySnapshot velocity = velocityService.record(cardHash, merchantId, amount);
+        
         // Rule 4: Card velocity check (Redis cached)
-        int cardVelocityScore = checkCardVelocity(cardHash, amount);
+        int cardVelocityScore = checkCardVelocity(rules, velocity, amount);
         riskScore += cardVelocityScore;
         if (cardVelocityScore > 0) {
             triggeredRules.add("High card velocity");
         }
         
         // Rule 5: Merchant velocity check (Redis cached)
-        int merchantVelocityScore = checkMerchantVelocity(merchantId, amount);
+        int merchantVelocityScore = checkMerchantVelocity(rules, velocity);
         riskScore += merchantVelocityScore;
         if (merchantVelocityScore > 0) {
             triggeredRules.add("High merchant velocity");
         }
         
         // Rule 6: Unusual amount patterns
-        int patternScore = checkAmountPatterns(cardHash, amount);
+        int patternScore = checkAmountPatterns(rules, velocity, amount);
         riskScore += patternScore;
         if (patternScore > 0) {
             triggeredRules.add("Unusual amount pattern");
         }
         
         // Rule 7: Time-based risk (late night transactions)
-        int timeRisk = checkTimeBasedRisk();
+        int hour = LocalDateTime.now().getHour();
+        int timeRisk = checkTimeBasedRisk(rules, hour);
         riskScore += timeRisk;
         if (timeRisk > 0) {
             triggeredRules.add("Off-hours transaction");
         }
         
-        // Cache this transaction for velocity checks
-        cacheTransaction(cardHash, merchantId, amount);
+        // Rule 8: Card spread across merchants / many distinct cards at one merchant (card testing)
+        int spreadScore = checkCardSpread(rules, velocity);
+        riskScore += spreadScore;
+        if (spreadScore > 0) {
+            triggeredRules.add("Card testing spread");
+        }
+        int rulePoints = riskScore;
+        
+        // Rule 9: Card-testing sequences in the card's recent history (in-memory, per pod)
+        long now = System.currentTimeMillis();
+        long amountCents = amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+        int sequenceScore = checkSequencePatterns(cardHistory.append(cardHash, merchantId, amountCents, now),
+            amountCents, now);
+        riskScore += sequenceScore;
+        if (sequenceScore > 0) {
+            triggeredRules.add("Card testing sequence");
+        }
+        
+        // Rule 10: Customer IP in a listed range (Tor exits, open proxies, hosting providers)
+        int ipMatch = ipReputation.lookup(request.getCustomerIp());
+        if (ipMatch != IpPrefixTrie.NO_MATCH && IpReputationService.score(ipMatch) > 0) {
+            riskScore += Math.min(IpReputationService.score(ipMatch), ipReputationMaxPoints);
+            triggeredRules.add("IP reputation: " + IpReputationService.category(ipMatch));
+            log.debug("Customer IP {} listed as {}", request.getCustomerIp(), IpReputationService.category(ipMatch));
+        }
+        
+        // Rule 11: Issuer attributes from the card BIN
+        int binScore = checkIssuer(bin);
+        riskScore += binScore;
+        if (binScore > 0) {
+            triggeredRules.add("Issuer risk");
+        }
+        int otherPoints = riskScore - rulePoints;
+        
+        // Rule 12: Trained model over the same inputs, in proportion to its fraud probability
+        int modelScore = scoreWithModel(amount, velocity, merchantRiskLevel, hour);
+        riskScore += modelScore;
+        if (modelScore > 0) {
+            triggeredRules.add("Model score");
+        }
         
         // Cap at 100
         riskScore = Math.min(riskScore, 100);
+        boolean approved = riskScore <= 50;
+        
+        // Candidate rules see the same inputs off the request thread; a full shadow queue drops the payment
+        if (shadowEvaluation.isActive()) {
+            shadowEvaluation.offer(new ShadowEvaluationService.Sample(amount, amountCents, merchantRiskLevel, hour,
+                velocity, rulePoints, otherPoints, modelScore, approved, System.nanoTime()));
+        }
         
         return FraudResult.builder()
             .riskScore(riskScore)
-            .approved(riskScore <= 50)
+            .approved(approved)
             .reason(buildReason(riskScore, triggeredRules))
             .build();
     }
     
-    private int checkCardVelocity(String cardHash, BigDecimal amount) {
-        String velocityKey = "card_velocity:" + cardHash;
-        String amountKey = "card_amount:" + cardHash;
-        
-        try {
-            // Get transaction count in last hour
-            String countStr = redisTemplate.opsForValue().get(velocityKey);
-            int count = countStr != null ? Integer.parseInt(countStr) : 0;
-            
-            // Get total amount in last hour
-            String totalStr = redisTemplate.opsForValue().get(amountKey);
-            BigDecimal totalAmount = totalStr != null ? new BigDecimal(totalStr) : BigDecimal.ZERO;
-            
-            int riskScore = 0;
-            
-            // Velocity rule: More than 5 transactions in 1 hour
-            if (count >= 5) {
-                riskScore += 20;
-                log.debug("Card velocity risk: {} transactions in 1 hour", count);
-            }
-            
-            // Amount velocity: More than $5000 in 1 hour
-            if (totalAmount.add(amount).compareTo(BigDecimal.valueOf(5000)) > 0) {
-                riskScore += 25;
-                log.debug("Card amount velocity risk: ${} in 1 hour", totalAmount.add(amount));
-            }
-            
-            return riskScore;
-            
-        } catch (Exception e) {
-            log.warn("Redis velocity check failed: {}", e.getMessage());
-            return 0; // Fail open - don't block transactions if Redis is down
+    private int checkCardVelocity(FraudRuleSet rules, VelocitySnapshot velocity, BigDecimal amount) {
+        int riskScore = 0;
+        
+        // Velocity rule: too many earlier transactions in the card window
+        if (velocity.getCardCount() >= rules.getCardVelocityCount()) {
+            riskScore += rules.getCardVelocityPoints();
+            log.debug("Card velocity risk: {} transactions in the window", velocity.getCardCount());
         }
+        
+        // Amount velocity: too much spent in the card window, this payment included
+        BigDecimal totalAmount = velocity.getCardAmount().add(amount);
+        if (totalAmount.compareTo(rules.getCardAmountLimit()) > 0) {
+            riskScore += rules.getCardAmountPoints();
+            log.debug("Card amount velocity risk: ${} in the window", totalAmount);
+        }
+        
+        return riskScore;
     }
     
-    private int checkMerchantVelocity(String merchantId, BigDecimal amount) {
-        String velocityKey = "merchant_velocity:" + merchantId;
-        
-        try {
-            String countStr = redisTemplate.opsForValue().get(velocityKey);
-            int count = countStr != null ? Integer.parseInt(countStr) : 0;
-            
-            // High merchant transaction volume in short time
-            if (count >= 50) {
-                log.debug("Merchant velocity risk: {} transactions in 10 minutes", count);
-                return 15;
+    private int checkMerchantVelocity(FraudRuleSet rules, VelocitySnapshot velocity) {
+        // High merchant transaction volume in short time
+        if (velocity.getMerchantCount() >= rules.getMerchantVelocityCount()) {
+            log.debug("Merchant velocity risk: {} transactions in the window", velocity.getMerchantCount());
+            return rules.getMerchantVelocityPoints();
+        }
+        
+        return 0;
+    }
+    
+    /**
+     * Exact amount repetition on one card (potential testing/fraud), counted per
+     * amount in cents over a sliding window - see redis/velocity.lua for the
+     * error bounds.
+     */
+    private int checkAmountPatterns(FraudRuleSet rules, VelocitySnapshot velocity, BigDecimal amount) {
+        if (velocity.getAmountRepeats() >= rules.getAmountRepeats()) {
+            log.debug("Suspicious amount pattern: {} repeated {} times", amount, velocity.getAmountRepeats());
+            return rules.getAmountRepeatPoints();
+        }
+        
+        return 0;
+    }
+    
+    /**
+     * Card-testing rings spread one stolen card over many merchants, or run many
+     * cards through one merchant. Both counts are HyperLogLog estimates (~0.8% error).
+     */
+    private int checkCardSpread(FraudRuleSet rules, VelocitySnapshot velocity) {
+        int riskScore = 0;
+        
+        if (velocity.getDistinctMerchantsForCard() >= rules.getMaxMerchantsPerCard()) {
+            riskScore += rules.getCardSpreadPoints();
+            log.debug("Card spread risk: card used at ~{} merchants", velocity.getDistinctMerchantsForCard());
+        }
+        
+        if (velocity.getDistinctCardsForMerchant() >= rules.getMaxCardsPerMerchant()) {
+            riskScore += rules.getMerchantSpreadPoints();
+            log.debug("Merchant card spread risk: ~{} distinct cards", velocity.getDistinctCardsForMerchant());
+        }
+        
+        return riskScore;
+    }
+    
+    /**
+     * Sequence rules over the card's previous payments (most recent first):
+     * several micro-authorizations shortly before a large payment, and amounts
+     * stepping up payment after payment.
+     */
+    private int checkSequencePatterns(CardHistoryStore.History history, long amountCents, long now) {
+        long since = now - sequenceWindowMinutes * 60_000;
+        int riskScore = 0;
+        
+        if (amountCents >= largeAmountCents) {
+            int microAuths = 0;
+            for (int i = 0; i < history.size() && history.timestamp(i) >= since; i++) {
+                if (history.amountCents(i) <= microAuthMaxCents) {
+                    microAuths++;
+                }
             }
-            
-            return 0;
-            
-        } catch (Exception e) {
-            log.warn("Redis merchant velocity check failed: {}", e.getMessage());
-            return 0;
+            if (microAuths >= microAuthCount) {
+                riskScore += 30;
+                log.debug("Card testing: {} micro-authorizations before {} cents", microAuths, amountCents);
+            }
+        }
+        
+        // Count this payment plus each earlier one that was strictly smaller than the one after it
+        int steps = 1;
+        long later = amountCents;
+        for (int i = 0; i < history.size() && history.timestamp(i) >= since && history.amountCents(i) < later; i++) {
+            later = history.amountCents(i);
+            steps++;
         }
+        if (steps >= stepUpCount) {
+            riskScore += 15;
+            log.debug("Amounts stepping up over {} payments", steps);
+        }
+        
+        return riskScore;
     }
     
-    private int checkAmountPatterns(String cardHash, BigDecimal amount) {
-        // Check for exact amount repetition (potential testing/fraud)
-        String patternKey = "amount_pattern:" + cardHash + ":" + amount.toString();
-        
-        try {
-            String countStr = redisTemplate.opsForValue().get(patternKey);
-            int count = countStr != null ? Integer.parseInt(countStr) : 0;
-            
-            if (count >= 3) {
-                log.debug("Suspicious amount pattern: {} repeated {} times", amount, count);
-                return 20;
+    /**
+     * Prepaid cards and cards from high-risk issuing countries; a BIN missing
+     * from a loaded table usually means a made-up card number.
+     */
+    private int checkIssuer(int bin) {
+        if (bin == BinIndex.NO_MATCH) {
+            if (binIndex.isLoaded()) {
+                log.debug("Unknown BIN");
+                return 10;
             }
-            
-            return 0;
-            
-        } catch (Exception e) {
-            log.warn("Redis pattern check failed: {}", e.getMessage());
             return 0;
         }
+        
+        int riskScore = 0;
+        
+        if (BinIndex.isPrepaid(bin)) {
+            riskScore += 15;
+            log.debug("Prepaid card");
+        }
+        
+        String country = BinIndex.country(bin);
+        if (country != null && highRiskIssuerCountries.contains(country)) {
+            riskScore += 20;
+            log.debug("Card issued in high-risk country {}", country);
+        }
+        
+        return riskScore;
     }
     
-    private int checkTimeBasedRisk() {
-        int hour = LocalDateTime.now().getHour();
-        
-        // Higher risk for late night transactions (11PM - 5AM)
-        if (hour >= 23 || hour <= 5) {
-            return 10;
+    private int scoreWithModel(BigDecimal amount, VelocitySnapshot velocity, int merchantRiskLevel, int hour) {
+        if (!fraudModel.isLoaded()) {
+            return 0;
         }
         
-        return 0;
+        double[] features = fraudModel.features();
+        FraudModel.fill(features, amount, velocity, merchantRiskLevel, hour);
+        
+        double probability = fraudModel.score(features);
+        log.debug("Model fraud probability {}", probability);
+        return Double.isNaN(probability) ? 0 : (int) Math.round(probability * modelMaxPoints);
     }
     
-    private void cacheTransaction(String cardHash, String merchantId, BigDecimal amount) {
-        try {
-            // Cache card velocity (1 hour TTL)
-            String cardVelocityKey = "card_velocity:" + cardHash;
-            redisTemplate.opsForValue().increment(cardVelocityKey);
-            redisTemplate.expire(cardVelocityKey, Duration.ofHours(1));
-            
-            // Cache card amount velocity (1 hour TTL)
-            String cardAmountKey = "card_amount:" + cardHash;
-            String currentTotal = redisTemplate.opsForValue().get(cardAmountKey);
-            BigDecimal newTotal = (currentTotal != null ? new BigDecimal(currentTotal) : BigDecimal.ZERO).add(amount);
-            redisTemplate.opsForValue().set(cardAmountKey, newTotal.toString(), Duration.ofHours(1));
-            
-            // Cache merchant velocity (10 minute TTL)
-            String merchantVelocityKey = "merchant_velocity:" + merchantId;
-            redisTemplate.opsForValue().increment(merchantVelocityKey);
-            redisTemplate.expire(merchantVelocityKey, Duration.ofMinutes(10));
-            
-            // Cache amount pattern (24 hour TTL)
-            String patternKey = "amount_pattern:" + cardHash + ":" + amount.toString();
-            redisTemplate.opsForValue().increment(patternKey);
-            redisTemplate.expire(patternKey, Duration.ofHours(24));
-            
-        } catch (Exception e) {
-            log.warn("Failed to cache transaction data: {}", e.getMessage());
-            // Don't fail the transaction if caching fails
+    private int checkTimeBasedRisk(FraudRuleSet rules, int hour) {
+        // Higher risk for late night transactions (11PM - 5AM by default)
+        if (RuleSetEvaluator.isOffHours(rules, hour)) {
+            return rules.getOffHoursPoints();
         }
+        
+        return 0;
     }
     
-    private String hashCardNumber(String cardNumber) {
+    static String hashCardNumber(String cardNumber) {
         return DigestUtils.sha256Hex(cardNumber + "PAYMENT_SALT_2025");
     }
     
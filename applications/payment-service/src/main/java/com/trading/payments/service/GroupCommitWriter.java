@@ -0,0 +1,224 @@
+package com.trading.payments.service;
+
+import com.trading.payments.entity.Transaction;
+import com.trading.payments.repository.TransactionRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Group-commit writer for payment persistence.
+ *
+ * Concurrent callers enqueue their transaction and block until the shared commit
+ * that contains it succeeds. A single writer thread collects up to
+ * {@code max-batch-size} transactions, waiting at most {@code max-wait-micros}
+ * after the first one arrives, and commits them in one database transaction -
+ * one WAL flush for the whole batch instead of one per payment.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GroupCommitWriter {
+
+    private final TransactionRepository transactionRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${payment.persistence.group-commit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${payment.persistence.group-commit.max-batch-size:64}")
+    private int maxBatchSize;
+
+    @Value("${payment.persistence.group-commit.max-wait-micros:500}")
+    private long maxWaitMicros;
+
+    @Value("${payment.persistence.group-commit.write-timeout-ms:5000}")
+    private long writeTimeoutMillis;
+
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+
+    private TransactionTemplate transactionTemplate;
+    private DistributionSummary batchSizeSummary;
+    private Timer waitTimer;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            log.info("Group commit disabled - transactions are committed individually");
+            return;
+        }
+
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        batchSizeSummary = DistributionSummary.builder("payment.group_commit.batch_size")
+            .description("Transactions committed per group commit")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+
+        waitTimer = Timer.builder("payment.group_commit.wait")
+            .description("Time from enqueue until the shared commit is acknowledged")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+
+        running = true;
+        writerThread = new Thread(this::runWriter, "group-commit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        log.info("Group commit enabled: max batch size {}, max wait {}us", maxBatchSize, maxWaitMicros);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enqueue a transaction and wait until the batch it belongs to has committed.
+     * Failures of the shared commit are rethrown to every caller in the batch.
+     *
+     * @throws IllegalStateException if the writer is stopped, or the commit is
+     *         not acknowledged within write-timeout-ms (it may still land)
+     */
+    public Transaction write(Transaction transaction) {
+        if (!running) {
+            throw new IllegalStateException("Group commit writer is not running");
+        }
+        PendingWrite pending = new PendingWrite(transaction, System.nanoTime());
+        queue.add(pending);
+        // stop() may have drained the queue between the check and the add
+        if (!running && queue.remove(pending)) {
+            throw new IllegalStateException("Group commit writer is not running");
+        }
+
+        try {
+            return pending.future.get(writeTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Group commit failed", e.getCause());
+        } catch (TimeoutException e) {
+            queue.remove(pending);
+            throw new IllegalStateException("Group commit not acknowledged within " + writeTimeoutMillis + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for group commit", e);
+        }
+    }
+
+    private void runWriter() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+
+        while (running) {
+            try {
+                PendingWrite first = queue.take();
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                commit(batch);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Group commit writer failed: ", e);
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // Fail anything still queued so no caller blocks forever on shutdown
+        PendingWrite leftover;
+        while ((leftover = queue.poll()) != null) {
+            leftover.future.completeExceptionally(new IllegalStateException("Group commit writer stopped"));
+        }
+    }
+
+    private void commit(List<PendingWrite> batch) {
+        List<Transaction> transactions = new ArrayList<>(batch.size());
+        for (PendingWrite pending : batch) {
+            transactions.add(pending.transaction);
+        }
+
+        try {
+            List<Transaction> saved = transactionTemplate.execute(status -> transactionRepository.saveAll(transactions));
+            batchSizeSummary.record(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                complete(batch.get(i), saved.get(i));
+            }
+            log.debug("Group commit of {} transactions", batch.size());
+
+        } catch (Exception e) {
+            // One bad row (e.g. duplicate transaction id) must not fail its neighbours:
+            // fall back to committing each transaction on its own.
+            log.warn("Group commit of {} transactions failed, retrying individually: {}", batch.size(), e.getMessage());
+            for (PendingWrite pending : batch) {
+                try {
+                    pending.transaction.setId(null); // identity assigned by the rolled-back insert
+                    Transaction saved = transactionTemplate.execute(status -> transactionRepository.save(pending.transaction));
+                    batchSizeSummary.record(1);
+                    complete(pending, saved);
+                } catch (Exception individual) {
+                    pending.future.completeExceptionally(individual);
+                }
+            }
+        }
+    }
+
+    private void complete(PendingWrite pending, Transaction saved) {
+        waitTimer.record(System.nanoTime() - pending.enqueuedAt, TimeUnit.NANOSECONDS);
+        pending.future.complete(saved);
+    }
+
+    private static final class PendingWrite {
+        private final Transaction transaction;
+        private final long enqueuedAt;
+        private final CompletableFuture<Transaction> future = new CompletableFuture<>();
+
+        private PendingWrite(Transaction transaction, long enqueuedAt) {
+            this.transaction = transaction;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.trading.payments.service;
+
+import java.util.Arrays;
+
+/**
+ * Longest-prefix match over IPv4 and IPv6 CIDR ranges, for IpReputationService.
+ *
+ * A path-compressed binary (Patricia) trie over 128-bit addresses; IPv4 is
+ * stored as IPv4-mapped IPv6 (::ffff:a.b.c.d), so the shared 96-bit prefix is a
+ * single node. Nodes live in parallel primitive arrays (prefix high/low bits,
+ * prefix length, two children, value), at most 2n - 1 nodes for n ranges. A
+ * lookup parses the address string without allocating and walks at most one
+ * node per distinct prefix length on the path.
+ *
+ * Built once by {@link Builder} and read-only afterwards, so it can be shared by
+ * any number of threads and replaced by swapping the reference.
+ */
+public final class IpPrefixTrie {
+
+    public static final int NO_MATCH = -1;
+
+    private static final long IPV4_MAPPED = 0x0000_FFFF_0000_0000L;
+    private static final ThreadLocal<long[]> SCRATCH = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final long[] prefixHi;
+    private final long[] prefixLo;
+    private final int[] prefixLen;
+    private final int[] child0;
+    private final int[] child1;
+    private final int[] values;
+    private final int size;
+
+    private IpPrefixTrie(Builder builder) {
+        int n = builder.nodes;
+        this.prefixHi = Arrays.copyOf(builder.prefixHi, n);
+        this.prefixLo = Arrays.copyOf(builder.prefixLo, n);
+        this.prefixLen = Arrays.copyOf(builder.prefixLen, n);
+        this.child0 = Arrays.copyOf(builder.child0, n);
+        this.child1 = Arrays.copyOf(builder.child1, n);
+        this.values = Arrays.copyOf(builder.values, n);
+        this.size = builder.ranges;
+    }
+
+    /** Number of ranges */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the value of the longest range containing the address, or
+     *         {@link #NO_MATCH} if none does or the address does not parse
+     */
+    public int lookup(String address) {
+        long[] parsed = SCRATCH.get();
+        if (address == null || !parse(address, 0, address.length(), parsed)) {
+            return NO_MATCH;
+        }
+        return lookup(parsed[0], parsed[1]);
+    }
+
+    public int lookup(long hi, long lo) {
+        int best = NO_MATCH;
+        int node = 0;
+        while (node >= 0) {
+            int len = prefixLen[node];
+            if (!matches(hi, lo, prefixHi[node], prefixLo[node], len)) {
+                break;
+            }
+            if (values[node] != NO_MATCH) {
+                best = values[node];
+            }
+            if (len == 128) {
+                break;
+            }
+            node = bitAt(hi, lo, len) == 0 ? child0[node] : child1[node];
+        }
+        return best;
+    }
+
+    /**
+     * Parse an IPv4 or IPv6 address (optionally with a %zone) from
+     * {@code text[start, end)} into 128 bits, IPv4 as IPv4-mapped IPv6.
+     */
+    static boolean parse(CharSequence text, int start, int end, long[] out) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == ':') {
+                return parseIpv6(text, start, end, out);
+            }
+            if (c == '%') {
+                end = i;
+                break;
+            }
+        }
+        long v4 = parseIpv4(text, start, end);
+        if (v4 < 0) {
+            return false;
+        }
+        out[0] = 0;
+        out[1] = IPV4_MAPPED | v4;
+        return true;
+    }
+
+    private static long parseIpv4(CharSequence text, int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? text.charAt(i) : '.';
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return -1;
+                }
+            } else if (c == '.') {
+                if (value < 0 || octets == 4) {
+                    return -1;
+                }
+                address = (address << 8) | value;
+                octets++;
+                value = -1;
+            } else {
+                return -1;
+            }
+        }
+        return octets == 4 ? address : -1;
+    }
+
+    private static boolean parseIpv6(CharSequence text, int start, int end, long[] out) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '%') {
+                end = i;
+                break;
+            }
+        }
+        // Groups are shifted into a 128-bit accumulator; at "::" the groups so far
+        // become the head, which is shifted into place once the tail length is known
+        long hi = 0;
+        long lo = 0;
+        long headHi = 0;
+        long headLo = 0;
+        int groups = 0;
+        int headGroups = -1;
+        int i = start;
+        if (end - start >= 2 && text.charAt(start) == ':' && text.charAt(start + 1) == ':') {
+            headGroups = 0;
+            i += 2;
+        }
+        while (i < end) {
+            int groupStart = i;
+            int value = 0;
+            int digits = 0;
+            while (i < end && text.charAt(i) != ':') {
+                char c = text.charAt(i);
+                if (c == '.') {
+                    // Embedded IPv4 tail, e.g. ::ffff:10.0.0.1
+                    long v4 = parseIpv4(text, groupStart, end);
+                    if (v4 < 0) {
+                        return false;
+                    }
+                    hi = (hi << 32) | (lo >>> 32);
+                    lo = (lo << 32) | v4;
+                    groups += 2;
+                    i = end;
+                    digits = -1;
+                    break;
+                }
+                int digit = Character.digit(c, 16);
+                if (digit < 0 || ++digits > 4) {
+                    return false;
+                }
+                value = (value << 4) | digit;
+                i++;
+            }
+            if (digits == 0) {
+                return false;
+            }
+            if (digits > 0) {
+                hi = (hi << 16) | (lo >>> 48);
+                lo = (lo << 16) | value;
+                groups++;
+            }
+            if (i < end) {
+                i++; // ':'
+                if (i < end && text.charAt(i) == ':') {
+                    if (headGroups >= 0) {
+                        return false;
+                    }
+                    headGroups = groups;
+                    headHi = hi;
+                    headLo = lo;
+                    hi = 0;
+                    lo = 0;
+                    i++;
+                } else if (i == end) {
+                    return false;
+                }
+            }
+        }
+        if (headGroups < 0) {
+            if (groups != 8) {
+                return false;
+            }
+        } else {
+            if (groups > 7) {
+                return false;
+            }
+            for (int g = headGroups; g < 8; g++) {
+                headHi = (headHi << 16) | (headLo >>> 48);
+                headLo <<= 16;
+            }
+            // The tail is already right-aligned in the low groups
+            hi |= headHi;
+            lo |= headLo;
+        }
+        out[0] = hi;
+        out[1] = lo;
+        return true;
+    }
+
+    private static boolean matches(long hi, long lo, long prefixHi, long prefixLo, int len) {
+        if (len <= 64) {
+            return ((hi ^ prefixHi) & mask(len)) == 0;
+        }
+        return hi == prefixHi && ((lo ^ prefixLo) & mask(len - 64)) == 0;
+    }
+
+    private static long mask(int bits) {
+        return bits == 0 ? 0 : -1L << (64 - bits);
+    }
+
+    private static int bitAt(long hi, long lo, int index) {
+        return (int) (index < 64 ? hi >>> (63 - index) : lo >>> (127 - index)) & 1;
+    }
+
+    private static int commonPrefix(long aHi, long aLo, long bHi, long bLo, int max) {
+        long x = aHi ^ bHi;
+        int common = x != 0 ? Long.numberOfLeadingZeros(x) : 64 + Long.numberOfLeadingZeros(aLo ^ bLo);
+        return Math.min(common, max);
+    }
+
+    /**
+     * Collects CIDR ranges. Adding the same range twice keeps the last value.
+     */
+    public static final class Builder {
+        private long[] prefixHi = new long[64];
+        private long[] prefixLo = new long[64];
+        private int[] prefixLen = new int[64];
+        private int[] child0 = new int[64];
+        private int[] child1 = new int[64];
+        private int[] values = new int[64];
+        private int nodes;
+        private int ranges;
+        private final long[] parsed = new long[2];
+
+        public Builder() {
+            newNode(0, 0, 0, NO_MATCH); // root, the empty prefix
+        }
+
+        /**
+         * @param cidr  "a.b.c.d/n", "x:y::/n" or a bare address (a /32 or /128)
+         * @param value non-negative
+         */
+        public Builder add(String cidr, int value) {
+            int slash = cidr.indexOf('/');
+            int end = slash >= 0 ? slash : cidr.length();
+            if (!parse(cidr, 0, end, parsed)) {
+                throw new IllegalArgumentException("Invalid address in " + cidr);
+            }
+            boolean v4 = cidr.lastIndexOf(':', end - 1) < 0;
+            int len = v4 ? 32 : 128;
+            if (slash >= 0) {
+                try {
+                    len = Integer.parseInt(cidr.substring(slash + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid prefix length in " + cidr);
+                }
+                if (len < 0 || len > (v4 ? 32 : 128)) {
+                    throw new IllegalArgumentException("Invalid prefix length in " + cidr);
+                }
+                if (v4) {
+                    len += 96;
+                }
+            } else if (v4) {
+                len = 128;
+            }
+            insert(parsed[0], parsed[1], len, value);
+            return this;
+        }
+
+        public IpPrefixTrie build() {
+            return new IpPrefixTrie(this);
+        }
+
+        private void insert(long hi, long lo, int len, int value) {
+            // Canonical prefix: bits past len cleared
+            if (len <= 64) {
+                hi &= mask(len);
+                lo = 0;
+            } else {
+                lo &= mask(len - 64);
+            }
+            int node = 0;
+            while (true) {
+                int nodeLen = prefixLen[node];
+                if (len == nodeLen) {
+                    if (values[node] == NO_MATCH) {
+                        ranges++;
+                    }
+                    values[node] = value;
+                    return;
+                }
+                int bit = bitAt(hi, lo, nodeLen);
+                int child = bit == 0 ? child0[node] : child1[node];
+                if (child < 0) {
+                    setChild(node, bit, newNode(hi, lo, len, value));
+                    ranges++;
+                    return;
+                }
+                int common = commonPrefix(hi, lo, prefixHi[child], prefixLo[child], Math.min(len, prefixLen[child]));
+                if (common == prefixLen[child]) {
+                    node = child;
+                    continue;
+                }
+                // Split the edge to child at the first differing bit
+                long midHi = common <= 64 ? hi & mask(common) : hi;
+                long midLo = common <= 64 ? 0 : lo & mask(common - 64);
+                int mid = newNode(midHi, midLo, common, NO_MATCH);
+                setChild(node, bit, mid);
+                setChild(mid, bitAt(prefixHi[child], prefixLo[child], common), child);
+                if (common == len) {
+                    values[mid] = value;
+                } else {
+                    setChild(mid, bitAt(hi, lo, common), newNode(hi, lo, len, value));
+                }
+                ranges++;
+                return;
+            }
+        }
+
+        private void setChild(int node, int bit, int child) {
+            if (bit == 0) {
+                child0[node] = child;
+            } else {
+                child1[node] = child;
+            }
+        }
+
+        private int newNode(long hi, long lo, int len, int value) {
+            if (nodes == prefixHi.length) {
+                int capacity = nodes * 2;
+                prefixHi = Arrays.copyOf(prefixHi, capacity);
+                prefixLo = Arrays.copyOf(prefixLo, capacity);
+                prefixLen = Arrays.copyOf(prefixLen, capacity);
+                child0 = Arrays.copyOf(child0, capacity);
+                child1 = Arrays.copyOf(child1, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            prefixHi[nodes] = hi;
+            prefixLo[nodes] = lo;
+            prefixLen[nodes] = len;
+            child0[nodes] = -1;
+            child1[nodes] = -1;
+            values[nodes] = value;
+            return nodes++;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.trading.payments.service;
+
+import com.trading.payments.config.SchedulingConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Customer IP reputation from a local CIDR list, one range per line:
+ *
+ *   # cidr, category, score (0-100)
+ *   185.220.100.0/22,TOR,60
+ *   2a0b:f4c0::/32,HOSTING,20
+ *
+ * Ranges go into an IpPrefixTrie and the most specific range containing the
+ * address wins, so a broad hosting range can carry a narrower exception.
+ * Lookups are allocation-free and well under a microsecond (see
+ * IpReputationBenchmark). Category and score are packed into the trie value.
+ *
+ * The file is re-read when its modification time changes and the new trie is
+ * swapped in atomically; a file that fails to load keeps the previous one.
+ */
+@Service
+@Slf4j
+public class IpReputationService {
+
+    public enum Category { TOR, PROXY, VPN, HOSTING, BOTNET, ABUSE, OTHER }
+
+    private static final Category[] CATEGORIES = Category.values();
+
+    private final MeterRegistry meterRegistry;
+    private final Path path;
+
+    private volatile IpPrefixTrie trie;
+    private long loadedModifiedTime;
+
+    private final Counter[] hits = new Counter[CATEGORIES.length];
+
+    public IpReputationService(@Value("${payment.fraud.ip-reputation.path:}") String path, MeterRegistry meterRegistry) {
+        this.path = path.isBlank() ? null : Path.of(path);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        for (Category category : CATEGORIES) {
+            hits[category.ordinal()] = Counter.builder("payment.fraud.ip_reputation.hits")
+                .tag("category", category.name())
+                .register(meterRegistry);
+        }
+        Gauge.builder("payment.fraud.ip_reputation.ranges", this, IpReputationService::size).register(meterRegistry);
+        reload();
+    }
+
+    /**
+     * @return the packed match for the most specific listed range containing
+     *         the address (see {@link #score} and {@link #category}), or
+     *         {@link IpPrefixTrie#NO_MATCH} if it is unlisted or not an address
+     */
+    public int lookup(String ip) {
+        IpPrefixTrie current = trie;
+        if (current == null || ip == null) {
+            return IpPrefixTrie.NO_MATCH;
+        }
+        int match = current.lookup(ip);
+        if (match != IpPrefixTrie.NO_MATCH) {
+            hits[match >>> 8].increment();
+        }
+        return match;
+    }
+
+    public static int score(int match) {
+        return match & 0xFF;
+    }
+
+    public static Category category(int match) {
+        return CATEGORIES[match >>> 8];
+    }
+
+    public int size() {
+        IpPrefixTrie current = trie;
+        return current != null ? current.size() : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${payment.fraud.ip-reputation.reload-interval-ms:30000}", scheduler = SchedulingConfig.BACKGROUND_SCHEDULER)
+    public void reload() {
+        if (path == null || !Files.isRegularFile(path)) {
+            return;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            if (modified == loadedModifiedTime) {
+                return;
+            }
+            IpPrefixTrie loaded = load(path);
+            trie = loaded;
+            loadedModifiedTime = modified;
+            log.info("Loaded IP reputation list {}: {} ranges", path, loaded.size());
+        } catch (Exception e) {
+            log.error("Failed to load IP reputation list {}, keeping the previous one: {}", path, e.getMessage());
+        }
+    }
+
+    static IpPrefixTrie load(Path path) throws IOException {
+        IpPrefixTrie.Builder builder = new IpPrefixTrie.Builder();
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    String[] fields = line.split(",");
+                    if (fields.length != 3) {
+                        throw new IllegalArgumentException("expected cidr,category,score");
+                    }
+                    builder.add(fields[0].trim(), pack(category(fields[1].trim()), Integer.parseInt(fields[2].trim())));
+                } catch (IllegalArgumentException e) {
+                    if (skipped++ < 10) {
+                        log.warn("Skipping line {} of {}: {}", lineNumber, path, e.getMessage());
+                    }
+                }
+            }
+        }
+        if (skipped > 0) {
+            log.warn("Skipped {} malformed lines in {}", skipped, path);
+        }
+        return builder.build();
+    }
+
+    static int pack(Category category, int score) {
+        if (score < 0 || score > 100) {
+            throw new IllegalArgumentException("score out of range: " + score);
+        }
+        return category.ordinal() << 8 | score;
+    }
+
+    private static Category category(String label) {
+        try {
+            return Category.valueOf(label.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Category.OTHER;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.JournalEntry;
+import com.trading.payments.entity.Transaction;
+import com.trading.payments.repository.TransactionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * Drains the local transaction journal into Postgres.
+ *
+ * Runs once the application is ready, so entries left behind by a crash are
+ * replayed before (and alongside) new ones. Each batch is inserted and its
+ * position deltas applied in a single database transaction; transaction ids that
+ * already exist are skipped, which makes re-replaying a batch after a crash
+ * between commit and checkpoint harmless.
+ *
+ * When a batch fails for any reason other than the database being unreachable,
+ * its entries are retried one at a time; an entry Postgres still rejects, or a
+ * record that no longer parses, goes to the journal's dead-letter file so the
+ * entries behind it are not held up. On shutdown the journal is drained before
+ * the pod goes away, so a scaled-down pod leaves nothing behind.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class JournalReplayService {
+
+    private final TransactionJournal journal;
+    private final TransactionRepository transactionRepository;
+    private final RiskManagementService riskService;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${payment.journal.replay.batch-size:200}")
+    private int batchSize;
+
+    @Value("${payment.journal.replay.idle-millis:20}")
+    private long idleMillis;
+
+    @Value("${payment.journal.replay.retry-millis:1000}")
+    private long retryMillis;
+
+    @Value("${payment.journal.replay.drain-timeout-ms:30000}")
+    private long drainTimeoutMillis;
+
+    private TransactionTemplate transactionTemplate;
+    private Counter replayedCounter;
+    private Thread replayThread;
+    private volatile boolean running;
+    private volatile TransactionJournal.Position position;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!journal.isEnabled()) {
+            return;
+        }
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        replayedCounter = Counter.builder("payment.journal.replayed")
+            .description("Journaled transactions replayed into Postgres")
+            .register(meterRegistry);
+
+        try {
+            position = journal.startPosition();
+        } catch (Exception e) {
+            log.error("Cannot read journal checkpoint - replay disabled: ", e);
+            return;
+        }
+        log.info("Journal replay starting at segment {} offset {}", position.segment(), position.offset());
+
+        running = true;
+        replayThread = new Thread(this::runReplay, "journal-replayer");
+        replayThread.setDaemon(true);
+        replayThread.start();
+    }
+
+    /**
+     * Stop the replayer and drain what is left into Postgres, bounded by
+     * drain-timeout-ms. Whatever cannot be drained stays in the journal for the
+     * next start.
+     */
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (replayThread == null) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+        LockSupport.unpark(replayThread);
+        try {
+            replayThread.join(drainTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (replayThread.isAlive()) {
+            log.warn("Journal replayer did not stop within {} ms - leaving the rest of the journal for the next start",
+                drainTimeoutMillis);
+            return;
+        }
+
+        try {
+            while (System.nanoTime() < deadline) {
+                TransactionJournal.Position from = position;
+                position = replay(from);
+                if (position.equals(from)) {
+                    log.info("Journal drained into Postgres at segment {} offset {}", position.segment(), position.offset());
+                    return;
+                }
+            }
+            log.warn("Journal not fully drained within {} ms - the rest is replayed on the next start", drainTimeoutMillis);
+        } catch (Exception e) {
+            log.error("Journal drain failed at segment {} offset {} - the rest is replayed on the next start: ",
+                position.segment(), position.offset(), e);
+        }
+    }
+
+    private void runReplay() {
+        while (running) {
+            try {
+                TransactionJournal.Position from = position;
+                position = replay(from);
+                if (position.equals(from) && running) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(idleMillis));
+                }
+
+            } catch (Exception e) {
+                log.error("Journal replay failed at segment {} offset {}, retrying: ",
+                    position.segment(), position.offset(), e);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(retryMillis));
+            }
+        }
+    }
+
+    /**
+     * Replay one batch from {@code from} and checkpoint past it.
+     *
+     * @return the position after the batch, or {@code from} when there was nothing to read
+     * @throws RuntimeException if the database is unreachable; nothing is checkpointed
+     */
+    TransactionJournal.Position replay(TransactionJournal.Position from) throws IOException {
+        TransactionJournal.ReadResult result = journal.read(from, batchSize);
+
+        List<Rejected> rejected = List.of();
+        if (!result.entries().isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> apply(result.entries()));
+            } catch (RuntimeException e) {
+                if (databaseUnavailable(e)) {
+                    throw e;
+                }
+                log.warn("Replay of {} journal entries failed, retrying individually: {}", result.entries().size(), e.getMessage());
+                rejected = applyIndividually(result.entries());
+            }
+            replayedCounter.increment(result.entries().size() - rejected.size());
+        }
+
+        // Only once the batch is settled, so a retry after an outage does not dead-letter twice
+        for (Rejected entry : rejected) {
+            log.error("Journal entry {} rejected by Postgres - moved to dead letters: {}",
+                entry.entry().getTransactionId(), entry.reason());
+            journal.deadLetter(entry.entry(), entry.reason());
+        }
+        for (TransactionJournal.Unreadable record : result.unreadable()) {
+            log.error("Unreadable journal record in segment {} at offset {} - moved to dead letters: {}",
+                record.position().segment(), record.position().offset(), record.error());
+            journal.deadLetter(record);
+        }
+
+        if (!result.next().equals(from)) {
+            journal.acknowledge(result.next(), result.entries().size() + result.unreadable().size());
+        }
+        return result.next();
+    }
+
+    private List<Rejected> applyIndividually(List<JournalEntry> entries) {
+        List<Rejected> rejected = new ArrayList<>();
+        for (JournalEntry entry : entries) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> apply(List.of(entry)));
+            } catch (RuntimeException e) {
+                // Entries already applied are skipped as existing when the batch is retried
+                if (databaseUnavailable(e)) {
+                    throw e;
+                }
+                rejected.add(new Rejected(entry, e.getMessage()));
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * Whether a failure says nothing about the entries themselves: no connection,
+     * a timeout or a failed commit. Those are retried rather than dead-lettered.
+     */
+    static boolean databaseUnavailable(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientDataAccessException
+                || cause instanceof RecoverableDataAccessException
+                || cause instanceof NonTransientDataAccessResourceException
+                || cause instanceof TransactionException
+                || cause instanceof SQLTransientException
+                || cause instanceof SQLRecoverableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void apply(List<JournalEntry> entries) {
+        Set<String> ids = entries.stream().map(JournalEntry::getTransactionId).collect(Collectors.toSet());
+        Set<String> existing = transactionRepository.findExistingTransactionIds(ids);
+
+        List<Transaction> transactions = new ArrayList<>(entries.size());
+        List<JournalEntry> fresh = new ArrayList<>(entries.size());
+        for (JournalEntry entry : entries) {
+            if (!existing.contains(entry.getTransactionId())) {
+                transactions.add(entry.toTransaction());
+                fresh.add(entry);
+            }
+        }
+
+        transactionRepository.saveAll(transactions);
+        for (int i = 0; i < fresh.size(); i++) {
+            JournalEntry entry = fresh.get(i);
+            riskService.applyPosition(entry.getMerchantId(), transactions.get(i), entry.getPositionDate());
+        }
+
+        log.debug("Replayed {} journal entries ({} already present)", entries.size(), entries.size() - fresh.size());
+    }
+
+    private record Rejected(JournalEntry entry, String reason) {
+    }
+}
@@ -0,0 +1,39 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.FraudRuleSet;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * The rule set FraudDetectionService scores rules 1-8 with: the FraudRuleSet
+ * defaults plus the configured spread thresholds. Backtests and shadow
+ * evaluation resolve their rule sets here too, so a baseline or a candidate
+ * that leaves a field unset gets exactly the live value.
+ */
+@Component
+public class LiveFraudRules {
+
+    private final long maxMerchantsPerCard;
+    private final long maxCardsPerMerchant;
+    private final FraudRuleSet live;
+
+    public LiveFraudRules(@Value("${payment.fraud.spread.max-merchants-per-card:5}") long maxMerchantsPerCard,
+                          @Value("${payment.fraud.spread.max-cards-per-merchant:200}") long maxCardsPerMerchant) {
+        this.maxMerchantsPerCard = maxMerchantsPerCard;
+        this.maxCardsPerMerchant = maxCardsPerMerchant;
+        this.live = resolve(FraudRuleSet.builder().build());
+    }
+
+    /** The live rules; shared, so callers must not modify it */
+    FraudRuleSet live() {
+        return live;
+    }
+
+    /** A copy of the rule set with every configured field it leaves unset taken from the live configuration */
+    public FraudRuleSet resolve(FraudRuleSet ruleSet) {
+        return ruleSet.toBuilder()
+            .maxMerchantsPerCard(ruleSet.getMaxMerchantsPerCard() != null ? ruleSet.getMaxMerchantsPerCard() : maxMerchantsPerCard)
+            .maxCardsPerMerchant(ruleSet.getMaxCardsPerMerchant() != null ? ruleSet.getMaxCardsPerMerchant() : maxCardsPerMerchant)
+            .build();
+    }
+}
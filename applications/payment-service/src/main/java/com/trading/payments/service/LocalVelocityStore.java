@@ -0,0 +1,212 @@
+package com.trading.payments.service;
+
+import com.trading.payments.config.SchedulingConfig;
+import com.trading.payments.dto.VelocitySnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-JVM velocity counters used by VelocityService while Redis is unavailable.
+ *
+ * Cards and merchants are spread over lock stripes, each holding the
+ * VelocityWindows for its keys; a payment takes its card's stripe, then its
+ * merchant's, never both at once. Card counts are exact over what this pod
+ * saw during the outage, merchant ones sliced and sketched as in Redis, so
+ * with several replicas each sees its share of a card's payments: per-pod
+ * approximations, better than no velocity rules at all.
+ * Each stripe holds at most max-cards / stripes cards and drops its least
+ * recently used card beyond that, so memory stays bounded through a long
+ * outage with many distinct cards.
+ *
+ * Payments recorded here are also journalled (bounded, oldest dropped first)
+ * so VelocityService can replay them into Redis once it is back, and the Redis
+ * counters cover the outage too.
+ */
+@Service
+@Slf4j
+public class LocalVelocityStore {
+
+    /** A payment counted locally, waiting to be replayed into Redis */
+    public record Payment(String cardHash, String merchantId, long amountCents, long timestamp) {
+    }
+
+    private final Stripe[] stripes;
+    private final int stripeShift;
+    private final long retentionMillis;
+    private final int maxJournal;
+
+    private final ArrayDeque<Payment> journal = new ArrayDeque<>();
+    private final Counter journalDropped;
+
+    public LocalVelocityStore(@Value("${payment.fraud.velocity.card-window-minutes:60}") long cardWindowMinutes,
+                              @Value("${payment.fraud.velocity.merchant-window-minutes:10}") long merchantWindowMinutes,
+                              @Value("${payment.fraud.amount-pattern.window-hours:24}") long amountPatternWindowHours,
+                              @Value("${payment.fraud.spread.card-window-minutes:60}") long cardSpreadWindowMinutes,
+                              @Value("${payment.fraud.spread.merchant-window-minutes:10}") long merchantSpreadWindowMinutes,
+                              @Value("${payment.fraud.velocity.fallback.stripes:64}") int stripeCount,
+                              @Value("${payment.fraud.velocity.fallback.max-entries-per-card:64}") int maxEntriesPerCard,
+                              @Value("${payment.fraud.velocity.fallback.max-cards:500000}") int maxCards,
+                              @Value("${payment.fraud.velocity.fallback.max-journal:200000}") int maxJournal,
+                              MeterRegistry meterRegistry) {
+        long cardWindowMillis = Duration.ofMinutes(cardWindowMinutes).toMillis();
+        this.retentionMillis = Math.max(Duration.ofHours(amountPatternWindowHours).toMillis(),
+            Math.max(cardWindowMillis, Duration.ofMinutes(cardSpreadWindowMinutes).toMillis()));
+        this.maxJournal = maxJournal;
+
+        int stripesPow2 = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+        int maxCardsPerStripe = Math.max(1, maxCards / stripesPow2);
+        this.stripes = new Stripe[stripesPow2];
+        for (int i = 0; i < stripesPow2; i++) {
+            stripes[i] = new Stripe(new VelocityWindows(cardWindowMillis,
+                Duration.ofMinutes(merchantWindowMinutes).toMillis(),
+                Duration.ofHours(amountPatternWindowHours).toMillis(),
+                Duration.ofMinutes(cardSpreadWindowMinutes).toMillis(),
+                Duration.ofMinutes(merchantSpreadWindowMinutes).toMillis(),
+                maxEntriesPerCard, maxCardsPerStripe));
+        }
+        this.stripeShift = 64 - Integer.numberOfTrailingZeros(stripesPow2);
+
+        journalDropped = Counter.builder("payment.fraud.velocity.fallback.journal_dropped").register(meterRegistry);
+        Gauge.builder("payment.fraud.velocity.fallback.cards", this, LocalVelocityStore::cards).register(meterRegistry);
+        FunctionCounter.builder("payment.fraud.velocity.fallback.cards_evicted", this, LocalVelocityStore::evictedCards)
+            .register(meterRegistry);
+        Gauge.builder("payment.fraud.velocity.fallback.journal", this, LocalVelocityStore::journalSize).register(meterRegistry);
+    }
+
+    /**
+     * Record this payment and return the local counters as they were before
+     * it, in the same shape as the Redis snapshot.
+     */
+    public VelocitySnapshot record(String cardHash, String merchantId, long amountCents, long now) {
+        long cardKey = CardBlocklist.fingerprint(cardHash);
+        long[] card = new long[4];
+        long[] merchant = new long[2];
+
+        Stripe cardStripe = stripe(cardKey);
+        synchronized (cardStripe) {
+            cardStripe.windows.recordCard(cardKey, merchantId.hashCode(), amountCents, now, card);
+        }
+        Stripe merchantStripe = stripe(mix(merchantId.hashCode()));
+        synchronized (merchantStripe) {
+            merchantStripe.windows.recordMerchant(merchantId, cardKey, now, merchant);
+        }
+        synchronized (journal) {
+            if (journal.size() >= maxJournal) {
+                journal.pollFirst();
+                journalDropped.increment();
+            }
+            journal.addLast(new Payment(cardHash, merchantId, amountCents, now));
+        }
+
+        return VelocitySnapshot.builder()
+            .cardCount(card[VelocityWindows.CARD_COUNT])
+            .cardAmount(BigDecimal.valueOf(card[VelocityWindows.CARD_AMOUNT_CENTS], 2))
+            .merchantCount(merchant[VelocityWindows.MERCHANT_COUNT])
+            .amountRepeats(card[VelocityWindows.AMOUNT_REPEATS])
+            .distinctMerchantsForCard(card[VelocityWindows.DISTINCT_MERCHANTS])
+            .distinctCardsForMerchant(merchant[VelocityWindows.DISTINCT_CARDS])
+            .available(true)
+            .local(true)
+            .build();
+    }
+
+    /**
+     * Take up to {@code max} journalled payments, oldest first, skipping any
+     * already outside every velocity window.
+     */
+    public List<Payment> drainJournal(int max, long now) {
+        List<Payment> drained = new ArrayList<>(Math.min(max, 1024));
+        synchronized (journal) {
+            while (drained.size() < max && !journal.isEmpty()) {
+                Payment payment = journal.pollFirst();
+                if (payment.timestamp() >= now - retentionMillis) {
+                    drained.add(payment);
+                }
+            }
+        }
+        return drained;
+    }
+
+    /** Put back payments that could not be replayed, ahead of anything newer */
+    public void requeue(List<Payment> payments) {
+        synchronized (journal) {
+            for (int i = payments.size() - 1; i >= 0 && journal.size() < maxJournal; i--) {
+                journal.addFirst(payments.get(i));
+            }
+        }
+    }
+
+    /** Forget the local counters; Redis holds the outage's payments once they are replayed */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.windows.clear();
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${payment.fraud.velocity.fallback.evict-interval-ms:60000}", scheduler = SchedulingConfig.BACKGROUND_SCHEDULER)
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.windows.evictIdle(now);
+            }
+        }
+    }
+
+    public int journalSize() {
+        synchronized (journal) {
+            return journal.size();
+        }
+    }
+
+    int cards() {
+        int cards = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                cards += stripe.windows.cards();
+            }
+        }
+        return cards;
+    }
+
+    long evictedCards() {
+        long evicted = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                evicted += stripe.windows.evictedCards();
+            }
+        }
+        return evicted;
+    }
+
+    private Stripe stripe(long key) {
+        return stripes[stripeShift == 64 ? 0 : (int) (key >>> stripeShift)];
+    }
+
+    private static long mix(int hash) {
+        return hash * 0x9E3779B97F4A7C15L;
+    }
+
+    /** One lock stripe */
+    private static final class Stripe {
+        final VelocityWindows windows;
+
+        Stripe(VelocityWindows windows) {
+            this.windows = windows;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.trading.payments.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock-free hand-off between the payment path and PaymentEventService.
+ *
+ * Request threads publish broadcast tasks into a fixed-size ring buffer and return
+ * immediately; consumer threads drain it in batches and do the Jackson/STOMP work.
+ * When the ring is full the configured overflow policy decides what to lose - the
+ * payment path never waits on dashboard fan-out.
+ *
+ * Overflow policies:
+ *   DROP_OLDEST - evict the oldest queued event to make room for the new one
+ *   SAMPLE      - above the high-water mark admit only every Nth event; drop when full
+ *
+ * An idle consumer parks for idle-park-micros, doubling on every empty poll up to
+ * idle-park-max-micros. Once there it registers as parked and a publisher unparks
+ * it, so a quiet service does not wake thousands of times a second and the first
+ * event after a lull is not held up by the long park.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentEventBus {
+
+    public enum OverflowPolicy { DROP_OLDEST, SAMPLE }
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${payment.events.bus.capacity:16384}")
+    private int capacity;
+
+    @Value("${payment.events.bus.consumers:1}")
+    private int consumers;
+
+    @Value("${payment.events.bus.batch-size:256}")
+    private int batchSize;
+
+    @Value("${payment.events.bus.overflow-policy:DROP_OLDEST}")
+    private OverflowPolicy overflowPolicy;
+
+    @Value("${payment.events.bus.sample-high-water-percent:75}")
+    private int sampleHighWaterPercent;
+
+    @Value("${payment.events.bus.sample-rate:10}")
+    private int sampleRate;
+
+    @Value("${payment.events.bus.idle-park-micros:100}")
+    private long idleParkMicros;
+
+    @Value("${payment.events.bus.idle-park-max-micros:10000}")
+    private long idleParkMaxMicros;
+
+    private EventRing ring;
+    private long highWaterMark;
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private final List<Thread> consumerThreads = new ArrayList<>();
+    private AtomicReferenceArray<Thread> parkedConsumers;
+    private final AtomicInteger parkedCount = new AtomicInteger();
+    private volatile boolean running;
+
+    private Counter published;
+    private Counter droppedOverflow;
+    private Counter droppedSampled;
+    private Counter failed;
+    private DistributionSummary batchSizes;
+
+    @PostConstruct
+    void start() {
+        ring = new EventRing(capacity);
+        highWaterMark = (long) ring.capacity() * sampleHighWaterPercent / 100;
+
+        published = Counter.builder("payment.events.bus.published").register(meterRegistry);
+        droppedOverflow = Counter.builder("payment.events.bus.dropped").tag("reason", "overflow").register(meterRegistry);
+        droppedSampled = Counter.builder("payment.events.bus.dropped").tag("reason", "sampled").register(meterRegistry);
+        failed = Counter.builder("payment.events.bus.failed").register(meterRegistry);
+        batchSizes = DistributionSummary.builder("payment.events.bus.batch_size").register(meterRegistry);
+        Gauge.builder("payment.events.bus.lag", ring, EventRing::size)
+            .description("Events published but not yet handed to PaymentEventService")
+            .register(meterRegistry);
+
+        running = true;
+        parkedConsumers = new AtomicReferenceArray<>(consumers);
+        for (int i = 0; i < consumers; i++) {
+            int index = i;
+            Thread consumer = new Thread(() -> consume(index), "payment-event-bus-" + i);
+            consumer.setDaemon(true);
+            consumer.start();
+            consumerThreads.add(consumer);
+        }
+
+        log.info("Payment event bus started: capacity {}, {} consumer(s), overflow policy {}",
+            ring.capacity(), consumers, overflowPolicy);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        consumerThreads.forEach(LockSupport::unpark);
+    }
+
+    /**
+     * Hand a broadcast off to the consumer threads. Never blocks; returns false if
+     * the event was dropped by the overflow policy.
+     */
+    public boolean publish(Runnable event) {
+        if (overflowPolicy == OverflowPolicy.SAMPLE
+                && ring.size() >= highWaterMark
+                && sampleCounter.incrementAndGet() % sampleRate != 0) {
+            droppedSampled.increment();
+            return false;
+        }
+
+        while (!ring.offer(event)) {
+            if (overflowPolicy != OverflowPolicy.DROP_OLDEST) {
+                droppedOverflow.increment();
+                return false;
+            }
+            if (ring.poll() != null) {
+                droppedOverflow.increment();
+            }
+        }
+
+        published.increment();
+        if (parkedCount.get() > 0) {
+            wakeConsumer();
+        }
+        return true;
+    }
+
+    private void wakeConsumer() {
+        for (int i = 0; i < parkedConsumers.length(); i++) {
+            Thread consumer = parkedConsumers.getAndSet(i, null);
+            if (consumer != null) {
+                parkedCount.decrementAndGet();
+                LockSupport.unpark(consumer);
+                return;
+            }
+        }
+    }
+
+    private void consume(int index) {
+        Runnable[] batch = new Runnable[batchSize];
+        long minParkNanos = TimeUnit.MICROSECONDS.toNanos(idleParkMicros);
+        long maxParkNanos = Math.max(minParkNanos, TimeUnit.MICROSECONDS.toNanos(idleParkMaxMicros));
+        long parkNanos = minParkNanos;
+
+        while (running) {
+            int count = 0;
+            Runnable event;
+            while (count < batch.length && (event = ring.poll()) != null) {
+                batch[count++] = event;
+            }
+
+            if (count == 0) {
+                if (parkNanos < maxParkNanos) {
+                    LockSupport.parkNanos(parkNanos);
+                    parkNanos = Math.min(maxParkNanos, parkNanos * 2);
+                } else {
+                    parkUntilPublished(index, maxParkNanos);
+                }
+                continue;
+            }
+            parkNanos = minParkNanos;
+
+            batchSizes.record(count);
+            for (int i = 0; i < count; i++) {
+                try {
+                    batch[i].run();
+                } catch (Exception e) {
+                    failed.increment();
+                    log.error("Event bus consumer failed to publish event: ", e);
+                }
+                batch[i] = null;
+            }
+        }
+    }
+
+    // Registered before the re-check, so a publisher that offers after it sees the registration
+    private void parkUntilPublished(int index, long maxParkNanos) {
+        parkedConsumers.set(index, Thread.currentThread());
+        parkedCount.incrementAndGet();
+        if (ring.size() == 0 && running) {
+            LockSupport.parkNanos(maxParkNanos);
+        }
+        if (parkedConsumers.getAndSet(index, null) != null) {
+            parkedCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Multi-producer/multi-consumer bounded ring (per-slot sequence numbers, after
+     * Vyukov). Producers and consumers each claim slots with a single CAS.
+     */
+    static final class EventRing {
+        private final int mask;
+        private final AtomicReferenceArray<Runnable> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+
+        EventRing(int requestedCapacity) {
+            int size = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+            this.mask = size - 1;
+            this.slots = new AtomicReferenceArray<>(size);
+            this.sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        long size() {
+            return Math.max(0, tail.get() - head.get());
+        }
+
+        boolean offer(Runnable event) {
+            while (true) {
+                long position = tail.get();
+                int index = (int) (position & mask);
+                long diff = sequences.get(index) - position;
+                if (diff == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        slots.lazySet(index, event);
+                        sequences.set(index, position + 1);
+                        return true;
+                    }
+                } else if (diff < 0) {
+                    return false;
+                }
+            }
+        }
+
+        Runnable poll() {
+            while (true) {
+                long position = head.get();
+                int index = (int) (position & mask);
+                long diff = sequences.get(index) - (position + 1);
+                if (diff == 0) {
+                    if (head.compareAndSet(position, position + 1)) {
+                        Runnable event = slots.get(index);
+                        slots.lazySet(index, null);
+                        sequences.set(index, position + mask + 1);
+                        return event;
+                    }
+                } else if (diff < 0) {
+                    return null;
+                }
+            }
+        }
+    }
+}
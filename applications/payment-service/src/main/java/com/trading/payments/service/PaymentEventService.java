@@ -8,12 +8,12 @@ import com.trading.payments.entity.DailyPosition;
 import com.trading.payments.entity.RiskAlert;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @RequiredArgsConstructor
@@ -21,35 +21,32 @@ import java.util.concurrent.ConcurrentHashMap;
 public class PaymentEventService {
     
     private final SimpMessagingTemplate messagingTemplate;
+    private final StompEventPublisher publisher;
+    private final FeedConflator feedConflator;
     
-    // In-memory stats for real-time dashboard
-    private final Map<String, Long> merchantTransactionCounts = new ConcurrentHashMap<>();
-    private final Map<String, Long> fraudAlertCounts = new ConcurrentHashMap<>();
+    @Value("${payment.feed.raw-enabled:true}")
+    private boolean rawFeedEnabled;
     
     /**
-     * Broadcast transaction events to WebSocket subscribers
+     * Broadcast transaction events to WebSocket subscribers: the firehose on
+     * /topic/transactions and the merchant's own /topic/transactions/merchant/{merchantId}
      */
-    public void broadcastTransactionEvent(PaymentResponse payment) {
+    public void broadcastTransactionEvent(PaymentResponse payment, String merchantId) {
         try {
-            TransactionEvent event = TransactionEvent.builder()
+            publisher.publishWithBinary(merchantId, () -> TransactionEvent.builder()
                 .transactionId(payment.getTransactionId())
-                .merchantId("DEMO_MERCHANT") // Simplified for demo
+                .merchantId(merchantId)
                 .amount(payment.getAmount())
                 .status(payment.getStatus())
                 .fraudScore(payment.getFraudScore())
                 .timestamp(payment.getProcessedAt())
-                .build();
-            
-            // Update real-time counters
-            updateMerchantStats("DEMO_MERCHANT");
-            
-            // Broadcast to all subscribers listening to /topic/transactions
-            messagingTemplate.convertAndSend("/topic/transactions", event);
+                .build(), () -> BinaryFeedCodec.transaction(payment, merchantId),
+                "/topic/transactions", "/topic/transactions/merchant/" + merchantId);
             
             // Also send to live feed (trading-style data feed)
-            sendTransactionFeed(payment);
+            sendTransactionFeed(payment, merchantId);
             
-            log.debug("Broadcasted transaction event: {}", event.getTransactionId());
+            log.debug("Broadcasted transaction event: {}", payment.getTransactionId());
             
         } catch (Exception e) {
             log.error("Failed to broadcast transaction event: ", e);
@@ -57,9 +54,10 @@ public class PaymentEventService {
     }
     
     /**
-     * Send fraud alerts to monitoring dashboard
+     * Send fraud alerts to monitoring dashboard (/topic/fraud-alerts) and the
+     * merchant's own /topic/fraud-alerts/merchant/{merchantId}
      */
-    public void sendFraudAlert(PaymentResponse payment) {
+    public void sendFraudAlert(PaymentResponse payment, String merchantId) {
         if (payment.getFraudScore() == null || payment.getFraudScore() <= 50) {
             return; // Only send alerts for high-risk transactions
         }
@@ -67,7 +65,7 @@ public class PaymentEventService {
         try {
             FraudAlert alert = FraudAlert.builder()
                 .transactionId(payment.getTransactionId())
-                .merchantId("DEMO_MERCHANT")
+                .merchantId(merchantId)
                 .amount(payment.getAmount())
                 .fraudScore(payment.getFraudScore())
                 .riskLevel(determineRiskLevel(payment.getFraudScore()))
@@ -75,15 +73,12 @@ public class PaymentEventService {
                 .timestamp(Instant.now())
                 .build();
             
-            // Update fraud alert counters
-            updateFraudStats("DEMO_MERCHANT");
-            
-            // Send to different topics based on severity
-            messagingTemplate.convertAndSend("/topic/fraud-alerts", alert);
-            
-            // Send critical alerts to admin channel
+            // Send to different topics based on severity - critical alerts also go to admin channel
+            String merchantTopic = "/topic/fraud-alerts/merchant/" + merchantId;
             if (payment.getFraudScore() > 75) {
-                messagingTemplate.convertAndSend("/topic/admin/critical-fraud", alert);
+                publisher.publish(() -> alert, "/topic/fraud-alerts", merchantTopic, "/topic/admin/critical-fraud");
+            } else {
+                publisher.publish(() -> alert, "/topic/fraud-alerts", merchantTopic);
             }
             
             log.warn("Fraud alert sent: {} - Score: {}", alert.getTransactionId(), alert.getFraudScore());
@@ -94,53 +89,33 @@ public class PaymentEventService {
     }
     
     /**
-     * Send live transaction feed (like market data feed)
+     * Send live transaction feed (like market data feed). Every payment is folded
+     * into the conflated per-merchant feed; raw ticks go out only if enabled.
      */
-    public void sendTransactionFeed(PaymentResponse payment) {
+    public void sendTransactionFeed(PaymentResponse payment, String merchantId) {
+        feedConflator.onPayment(merchantId, payment);
+        if (!rawFeedEnabled) {
+            return;
+        }
+        
         try {
-            // Create trading-style data feed format
-            Map<String, Object> feedData = Map.of(
+            // Trading-style data feed format, to live feed subscribers (simulates market
+            // data feed) and the merchant-specific feed
+            publisher.publishWithBinary(merchantId, () -> Map.of(
                 "type", "PAYMENT_TICK",
-                "symbol", "PAY_" + payment.getTransactionId().substring(4, 8), // Create ticker-like symbol
+                "symbol", "PAY_" + merchantId, // Ticker-like symbol per merchant
                 "price", payment.getAmount(),
                 "status", payment.getStatus(),
                 "volume", 1,
                 "risk", payment.getFraudScore(),
                 "timestamp", payment.getProcessedAt().toEpochMilli()
-            );
-            
-            // Send to live feed subscribers (simulates market data feed)
-            messagingTemplate.convertAndSend("/topic/feed/live", feedData);
-            
-            // Send merchant-specific feed
-            messagingTemplate.convertAndSend("/topic/feed/merchant/DEMO_MERCHANT", feedData);
+            ), () -> BinaryFeedCodec.tick(payment, merchantId), "/topic/feed/live", "/topic/feed/merchant/" + merchantId);
             
         } catch (Exception e) {
             log.error("Failed to send transaction feed: ", e);
         }
     }
     
-    /**
-     * Broadcast real-time dashboard statistics
-     */
-    public void broadcastDashboardStats() {
-        try {
-            Map<String, Object> stats = Map.of(
-                "type", "DASHBOARD_STATS",
-                "totalTransactions", merchantTransactionCounts.values().stream().mapToLong(Long::longValue).sum(),
-                "merchantStats", merchantTransactionCounts,
-                "fraudAlerts", fraudAlertCounts.values().stream().mapToLong(Long::longValue).sum(),
-                "fraudByMerchant", fraudAlertCounts,
-                "timestamp", Instant.now()
-            );
-            
-            messagingTemplate.convertAndSend("/topic/dashboard/stats", stats);
-            
-        } catch (Exception e) {
-            log.error("Failed to broadcast dashboard stats: ", e);
-        }
-    }
-    
     /**
      * Send personal notifications to specific users
      */
@@ -170,16 +145,14 @@ public class PaymentEventService {
         return "CRITICAL";
     }
     
-    private void updateMerchantStats(String merchantId) {
-        merchantTransactionCounts.merge(merchantId, 1L, Long::sum);
-    }
-    
     /**
      * Broadcast position updates (like portfolio rebalancing alerts)
      */
     public void broadcastPositionUpdate(DailyPosition position) {
         try {
-            Map<String, Object> positionUpdate = Map.of(
+            // Risk monitoring dashboard and the merchant-specific channel
+            Instant timestamp = Instant.now();
+            publisher.publishWithBinary(position.getMerchantId(), () -> Map.of(
                 "type", "POSITION_UPDATE",
                 "merchantId", position.getMerchantId(),
                 "totalVolume", position.getTotalVolume(),
@@ -188,14 +161,9 @@ public class PaymentEventService {
                 "approvalRate", position.getApprovedCount() > 0 ? 
                     position.getApprovedVolume().divide(position.getTotalVolume(), 4, java.math.RoundingMode.HALF_UP) : 
                     java.math.BigDecimal.ZERO,
-                "timestamp", Instant.now()
-            );
-            
-            // Send to risk monitoring dashboard
-            messagingTemplate.convertAndSend("/topic/risk/positions", positionUpdate);
-            
-            // Send to merchant-specific channel
-            messagingTemplate.convertAndSend("/topic/risk/merchant/" + position.getMerchantId(), positionUpdate);
+                "timestamp", timestamp
+            ), () -> BinaryFeedCodec.position(position, timestamp),
+                "/topic/risk/positions", "/topic/risk/merchant/" + position.getMerchantId());
             
             log.debug("Position update broadcast: {} - Volume: {}", 
                 position.getMerchantId(), position.getTotalVolume());
@@ -222,12 +190,11 @@ public class PaymentEventService {
                 "timestamp", alert.getCreatedAt()
             );
             
-            // Send to risk management dashboard
-            messagingTemplate.convertAndSend("/topic/risk/alerts", riskAlert);
-            
-            // Send critical alerts to admin channel
+            // Send to risk management dashboard, critical alerts also to the admin channel
             if (alert.getAlertLevel() == AlertLevel.CRITICAL || alert.getAlertLevel() == AlertLevel.EMERGENCY) {
-                messagingTemplate.convertAndSend("/topic/admin/critical", riskAlert);
+                publisher.publish(() -> riskAlert, "/topic/risk/alerts", "/topic/admin/critical");
+            } else {
+                publisher.publish(() -> riskAlert, "/topic/risk/alerts");
             }
             
             log.warn("Risk alert broadcast: {} - {} - {}", 
@@ -237,8 +204,4 @@ public class PaymentEventService {
             log.error("Failed to broadcast risk alert: ", e);
         }
     }
-
-    private void updateFraudStats(String merchantId) {
-        fraudAlertCounts.merge(merchantId, 1L, Long::sum);
-    }
 }
\ No newline at end of file
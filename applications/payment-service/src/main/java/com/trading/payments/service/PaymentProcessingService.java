@@ -0,0 +1,151 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.FraudResult;
+import com.trading.payments.dto.JournalEntry;
+import com.trading.payments.dto.PaymentRequest;
+import com.trading.payments.dto.PaymentResponse;
+import com.trading.payments.dto.RiskAssessment;
+import com.trading.payments.dto.TransactionStatus;
+import com.trading.payments.entity.Transaction;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * The payment pipeline shared by POST /api/v1/payments/process and the STOMP
+ * /app/payments/process ingestion path: amount check, pre-transaction risk
+ * assessment, fraud scoring, persistence (journal or database), status cache,
+ * dashboard stats and the real-time event broadcast.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentProcessingService {
+
+    public static final String INVALID_AMOUNT = "Invalid amount";
+
+    private final PaymentService paymentService;
+    private final FraudDetectionService fraudService;
+    private final PaymentEventService eventService;
+    private final PaymentEventBus eventBus;
+    private final RiskManagementService riskService;
+    private final TransactionJournal transactionJournal;
+    private final TransactionStatusCache statusCache;
+    private final DashboardStatsEngine statsEngine;
+
+    /**
+     * Run one (already bean-validated) request through the pipeline. Business
+     * outcomes - APPROVED, DECLINED, BLOCKED - are returned; infrastructure
+     * failures propagate to the caller.
+     */
+    public PaymentResponse process(PaymentRequest request) {
+        long startNanos = System.nanoTime();
+        log.info("Processing payment for merchant: {} amount: {}", request.getMerchantId(), request.getAmount());
+
+        // Generate transaction ID
+        String transactionId = "TXN_" + System.currentTimeMillis() + "_" +
+                              UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+
+        // Basic validation
+        if (request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+            return PaymentResponse.builder()
+                .transactionId(transactionId)
+                .status("DECLINED")
+                .message(INVALID_AMOUNT)
+                .build();
+        }
+
+        // Pre-transaction risk assessment
+        RiskAssessment riskAssessment = riskService.assessTransactionRisk(request);
+        if (!riskAssessment.getApproved()) {
+            statsEngine.record(request.getMerchantId(), "BLOCKED", false, System.nanoTime() - startNanos);
+            return PaymentResponse.builder()
+                .transactionId(transactionId)
+                .status("BLOCKED")
+                .fraudScore(100)
+                .amount(request.getAmount())
+                .currency(request.getCurrency())
+                .message("Risk Management: " + riskAssessment.getReason())
+                .processedAt(Instant.now())
+                .build();
+        }
+
+        // Fraud detection check
+        FraudResult fraudResult = fraudService.evaluateTransaction(request);
+
+        // Determine transaction status based on fraud score
+        String status = fraudResult.getRiskScore() > 50 ? "DECLINED" : "APPROVED";
+
+        // Save transaction to database
+        Transaction transaction = Transaction.builder()
+            .transactionId(transactionId)
+            .merchantId(request.getMerchantId())
+            .cardNumberHash(hashCardNumber(request.getCardNumber()))
+            .amount(request.getAmount())
+            .currency(request.getCurrency())
+            .status(status.toLowerCase())
+            .fraudScore(fraudResult.getRiskScore())
+            .customerIp(request.getCustomerIp())
+            .userAgent(request.getUserAgent())
+            .build();
+
+        if (transactionJournal.isEnabled()) {
+            // Durable-acknowledge mode: journal locally, replay into Postgres asynchronously
+            transaction.setCreatedAt(LocalDateTime.now());
+            transactionJournal.append(JournalEntry.of(transaction, LocalDate.now()));
+        } else {
+            paymentService.saveTransaction(transaction);
+
+            // Update risk positions (post-transaction)
+            riskService.updatePosition(request.getMerchantId(), transaction);
+        }
+
+        // Status is final once durable - write it through for status polling
+        statusCache.put(TransactionStatus.from(transaction));
+
+        // Build response
+        PaymentResponse response = PaymentResponse.builder()
+            .transactionId(transactionId)
+            .status(status)
+            .fraudScore(fraudResult.getRiskScore())
+            .amount(request.getAmount())
+            .currency(request.getCurrency())
+            .message(status.equals("APPROVED") ? "Payment approved" : "Payment declined - high fraud risk")
+            .processedAt(Instant.now())
+            .build();
+
+        log.info("Payment processed: {} status: {} fraud_score: {}",
+                transactionId, status, fraudResult.getRiskScore());
+
+        statsEngine.record(request.getMerchantId(), status, fraudResult.getRiskScore() > 50,
+            System.nanoTime() - startNanos);
+
+        // Broadcast real-time events via STOMP WebSocket - queued, so a slow
+        // broker or a large audience never adds to payment latency
+        eventBus.publish(() -> {
+            eventService.broadcastTransactionEvent(response, request.getMerchantId());
+            if (response.getFraudScore() != null && response.getFraudScore() > 50) {
+                eventService.sendFraudAlert(response, request.getMerchantId());
+            }
+        });
+
+        return response;
+    }
+
+    /** True for responses rejected before the pipeline ran (REST answers these with 400) */
+    public static boolean isInvalid(PaymentResponse response) {
+        return "DECLINED".equals(response.getStatus()) && INVALID_AMOUNT.equals(response.getMessage());
+    }
+
+    private String hashCardNumber(String cardNumber) {
+        // Simple hash for demo - in production use proper PCI-compliant tokenization
+        return DigestUtils.sha256Hex(cardNumber + "SALT_KEY");
+    }
+}
@@ -18,17 +18,27 @@ import java.util.Optional;
 public class PaymentService {
     
     private final TransactionRepository transactionRepository;
+    private final GroupCommitWriter groupCommitWriter;
     
-    @Transactional
+    /**
+     * Persist a transaction. With group commit enabled the call blocks until the
+     * shared batch commit containing this transaction succeeds, so the caller is
+     * only acknowledged once the row is durable - same guarantee as a direct save.
+     */
     public Transaction saveTransaction(Transaction transaction) {
         log.info("Saving transaction: {}", transaction.getTransactionId());
+        if (groupCommitWriter.isEnabled()) {
+            return groupCommitWriter.write(transaction);
+        }
         return transactionRepository.save(transaction);
     }
     
+    @Transactional(readOnly = true)
     public Optional<Transaction> findByTransactionId(String transactionId) {
         return transactionRepository.findByTransactionId(transactionId);
     }
     
+    @Transactional(readOnly = true)
     public MerchantSummary getMerchantSummary(String merchantId, int hours) {
         LocalDateTime since = LocalDateTime.now().minusHours(hours);
         
@@ -27,6 +27,7 @@ public class RiskManagementService {
     private final RiskAlertRepository riskAlertRepository;
     private final TransactionRepository transactionRepository;
     private final PaymentEventService eventService;
+    private final PaymentEventBus eventBus;
     
     /**
      * Pre-transaction risk assessment - called before processing payment
@@ -98,64 +99,96 @@ public class RiskManagementService {
     @Transactional
     public void updatePosition(String merchantId, Transaction transaction) {
         try {
-            DailyPosition position = getCurrentDailyPosition(merchantId);
-            
-            // Update position metrics
-            position.setTotalVolume(position.getTotalVolume().add(transaction.getAmount()));
-            position.setTransactionCount(position.getTransactionCount() + 1);
-            
-            if ("approved".equals(transaction.getStatus())) {
-                position.setApprovedVolume(position.getApprovedVolume().add(transaction.getAmount()));
-                position.setApprovedCount(position.getApprovedCount() + 1);
-            } else {
-                position.setDeclinedVolume(position.getDeclinedVolume().add(transaction.getAmount()));
-                position.setDeclinedCount(position.getDeclinedCount() + 1);
-            }
-            
-            // Update max single transaction
-            if (transaction.getAmount().compareTo(position.getMaxSingleTransaction()) > 0) {
-                position.setMaxSingleTransaction(transaction.getAmount());
-            }
-            
-            // Calculate average fraud score
-            BigDecimal avgFraudScore = calculateAverageFraudScore(merchantId);
-            position.setAvgFraudScore(avgFraudScore);
-            
-            // Calculate risk exposure
-            Optional<MerchantRiskProfile> profile = riskProfileRepository.findByMerchantId(merchantId);
-            if (profile.isPresent()) {
-                BigDecimal exposurePercent = position.getTotalVolume()
-                    .divide(profile.get().getDailyLimit(), 4, RoundingMode.HALF_UP)
-                    .multiply(BigDecimal.valueOf(100));
-                position.setRiskExposurePercent(exposurePercent);
-            }
-            
-            // Save updated position
-            dailyPositionRepository.save(position);
-            
-            // Broadcast position update via WebSocket
-            eventService.broadcastPositionUpdate(position);
-            
-            log.debug("Updated position for {}: volume=${}, count={}, exposure={}%", 
-                merchantId, position.getTotalVolume(), position.getTransactionCount(), 
-                position.getRiskExposurePercent());
-                
+            applyPosition(merchantId, transaction, LocalDate.now());
         } catch (Exception e) {
             log.error("Failed to update position for merchant {}: ", merchantId, e);
         }
     }
     
+    /**
+     * Apply a transaction to the merchant's position for the given day.
+     * Unlike updatePosition, failures propagate so a caller such as the journal
+     * replayer can roll back and retry.
+     */
+    @Transactional
+    public void applyPosition(String merchantId, Transaction transaction, LocalDate positionDate) {
+        DailyPosition position = getDailyPosition(merchantId, positionDate);
+        
+        // Update position metrics
+        position.setTotalVolume(position.getTotalVolume().add(transaction.getAmount()));
+        position.setTransactionCount(position.getTransactionCount() + 1);
+        
+        if ("approved".equals(transaction.getStatus())) {
+            position.setApprovedVolume(position.getApprovedVolume().add(transaction.getAmount()));
+            position.setApprovedCount(position.getApprovedCount() + 1);
+        } else {
+            position.setDeclinedVolume(position.getDeclinedVolume().add(transaction.getAmount()));
+            position.setDeclinedCount(position.getDeclinedCount() + 1);
+        }
+        
+        // Update max single transaction
+        if (transaction.getAmount().compareTo(position.getMaxSingleTransaction()) > 0) {
+            position.setMaxSingleTransaction(transaction.getAmount());
+        }
+        
+        // Calculate average fraud score
+        BigDecimal avgFraudScore = calculateAverageFraudScore(merchantId, positionDate);
+        position.setAvgFraudScore(avgFraudScore);
+        
+        // Calculate risk exposure
+        Optional<MerchantRiskProfile> profile = riskProfileRepository.findByMerchantId(merchantId);
+        if (profile.isPresent()) {
+            BigDecimal exposurePercent = position.getTotalVolume()
+                .divide(profile.get().getDailyLimit(), 4, RoundingMode.HALF_UP)
+                .multiply(BigDecimal.valueOf(100));
+            position.setRiskExposurePercent(exposurePercent);
+        }
+        
+        // Save updated position
+        dailyPositionRepository.save(position);
+        
+        // Broadcast position update via WebSocket (off the request thread)
+        eventBus.publish(() -> eventService.broadcastPositionUpdate(position));
+        
+        log.debug("Updated position for {}: volume=${}, count={}, exposure={}%", 
+            merchantId, position.getTotalVolume(), position.getTransactionCount(), 
+            position.getRiskExposurePercent());
+    }
+    
     /**
      * Get current daily position for merchant
      */
     public DailyPosition getCurrentDailyPosition(String merchantId) {
+        return getDailyPosition(merchantId, LocalDate.now());
+    }
+    
+    private DailyPosition getDailyPosition(String merchantId, LocalDate positionDate) {
+        return dailyPositionRepository.findByMerchantIdAndPositionDate(merchantId, positionDate)
+            .orElseGet(() -> createNewDailyPosition(merchantId, positionDate));
+    }
+    
+    /**
+     * Read-only view of today's position for merchant - unlike getCurrentDailyPosition
+     * this never creates a row, so it can be served from a read replica
+     */
+    @Transactional(readOnly = true)
+    public DailyPosition findCurrentDailyPosition(String merchantId) {
         return dailyPositionRepository.findByMerchantIdAndPositionDate(merchantId, LocalDate.now())
-            .orElseGet(() -> createNewDailyPosition(merchantId));
+            .orElseGet(() -> emptyDailyPosition(merchantId, LocalDate.now()));
+    }
+    
+    /**
+     * Unresolved risk alerts, newest first
+     */
+    @Transactional(readOnly = true)
+    public List<RiskAlert> getActiveAlerts() {
+        return riskAlertRepository.findByIsResolvedFalseOrderByCreatedAtDesc();
     }
     
     /**
      * Get position summary across all merchants
      */
+    @Transactional(readOnly = true)
     public PositionSummary getPortfolioSummary() {
         List<DailyPosition> positions = dailyPositionRepository.findByPositionDate(LocalDate.now());
         
@@ -187,10 +220,14 @@ public class RiskManagementService {
             .build();
     }
     
-    private DailyPosition createNewDailyPosition(String merchantId) {
-        DailyPosition position = DailyPosition.builder()
+    private DailyPosition createNewDailyPosition(String merchantId, LocalDate positionDate) {
+        return dailyPositionRepository.save(emptyDailyPosition(merchantId, positionDate));
+    }
+    
+    private DailyPosition emptyDailyPosition(String merchantId, LocalDate positionDate) {
+        return DailyPosition.builder()
             .merchantId(merchantId)
-            .positionDate(LocalDate.now())
+            .positionDate(positionDate)
             .totalVolume(BigDecimal.ZERO)
             .transactionCount(0)
             .approvedVolume(BigDecimal.ZERO)
@@ -201,8 +238,6 @@ public class RiskManagementService {
             .maxSingleTransaction(BigDecimal.ZERO)
             .riskExposurePercent(BigDecimal.ZERO)
             .build();
-            
-        return dailyPositionRepository.save(position);
     }
     
     private void createRiskAlert(String merchantId, AlertType alertType, AlertLevel alertLevel,
@@ -221,8 +256,8 @@ public class RiskManagementService {
                 
             riskAlertRepository.save(alert);
             
-            // Broadcast alert via WebSocket
-            eventService.broadcastRiskAlert(alert);
+            // Broadcast alert via WebSocket (off the request thread)
+            eventBus.publish(() -> eventService.broadcastRiskAlert(alert));
             
             log.warn("Risk alert created: {} - {} - {}", merchantId, alertType, message);
             
@@ -231,9 +266,9 @@ public class RiskManagementService {
         }
     }
     
-    private BigDecimal calculateAverageFraudScore(String merchantId) {
+    private BigDecimal calculateAverageFraudScore(String merchantId, LocalDate positionDate) {
         Double avgScore = transactionRepository.averageFraudScoreByMerchantSince(
-            merchantId, LocalDateTime.now().withHour(0).withMinute(0).withSecond(0)
+            merchantId, positionDate.atStartOfDay()
         );
         return avgScore != null ? BigDecimal.valueOf(avgScore).setScale(2, RoundingMode.HALF_UP) : BigDecimal.ZERO;
     }
@@ -0,0 +1,137 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.FraudRuleSet;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Scores one payment against a FraudRuleSet, the same way FraudDetectionService
+ * rules 1-8 and the RiskManagementService limits do, from primitive inputs.
+ * Pure and allocation-free, so backtests and shadow evaluation can run many
+ * rule sets per payment.
+ */
+public final class RuleSetEvaluator {
+
+    /** Score returned when a merchant limit blocks the payment */
+    public static final int BLOCKED = -1;
+
+    /** The scoring rules, in FraudDetectionService order (rules 4 and 8 are two checks each) */
+    public static final List<String> RULES = List.of("high_amount", "round_amount", "high_risk_merchant",
+        "card_velocity", "card_amount", "merchant_velocity", "amount_repeats", "off_hours",
+        "card_spread", "merchant_spread");
+
+    private RuleSetEvaluator() {
+    }
+
+    /**
+     * The inputs for one payment, reused across payments by one thread.
+     * Velocity counters follow VelocitySnapshot; day totals are the merchant's
+     * volume and count earlier that day, limits come from its risk profile.
+     */
+    public static final class Inputs {
+        long amountCents;
+        int merchantRiskLevel;
+        int hour;
+        long cardCount;
+        long cardAmountCents;
+        long merchantCount;
+        long amountRepeats;
+        long distinctMerchantsForCard;
+        long distinctCardsForMerchant;
+
+        boolean hasLimits;
+        long dayVolumeCents;
+        long dayCount;
+        long dailyLimitCents;
+        long countLimit;
+        long maxSingleCents;
+    }
+
+    /** Rule thresholds converted to cents once, for the hot loop */
+    public static final class Compiled {
+        final FraudRuleSet rules;
+        final long highAmountCents;
+        final long roundAmountMinimumCents;
+        final long cardAmountLimitCents;
+        final long maxMerchantsPerCard;
+        final long maxCardsPerMerchant;
+
+        /** @param rules a rule set resolved by LiveFraudRules, so every configured field is set */
+        public Compiled(FraudRuleSet rules) {
+            if (rules.getMaxMerchantsPerCard() == null || rules.getMaxCardsPerMerchant() == null) {
+                throw new IllegalArgumentException("Rule set " + rules.getName() + " has unresolved spread thresholds");
+            }
+            this.rules = rules;
+            this.highAmountCents = cents(rules.getHighAmount());
+            this.roundAmountMinimumCents = cents(rules.getRoundAmountMinimum());
+            this.cardAmountLimitCents = cents(rules.getCardAmountLimit());
+            this.maxMerchantsPerCard = rules.getMaxMerchantsPerCard();
+            this.maxCardsPerMerchant = rules.getMaxCardsPerMerchant();
+        }
+
+        public String name() {
+            return rules.getName();
+        }
+
+        public boolean approves(int score) {
+            return score != BLOCKED && score <= rules.getDeclineThreshold();
+        }
+
+        private static long cents(BigDecimal amount) {
+            return amount.movePointRight(2).longValue();
+        }
+    }
+
+    /**
+     * @return the risk score capped at 100, or {@link #BLOCKED} if a scaled
+     *         merchant limit would have stopped the payment before scoring
+     */
+    public static int score(Compiled compiled, Inputs in) {
+        FraudRuleSet rules = compiled.rules;
+
+        if (in.hasLimits) {
+            double scale = rules.getMerchantLimitScale();
+            if (in.amountCents > in.maxSingleCents * scale
+                    || in.dayVolumeCents + in.amountCents > in.dailyLimitCents * scale
+                    || in.dayCount >= in.countLimit * scale) {
+                return BLOCKED;
+            }
+        }
+
+        int score = 0;
+        for (int rule = 0; rule < RULES.size(); rule++) {
+            score += points(compiled, in, rule);
+        }
+        return Math.min(score, 100);
+    }
+
+    /**
+     * Points one rule adds for this payment, rules numbered as in {@link #RULES};
+     * score() is their capped sum, so callers can time or attribute each rule.
+     */
+    public static int points(Compiled compiled, Inputs in, int rule) {
+        FraudRuleSet rules = compiled.rules;
+        return switch (rule) {
+            case 0 -> in.amountCents > compiled.highAmountCents ? rules.getHighAmountPoints() : 0;
+            case 1 -> in.amountCents % 100_000 == 0 && in.amountCents > compiled.roundAmountMinimumCents
+                ? rules.getRoundAmountPoints() : 0;
+            case 2 -> in.merchantRiskLevel >= rules.getHighRiskMerchantLevel() ? rules.getHighRiskMerchantPoints() : 0;
+            case 3 -> in.cardCount >= rules.getCardVelocityCount() ? rules.getCardVelocityPoints() : 0;
+            case 4 -> in.cardAmountCents + in.amountCents > compiled.cardAmountLimitCents ? rules.getCardAmountPoints() : 0;
+            case 5 -> in.merchantCount >= rules.getMerchantVelocityCount() ? rules.getMerchantVelocityPoints() : 0;
+            case 6 -> in.amountRepeats >= rules.getAmountRepeats() ? rules.getAmountRepeatPoints() : 0;
+            case 7 -> isOffHours(rules, in.hour) ? rules.getOffHoursPoints() : 0;
+            case 8 -> in.distinctMerchantsForCard >= compiled.maxMerchantsPerCard ? rules.getCardSpreadPoints() : 0;
+            case 9 -> in.distinctCardsForMerchant >= compiled.maxCardsPerMerchant ? rules.getMerchantSpreadPoints() : 0;
+            default -> throw new IllegalArgumentException("No rule " + rule);
+        };
+    }
+
+    /** Whether the local hour falls in the rule set's off-hours range, which may wrap past midnight */
+    static boolean isOffHours(FraudRuleSet rules, int hour) {
+        int start = rules.getOffHoursStart();
+        int end = rules.getOffHoursEnd();
+        return start > end ? hour >= start || hour <= end : hour >= start && hour <= end;
+    }
+}
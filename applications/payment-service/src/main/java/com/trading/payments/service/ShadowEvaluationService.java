@@ -0,0 +1,392 @@
+package com.trading.payments.service;
+
+import com.trading.payments.config.SchedulingConfig;
+import com.trading.payments.dto.FraudRuleSet;
+import com.trading.payments.dto.ShadowStatus;
+import com.trading.payments.dto.VelocitySnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Shadow evaluation of candidate fraud rules on live traffic
+ * (payment.fraud.shadow.enabled=true).
+ *
+ * FraudDetectionService offers each scored payment - its inputs, velocity
+ * snapshot and live result - to a bounded queue. A full queue drops the
+ * payment and counts it, so /process never waits on the shadow; worker threads
+ * score the queued payments with every candidate and compare the decision with
+ * the live one.
+ *
+ * Candidates are FraudRuleSets (set through ShadowController), which replace
+ * rules 1-8 and keep the live points of the rules they don't cover, and
+ * optionally a model file (payment.fraud.shadow.model.path), which replaces the
+ * live model's points. Merchant limits were already passed on the live path
+ * and are not re-checked; payments they blocked never reach fraud scoring, so
+ * a rule set with a merchantLimitScale is refused here (backtest it instead).
+ *
+ * Metrics per candidate: payment.fraud.shadow.decisions{candidate,outcome}
+ * with outcome agree, newly_approved or newly_declined,
+ * payment.fraud.shadow.latency{candidate}, and for rule sets
+ * payment.fraud.shadow.rule.latency{candidate,rule} per RuleSetEvaluator rule.
+ * payment.fraud.shadow.lag is the time a payment waited in the queue.
+ *
+ * Workers evaluate each payment under the read side of a lock; replacing the
+ * rule sets takes the write side, so no worker is still counting into a
+ * candidate's meters when they are removed.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ShadowEvaluationService {
+
+    private final MeterRegistry meterRegistry;
+    private final LiveFraudRules liveRules;
+
+    @Value("${payment.fraud.shadow.enabled:false}")
+    private boolean enabled;
+
+    @Value("${payment.fraud.shadow.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${payment.fraud.shadow.workers:1}")
+    private int workers;
+
+    @Value("${payment.fraud.shadow.model.path:}")
+    private String modelPath;
+
+    @Value("${payment.fraud.shadow.model.max-points:40}")
+    private int modelMaxPoints;
+
+    private BlockingQueue<Sample> queue;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    private final ReadWriteLock evaluation = new ReentrantReadWriteLock();
+    private volatile List<Candidate> ruleSets = List.of();
+    private volatile Candidate model;
+    private long modelModifiedTime;
+
+    private Counter dropped;
+    private Timer lag;
+
+    /**
+     * One live payment as scored by FraudDetectionService.
+     *
+     * @param rulePoints  points from the live rules 1-8, which a rule set replaces
+     * @param otherPoints points from the live rules neither candidate kind covers (9-11)
+     * @param modelPoints points from the live model, which a model candidate replaces
+     */
+    public record Sample(BigDecimal amount, long amountCents, int merchantRiskLevel, int hour,
+                         VelocitySnapshot velocity, int rulePoints, int otherPoints, int modelPoints,
+                         boolean liveApproved, long enqueuedNanos) {
+    }
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        dropped = Counter.builder("payment.fraud.shadow.dropped").register(meterRegistry);
+        lag = Timer.builder("payment.fraud.shadow.lag")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        Gauge.builder("payment.fraud.shadow.queue", queue, BlockingQueue::size).register(meterRegistry);
+        reloadModel();
+
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(this::runWorker, "fraud-shadow-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        log.info("Shadow fraud evaluation enabled: queue {}, {} workers", queueCapacity, workers);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        threads.forEach(Thread::interrupt);
+    }
+
+    /** Whether a payment offered now would be evaluated; lets the caller skip building the sample */
+    public boolean isActive() {
+        return running && (!ruleSets.isEmpty() || model != null);
+    }
+
+    /** Queue a payment for shadow evaluation, or drop it if the queue is full; never blocks */
+    public void offer(Sample sample) {
+        if (!queue.offer(sample)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Replace the candidate rule sets; their metrics start from zero.
+     *
+     * @throws IllegalArgumentException if a rule set scales the merchant limits
+     */
+    public synchronized void setRuleSets(List<FraudRuleSet> candidates) {
+        for (FraudRuleSet candidate : candidates) {
+            if (candidate.getMerchantLimitScale() != 1.0) {
+                throw new IllegalArgumentException("Rule set " + candidate.getName()
+                    + " scales the merchant limits, which shadow evaluation cannot observe; backtest it instead");
+            }
+        }
+        // Wait out in-flight evaluations: meters are keyed by name, so the old ones
+        // go before a candidate reuses a name, and must not be counted into after
+        evaluation.writeLock().lock();
+        try {
+            ruleSets.forEach(Candidate::removeMeters);
+            List<Candidate> next = new ArrayList<>();
+            for (FraudRuleSet candidate : candidates) {
+                next.add(new RuleSetCandidate(liveRules.resolve(candidate)));
+            }
+            ruleSets = List.copyOf(next);
+        } finally {
+            evaluation.writeLock().unlock();
+        }
+        log.info("Shadow rule sets: {}", candidates.stream().map(FraudRuleSet::getName).toList());
+    }
+
+    public ShadowStatus status() {
+        List<ShadowStatus.CandidateStatus> candidates = new ArrayList<>();
+        List<Candidate> current = new ArrayList<>(ruleSets);
+        if (model != null) {
+            current.add(model);
+        }
+        for (Candidate candidate : current) {
+            long agreed = (long) candidate.agreed.count();
+            long newlyApproved = (long) candidate.newlyApproved.count();
+            long newlyDeclined = (long) candidate.newlyDeclined.count();
+            long evaluated = agreed + newlyApproved + newlyDeclined;
+            candidates.add(ShadowStatus.CandidateStatus.builder()
+                .name(candidate.name)
+                .evaluated(evaluated)
+                .newlyApproved(newlyApproved)
+                .newlyDeclined(newlyDeclined)
+                .disagreementRate(evaluated > 0 ? (double) (newlyApproved + newlyDeclined) / evaluated : 0)
+                .meanLatencyMicros(candidate.latency.mean(TimeUnit.MICROSECONDS))
+                .meanRuleLatencyMicros(candidate.ruleLatencyMicros())
+                .build());
+        }
+        return ShadowStatus.builder()
+            .enabled(enabled)
+            .queued(queue != null ? queue.size() : 0)
+            .dropped(dropped != null ? (long) dropped.count() : 0)
+            .candidates(candidates)
+            .build();
+    }
+
+    @Scheduled(fixedDelayString = "${payment.fraud.shadow.model.reload-interval-ms:30000}", scheduler = SchedulingConfig.BACKGROUND_SCHEDULER)
+    public void reloadModel() {
+        if (!enabled || modelPath.isBlank()) {
+            return;
+        }
+        Path path = Path.of(modelPath);
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            if (modified == modelModifiedTime) {
+                return;
+            }
+            FraudModel.Model loaded = FraudModel.load(path);
+            // Same name as before, so a reloaded model keeps counting into the same meters
+            model = new ModelCandidate("model:" + path.getFileName(), loaded);
+            modelModifiedTime = modified;
+            log.info("Loaded shadow fraud model {}: {}", path, loaded);
+        } catch (Exception e) {
+            log.error("Failed to load shadow fraud model {}, keeping the previous one: {}", path, e.getMessage());
+        }
+    }
+
+    private void runWorker() {
+        RuleSetEvaluator.Inputs inputs = new RuleSetEvaluator.Inputs();
+        double[] features = new double[FraudModel.FEATURE_NAMES.size()];
+        while (running) {
+            Sample sample;
+            try {
+                sample = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (sample == null) {
+                continue;
+            }
+            lag.record(System.nanoTime() - sample.enqueuedNanos(), TimeUnit.NANOSECONDS);
+            evaluation.readLock().lock();
+            try {
+                fill(inputs, sample);
+                for (Candidate candidate : ruleSets) {
+                    candidate.evaluate(sample, inputs, features);
+                }
+                Candidate currentModel = model;
+                if (currentModel != null) {
+                    currentModel.evaluate(sample, inputs, features);
+                }
+            } catch (Exception e) {
+                log.warn("Shadow evaluation failed: {}", e.getMessage());
+            } finally {
+                evaluation.readLock().unlock();
+            }
+        }
+    }
+
+    static void fill(RuleSetEvaluator.Inputs in, Sample sample) {
+        VelocitySnapshot velocity = sample.velocity();
+        in.amountCents = sample.amountCents();
+        in.merchantRiskLevel = sample.merchantRiskLevel();
+        in.hour = sample.hour();
+        in.cardCount = velocity.getCardCount();
+        in.cardAmountCents = velocity.getCardAmount().movePointRight(2).longValue();
+        in.merchantCount = velocity.getMerchantCount();
+        in.amountRepeats = velocity.getAmountRepeats();
+        in.distinctMerchantsForCard = velocity.getDistinctMerchantsForCard();
+        in.distinctCardsForMerchant = velocity.getDistinctCardsForMerchant();
+        in.hasLimits = false;
+    }
+
+    /** A candidate's decision logic and its meters */
+    private abstract class Candidate {
+        final String name;
+        final Counter agreed;
+        final Counter newlyApproved;
+        final Counter newlyDeclined;
+        final Timer latency;
+
+        Candidate(String name) {
+            this.name = name;
+            this.agreed = decisions("agree");
+            this.newlyApproved = decisions("newly_approved");
+            this.newlyDeclined = decisions("newly_declined");
+            this.latency = Timer.builder("payment.fraud.shadow.latency")
+                .tag("candidate", name)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        }
+
+        private Counter decisions(String outcome) {
+            return Counter.builder("payment.fraud.shadow.decisions")
+                .tag("candidate", name)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+        }
+
+        abstract boolean approves(Sample sample, RuleSetEvaluator.Inputs inputs, double[] features);
+
+        void evaluate(Sample sample, RuleSetEvaluator.Inputs inputs, double[] features) {
+            long start = System.nanoTime();
+            boolean approved = approves(sample, inputs, features);
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (approved == sample.liveApproved()) {
+                agreed.increment();
+            } else if (approved) {
+                newlyApproved.increment();
+            } else {
+                newlyDeclined.increment();
+            }
+        }
+
+        void removeMeters() {
+            for (Meter meter : List.of(agreed, newlyApproved, newlyDeclined, latency)) {
+                meterRegistry.remove(meter);
+            }
+        }
+
+        Map<String, Double> ruleLatencyMicros() {
+            return Map.of();
+        }
+    }
+
+    private final class RuleSetCandidate extends Candidate {
+        private final RuleSetEvaluator.Compiled rules;
+        private final Timer[] ruleLatency = new Timer[RuleSetEvaluator.RULES.size()];
+
+        RuleSetCandidate(FraudRuleSet ruleSet) {
+            super(ruleSet.getName());
+            this.rules = new RuleSetEvaluator.Compiled(ruleSet);
+            for (int rule = 0; rule < ruleLatency.length; rule++) {
+                ruleLatency[rule] = Timer.builder("payment.fraud.shadow.rule.latency")
+                    .tag("candidate", name)
+                    .tag("rule", RuleSetEvaluator.RULES.get(rule))
+                    .register(meterRegistry);
+            }
+        }
+
+        @Override
+        boolean approves(Sample sample, RuleSetEvaluator.Inputs inputs, double[] features) {
+            // RuleSetEvaluator.score rule by rule, timing each
+            int score = 0;
+            for (int rule = 0; rule < ruleLatency.length; rule++) {
+                long start = System.nanoTime();
+                score += RuleSetEvaluator.points(rules, inputs, rule);
+                ruleLatency[rule].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            score = Math.min(score, 100) + sample.otherPoints() + sample.modelPoints();
+            return rules.approves(Math.min(score, 100));
+        }
+
+        @Override
+        void removeMeters() {
+            super.removeMeters();
+            for (Timer timer : ruleLatency) {
+                meterRegistry.remove(timer);
+            }
+        }
+
+        @Override
+        Map<String, Double> ruleLatencyMicros() {
+            Map<String, Double> micros = new LinkedHashMap<>();
+            for (int rule = 0; rule < ruleLatency.length; rule++) {
+                micros.put(RuleSetEvaluator.RULES.get(rule), ruleLatency[rule].mean(TimeUnit.MICROSECONDS));
+            }
+            return micros;
+        }
+    }
+
+    private final class ModelCandidate extends Candidate {
+        private final FraudModel.Model candidate;
+
+        ModelCandidate(String name, FraudModel.Model candidate) {
+            super(name);
+            this.candidate = candidate;
+        }
+
+        @Override
+        boolean approves(Sample sample, RuleSetEvaluator.Inputs inputs, double[] features) {
+            Arrays.fill(features, 0);
+            FraudModel.fill(features, sample.amount(), sample.velocity(), sample.merchantRiskLevel(), sample.hour());
+            int points = (int) Math.round(candidate.predict(features) * modelMaxPoints);
+            int score = sample.rulePoints() + sample.otherPoints() + points;
+            return Math.min(score, 100) <= 50;
+        }
+    }
+}
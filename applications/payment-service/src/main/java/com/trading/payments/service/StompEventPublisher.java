@@ -0,0 +1,352 @@
+package com.trading.payments.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+
+/**
+ * Subscription-aware, serialize-once publishing to the STOMP broker.
+ *
+ * Destinations nobody is subscribed to (per the broker's own subscription
+ * registry) are skipped before the payload is even built. The payload is then
+ * serialized to JSON once and the same byte[] is shared by every destination,
+ * instead of convertAndSend running Jackson per destination.
+ *
+ * Replayable feeds (see FeedReplayBuffer) are the exception to the skip: they are
+ * serialized and retained even with no subscribers, and carry a "seq" header.
+ * So are destinations forwarded to other replicas when a RemoteForwarder is set.
+ * Sequenced frames are handed to the broker under the feed's lock in
+ * FeedReplayBuffer, so concurrent publishers cannot send seq N+1 before seq N.
+ *
+ * Compact encodings (negotiated per subscription, see FeedEncodingInterceptor)
+ * are variants of a JSON topic sent with the same seq, so a client on either
+ * can use the JSON feed's snapshot and /since replies. /topic/bin/... carries
+ * the BinaryFeedCodec frame passed to {@link #publishWithBinary}, encoded only
+ * while someone is subscribed to it or it is forwarded; /topic/deflate/...
+ * mirrors every JSON topic with the same body raw-deflated, compressed once per
+ * event and only while someone is subscribed to the variant. Both go out as
+ * application/octet-stream, which the STOMP handler writes as binary WebSocket
+ * frames.
+ */
+@Service
+@Slf4j
+public class StompEventPublisher {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /** Per-topic sequence number on replayable feeds, see FeedReplayBuffer */
+    public static final String SEQ_HEADER = "seq";
+
+    /** Set to "deflate" on /topic/deflate/... frames whose body is compressed */
+    public static final String CONTENT_ENCODING_HEADER = "content-encoding";
+
+    public static final String BINARY_PREFIX = "/topic/bin/";
+    public static final String DEFLATE_PREFIX = "/topic/deflate/";
+
+    private static final String TOPIC_PREFIX = "/topic/";
+
+    // Variant destination per topic, "" for none; merchant topics make the key set open-ended
+    private static final int MAX_CACHED_VARIANTS = 10_000;
+    private static final Map<String, String> DEFLATE_VARIANTS = new ConcurrentHashMap<>();
+    private static final Map<String, String> BINARY_VARIANTS = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Deflater> DEFLATER =
+        ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final SubscriptionRegistry subscriptionRegistry;
+    private final ObjectMapper objectMapper;
+    private final FeedReplayBuffer replayBuffer;
+
+    private final int deflateMinBytes;
+
+    private volatile RemoteForwarder remoteForwarder;
+
+    private final Counter serialized;
+    private final Counter delivered;
+    private final Counter skipped;
+    private final DistributionSummary jsonBytes;
+    private final DistributionSummary binaryBytes;
+    private final DistributionSummary deflatedBytes;
+
+    /**
+     * Hands serialized events to other replicas (see ClusterFanoutRelay).
+     */
+    public interface RemoteForwarder {
+
+        boolean forwards(String destination);
+
+        /**
+         * @param binary BinaryFeedCodec frame for the /topic/bin/ variant of
+         *               destinations[0], or null
+         */
+        void forward(String[] destinations, String key, byte[] body, byte[] binary);
+    }
+
+    public StompEventPublisher(SimpMessagingTemplate messagingTemplate,
+                               @Qualifier("simpleBrokerMessageHandler") AbstractBrokerMessageHandler brokerMessageHandler,
+                               ObjectMapper objectMapper,
+                               FeedReplayBuffer replayBuffer,
+                               MeterRegistry meterRegistry,
+                               @Value("${payment.websocket.encoding.deflate-min-bytes:256}") int deflateMinBytes) {
+        this.messagingTemplate = messagingTemplate;
+        // Only the in-memory broker exposes its registry; with an external relay every destination counts as live
+        this.subscriptionRegistry = brokerMessageHandler instanceof SimpleBrokerMessageHandler simpleBroker ?
+            simpleBroker.getSubscriptionRegistry() : null;
+        this.objectMapper = objectMapper;
+        this.replayBuffer = replayBuffer;
+        this.deflateMinBytes = deflateMinBytes;
+
+        this.serialized = Counter.builder("payment.events.serialized")
+            .description("Event payloads serialized (once per event, not per destination)")
+            .register(meterRegistry);
+        this.delivered = Counter.builder("payment.events.destinations").tag("result", "sent").register(meterRegistry);
+        this.skipped = Counter.builder("payment.events.destinations").tag("result", "no_subscribers").register(meterRegistry);
+        this.jsonBytes = eventBytes("json", meterRegistry);
+        this.binaryBytes = eventBytes("binary", meterRegistry);
+        this.deflatedBytes = eventBytes("deflate", meterRegistry);
+    }
+
+    private static DistributionSummary eventBytes(String encoding, MeterRegistry meterRegistry) {
+        return DistributionSummary.builder("payment.events.bytes")
+            .description("Encoded event body size, once per event")
+            .baseUnit("bytes")
+            .tag("encoding", encoding)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Publish one payload to the given destinations. The supplier is only called
+     * if at least one destination has a subscriber or is retained for replay.
+     *
+     * @return the number of destinations the event was sent to
+     */
+    public int publish(Supplier<?> payload, String... destinations) {
+        return publishKeyed(null, payload, destinations);
+    }
+
+    /**
+     * Like {@link #publish}, with the merchant the event belongs to so replayable
+     * keyed feeds can snapshot the latest event per merchant.
+     */
+    public int publishKeyed(String key, Supplier<?> payload, String... destinations) {
+        return publishWithBinary(key, payload, null, destinations);
+    }
+
+    /**
+     * Like {@link #publishKeyed}, and also send {@code binary}, a BinaryFeedCodec
+     * frame of the same event, to subscribers of the /topic/bin/ variant of the
+     * first destination, with the JSON event's seq.
+     */
+    public int publishWithBinary(String key, Supplier<?> payload, Supplier<byte[]> binary, String... destinations) {
+        boolean[] live = new boolean[destinations.length];
+        int liveCount = 0;
+        boolean retained = false;
+        boolean remote = false;
+        RemoteForwarder forwarder = remoteForwarder;
+        for (int i = 0; i < destinations.length; i++) {
+            live[i] = hasSubscribers(destinations[i]) || hasDeflateSubscribers(destinations[i]);
+            if (live[i]) {
+                liveCount++;
+            } else {
+                skipped.increment();
+            }
+            retained |= replayBuffer.isSequenced(destinations[i]);
+            remote |= forwarder != null && forwarder.forwards(destinations[i]);
+        }
+        boolean binaryLive = binary != null && hasBinarySubscribers(destinations[0]);
+        if (binaryLive) {
+            liveCount++;
+        }
+        if (liveCount == 0 && !retained && !remote) {
+            return 0;
+        }
+
+        byte[] body;
+        byte[] binaryBody = null;
+        try {
+            body = objectMapper.writeValueAsBytes(payload.get());
+            if (binaryLive || (remote && binary != null)) {
+                binaryBody = binary.get();
+                binaryBytes.record(binaryBody.length);
+            }
+        } catch (Exception e) {
+            log.error("Failed to serialize event for {}: ", destinations[0], e);
+            return 0;
+        }
+        serialized.increment();
+        jsonBytes.record(body.length);
+
+        deliver(destinations, live, key, body, binaryLive ? binaryBody : null);
+        if (remote) {
+            forwarder.forward(destinations, key, body, binaryBody);
+        }
+        return liveCount;
+    }
+
+    /**
+     * Deliver an event another node already serialized and published, to this
+     * node's subscribers only.
+     *
+     * @param binary the event's /topic/bin/ frame for destinations[0], or null
+     */
+    public int deliverRemote(String[] destinations, String key, byte[] body, byte[] binary) {
+        boolean[] live = new boolean[destinations.length];
+        int liveCount = 0;
+        for (int i = 0; i < destinations.length; i++) {
+            live[i] = hasSubscribers(destinations[i]) || hasDeflateSubscribers(destinations[i]);
+            if (live[i]) {
+                liveCount++;
+            }
+        }
+        boolean binaryLive = binary != null && hasBinarySubscribers(destinations[0]);
+        if (binaryLive) {
+            liveCount++;
+        }
+        deliver(destinations, live, key, body, binaryLive ? binary : null);
+        return liveCount;
+    }
+
+    public void setRemoteForwarder(RemoteForwarder remoteForwarder) {
+        this.remoteForwarder = remoteForwarder;
+    }
+
+    private void deliver(String[] destinations, boolean[] live, String key, byte[] body, byte[] binary) {
+        // Immutable headers: the template copies them per destination, the body is shared
+        Message<byte[]> unsequenced = null;
+        byte[] deflated = null;
+        for (int i = 0; i < destinations.length; i++) {
+            String destination = destinations[i];
+            boolean plain = live[i] && hasSubscribers(destination);
+            String deflateDestination = live[i] && hasDeflateSubscribers(destination) ? deflateVariant(destination) : null;
+            String binaryDestination = i == 0 && binary != null ? binaryVariant(destination) : null;
+
+            // Encode outside the feed lock; only the sends themselves run under it
+            if (plain && unsequenced == null && !replayBuffer.isSequenced(destination)) {
+                unsequenced = MessageBuilder.withPayload(body)
+                    .setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON)
+                    .build();
+            }
+            // Small bodies barely shrink; they go out unchanged and without the header
+            if (deflateDestination != null && body.length >= deflateMinBytes && deflated == null) {
+                deflated = deflate(body);
+                deflatedBytes.record(deflated.length);
+            }
+
+            Message<byte[]> shared = unsequenced;
+            byte[] compressed = deflated;
+            replayBuffer.append(destination, key, body, seq -> {
+                if (plain) {
+                    messagingTemplate.send(destination, seq >= 0 ?
+                        encodedMessage(body, MimeTypeUtils.APPLICATION_JSON, seq, null) : shared);
+                    delivered.increment();
+                }
+                if (deflateDestination != null) {
+                    messagingTemplate.send(deflateDestination, compressed == null ?
+                        encodedMessage(body, MimeTypeUtils.APPLICATION_JSON, seq, null) :
+                        encodedMessage(compressed, MimeTypeUtils.APPLICATION_OCTET_STREAM, seq, "deflate"));
+                    delivered.increment();
+                }
+                if (binaryDestination != null) {
+                    messagingTemplate.send(binaryDestination,
+                        encodedMessage(binary, MimeTypeUtils.APPLICATION_OCTET_STREAM, seq, null));
+                    delivered.increment();
+                }
+            });
+        }
+    }
+
+    private static Message<byte[]> encodedMessage(byte[] body, MimeType contentType, long seq, String contentEncoding) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(contentType);
+        if (seq >= 0) {
+            accessor.setNativeHeader(SEQ_HEADER, Long.toString(seq));
+        }
+        if (contentEncoding != null) {
+            accessor.setNativeHeader(CONTENT_ENCODING_HEADER, contentEncoding);
+        }
+        return MessageBuilder.createMessage(body, accessor.getMessageHeaders());
+    }
+
+    private static byte[] deflate(byte[] body) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(body);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2 + 16);
+        byte[] buffer = new byte[1024];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return out.toByteArray();
+    }
+
+    public static boolean isBinary(String destination) {
+        return destination.startsWith(BINARY_PREFIX);
+    }
+
+    /** /topic/x -> /topic/deflate/x for JSON topics, null for binary or already-deflated ones */
+    public static String deflateVariant(String destination) {
+        return variant(DEFLATE_VARIANTS, DEFLATE_PREFIX, destination);
+    }
+
+    /** /topic/x -> /topic/bin/x for JSON topics, null for binary or deflated ones */
+    static String binaryVariant(String destination) {
+        return variant(BINARY_VARIANTS, BINARY_PREFIX, destination);
+    }
+
+    private static String variant(Map<String, String> cache, String prefix, String destination) {
+        String variant = cache.get(destination);
+        if (variant == null) {
+            boolean json = destination.startsWith(TOPIC_PREFIX) && !isBinary(destination)
+                && !destination.startsWith(DEFLATE_PREFIX);
+            variant = json ? prefix + destination.substring(TOPIC_PREFIX.length()) : "";
+            if (cache.size() < MAX_CACHED_VARIANTS) {
+                cache.put(destination, variant);
+            }
+        }
+        return variant.isEmpty() ? null : variant;
+    }
+
+    // Without a subscription registry the variant is never considered live, or every event would be compressed
+    private boolean hasDeflateSubscribers(String destination) {
+        String variant = deflateVariant(destination);
+        return variant != null && subscriptionRegistry != null && hasSubscribers(variant);
+    }
+
+    private boolean hasBinarySubscribers(String destination) {
+        String variant = binaryVariant(destination);
+        return variant != null && hasSubscribers(variant);
+    }
+
+    public boolean hasSubscribers(String destination) {
+        if (subscriptionRegistry == null) {
+            return true;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return !subscriptionRegistry.findSubscriptions(MessageBuilder.createMessage(EMPTY, accessor.getMessageHeaders())).isEmpty();
+    }
+}
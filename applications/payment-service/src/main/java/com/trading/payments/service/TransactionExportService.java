@@ -0,0 +1,227 @@
+package com.trading.payments.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Streams transactions for a merchant and time range straight to an output stream.
+ *
+ * Rows are read in keyset pages ordered by (created_at, id), each page through a
+ * server-side cursor with a bounded fetch size, and written as they arrive. No
+ * page is ever materialised, so memory use is the same for a thousand rows or
+ * fifty million.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TransactionExportService {
+
+    private static final String PAGE_QUERY = """
+        SELECT id, transaction_id, merchant_id, amount, currency, status, fraud_score,
+               payment_method, customer_ip, created_at
+        FROM transactions
+        WHERE merchant_id = ?
+          AND created_at >= ? AND created_at < ?
+          AND (created_at, id) > (?, ?)
+        ORDER BY created_at, id
+        LIMIT ?
+        """;
+
+    private static final String CSV_HEADER =
+        "id,transaction_id,merchant_id,amount,currency,status,fraud_score,payment_method,customer_ip,created_at\n";
+
+    public enum Format { NDJSON, CSV }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+
+    @Value("${payment.export.page-size:10000}")
+    private int pageSize;
+
+    @Value("${payment.export.fetch-size:500}")
+    private int fetchSize;
+
+    public long export(String merchantId, LocalDateTime from, LocalDateTime to,
+                       Format format, OutputStream out) throws IOException {
+        OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        RowWriter writer = format == Format.CSV ? new CsvRowWriter(buffered) : new NdjsonRowWriter(buffered);
+
+        // Postgres only streams with a cursor inside a transaction
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        Cursor cursor = new Cursor(Timestamp.valueOf(from), 0);
+        long total = 0;
+
+        while (true) {
+            Cursor pageStart = new Cursor(cursor.createdAt, cursor.id);
+            int rows = readOnly.execute(status -> {
+                int[] count = {0};
+                jdbcTemplate.query(connection -> {
+                    var statement = connection.prepareStatement(PAGE_QUERY);
+                    statement.setFetchSize(fetchSize);
+                    statement.setString(1, merchantId);
+                    statement.setTimestamp(2, Timestamp.valueOf(from));
+                    statement.setTimestamp(3, Timestamp.valueOf(to));
+                    statement.setTimestamp(4, pageStart.createdAt);
+                    statement.setLong(5, pageStart.id);
+                    statement.setInt(6, pageSize);
+                    return statement;
+                }, (RowCallbackHandler) rs -> {
+                    writer.write(rs);
+                    cursor.createdAt = rs.getTimestamp("created_at");
+                    cursor.id = rs.getLong("id");
+                    count[0]++;
+                });
+                return count[0];
+            });
+
+            total += rows;
+            writer.flush();
+            buffered.flush();
+            if (rows < pageSize) {
+                break;
+            }
+        }
+
+        log.info("Exported {} transactions for merchant {} between {} and {}", total, merchantId, from, to);
+        return total;
+    }
+
+    private static final class Cursor {
+        private Timestamp createdAt;
+        private long id;
+
+        private Cursor(Timestamp createdAt, long id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+    }
+
+    private interface RowWriter {
+        void write(ResultSet rs) throws SQLException;
+
+        void flush() throws IOException;
+    }
+
+    private final class NdjsonRowWriter implements RowWriter {
+        private final OutputStream out;
+        private final JsonGenerator generator;
+
+        private NdjsonRowWriter(OutputStream out) throws IOException {
+            this.out = out;
+            this.generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+            this.generator.setRootValueSeparator(null);
+            // Row flushes only drain into the page buffer, not onto the socket
+            this.generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException {
+            try {
+                generator.writeStartObject();
+                generator.writeNumberField("id", rs.getLong("id"));
+                generator.writeStringField("transactionId", rs.getString("transaction_id"));
+                generator.writeStringField("merchantId", rs.getString("merchant_id"));
+                generator.writeNumberField("amount", rs.getBigDecimal("amount"));
+                generator.writeStringField("currency", rs.getString("currency"));
+                generator.writeStringField("status", rs.getString("status"));
+                generator.writeNumberField("fraudScore", rs.getInt("fraud_score"));
+                generator.writeStringField("paymentMethod", rs.getString("payment_method"));
+                generator.writeStringField("customerIp", rs.getString("customer_ip"));
+                Timestamp createdAt = rs.getTimestamp("created_at");
+                generator.writeStringField("createdAt", createdAt != null ? createdAt.toLocalDateTime().toString() : null);
+                generator.writeEndObject();
+                generator.flush();
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer out;
+
+        private CsvRowWriter(OutputStream out) throws IOException {
+            this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            this.out.write(CSV_HEADER);
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException {
+            try {
+                out.write(Long.toString(rs.getLong("id")));
+                out.write(',');
+                writeField(rs.getString("transaction_id"));
+                out.write(',');
+                writeField(rs.getString("merchant_id"));
+                out.write(',');
+                BigDecimal amount = rs.getBigDecimal("amount");
+                out.write(amount != null ? amount.toPlainString() : "");
+                out.write(',');
+                writeField(rs.getString("currency"));
+                out.write(',');
+                writeField(rs.getString("status"));
+                out.write(',');
+                out.write(Integer.toString(rs.getInt("fraud_score")));
+                out.write(',');
+                writeField(rs.getString("payment_method"));
+                out.write(',');
+                writeField(rs.getString("customer_ip"));
+                out.write(',');
+                Timestamp createdAt = rs.getTimestamp("created_at");
+                out.write(createdAt != null ? createdAt.toLocalDateTime().toString() : "");
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                out.write(value);
+                return;
+            }
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
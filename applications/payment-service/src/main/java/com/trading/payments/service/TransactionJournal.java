@@ -0,0 +1,378 @@
+package com.trading.payments.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.trading.payments.dto.JournalEntry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of finished transactions.
+ *
+ * The journal is a directory of fixed-size segment files named by a monotonically
+ * increasing segment number. Each record is laid out as
+ * {@code [int length][int crc32][payload]}; the length is written last, so a record
+ * torn by a crash reads back as length 0 (or a CRC mismatch) and marks the end of
+ * the segment. Every append is forced to disk before it returns.
+ *
+ * The replayer tracks how far it has drained with a checkpoint file
+ * ({@code segment}, {@code offset}); segments wholly behind the checkpoint are deleted.
+ * Records that can never be applied are appended to {@code dead-letter.jsonl} so the
+ * replayer can move past them.
+ *
+ * {@link #read}, {@link #acknowledge} and {@link #deadLetter} belong to the single
+ * replayer thread; it maps each segment once and keeps the mapping until it moves on.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TransactionJournal {
+
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String DEAD_LETTER_FILE = "dead-letter.jsonl";
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${payment.journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${payment.journal.directory:/var/lib/payment-service/journal}")
+    private String directory;
+
+    @Value("${payment.journal.segment-size-bytes:67108864}")
+    private int segmentSize;
+
+    private Path journalDir;
+
+    // Writer state, guarded by this
+    private FileChannel activeChannel;
+    private MappedByteBuffer activeBuffer;
+    private long activeSegment;
+    private int writePosition;
+
+    // Published for the replayer: how far the active segment may be read
+    private volatile long publishedSegment = -1;
+    private volatile int publishedPosition;
+
+    // Reader state, used only by the replayer
+    private long readSegment = -1;
+    private MappedByteBuffer readBuffer;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private Counter deadLettered;
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        journalDir = Paths.get(directory);
+        Files.createDirectories(journalDir);
+
+        List<Long> existing = listSegments();
+        long next = existing.isEmpty() ? 0 : existing.get(existing.size() - 1) + 1;
+        if (!existing.isEmpty()) {
+            log.warn("Found {} journal segment(s) from a previous run - they will be replayed into Postgres", existing.size());
+        }
+
+        // Never append to a segment from a previous run: it may end in a torn record
+        rollTo(next);
+
+        // Replay also drains entries left by a previous run, which this run never counted as appended
+        Gauge.builder("payment.journal.backlog", this, j -> Math.max(0, j.appended.get() - j.replayed.get()))
+            .description("Journaled transactions not yet replayed into Postgres in this run")
+            .register(meterRegistry);
+        deadLettered = Counter.builder("payment.journal.dead_lettered")
+            .description("Journal records moved to the dead-letter file instead of Postgres")
+            .register(meterRegistry);
+
+        log.info("Transaction journal open at {} (segment size {} bytes)", journalDir, segmentSize);
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        if (activeChannel != null) {
+            activeBuffer.force();
+            activeChannel.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Append an entry and force it to disk. Once this returns the entry survives
+     * a process or node crash and will be replayed into Postgres.
+     */
+    public synchronized void append(JournalEntry entry) {
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize journal entry " + entry.getTransactionId(), e);
+        }
+
+        int recordSize = HEADER_BYTES + payload.length;
+        if (recordSize > segmentSize - HEADER_BYTES) {
+            throw new IllegalArgumentException("Journal entry larger than segment: " + recordSize + " bytes");
+        }
+
+        try {
+            // Keep room for a zero length marker after the last record
+            if (writePosition + recordSize + HEADER_BYTES > segmentSize) {
+                activeBuffer.force();
+                rollTo(activeSegment + 1);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            int start = writePosition;
+            activeBuffer.putInt(start + 4, (int) crc.getValue());
+            activeBuffer.put(start + HEADER_BYTES, payload);
+            activeBuffer.putInt(start, payload.length);
+            activeBuffer.force(start, recordSize);
+
+            writePosition += recordSize;
+            publishedPosition = writePosition;
+            appended.incrementAndGet();
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to transaction journal", e);
+        }
+    }
+
+    /**
+     * Read up to {@code max} records starting at the given position. Returns the
+     * entries, the records whose payload no longer parses, and the position just
+     * after the last one; moving past a fully read, sealed segment is reflected in
+     * the returned position.
+     */
+    public ReadResult read(Position from, int max) throws IOException {
+        List<JournalEntry> entries = new ArrayList<>();
+        List<Unreadable> unreadable = new ArrayList<>();
+        Position position = from;
+
+        while (entries.size() + unreadable.size() < max) {
+            long segment = position.segment();
+            Path file = segmentPath(segment);
+            if (!Files.exists(file)) {
+                Long following = nextSegmentAfter(segment);
+                if (following == null) {
+                    break;
+                }
+                position = new Position(following, 0);
+                continue;
+            }
+
+            boolean active = segment == publishedSegment;
+            int limit = active ? publishedPosition : segmentSize;
+            int offset = position.offset();
+
+            MappedByteBuffer buffer = mapForRead(segment, file);
+            int readable = Math.min(buffer.capacity(), limit);
+
+            while (entries.size() + unreadable.size() < max && offset + HEADER_BYTES <= readable) {
+                int length = buffer.getInt(offset);
+                if (length <= 0 || offset + HEADER_BYTES + length > readable) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(offset + HEADER_BYTES, payload);
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                    log.warn("Torn journal record in segment {} at offset {} - skipping rest of segment", segment, offset);
+                    break;
+                }
+
+                try {
+                    entries.add(objectMapper.readValue(payload, JournalEntry.class));
+                } catch (JsonProcessingException e) {
+                    // Intact on disk but not an entry this version can read; retrying will not help
+                    unreadable.add(new Unreadable(new Position(segment, offset), payload, e.getOriginalMessage()));
+                }
+                offset += HEADER_BYTES + length;
+            }
+
+            position = new Position(segment, offset);
+            if (entries.size() + unreadable.size() >= max || active) {
+                break;
+            }
+
+            // Sealed segment fully read - continue with the next one
+            Long following = nextSegmentAfter(segment);
+            if (following == null) {
+                break;
+            }
+            position = new Position(following, 0);
+        }
+
+        return new ReadResult(entries, unreadable, position);
+    }
+
+    /**
+     * Map a segment for reading, reusing the mapping while the replayer stays on it.
+     * Writers extend a segment to its full size when they create it, so one mapping
+     * covers everything later appended to the active segment.
+     */
+    private MappedByteBuffer mapForRead(long segment, Path file) throws IOException {
+        if (segment != readSegment) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                readBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), segmentSize));
+            }
+            readSegment = segment;
+        }
+        return readBuffer;
+    }
+
+    /**
+     * Record that everything before {@code position} is committed in Postgres and
+     * delete segments that lie wholly behind it.
+     */
+    public void acknowledge(Position position, int count) throws IOException {
+        Path tmp = journalDir.resolve(CHECKPOINT_FILE + ".tmp");
+        String content = position.segment() + ":" + position.offset();
+        Files.write(tmp, content.getBytes(StandardCharsets.US_ASCII),
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        Files.move(tmp, journalDir.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE);
+
+        replayed.addAndGet(count);
+
+        for (long segment : listSegments()) {
+            if (segment < position.segment()) {
+                Files.deleteIfExists(segmentPath(segment));
+                log.debug("Deleted replayed journal segment {}", segment);
+            }
+        }
+        if (readSegment < position.segment()) {
+            readSegment = -1;
+            readBuffer = null;
+        }
+    }
+
+    /**
+     * Set aside an entry Postgres rejects, so replay can move past it.
+     */
+    public void deadLetter(JournalEntry entry, String reason) throws IOException {
+        ObjectNode record = objectMapper.createObjectNode();
+        record.put("reason", reason);
+        record.set("entry", objectMapper.valueToTree(entry));
+        writeDeadLetter(record);
+    }
+
+    /**
+     * Set aside a record whose payload does not parse, keeping its raw bytes.
+     */
+    public void deadLetter(Unreadable unreadable) throws IOException {
+        ObjectNode record = objectMapper.createObjectNode();
+        record.put("segment", unreadable.position().segment());
+        record.put("offset", unreadable.position().offset());
+        record.put("reason", unreadable.error());
+        record.put("payload", Base64.getEncoder().encodeToString(unreadable.payload()));
+        writeDeadLetter(record);
+    }
+
+    private void writeDeadLetter(ObjectNode record) throws IOException {
+        byte[] line = (objectMapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+        Files.write(journalDir.resolve(DEAD_LETTER_FILE), line,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+            StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        deadLettered.increment();
+    }
+
+    /**
+     * Position the replayer should resume from - the last checkpoint, or the
+     * start of the oldest segment when there is none.
+     */
+    public Position startPosition() throws IOException {
+        Path checkpoint = journalDir.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            String[] parts = Files.readString(checkpoint, StandardCharsets.US_ASCII).trim().split(":");
+            return new Position(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+        }
+        List<Long> segments = listSegments();
+        return new Position(segments.isEmpty() ? 0 : segments.get(0), 0);
+    }
+
+    private void rollTo(long segment) throws IOException {
+        if (activeChannel != null) {
+            activeChannel.close();
+        }
+        activeChannel = FileChannel.open(segmentPath(segment),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        activeBuffer = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        activeSegment = segment;
+        writePosition = 0;
+        publishedPosition = 0;
+        publishedSegment = segment;
+        log.debug("Rolled transaction journal to segment {}", segment);
+    }
+
+    private Long nextSegmentAfter(long segment) throws IOException {
+        for (long candidate : listSegments()) {
+            if (candidate > segment) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files
+                .map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                .sorted()
+                .toList();
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return journalDir.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    public record Position(long segment, int offset) {
+    }
+
+    public record ReadResult(List<JournalEntry> entries, List<Unreadable> unreadable, Position next) {
+    }
+
+    public record Unreadable(Position position, byte[] payload, String error) {
+    }
+}
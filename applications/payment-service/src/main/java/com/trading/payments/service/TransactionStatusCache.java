@@ -0,0 +1,239 @@
+package com.trading.payments.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.trading.payments.dto.TransactionStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-through cache for transaction status polling.
+ *
+ * The status is known the moment a payment is persisted, so processPayment
+ * writes it here and GET /status/{transactionId} only falls back to Postgres on
+ * a miss. Lookups go to a bounded, per-pod LRU first, then to Redis (shared by
+ * all replicas, with a TTL), then to the database.
+ *
+ * The local LRU is split into lock stripes by transaction id, so concurrent
+ * polls rarely contend. The Redis tier is written behind: put() queues the
+ * status and a writer thread pipelines queued SETs, so /process never waits on
+ * Redis. A full queue drops the Redis write and counts it; the status is still
+ * in this pod's LRU and in Postgres, so a poll elsewhere only costs a DB read.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TransactionStatusCache {
+
+    private static final String KEY_PREFIX = "txn_status:";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${payment.status-cache.local-max-entries:50000}")
+    private int localMaxEntries;
+
+    @Value("${payment.status-cache.local-stripes:16}")
+    private int localStripes;
+
+    @Value("${payment.status-cache.redis-ttl-seconds:900}")
+    private long redisTtlSeconds;
+
+    @Value("${payment.status-cache.write-queue-capacity:10000}")
+    private int writeQueueCapacity;
+
+    @Value("${payment.status-cache.write-batch-size:256}")
+    private int writeBatchSize;
+
+    private Stripe[] stripes;
+    private BlockingQueue<TransactionStatus> pendingWrites;
+    private Thread writer;
+    private volatile boolean running;
+
+    private Counter localHits;
+    private Counter redisHits;
+    private Counter misses;
+    private Counter writesDropped;
+
+    @PostConstruct
+    void init() {
+        int stripeCount = localStripes <= 1 ? 1 : Integer.highestOneBit(localStripes - 1) << 1;
+        int stripeCapacity = Math.max(1, localMaxEntries / stripeCount);
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+        pendingWrites = new ArrayBlockingQueue<>(writeQueueCapacity);
+
+        localHits = Counter.builder("payment.status_cache.requests").tag("result", "local_hit").register(meterRegistry);
+        redisHits = Counter.builder("payment.status_cache.requests").tag("result", "redis_hit").register(meterRegistry);
+        misses = Counter.builder("payment.status_cache.requests").tag("result", "miss").register(meterRegistry);
+        writesDropped = Counter.builder("payment.status_cache.redis_writes_dropped")
+            .description("Statuses not written to Redis because the write-behind queue was full")
+            .register(meterRegistry);
+
+        Gauge.builder("payment.status_cache.hit_ratio", this, TransactionStatusCache::hitRatio)
+            .description("Share of status lookups answered without Postgres")
+            .register(meterRegistry);
+        FunctionCounter.builder("payment.status_cache.db_reads_saved", this,
+                cache -> cache.localHits.count() + cache.redisHits.count())
+            .description("Status lookups that did not need a database read")
+            .register(meterRegistry);
+        Gauge.builder("payment.status_cache.local_size", this, cache -> cache.localSize())
+            .register(meterRegistry);
+        Gauge.builder("payment.status_cache.redis_write_queue", pendingWrites, BlockingQueue::size)
+            .register(meterRegistry);
+
+        running = true;
+        writer = new Thread(this::runWriter, "status-cache-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        writer.join(5000);
+    }
+
+    /**
+     * Store the status locally and queue it for Redis. Called once the
+     * transaction is durable; never blocks on Redis.
+     */
+    public void put(TransactionStatus status) {
+        putLocal(status);
+        if (!pendingWrites.offer(status)) {
+            writesDropped.increment();
+        }
+    }
+
+    public Optional<TransactionStatus> get(String transactionId) {
+        Stripe stripe = stripe(transactionId);
+        TransactionStatus status;
+        synchronized (stripe) {
+            status = stripe.entries.get(transactionId);
+        }
+        if (status != null) {
+            localHits.increment();
+            return Optional.of(status);
+        }
+
+        try {
+            String json = redisTemplate.opsForValue().get(KEY_PREFIX + transactionId);
+            if (json != null) {
+                status = objectMapper.readValue(json, TransactionStatus.class);
+                putLocal(status);
+                redisHits.increment();
+                return Optional.of(status);
+            }
+        } catch (Exception e) {
+            log.warn("Redis status lookup failed: {}", e.getMessage());
+        }
+
+        misses.increment();
+        return Optional.empty();
+    }
+
+    private void putLocal(TransactionStatus status) {
+        Stripe stripe = stripe(status.getTransactionId());
+        synchronized (stripe) {
+            stripe.entries.put(status.getTransactionId(), status);
+        }
+    }
+
+    private int localSize() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.entries.size();
+            }
+        }
+        return size;
+    }
+
+    private Stripe stripe(String transactionId) {
+        int hash = transactionId.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    private void runWriter() {
+        List<TransactionStatus> batch = new ArrayList<>(writeBatchSize);
+        // Keep draining after stop() so statuses queued during shutdown still reach Redis
+        while (running || !pendingWrites.isEmpty()) {
+            try {
+                TransactionStatus first = pendingWrites.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pendingWrites.drainTo(batch, writeBatchSize - 1);
+                writeToRedis(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("Failed to cache {} transaction statuses in Redis: {}", batch.size(), e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeToRedis(List<TransactionStatus> batch) throws Exception {
+        List<byte[]> keys = new ArrayList<>(batch.size());
+        List<byte[]> values = new ArrayList<>(batch.size());
+        for (TransactionStatus status : batch) {
+            keys.add((KEY_PREFIX + status.getTransactionId()).getBytes(StandardCharsets.UTF_8));
+            values.add(objectMapper.writeValueAsBytes(status));
+        }
+        Expiration ttl = Expiration.seconds(redisTtlSeconds);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < keys.size(); i++) {
+                connection.stringCommands().set(keys.get(i), values.get(i), ttl, RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
+    private double hitRatio() {
+        double hits = localHits.count() + redisHits.count();
+        double total = hits + misses.count();
+        return total > 0 ? hits / total : 0.0;
+    }
+
+    /** One lock stripe of the local LRU */
+    private static final class Stripe {
+        final Map<String, TransactionStatus> entries;
+
+        Stripe(int capacity) {
+            this.entries = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, TransactionStatus> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.trading.payments.service;
+
+import com.trading.payments.config.SchedulingConfig;
+import com.trading.payments.dto.VelocitySnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Velocity counters behind FraudDetectionService: card and merchant transaction
+ * counts, card amount totals, repeated amounts and the HyperLogLog distinct
+ * counts (merchants per card, cards per merchant). All of them are read and
+ * updated by one Lua script (redis/velocity.lua, which documents the key layout
+ * and error bounds), so a payment costs a single Redis round trip.
+ *
+ * The script call sits behind a circuit breaker. After failure-threshold
+ * failures in a row it stops calling Redis for open-ms, so payments no longer
+ * wait out the Redis timeout, and counts them in LocalVelocityStore instead;
+ * a call failing while the breaker is still closed falls back the same way.
+ * Once a trial call succeeds, the payments counted locally are replayed into
+ * Redis with their original timestamps, at most replay-max-per-tick per run
+ * so one run never holds the background scheduler for long; each payment only
+ * counts towards the windows it is still inside. The local counters are
+ * dropped once the journal is empty.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VelocityService {
+
+    @SuppressWarnings("unchecked")
+    private static final RedisScript<List<Object>> VELOCITY_SCRIPT =
+        RedisScript.of(new ClassPathResource("redis/velocity.lua"), (Class<List<Object>>) (Class<?>) List.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final LocalVelocityStore localStore;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${payment.fraud.velocity.card-window-minutes:60}")
+    private long cardWindowMinutes;
+
+    @Value("${payment.fraud.velocity.merchant-window-minutes:10}")
+    private long merchantWindowMinutes;
+
+    @Value("${payment.fraud.amount-pattern.window-hours:24}")
+    private long amountPatternWindowHours;
+
+    @Value("${payment.fraud.amount-pattern.max-amounts-per-card:32}")
+    private int maxAmountsPerCard;
+
+    @Value("${payment.fraud.spread.card-window-minutes:60}")
+    private long cardSpreadWindowMinutes;
+
+    @Value("${payment.fraud.spread.merchant-window-minutes:10}")
+    private long merchantSpreadWindowMinutes;
+
+    @Value("${payment.fraud.spread.slices:6}")
+    private int spreadSlices;
+
+    @Value("${payment.fraud.velocity.circuit.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${payment.fraud.velocity.circuit.open-ms:5000}")
+    private long openMillis;
+
+    @Value("${payment.fraud.velocity.fallback.replay-batch-size:500}")
+    private int replayBatchSize;
+
+    @Value("${payment.fraud.velocity.fallback.replay-max-per-tick:5000}")
+    private int replayMaxPerTick;
+
+    private CircuitBreaker breaker;
+    private Counter fallbacks;
+    private Counter replayed;
+
+    @PostConstruct
+    void init() {
+        breaker = new CircuitBreaker(failureThreshold, openMillis, System::currentTimeMillis);
+        fallbacks = Counter.builder("payment.fraud.velocity.fallback")
+            .description("Payments scored from local counters because Redis was unavailable")
+            .register(meterRegistry);
+        replayed = Counter.builder("payment.fraud.velocity.fallback.replayed").register(meterRegistry);
+        Gauge.builder("payment.fraud.velocity.circuit", this, s -> s.breaker.state().ordinal())
+            .description("0 closed, 1 open, 2 half-open")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Record this payment and return the counters as they were before it, from
+     * Redis or, while it is unavailable, from this pod's local counters.
+     */
+    public VelocitySnapshot record(String cardHash, String merchantId, BigDecimal amount) {
+        long now = System.currentTimeMillis();
+        long cents = amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+        if (!breaker.allowRequest()) {
+            fallbacks.increment();
+            return localStore.record(cardHash, merchantId, cents, now);
+        }
+
+        List<Object> result;
+        try {
+            result = execute(cardHash, merchantId, cents, now, now);
+        } catch (Exception e) {
+            if (breaker.recordFailure()) {
+                log.warn("Redis velocity calls failing, using local counters for {} ms: {}", openMillis, e.getMessage());
+            } else {
+                log.debug("Redis velocity update failed: {}", e.getMessage());
+            }
+            fallbacks.increment();
+            return localStore.record(cardHash, merchantId, cents, now);
+        }
+        if (breaker.recordSuccess()) {
+            log.info("Redis velocity calls recovered, replaying {} locally counted payments", localStore.journalSize());
+        }
+
+        if (result == null || result.size() < 6) {
+            return VelocitySnapshot.unavailable();
+        }
+        return VelocitySnapshot.builder()
+            .cardCount(longAt(result, 0))
+            .cardAmount(BigDecimal.valueOf(longAt(result, 1), 2))
+            .merchantCount(longAt(result, 2))
+            .amountRepeats(longAt(result, 3))
+            .distinctMerchantsForCard(longAt(result, 4))
+            .distinctCardsForMerchant(longAt(result, 5))
+            .available(true)
+            .build();
+    }
+
+    /**
+     * Reconciliation: once Redis is reachable again, replay the payments counted
+     * locally during the outage so its counters include them, up to
+     * replay-max-per-tick payments per run. Stops at the first failure and keeps
+     * the rest for the next run.
+     */
+    @Scheduled(fixedDelayString = "${payment.fraud.velocity.fallback.replay-interval-ms:1000}", scheduler = SchedulingConfig.BACKGROUND_SCHEDULER)
+    public void replayLocalPayments() {
+        if (breaker.state() != CircuitBreaker.State.CLOSED || localStore.journalSize() == 0) {
+            return;
+        }
+        int budget = replayMaxPerTick;
+        List<LocalVelocityStore.Payment> batch;
+        while (budget > 0
+                && !(batch = localStore.drainJournal(Math.min(replayBatchSize, budget), System.currentTimeMillis())).isEmpty()) {
+            budget -= batch.size();
+            for (int i = 0; i < batch.size(); i++) {
+                LocalVelocityStore.Payment payment = batch.get(i);
+                try {
+                    execute(payment.cardHash(), payment.merchantId(), payment.amountCents(), payment.timestamp(),
+                        System.currentTimeMillis());
+                    replayed.increment();
+                } catch (Exception e) {
+                    breaker.recordFailure();
+                    localStore.requeue(batch.subList(i, batch.size()));
+                    log.warn("Replaying local velocity counts into Redis failed, {} left: {}",
+                        localStore.journalSize(), e.getMessage());
+                    return;
+                }
+            }
+        }
+        if (localStore.journalSize() == 0 && breaker.state() == CircuitBreaker.State.CLOSED) {
+            localStore.clear();
+            log.info("Local velocity counts replayed into Redis");
+        }
+    }
+
+    /**
+     * One velocity.lua call. The payment time {@code at} picks the windows and
+     * slices it counts in; {@code now} is later for a replayed payment, and
+     * leaves out the windows it has already aged out of.
+     */
+    List<Object> execute(String cardHash, String merchantId, long cents, long at, long now) {
+        long cardSpreadMillis = Duration.ofMinutes(cardSpreadWindowMinutes).toMillis();
+        long merchantSpreadMillis = Duration.ofMinutes(merchantSpreadWindowMinutes).toMillis();
+
+        List<String> keys = new ArrayList<>(4 + 2 * spreadSlices);
+        keys.add("card_velocity:" + cardHash);
+        keys.add("card_amount_cents:" + cardHash);
+        keys.add("merchant_velocity:" + merchantId);
+        keys.add("amount_pattern:" + cardHash);
+        addSliceKeys(keys, "card_merchants:" + cardHash, at, cardSpreadMillis);
+        addSliceKeys(keys, "merchant_cards:" + merchantId, at, merchantSpreadMillis);
+
+        return redisTemplate.execute(VELOCITY_SCRIPT, keys,
+            String.valueOf(cents),
+            String.valueOf(at),
+            String.valueOf(Duration.ofMinutes(cardWindowMinutes).toMillis()),
+            String.valueOf(Duration.ofMinutes(merchantWindowMinutes).toMillis()),
+            String.valueOf(Duration.ofHours(amountPatternWindowHours).toMillis()),
+            String.valueOf(maxAmountsPerCard),
+            merchantId,
+            cardHash,
+            String.valueOf(spreadSlices),
+            String.valueOf(cardSpreadMillis),
+            String.valueOf(merchantSpreadMillis),
+            String.valueOf(now));
+    }
+
+    // Current slice first, then the older slices still inside the window
+    private void addSliceKeys(List<String> keys, String prefix, long now, long windowMillis) {
+        long sliceMillis = Math.max(1, windowMillis / spreadSlices);
+        long current = now / sliceMillis;
+        for (int i = 0; i < spreadSlices; i++) {
+            keys.add(prefix + ":" + (current - i));
+        }
+    }
+
+    private static long longAt(List<Object> result, int index) {
+        Object value = result.get(index);
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+}
@@ -0,0 +1,395 @@
+package com.trading.payments.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory sliding-window equivalents of the Redis velocity counters in
+ * redis/velocity.lua, for code that replays or scores payments without Redis.
+ * Not thread-safe: each instance belongs to one thread or is guarded by the
+ * caller.
+ *
+ * The card side and the merchant side are independent, so a caller can keep
+ * them in different partitions (one keyed by card, one by merchant). Card
+ * windows are exact over the entries kept: a card keeps at most
+ * maxEntriesPerCard payments (the oldest are dropped first). A merchant keeps
+ * fixed-size state however busy it is, like the Redis side: its windows move
+ * one slice at a time, with a counter per slice and a HyperLogLog of cards per
+ * spread slice. Times must not go backwards per card or per merchant by more
+ * than a few milliseconds. State idle for longer than every window is dropped
+ * by {@link #evictIdle}, so memory follows the number of cards and merchants
+ * active within the longest window, not the length of the history. With a
+ * maxCards cap, cards are also kept in least-recently-used order and the
+ * least recently used one is dropped when a new card would exceed it.
+ */
+public final class VelocityWindows {
+
+    // Card results, see recordCard
+    public static final int CARD_COUNT = 0;
+    public static final int CARD_AMOUNT_CENTS = 1;
+    public static final int AMOUNT_REPEATS = 2;
+    public static final int DISTINCT_MERCHANTS = 3;
+
+    // Merchant results, see recordMerchant
+    public static final int MERCHANT_COUNT = 0;
+    public static final int DISTINCT_CARDS = 1;
+
+    // Merchant windows: slices per window, and 2^10 HyperLogLog registers (1 KB)
+    // per spread slice for a standard error of 1.04 / sqrt(1024) = 3.25%
+    static final int MERCHANT_COUNT_SLICES = 60;
+    static final int MERCHANT_SPREAD_SLICES = 6;
+    static final int REGISTER_BITS = 10;
+    static final int REGISTERS = 1 << REGISTER_BITS;
+
+    private final long cardWindowMillis;
+    private final long amountPatternWindowMillis;
+    private final long cardSpreadWindowMillis;
+    private final long cardRetentionMillis;
+    private final long merchantRetentionMillis;
+    private final long merchantCountSliceMillis;
+    private final long merchantSpreadSliceMillis;
+    private final int maxEntriesPerCard;
+    private final int maxCards;
+
+    private final Map<Long, CardWindow> cards;
+    private final Map<String, MerchantWindow> merchants = new HashMap<>();
+    private long evictedCards;
+
+    public VelocityWindows(long cardWindowMillis, long merchantWindowMillis, long amountPatternWindowMillis,
+                           long cardSpreadWindowMillis, long merchantSpreadWindowMillis, int maxEntriesPerCard) {
+        this(cardWindowMillis, merchantWindowMillis, amountPatternWindowMillis, cardSpreadWindowMillis,
+            merchantSpreadWindowMillis, maxEntriesPerCard, Integer.MAX_VALUE);
+    }
+
+    public VelocityWindows(long cardWindowMillis, long merchantWindowMillis, long amountPatternWindowMillis,
+                           long cardSpreadWindowMillis, long merchantSpreadWindowMillis, int maxEntriesPerCard,
+                           int maxCards) {
+        this.cardWindowMillis = cardWindowMillis;
+        this.amountPatternWindowMillis = amountPatternWindowMillis;
+        this.cardSpreadWindowMillis = cardSpreadWindowMillis;
+        this.cardRetentionMillis = Math.max(cardWindowMillis, Math.max(amountPatternWindowMillis, cardSpreadWindowMillis));
+        this.merchantRetentionMillis = Math.max(merchantWindowMillis, merchantSpreadWindowMillis);
+        this.merchantCountSliceMillis = Math.max(1, merchantWindowMillis / MERCHANT_COUNT_SLICES);
+        this.merchantSpreadSliceMillis = Math.max(1, merchantSpreadWindowMillis / MERCHANT_SPREAD_SLICES);
+        this.maxEntriesPerCard = maxEntriesPerCard;
+        this.maxCards = maxCards;
+        this.cards = maxCards == Integer.MAX_VALUE ? new HashMap<>() : new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CardWindow> eldest) {
+                if (size() > VelocityWindows.this.maxCards) {
+                    evictedCards++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Record a card payment and fill {@code out} with the card counters as
+     * velocity.lua returns them: count and amount of earlier payments in the
+     * card window, earlier payments of the same amount in the amount-pattern
+     * window, and distinct merchants in the spread window including this one.
+     *
+     * @param merchantKey any stable int per merchant, e.g. the id's hashCode
+     */
+    public void recordCard(long cardKey, int merchantKey, long amountCents, long now, long[] out) {
+        CardWindow window = cards.get(cardKey);
+        if (window == null) {
+            window = new CardWindow(Math.min(8, maxEntriesPerCard));
+            cards.put(cardKey, window);
+        }
+        window.expire(now - cardRetentionMillis);
+
+        long count = 0;
+        long cents = 0;
+        long repeats = 0;
+        long distinct = 1;
+        long cardSince = now - cardWindowMillis;
+        long patternSince = now - amountPatternWindowMillis;
+        long spreadSince = now - cardSpreadWindowMillis;
+        // Newest first; a merchant counts once, at its newest payment
+        for (int i = window.size - 1; i >= 0; i--) {
+            long time = window.time(i);
+            if (time >= cardSince) {
+                count++;
+                cents += window.cents(i);
+            }
+            if (time >= patternSince && window.cents(i) == amountCents) {
+                repeats++;
+            }
+            if (time >= spreadSince) {
+                int merchant = window.merchant(i);
+                if (merchant != merchantKey && !window.hasMerchantAfter(i, merchant, spreadSince)) {
+                    distinct++;
+                }
+            }
+        }
+        out[CARD_COUNT] = count;
+        out[CARD_AMOUNT_CENTS] = cents;
+        out[AMOUNT_REPEATS] = repeats;
+        out[DISTINCT_MERCHANTS] = distinct;
+
+        window.add(now, amountCents, merchantKey, maxEntriesPerCard);
+    }
+
+    /**
+     * Record a merchant payment and fill {@code out} with the merchant
+     * counters: earlier payments in the merchant window and ~distinct cards in
+     * the spread window including this one. Both windows are the current slice
+     * and the ones before it, one window's worth of slices in all.
+     */
+    public void recordMerchant(String merchantId, long cardKey, long now, long[] out) {
+        MerchantWindow window = merchants.get(merchantId);
+        if (window == null) {
+            window = new MerchantWindow();
+            merchants.put(merchantId, window);
+        }
+        long countSlice = now / merchantCountSliceMillis;
+        out[MERCHANT_COUNT] = window.count(countSlice);
+        window.add(countSlice, now / merchantSpreadSliceMillis, cardKey, now);
+        out[DISTINCT_CARDS] = window.distinctCards();
+    }
+
+    /** Drop cards and merchants with nothing left in any window */
+    public void evictIdle(long now) {
+        evict(cards.values().iterator(), now - cardRetentionMillis);
+        for (Iterator<MerchantWindow> it = merchants.values().iterator(); it.hasNext(); ) {
+            MerchantWindow window = it.next();
+            if (window.lastTime < now - merchantRetentionMillis) {
+                it.remove();
+            }
+        }
+    }
+
+    private static void evict(Iterator<CardWindow> it, long before) {
+        while (it.hasNext()) {
+            CardWindow window = it.next();
+            if (window.size == 0 || window.time(window.size - 1) < before) {
+                it.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        cards.clear();
+        merchants.clear();
+    }
+
+    public int cards() {
+        return cards.size();
+    }
+
+    public int merchants() {
+        return merchants.size();
+    }
+
+    /** Cards dropped by the maxCards cap so far */
+    public long evictedCards() {
+        return evictedCards;
+    }
+
+    /** A card's payments, oldest first, in a ring that grows up to the cap */
+    private static final class CardWindow {
+        private long[] times;
+        private long[] cents;
+        private int[] merchants;
+        private int head;
+        private int size;
+
+        private CardWindow(int capacity) {
+            times = new long[capacity];
+            cents = new long[capacity];
+            merchants = new int[capacity];
+        }
+
+        private int slot(int i) {
+            return (head + i) % times.length;
+        }
+
+        private long time(int i) {
+            return times[slot(i)];
+        }
+
+        private long cents(int i) {
+            return cents[slot(i)];
+        }
+
+        private int merchant(int i) {
+            return merchants[slot(i)];
+        }
+
+        private boolean hasMerchantAfter(int i, int merchant, long since) {
+            for (int j = i + 1; j < size; j++) {
+                if (merchant(j) == merchant && time(j) >= since) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void expire(long before) {
+            while (size > 0 && times[head] < before) {
+                head = (head + 1) % times.length;
+                size--;
+            }
+        }
+
+        private void add(long time, long amountCents, int merchant, int cap) {
+            if (size == times.length) {
+                if (size >= cap) {
+                    // Full: the oldest payment makes room
+                    head = (head + 1) % times.length;
+                    size--;
+                } else {
+                    grow(Math.min(cap, times.length * 2));
+                }
+            }
+            int at = slot(size);
+            times[at] = time;
+            cents[at] = amountCents;
+            merchants[at] = merchant;
+            size++;
+        }
+
+        private void grow(int capacity) {
+            long[] newTimes = new long[capacity];
+            long[] newCents = new long[capacity];
+            int[] newMerchants = new int[capacity];
+            for (int i = 0; i < size; i++) {
+                newTimes[i] = time(i);
+                newCents[i] = cents(i);
+                newMerchants[i] = merchant(i);
+            }
+            times = newTimes;
+            cents = newCents;
+            merchants = newMerchants;
+            head = 0;
+        }
+    }
+
+    /**
+     * A merchant's windows in fixed-size state (about 2 KB, plus 1 KB per spread
+     * slice in use): a ring of per-slice payment counts, and a ring of per-slice
+     * HyperLogLogs of card keys whose register-wise max over the window is kept
+     * in {@code union}. The union is rebuilt when a new spread slice starts and
+     * updated in place otherwise, along with the sums the estimate needs, so a
+     * payment costs O(1) apart from once per slice.
+     */
+    private static final class MerchantWindow {
+        private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+        private final long[] countSlices = new long[MERCHANT_COUNT_SLICES];
+        private final int[] counts = new int[MERCHANT_COUNT_SLICES];
+        private final long[] spreadSlices = new long[MERCHANT_SPREAD_SLICES];
+        private final byte[][] registers = new byte[MERCHANT_SPREAD_SLICES][];
+        private final byte[] union = new byte[REGISTERS];
+        private long unionSlice = -1;
+        private int zeros = REGISTERS;          // union registers still 0
+        private double inverseSum = REGISTERS;  // sum of 2^-register over the union
+        private long lastTime;
+
+        private MerchantWindow() {
+            Arrays.fill(countSlices, -1);
+            Arrays.fill(spreadSlices, -1);
+        }
+
+        /** Payments in the slices (slice - MERCHANT_COUNT_SLICES, slice] */
+        private long count(long slice) {
+            long count = 0;
+            for (int i = 0; i < MERCHANT_COUNT_SLICES; i++) {
+                if (countSlices[i] > slice - MERCHANT_COUNT_SLICES && countSlices[i] <= slice) {
+                    count += counts[i];
+                }
+            }
+            return count;
+        }
+
+        private void add(long countSlice, long spreadSlice, long card, long time) {
+            int slot = (int) (countSlice % MERCHANT_COUNT_SLICES);
+            if (countSlices[slot] < countSlice) {
+                countSlices[slot] = countSlice;
+                counts[slot] = 0;
+            }
+            // A slot already holding a later slice: the payment is a full window late
+            if (countSlices[slot] == countSlice) {
+                counts[slot]++;
+            }
+            addCard(spreadSlice, card);
+            lastTime = Math.max(lastTime, time);
+        }
+
+        private void addCard(long slice, long card) {
+            if (slice > unionSlice) {
+                unionSlice = slice;
+                rebuildUnion();
+            }
+            int slot = (int) (slice % MERCHANT_SPREAD_SLICES);
+            if (spreadSlices[slot] > slice) {
+                return;
+            }
+            if (spreadSlices[slot] < slice) {
+                spreadSlices[slot] = slice;
+                if (registers[slot] == null) {
+                    registers[slot] = new byte[REGISTERS];
+                } else {
+                    Arrays.fill(registers[slot], (byte) 0);
+                }
+            }
+
+            long hash = mix(card);
+            int index = (int) (hash >>> (64 - REGISTER_BITS));
+            byte rank = (byte) (Long.numberOfLeadingZeros(hash << REGISTER_BITS | 1L << (REGISTER_BITS - 1)) + 1);
+            if (registers[slot][index] < rank) {
+                registers[slot][index] = rank;
+            }
+            setUnion(index, rank);
+        }
+
+        private void rebuildUnion() {
+            Arrays.fill(union, (byte) 0);
+            zeros = REGISTERS;
+            inverseSum = REGISTERS;
+            for (int slot = 0; slot < MERCHANT_SPREAD_SLICES; slot++) {
+                if (spreadSlices[slot] > unionSlice - MERCHANT_SPREAD_SLICES && registers[slot] != null) {
+                    for (int i = 0; i < REGISTERS; i++) {
+                        setUnion(i, registers[slot][i]);
+                    }
+                }
+            }
+        }
+
+        private void setUnion(int index, byte rank) {
+            byte old = union[index];
+            if (rank > old) {
+                union[index] = rank;
+                inverseSum += Math.scalb(1.0, -rank) - Math.scalb(1.0, -old);
+                if (old == 0) {
+                    zeros--;
+                }
+            }
+        }
+
+        /** HyperLogLog estimate, with linear counting while registers are still empty */
+        private long distinctCards() {
+            double estimate = ALPHA * REGISTERS * REGISTERS / inverseSum;
+            if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+                estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+            }
+            return Math.round(estimate);
+        }
+
+        // MurmurHash3 finalizer, so sequential card keys spread over the registers
+        private static long mix(long key) {
+            key ^= key >>> 33;
+            key *= 0xff51afd7ed558ccdL;
+            key ^= key >>> 33;
+            key *= 0xc4ceb9fe1a85ec53L;
+            key ^= key >>> 33;
+            return key;
+        }
+    }
+}
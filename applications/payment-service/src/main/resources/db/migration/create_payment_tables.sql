@@ -43,4 +43,7 @@ CREATE INDEX IF NOT EXISTS idx_transactions_merchant_id ON transactions(merchant
 CREATE INDEX IF NOT EXISTS idx_transactions_created_at ON transactions(created_at);
 CREATE INDEX IF NOT EXISTS idx_transactions_status ON transactions(status);
 CREATE INDEX IF NOT EXISTS idx_transactions_card_hash ON transactions(card_number_hash);
-CREATE INDEX IF NOT EXISTS idx_transactions_amount ON transactions(amount);
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS idx_transactions_amount ON transactions(amount);
+
+-- Keyset pagination for transaction exports
+CREATE INDEX IF NOT EXISTS idx_transactions_merchant_created_id ON transactions(merchant_id, created_at, id);
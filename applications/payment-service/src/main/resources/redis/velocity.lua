@@ -0,0 +1,170 @@
+-- Every velocity counter FraudDetectionService reads, updated in one call.
+-- Returns the values as of just before this payment (distinct counts include
+-- it) and records the payment:
+--
+--   { card count, card amount (cents), merchant count, amount repeats,
+--     distinct merchants for the card, distinct cards for the merchant }
+--
+-- KEYS[1]  card_velocity:<card>             counter, TTL card window
+-- KEYS[2]  card_amount_cents:<card>         sum of cents, TTL card window
+-- KEYS[3]  merchant_velocity:<merchant>     counter, TTL merchant window
+-- (the TTLs are renewed by each payment, so a counter covers the payments
+-- since the last gap of a full window)
+-- KEYS[4]  amount_pattern:<card>            hash, see "Amount repeats"
+-- KEYS[5 .. 4+n]      card_merchants:<card>:<slice>      HyperLogLog, current slice first
+-- KEYS[5+n .. 4+2n]   merchant_cards:<merchant>:<slice>  HyperLogLog, current slice first
+--
+-- ARGV[1]  amount in cents
+-- ARGV[2]  now, epoch millis
+-- ARGV[3]  card window, millis
+-- ARGV[4]  merchant window, millis
+-- ARGV[5]  amount pattern window, millis
+-- ARGV[6]  max distinct amounts tracked per card
+-- ARGV[7]  merchant id
+-- ARGV[8]  card hash
+-- ARGV[9]  n, slices per spread window
+-- ARGV[10] card spread window, millis
+-- ARGV[11] merchant spread window, millis
+-- ARGV[12] current time, epoch millis; later than ARGV[2] for a replayed payment
+--
+-- Amount repeats: one hash per card, one field per distinct amount (cents),
+-- value "<window number>:<count in that window>:<count in the window before>".
+-- The estimate is the usual sliding-window approximation: the current window's
+-- count plus the previous window's count weighted by how much of it still
+-- overlaps the sliding window. With c = current and p = previous count, the
+-- true number of repeats in the last window lies in [c, c + p] and so does the
+-- estimate; it is exact when the previous window's repeats were evenly spread.
+-- At most ARGV[6] amounts are tracked per card. A new amount on a full hash
+-- first evicts amounts not seen for two windows; if none can be evicted it is
+-- not tracked and counts as 0.
+--
+-- Replayed payments: ARGV[2] is in the past when VelocityService replays the
+-- payments counted locally during an outage. A counter or spread slice the
+-- payment has already aged out of (by ARGV[12]) is left alone; one it is still
+-- in is updated and its TTL extended to no later than the payment would have
+-- kept it, never shortened. Such a payment never moves an amount's window
+-- backwards either.
+--
+-- Distinct counts: each spread window is n time slices, one HyperLogLog per
+-- slice. PFCOUNT over the n slice keys is the cardinality of their union, i.e.
+-- a sliding window that moves one slice at a time. Redis HyperLogLogs have a
+-- standard error of 0.81% and take at most 12 KB each (sparse, i.e. a few
+-- hundred bytes, at low cardinality), whatever the number of distinct values.
+
+local cents = ARGV[1]
+local now = tonumber(ARGV[2])
+local cardWindow = tonumber(ARGV[3])
+local merchantWindow = tonumber(ARGV[4])
+local patternWindow = tonumber(ARGV[5])
+local maxAmounts = tonumber(ARGV[6])
+local merchantId = ARGV[7]
+local cardHash = ARGV[8]
+local slices = tonumber(ARGV[9])
+local cardSpreadWindow = tonumber(ARGV[10])
+local merchantSpreadWindow = tonumber(ARGV[11])
+local age = math.max(0, tonumber(ARGV[12]) - now)
+
+-- Time left for a key this payment keeps alive for ttl, or nil if it has aged out
+local function remaining(ttl)
+  if age >= ttl then
+    return nil
+  end
+  return ttl - age
+end
+
+-- Extend a key's TTL to ttl, never shorten it (PTTL is negative for a new key)
+local function keepFor(key, ttl)
+  if redis.call('PTTL', key) < ttl then
+    redis.call('PEXPIRE', key, ttl)
+  end
+end
+
+-- Plain counters
+local cardCount = tonumber(redis.call('GET', KEYS[1]) or '0')
+local cardAmount = tonumber(redis.call('GET', KEYS[2]) or '0')
+local cardTtl = remaining(cardWindow)
+if cardTtl then
+  redis.call('INCR', KEYS[1])
+  keepFor(KEYS[1], cardTtl)
+  redis.call('INCRBY', KEYS[2], cents)
+  keepFor(KEYS[2], cardTtl)
+end
+
+local merchantCount = tonumber(redis.call('GET', KEYS[3]) or '0')
+local merchantTtl = remaining(merchantWindow)
+if merchantTtl then
+  redis.call('INCR', KEYS[3])
+  keepFor(KEYS[3], merchantTtl)
+end
+
+-- Amount repeats
+local currentWindow = math.floor(now / patternWindow)
+local elapsed = (now % patternWindow) / patternWindow
+
+-- Counts for the current and the previous window
+local function decode(value)
+  local w, cur, prev = string.match(value, '^(%d+):(%d+):(%d+)$')
+  w = tonumber(w)
+  if w == currentWindow then
+    return tonumber(cur), tonumber(prev)
+  elseif w == currentWindow - 1 then
+    return 0, tonumber(cur)
+  end
+  return 0, 0
+end
+
+local repeats = 0
+local tracked = true
+local cur, prev = 0, 0
+local value = redis.call('HGET', KEYS[4], cents)
+local latest = value and tonumber(string.match(value, '^(%d+):'))
+if latest and latest > currentWindow then
+  -- A replayed payment (VelocityService reconciliation) older than the amount's
+  -- latest window: it counts towards that window's previous count if adjacent
+  tracked = false
+  if latest == currentWindow + 1 then
+    local c, p = string.match(value, '^%d+:(%d+):(%d+)$')
+    redis.call('HSET', KEYS[4], cents, string.format('%d:%d:%d', latest, tonumber(c), tonumber(p) + 1))
+  end
+elseif value then
+  cur, prev = decode(value)
+elseif redis.call('HLEN', KEYS[4]) >= maxAmounts then
+  local entries = redis.call('HGETALL', KEYS[4])
+  for i = 1, #entries, 2 do
+    local c, p = decode(entries[i + 1])
+    if c == 0 and p == 0 then
+      redis.call('HDEL', KEYS[4], entries[i])
+    end
+  end
+  tracked = redis.call('HLEN', KEYS[4]) < maxAmounts
+end
+if tracked then
+  redis.call('HSET', KEYS[4], cents, string.format('%d:%d:%d', currentWindow, cur + 1, prev))
+  redis.call('PEXPIRE', KEYS[4], patternWindow * 2)
+  repeats = math.floor(cur + prev * (1 - elapsed))
+end
+
+-- Distinct merchants per card, distinct cards per merchant
+local cardSlices, merchantSlices = {}, {}
+for i = 1, slices do
+  cardSlices[i] = KEYS[4 + i]
+  merchantSlices[i] = KEYS[4 + slices + i]
+end
+
+-- A slice is read for one spread window and kept for two; one older than the
+-- window is never read again, so a replayed payment that old is not added
+local cardSliceTtl = remaining(cardSpreadWindow * 2)
+if age < cardSpreadWindow then
+  redis.call('PFADD', cardSlices[1], merchantId)
+  keepFor(cardSlices[1], cardSliceTtl)
+end
+local distinctMerchants = redis.call('PFCOUNT', unpack(cardSlices))
+
+local merchantSliceTtl = remaining(merchantSpreadWindow * 2)
+if age < merchantSpreadWindow then
+  redis.call('PFADD', merchantSlices[1], cardHash)
+  keepFor(merchantSlices[1], merchantSliceTtl)
+end
+local distinctCards = redis.call('PFCOUNT', unpack(merchantSlices))
+
+return { cardCount, cardAmount, merchantCount, repeats, distinctMerchants, distinctCards }
@@ -0,0 +1,139 @@
+package com.trading.payments.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.trading.payments.dto.TransactionEvent;
+import com.trading.payments.service.FeedReplayBuffer;
+import com.trading.payments.service.StompEventPublisher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-event cost of the STOMP fan-out: convertAndSend per destination (Jackson runs
+ * once per destination, even with nobody listening) versus StompEventPublisher
+ * (subscription check first, one serialization shared by all destinations).
+ *
+ * Uses a real SimpleBrokerMessageHandler on synchronous channels, with the outbound
+ * channel feeding a counter instead of WebSocket sessions, so the numbers cover the
+ * application + broker work only.
+ *
+ * Run with: mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt -Dmdep.includeScope=test
+ *           java -cp target/test-classes:target/classes:$(cat cp.txt) org.openjdk.jmh.Main EventFanout
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventFanoutBenchmark {
+
+    private static final String LIVE = "/topic/feed/live";
+    private static final String MERCHANT = "/topic/feed/merchant/MERCHANT_001";
+
+    @Param({"0", "1", "1000"})
+    public int subscribers;
+
+    private SimpleBrokerMessageHandler broker;
+    private SimpMessagingTemplate template;
+    private StompEventPublisher publisher;
+    private final LongAdder outbound = new LongAdder();
+    private TransactionEvent event;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+        ExecutorSubscribableChannel clientInbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        clientOutbound.subscribe(message -> outbound.increment());
+
+        broker = new SimpleBrokerMessageHandler(clientInbound, clientOutbound, brokerChannel, List.of("/topic"));
+        broker.start();
+
+        template = new SimpMessagingTemplate(brokerChannel);
+        MappingJackson2MessageConverter jackson = new MappingJackson2MessageConverter();
+        jackson.setObjectMapper(objectMapper);
+        template.setMessageConverter(new CompositeMessageConverter(
+            List.of(new StringMessageConverter(), new ByteArrayMessageConverter(), jackson)));
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        // Replay retention off: this measures fan-out only
+        FeedReplayBuffer replayBuffer = new FeedReplayBuffer(false, 4096, 100, 128, 256, "benchmark", meterRegistry);
+        publisher = new StompEventPublisher(template, broker, objectMapper, replayBuffer, meterRegistry, 256);
+
+        // Dashboard clients on the live feed; nobody on the merchant feed
+        for (int i = 0; i < subscribers; i++) {
+            SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+            subscribe.setSessionId("session-" + i);
+            subscribe.setSubscriptionId("sub-0");
+            subscribe.setDestination(LIVE);
+            broker.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+        }
+
+        event = TransactionEvent.builder()
+            .transactionId("TXN_1700000000000_ABCDEF12")
+            .merchantId("MERCHANT_001")
+            .amount(new BigDecimal("149.99"))
+            .status("APPROVED")
+            .fraudScore(12)
+            .timestamp(Instant.now())
+            .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        broker.stop();
+    }
+
+    @Benchmark
+    public long convertAndSendPerDestination() {
+        template.convertAndSend(LIVE, event);
+        template.convertAndSend(MERCHANT, event);
+        return outbound.sum();
+    }
+
+    @Benchmark
+    public long publishSerializeOnce() {
+        publisher.publish(() -> event, LIVE, MERCHANT);
+        return outbound.sum();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(EventFanoutBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
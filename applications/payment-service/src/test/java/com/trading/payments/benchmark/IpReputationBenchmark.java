@@ -0,0 +1,144 @@
+package com.trading.payments.benchmark;
+
+import com.trading.payments.service.IpPrefixTrie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Customer IP reputation lookup: IpPrefixTrie (allocation-free parse plus
+ * longest-prefix walk) versus parsing with InetAddress and scanning a list of
+ * ranges for the longest one that contains the address.
+ *
+ * Ranges are 80% IPv4 (/8 to /32) and 20% IPv6 (/16 to /64); half the probed
+ * addresses fall inside some listed range.
+ *
+ * Run with: mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt -Dmdep.includeScope=test
+ *           java -cp target/test-classes:target/classes:$(cat cp.txt) org.openjdk.jmh.Main IpReputation
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IpReputationBenchmark {
+
+    private static final int PROBES = 4096;
+
+    @Param({"1000", "100000"})
+    public int ranges;
+
+    private IpPrefixTrie trie;
+    private List<Range> list;
+    private String[] probes;
+    private int next;
+
+    private record Range(long hi, long lo, int len, int value) {
+        boolean contains(long addressHi, long addressLo) {
+            if (len <= 64) {
+                return len == 0 || ((addressHi ^ hi) & (-1L << (64 - len))) == 0;
+            }
+            return addressHi == hi && (len == 64 || ((addressLo ^ lo) & (-1L << (128 - len))) == 0);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws UnknownHostException {
+        Random random = new Random(42);
+        IpPrefixTrie.Builder builder = new IpPrefixTrie.Builder();
+        list = new ArrayList<>(ranges);
+        List<String> listedAddresses = new ArrayList<>();
+
+        for (int i = 0; i < ranges; i++) {
+            boolean v4 = random.nextInt(5) > 0;
+            String address;
+            int len;
+            if (v4) {
+                int ip = random.nextInt();
+                address = (ip >>> 24) + "." + (ip >>> 16 & 0xFF) + "." + (ip >>> 8 & 0xFF) + "." + (ip & 0xFF);
+                len = 8 + random.nextInt(25);
+            } else {
+                address = String.format("2%03x:%x:%x:%x::%x",
+                    random.nextInt(0x1000), random.nextInt(0x10000), random.nextInt(0x10000),
+                    random.nextInt(0x10000), random.nextInt(0x10000));
+                len = 16 + random.nextInt(49);
+            }
+            builder.add(address + "/" + len, i);
+            long[] bits = toBits(address);
+            int bitLen = v4 ? 96 + len : len;
+            list.add(new Range(bits[0], bits[1], bitLen, i));
+            listedAddresses.add(address);
+        }
+        trie = builder.build();
+
+        probes = new String[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = i % 2 == 0
+                ? listedAddresses.get(random.nextInt(listedAddresses.size()))
+                : "198.51." + random.nextInt(256) + "." + random.nextInt(256);
+        }
+    }
+
+    @Benchmark
+    public int trie() {
+        return trie.lookup(probes[next++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public int listScan() throws UnknownHostException {
+        long[] address = toBits(probes[next++ & (PROBES - 1)]);
+        int best = -1;
+        int bestLen = -1;
+        for (Range range : list) {
+            if (range.len > bestLen && range.contains(address[0], address[1])) {
+                best = range.value;
+                bestLen = range.len;
+            }
+        }
+        return best;
+    }
+
+    private static long[] toBits(String address) throws UnknownHostException {
+        byte[] bytes = InetAddress.getByName(address).getAddress();
+        long hi = 0;
+        long lo = 0;
+        if (bytes.length == 4) {
+            lo = 0x0000_FFFF_0000_0000L;
+            for (int i = 0; i < 4; i++) {
+                lo |= (long) (bytes[i] & 0xFF) << (24 - 8 * i);
+            }
+        } else {
+            for (int i = 0; i < 8; i++) {
+                hi = (hi << 8) | (bytes[i] & 0xFF);
+                lo = (lo << 8) | (bytes[i + 8] & 0xFF);
+            }
+        }
+        return new long[] { hi, lo };
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(IpReputationBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
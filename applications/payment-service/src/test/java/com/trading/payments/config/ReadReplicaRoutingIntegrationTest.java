@@ -0,0 +1,92 @@
+package com.trading.payments.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Testcontainers
+@ActiveProfiles("test")
+public class ReadReplicaRoutingIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> primary = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("trading_primary")
+            .withUsername("testuser")
+            .withPassword("testpass");
+
+    @Container
+    static PostgreSQLContainer<?> replica = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("trading_replica")
+            .withUsername("testuser")
+            .withPassword("testpass");
+
+    @Container
+    static GenericContainer<?> redis = new GenericContainer<>("redis:7-alpine")
+            .withExposedPorts(6379);
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", primary::getJdbcUrl);
+        registry.add("spring.datasource.username", primary::getUsername);
+        registry.add("spring.datasource.password", primary::getPassword);
+        registry.add("payment.datasource.replica.enabled", () -> "true");
+        registry.add("payment.datasource.replica.url", replica::getJdbcUrl);
+        registry.add("payment.datasource.replica.username", replica::getUsername);
+        registry.add("payment.datasource.replica.password", replica::getPassword);
+        registry.add("payment.datasource.replica.max-lag-ms", () -> "1000");
+        registry.add("payment.datasource.replica.lag-check-interval-ms", () -> "3600000");
+        registry.add("spring.data.redis.host", redis::getHost);
+        registry.add("spring.data.redis.port", redis::getFirstMappedPort);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ReplicaLagMonitor lagMonitor;
+
+    @AfterEach
+    public void resetLag() {
+        lagMonitor.update(0);
+    }
+
+    @Test
+    public void testReadOnlyTransactionsUseReplica() {
+        assertEquals("trading_replica", currentDatabase(true));
+        assertEquals("trading_primary", currentDatabase(false));
+    }
+
+    @Test
+    public void testLaggingReplicaFallsBackToPrimary() {
+        lagMonitor.update(60_000);
+
+        assertFalse(lagMonitor.isReplicaUsable());
+        assertEquals("trading_primary", currentDatabase(true));
+
+        lagMonitor.update(0);
+        assertEquals("trading_replica", currentDatabase(true));
+    }
+
+    private String currentDatabase(boolean readOnly) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(readOnly);
+        return template.execute(status -> jdbcTemplate.queryForObject("SELECT current_database()", String.class));
+    }
+}
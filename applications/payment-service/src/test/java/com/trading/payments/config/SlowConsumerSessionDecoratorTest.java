@@ -0,0 +1,145 @@
+package com.trading.payments.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class SlowConsumerSessionDecoratorTest {
+
+    private static final int FRAME_BYTES = 100;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final WebSocketSessionMetrics metrics = new WebSocketSessionMetrics(registry);
+    private final WebSocketSession session = mock(WebSocketSession.class);
+
+    // The client reads nothing until released: the first write blocks, the rest buffer
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private Thread firstSend;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        metrics.init();
+        when(session.getId()).thenReturn("session-1");
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            written.add(((TextMessage) invocation.getArgument(0)).getPayload());
+            return null;
+        }).when(session).sendMessage(any());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        release.countDown();
+        if (firstSend != null) {
+            firstSend.join(5_000);
+        }
+    }
+
+    private static TextMessage frame(int i) {
+        return new TextMessage(String.format("%-" + FRAME_BYTES + "s", "frame-" + i));
+    }
+
+    private SlowConsumerSessionDecorator blockedSession(int sendTimeLimit, OverflowStrategy strategy) throws Exception {
+        SlowConsumerSessionDecorator decorator =
+            new SlowConsumerSessionDecorator(session, sendTimeLimit, 5 * FRAME_BYTES, strategy, metrics);
+        firstSend = new Thread(() -> {
+            try {
+                decorator.sendMessage(frame(0));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        firstSend.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        return decorator;
+    }
+
+    private double forcedDisconnects(String reason) {
+        return registry.get("payment.websocket.forced_disconnects").tag("reason", reason).counter().count();
+    }
+
+    private double queuedBytes() {
+        return registry.get("payment.websocket.queued_bytes").gauge().value();
+    }
+
+    @Test
+    public void testDropKeepsTheSessionAndDiscardsTheOldestFrames() throws Exception {
+        SlowConsumerSessionDecorator decorator = blockedSession(60_000, OverflowStrategy.DROP);
+
+        for (int i = 1; i <= 20; i++) {
+            decorator.sendMessage(frame(i));
+        }
+        assertTrue(decorator.getBufferSize() <= 5 * FRAME_BYTES);
+        assertEquals(decorator.getBufferSize(), queuedBytes());
+        assertEquals(0, forcedDisconnects("buffer_limit"));
+        assertEquals(0, forcedDisconnects("send_time_limit"));
+        verify(session, never()).close(any());
+
+        // Once the client catches up it gets the first frame and the newest ones
+        release.countDown();
+        firstSend.join(5_000);
+        decorator.sendMessage(frame(21));
+        assertEquals("frame-0", written.get(0).trim());
+        assertEquals("frame-21", written.get(written.size() - 1).trim());
+        assertTrue(written.size() < 22, "some frames should have been dropped");
+        assertTrue(written.stream().noneMatch(payload -> payload.trim().equals("frame-1")));
+    }
+
+    @Test
+    public void testTerminateDisconnectsPastTheBufferLimit() throws Exception {
+        SlowConsumerSessionDecorator decorator = blockedSession(60_000, OverflowStrategy.TERMINATE);
+
+        for (int i = 1; i <= 5; i++) {
+            decorator.sendMessage(frame(i));
+        }
+        assertEquals(5 * FRAME_BYTES, queuedBytes());
+
+        assertThrows(SessionLimitExceededException.class, () -> decorator.sendMessage(frame(6)));
+        assertEquals(1, forcedDisconnects("buffer_limit"));
+        assertEquals(0, forcedDisconnects("send_time_limit"));
+
+        // Once over the limit, frames are discarded without counting another disconnect
+        decorator.sendMessage(frame(7));
+        assertEquals(1, forcedDisconnects("buffer_limit"));
+    }
+
+    @Test
+    public void testSendTimeLimitDisconnectsWhateverTheStrategy() throws Exception {
+        SlowConsumerSessionDecorator decorator = blockedSession(50, OverflowStrategy.DROP);
+        Thread.sleep(100);
+
+        assertThrows(SessionLimitExceededException.class, () -> decorator.sendMessage(frame(1)));
+        assertEquals(1, forcedDisconnects("send_time_limit"));
+        assertEquals(0, forcedDisconnects("buffer_limit"));
+    }
+
+    @Test
+    public void testWriteLatencyIsTimedAtTheSocket() throws Exception {
+        SlowConsumerSessionDecorator decorator = blockedSession(60_000, OverflowStrategy.DROP);
+        decorator.sendMessage(frame(1));
+        release.countDown();
+        firstSend.join(5_000);
+
+        assertEquals(1, registry.get("payment.websocket.sessions").gauge().value());
+        assertTrue(registry.get("payment.websocket.send").timer().count() >= 1);
+        assertEquals(0, queuedBytes(), "flushed once the client caught up");
+    }
+}
@@ -0,0 +1,27 @@
+package com.trading.payments.controller;
+
+import com.trading.payments.service.TransactionExportService;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class PaymentControllerExportTest {
+
+    @Test
+    public void testExportFilenameIsSanitized() throws Exception {
+        PaymentController controller = new PaymentController();
+        ReflectionTestUtils.setField(controller, "exportService", mock(TransactionExportService.class));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.exportTransactions("m1\"\r\nSet-Cookie: x=1;../evil", LocalDateTime.now().minusDays(1),
+            LocalDateTime.now(), "csv", response);
+
+        String disposition = response.getHeader("Content-Disposition");
+        assertEquals("attachment; filename=\"m1___Set-Cookie__x_1_.._evil-transactions.csv\"", disposition);
+    }
+}
@@ -0,0 +1,156 @@
+package com.trading.payments.controller;
+
+import com.trading.payments.dto.PaymentRequest;
+import com.trading.payments.dto.PaymentResponse;
+import com.trading.payments.service.PaymentProcessingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class PaymentStreamControllerTest {
+
+    /** One reply as handed to convertAndSendToUser */
+    private record Reply(String user, String sessionId, String correlationId, PaymentResponse response) {
+    }
+
+    private final PaymentProcessingService processingService = mock(PaymentProcessingService.class);
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Reply> replies = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private PaymentStreamController controller;
+
+    private PaymentStreamController controller(int maxInFlightPerSession, int poolSize, int queueCapacity) {
+        when(processingService.process(any())).thenAnswer(invocation -> {
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            PaymentRequest request = invocation.getArgument(0);
+            return PaymentResponse.builder().status("APPROVED").amount(request.getAmount()).build();
+        });
+        doAnswer(invocation -> {
+            Map<String, Object> headers = invocation.getArgument(3);
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.copyHeaders(headers);
+            replies.add(new Reply(invocation.getArgument(0), accessor.getSessionId(),
+                accessor.getFirstNativeHeader(PaymentStreamController.CORRELATION_ID_HEADER), invocation.getArgument(2)));
+            return null;
+        }).when(messagingTemplate).convertAndSendToUser(anyString(), anyString(), any(), anyMap());
+
+        controller = new PaymentStreamController(processingService, messagingTemplate, meterRegistry);
+        ReflectionTestUtils.setField(controller, "maxInFlightPerSession", maxInFlightPerSession);
+        ReflectionTestUtils.setField(controller, "corePoolSize", poolSize);
+        ReflectionTestUtils.setField(controller, "maxPoolSize", poolSize);
+        ReflectionTestUtils.setField(controller, "queueCapacity", queueCapacity);
+        controller.init();
+        return controller;
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        controller.shutdown();
+    }
+
+    private void send(String sessionId, Principal user, String correlationId) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setUser(user);
+        PaymentRequest request = PaymentRequest.builder()
+            .merchantId("MERCHANT_001")
+            .cardNumber("4111111111111111")
+            .amount(new BigDecimal("25.00"))
+            .build();
+        controller.process(request, correlationId, headers);
+    }
+
+    private List<Reply> awaitReplies(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (replies.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, replies.size());
+        return replies;
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("payment.websocket.ingest.requests").tag("result", result).counter().count();
+    }
+
+    @Test
+    public void testRequestsBeyondTheSessionLimitAreThrottled() throws Exception {
+        controller(2, 4, 100);
+        send("session-a", null, "a-1");
+        send("session-a", null, "a-2");
+        send("session-a", null, "a-3");
+        // Another session has its own limit
+        send("session-b", null, "b-1");
+
+        // The throttled reply is immediate, while a-1 and a-2 are still being processed
+        Reply throttledReply = awaitReplies(1).get(0);
+        assertEquals("a-3", throttledReply.correlationId());
+        assertEquals("session-a", throttledReply.sessionId());
+        assertEquals("THROTTLED", throttledReply.response().getStatus());
+        assertEquals(1, requests("throttled"));
+
+        release.countDown();
+        awaitReplies(4);
+        assertEquals(3, requests("processed"));
+
+        // Permits are released as results go out
+        send("session-a", null, "a-4");
+        assertEquals("APPROVED", awaitReplies(5).get(4).response().getStatus());
+    }
+
+    @Test
+    public void testRepliesGoOnlyToTheRequestingSession() throws Exception {
+        controller(8, 4, 100);
+        Principal alice = () -> "alice";
+        send("session-a", alice, "a-1");
+        send("session-b", null, "b-1");
+        send("session-c", alice, "c-1");
+        release.countDown();
+
+        for (Reply reply : awaitReplies(3)) {
+            String expectedSession = "session-" + reply.correlationId().charAt(0);
+            assertEquals(expectedSession, reply.sessionId(), "reply " + reply.correlationId());
+            // Without a principal the session id is the user name, so the user destination is the session's own
+            assertEquals(expectedSession.equals("session-b") ? "session-b" : "alice", reply.user());
+        }
+        verify(messagingTemplate, times(3)).convertAndSendToUser(anyString(),
+            eq(PaymentStreamController.RESULTS_DESTINATION), any(), anyMap());
+    }
+
+    @Test
+    public void testFullExecutorThrottlesAndReleasesThePermit() throws Exception {
+        controller(1, 1, 0);
+        send("session-a", null, "a-1");
+        send("session-b", null, "b-1");
+
+        Reply rejected = awaitReplies(1).get(0);
+        assertEquals("b-1", rejected.correlationId());
+        assertEquals("session-b", rejected.sessionId());
+        assertEquals("THROTTLED", rejected.response().getStatus());
+
+        release.countDown();
+        awaitReplies(2);
+        // session-b's permit went back when the executor rejected the task
+        send("session-b", null, "b-2");
+        assertEquals("APPROVED", awaitReplies(3).get(2).response().getStatus());
+    }
+}
@@ -0,0 +1,262 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.BacktestReport;
+import com.trading.payments.dto.BacktestRequest;
+import com.trading.payments.dto.FraudRuleSet;
+import com.trading.payments.entity.Merchant;
+import com.trading.payments.entity.MerchantRiskProfile;
+import com.trading.payments.repository.MerchantRepository;
+import com.trading.payments.repository.MerchantRiskProfileRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class BacktestServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2026, 3, 1, 20, 0);
+    private static final long MINUTE = 60_000;
+
+    private final MerchantRepository merchantRepository = mock(MerchantRepository.class);
+    private final MerchantRiskProfileRepository riskProfileRepository = mock(MerchantRiskProfileRepository.class);
+    private final LiveFraudRules liveRules = new LiveFraudRules(3, 4);
+
+    private JdbcTemplate jdbcTemplate;
+    private BacktestService backtestService;
+    private final List<Row> rows = new ArrayList<>();
+
+    private record Row(long id, String transactionId, String merchantId, String cardHash, BigDecimal amount,
+                       boolean approved, LocalDateTime createdAt) {
+    }
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:backtest;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("""
+            CREATE TABLE transactions (
+                id BIGINT PRIMARY KEY, transaction_id VARCHAR(64), merchant_id VARCHAR(64),
+                card_number_hash VARCHAR(64), amount DECIMAL(19, 2), status VARCHAR(20), created_at TIMESTAMP)
+            """);
+
+        when(merchantRepository.findAll()).thenReturn(List.of(
+            Merchant.builder().merchantId("M0").riskLevel(1).build(),
+            Merchant.builder().merchantId("M1").riskLevel(3).build(),
+            Merchant.builder().merchantId("M2").riskLevel(null).build()));
+        MerchantRiskProfile profile = new MerchantRiskProfile();
+        profile.setMerchantId("M0");
+        profile.setDailyLimit(BigDecimal.valueOf(12_000));
+        profile.setTransactionCountLimit(6);
+        profile.setMaxSingleTransaction(BigDecimal.valueOf(4_000));
+        when(riskProfileRepository.findByIsActiveTrue()).thenReturn(List.of(profile));
+
+        // Small pages, batches and 3 partitions, so rows cross every boundary the replay has
+        backtestService = new BacktestService(jdbcTemplate, new DataSourceTransactionManager(dataSource),
+            merchantRepository, riskProfileRepository, liveRules,
+            7, 3, 16, 3, 64, 5, 20, 60, 10, 24, 60, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        backtestService.shutdown();
+        jdbcTemplate.execute("DROP TABLE transactions");
+    }
+
+    @Test
+    public void testReplayMatchesSequentialScoring() throws Exception {
+        Random random = new Random(7);
+        String[] amounts = {"12.00", "99.99", "250.00", "1200.00", "3000.00", "6000.00", "7000.00"};
+        LocalDateTime time = START;
+        for (int i = 0; i < 600; i++) {
+            // Runs of equal timestamps, and a crossing of midnight for the merchant day totals
+            if (random.nextInt(3) > 0) {
+                time = time.plusSeconds(random.nextInt(240));
+            }
+            insert(new Row(1 + random.nextInt(1_000_000), "tx-" + i, "M" + random.nextInt(4), "card-" + random.nextInt(25),
+                new BigDecimal(amounts[random.nextInt(amounts.length)]), random.nextInt(4) > 0, time));
+        }
+
+        List<FraudRuleSet> candidates = List.of(
+            FraudRuleSet.builder().name("strict").cardVelocityCount(2).declineThreshold(30).build(),
+            FraudRuleSet.builder().name("loose").highAmount(BigDecimal.valueOf(10_000)).merchantLimitScale(10).build(),
+            FraudRuleSet.builder().name("no-spread").maxMerchantsPerCard(1_000L).maxCardsPerMerchant(1_000L).build());
+        BacktestReport report = run(BacktestRequest.builder()
+            .from(START).to(time.plusSeconds(1)).candidates(candidates).build());
+
+        assertEquals(BacktestReport.Status.COMPLETED, report.getStatus(), report.getError());
+        assertEquals(rows.size(), report.getTransactions());
+
+        List<FraudRuleSet> ruleSets = new ArrayList<>();
+        ruleSets.add(liveRules.live());
+        candidates.forEach(candidate -> ruleSets.add(liveRules.resolve(candidate)));
+        Expected expected = replaySequentially(ruleSets);
+
+        assertEquals(expected.recordedApproved / (double) rows.size(), report.getRecordedApprovalRate(), 1e-9);
+        assertEquals(expected.baselineAgreed / (double) rows.size(), report.getBaselineAgreement(), 1e-9);
+        for (int k = 0; k < ruleSets.size(); k++) {
+            BacktestReport.RuleSetResult result = report.getResults().get(k);
+            BacktestService.Tally tally = expected.tallies[k];
+            assertEquals(ruleSets.get(k).getName(), result.getName());
+            assertEquals(tally.approved, result.getApproved(), result.getName());
+            assertEquals(tally.declined, result.getDeclined(), result.getName());
+            assertEquals(tally.blocked, result.getBlocked(), result.getName());
+            assertEquals(BigDecimal.valueOf(tally.approvedCents, 2), result.getApprovedAmount(), result.getName());
+            assertEquals(tally.newlyApproved, result.getNewlyApproved(), result.getName());
+            assertEquals(tally.newlyDeclined, result.getNewlyDeclined(), result.getName());
+            assertTrue(expected.newlyDeclined.get(k).containsAll(result.getSampleNewlyDeclined()), result.getName());
+            assertTrue(result.getSampleNewlyDeclined().size() <= 5);
+        }
+
+        // Every rule set changed some decisions, so the comparison above is not vacuous
+        BacktestReport.RuleSetResult baseline = report.getResults().get(0);
+        assertTrue(baseline.getBlocked() > 0);
+        assertTrue(report.getResults().get(1).getNewlyDeclined() > 0);
+        assertTrue(report.getResults().get(2).getNewlyApproved() > 0);
+        assertTrue(report.getResults().get(2).getBlocked() < baseline.getBlocked());
+        assertTrue(report.getResults().get(3).getNewlyApproved() > 0);
+    }
+
+    @Test
+    public void testEmptyRangeCompletesWithNoTransactions() throws Exception {
+        BacktestReport report = run(BacktestRequest.builder()
+            .from(START).to(START.plusHours(1))
+            .candidates(List.of(FraudRuleSet.builder().name("strict").declineThreshold(10).build()))
+            .build());
+
+        assertEquals(BacktestReport.Status.COMPLETED, report.getStatus());
+        assertEquals(0, report.getTransactions());
+        assertEquals(List.of("live", "strict"), report.getResults().stream().map(BacktestReport.RuleSetResult::getName).toList());
+    }
+
+    private void insert(Row row) {
+        if (rows.stream().anyMatch(existing -> existing.id() == row.id())) {
+            return;
+        }
+        rows.add(row);
+        jdbcTemplate.update("INSERT INTO transactions VALUES (?, ?, ?, ?, ?, ?, ?)", row.id(), row.transactionId(),
+            row.merchantId(), row.cardHash(), row.amount(), row.approved() ? "approved" : "declined",
+            Timestamp.valueOf(row.createdAt()));
+    }
+
+    private BacktestReport run(BacktestRequest request) throws InterruptedException {
+        String id = backtestService.submit(request).getId();
+        for (int i = 0; i < 500; i++) {
+            BacktestReport report = backtestService.report(id).orElseThrow();
+            if (report.getStatus() == BacktestReport.Status.COMPLETED || report.getStatus() == BacktestReport.Status.FAILED) {
+                return report;
+            }
+            Thread.sleep(20);
+        }
+        fail("Backtest did not finish");
+        return null;
+    }
+
+    private static final class Expected {
+        BacktestService.Tally[] tallies;
+        List<Set<String>> newlyDeclined = new ArrayList<>();
+        long recordedApproved;
+        long baselineAgreed;
+    }
+
+    /** The same replay in one thread, row by row, with no paging, batching or partitions */
+    private Expected replaySequentially(List<FraudRuleSet> ruleSets) {
+        VelocityWindows windows = new VelocityWindows(60 * MINUTE, 10 * MINUTE, 24 * 60 * MINUTE,
+            60 * MINUTE, 10 * MINUTE, 64);
+        Map<String, long[]> days = new HashMap<>();
+        RuleSetEvaluator.Compiled[] compiled = ruleSets.stream().map(RuleSetEvaluator.Compiled::new)
+            .toArray(RuleSetEvaluator.Compiled[]::new);
+        Expected expected = new Expected();
+        expected.tallies = new BacktestService.Tally[compiled.length];
+        for (int k = 0; k < compiled.length; k++) {
+            expected.tallies[k] = new BacktestService.Tally();
+            expected.newlyDeclined.add(new HashSet<>());
+        }
+
+        long[] card = new long[4];
+        long[] merchant = new long[2];
+        RuleSetEvaluator.Inputs in = new RuleSetEvaluator.Inputs();
+        rows.sort(Comparator.comparing(Row::createdAt).thenComparingLong(Row::id));
+        for (Row row : rows) {
+            long cardKey = CardBlocklist.fingerprint(row.cardHash());
+            long time = Timestamp.valueOf(row.createdAt()).getTime();
+            windows.recordCard(cardKey, row.merchantId().hashCode(), row.amount().movePointRight(2).longValue(), time, card);
+            windows.recordMerchant(row.merchantId(), cardKey, time, merchant);
+
+            in.amountCents = row.amount().movePointRight(2).longValue();
+            in.merchantRiskLevel = switch (row.merchantId()) {
+                case "M1" -> 3;
+                case "M0" -> 1;
+                default -> 0;
+            };
+            in.hour = row.createdAt().getHour();
+            in.cardCount = card[VelocityWindows.CARD_COUNT];
+            in.cardAmountCents = card[VelocityWindows.CARD_AMOUNT_CENTS];
+            in.amountRepeats = card[VelocityWindows.AMOUNT_REPEATS];
+            in.distinctMerchantsForCard = card[VelocityWindows.DISTINCT_MERCHANTS];
+            in.merchantCount = merchant[VelocityWindows.MERCHANT_COUNT];
+            in.distinctCardsForMerchant = merchant[VelocityWindows.DISTINCT_CARDS];
+            in.hasLimits = row.merchantId().equals("M0");
+            long[] day = days.computeIfAbsent(row.merchantId(), m -> new long[3]);
+            if (day[0] != row.createdAt().toLocalDate().toEpochDay()) {
+                day[0] = row.createdAt().toLocalDate().toEpochDay();
+                day[1] = 0;
+                day[2] = 0;
+            }
+            in.dayVolumeCents = day[1];
+            in.dayCount = day[2];
+            in.dailyLimitCents = 1_200_000;
+            in.countLimit = 6;
+            in.maxSingleCents = 400_000;
+            day[1] += in.amountCents;
+            day[2]++;
+
+            boolean baselineApproves = false;
+            for (int k = 0; k < compiled.length; k++) {
+                int score = RuleSetEvaluator.score(compiled[k], in);
+                boolean approves = compiled[k].approves(score);
+                BacktestService.Tally tally = expected.tallies[k];
+                if (score == RuleSetEvaluator.BLOCKED) {
+                    tally.blocked++;
+                } else if (approves) {
+                    tally.approved++;
+                    tally.approvedCents += in.amountCents;
+                } else {
+                    tally.declined++;
+                }
+                if (k == 0) {
+                    baselineApproves = approves;
+                } else if (approves && !baselineApproves) {
+                    tally.newlyApproved++;
+                } else if (!approves && baselineApproves) {
+                    tally.newlyDeclined++;
+                    expected.newlyDeclined.get(k).add(row.transactionId());
+                }
+            }
+            if (row.approved()) {
+                expected.recordedApproved++;
+            }
+            if (row.approved() == baselineApproves) {
+                expected.baselineAgreed++;
+            }
+        }
+        return expected;
+    }
+}
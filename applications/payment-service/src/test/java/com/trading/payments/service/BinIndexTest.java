@@ -0,0 +1,90 @@
+package com.trading.payments.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testLooksUpIssuerAttributes() throws Exception {
+        Path file = dir.resolve("bins.csv");
+        Files.writeString(file, """
+            # bin_low,bin_high,country,type,prepaid
+            400000,499999,US,CREDIT,false
+            411111,411111,GB,DEBIT,true
+            41111150,41111159,ng,,false
+            52000000,52009999,,CHARGE,true
+            12345,123456,US,CREDIT,false
+            """);
+        BinIndex index = new BinIndex(file.toString(), new SimpleMeterRegistry());
+        index.init();
+
+        int visa = index.lookup("4000 0566 5566 5556");
+        assertEquals("US", BinIndex.country(visa));
+        assertEquals(BinIndex.CardType.CREDIT, BinIndex.cardType(visa));
+        assertFalse(BinIndex.isPrepaid(visa));
+
+        int nested = index.lookup("4111-1111-1111-1111");
+        assertEquals("GB", BinIndex.country(nested));
+        assertEquals(BinIndex.CardType.DEBIT, BinIndex.cardType(nested));
+        assertTrue(BinIndex.isPrepaid(nested));
+
+        int narrowest = index.lookup("4111115512345678");
+        assertEquals("NG", BinIndex.country(narrowest));
+        assertEquals(BinIndex.CardType.UNKNOWN, BinIndex.cardType(narrowest));
+
+        int noCountry = index.lookup("5200001234567890");
+        assertNull(BinIndex.country(noCountry));
+        assertTrue(BinIndex.isPrepaid(noCountry));
+
+        assertEquals(BinIndex.NO_MATCH, index.lookup("3782822463100050"));
+        assertEquals(BinIndex.NO_MATCH, index.lookup("4111"));
+        assertEquals(BinIndex.NO_MATCH, index.lookup("not a card"));
+
+        Files.writeString(file, "378282,378282,US,CHARGE,false\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        index.reload();
+        assertEquals(BinIndex.CardType.CHARGE, BinIndex.cardType(index.lookup("3782822463100050")));
+        assertEquals(BinIndex.NO_MATCH, index.lookup("4000056655665556"));
+    }
+
+    @Test
+    public void testNarrowestRangeWinsLikeReferenceScan() {
+        Random random = new Random(5);
+        BinIndex.TableBuilder builder = new BinIndex.TableBuilder();
+        List<int[]> ranges = new ArrayList<>();   // start, end, attributes
+        for (int i = 0; i < 3_000; i++) {
+            int start = 40_000_000 + random.nextInt(100_000);
+            int end = start + (random.nextBoolean() ? random.nextInt(100) : random.nextInt(20_000));
+            builder.add(Integer.toString(start), Integer.toString(end), i);
+            ranges.add(new int[] { start, end, i });
+        }
+        BinIndex.Table table = builder.build();
+
+        for (int bin = 39_999_990; bin < 40_120_010; bin += 7) {
+            int expected = BinIndex.NO_MATCH;
+            int width = Integer.MAX_VALUE;
+            for (int[] range : ranges) {
+                // Narrowest wins; among equal widths the later one
+                if (bin >= range[0] && bin <= range[1] && range[1] - range[0] <= width) {
+                    expected = range[2];
+                    width = range[1] - range[0];
+                }
+            }
+            assertEquals(expected, table.find(bin), "BIN " + bin);
+        }
+    }
+}
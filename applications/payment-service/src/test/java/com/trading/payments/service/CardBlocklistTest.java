@@ -0,0 +1,82 @@
+package com.trading.payments.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CardBlocklistTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testFindsEveryListedCardAndNoOthers() throws Exception {
+        Random random = new Random(7);
+        String[] listed = new String[10_000];
+        long[] fingerprints = new long[listed.length + 100];
+        for (int i = 0; i < listed.length; i++) {
+            listed[i] = randomHash(random);
+            fingerprints[i] = CardBlocklist.fingerprint(listed[i]);
+        }
+        // Duplicates are collapsed
+        System.arraycopy(fingerprints, 0, fingerprints, listed.length, 100);
+
+        Path file = dir.resolve("blocklist.bin");
+        assertEquals(listed.length, CardBlocklistBuilder.build(fingerprints, file));
+
+        CardBlocklist blocklist = new CardBlocklist(file.toString(), new SimpleMeterRegistry());
+        blocklist.init();
+        assertEquals(listed.length, blocklist.size());
+        for (String hash : listed) {
+            assertTrue(blocklist.contains(hash));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertFalse(blocklist.contains(randomHash(random)));
+        }
+    }
+
+    @Test
+    public void testHashesCardNumbersLikeFraudDetection() {
+        String hash = FraudDetectionService.hashCardNumber("4111111111111111");
+        assertEquals(CardBlocklist.fingerprint(hash), CardBlocklistBuilder.fingerprintOf("4111111111111111"));
+        assertEquals(CardBlocklist.fingerprint(hash), CardBlocklistBuilder.fingerprintOf(hash.toUpperCase()));
+    }
+
+    @Test
+    public void testReloadSwapsInRebuiltFile() throws Exception {
+        String first = FraudDetectionService.hashCardNumber("4000000000000002");
+        String second = FraudDetectionService.hashCardNumber("4000000000000010");
+        Path file = dir.resolve("blocklist.bin");
+        CardBlocklistBuilder.build(new long[] { CardBlocklist.fingerprint(first) }, file);
+
+        CardBlocklist blocklist = new CardBlocklist(file.toString(), new SimpleMeterRegistry());
+        blocklist.init();
+        assertTrue(blocklist.contains(first));
+        assertFalse(blocklist.contains(second));
+
+        CardBlocklistBuilder.build(new long[] { CardBlocklist.fingerprint(second) }, file);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        blocklist.reload();
+        assertFalse(blocklist.contains(first));
+        assertTrue(blocklist.contains(second));
+    }
+
+    @Test
+    public void testDisabledWithoutPath() {
+        CardBlocklist blocklist = new CardBlocklist("", new SimpleMeterRegistry());
+        blocklist.init();
+        assertFalse(blocklist.contains(FraudDetectionService.hashCardNumber("4111111111111111")));
+    }
+
+    private static String randomHash(Random random) {
+        return String.format("%016x%016x%016x%016x",
+            random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong());
+    }
+}
@@ -0,0 +1,113 @@
+package com.trading.payments.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CardHistoryStoreTest {
+
+    @Test
+    public void testReturnsPreviousEntriesNewestFirst() {
+        CardHistoryStore store = new CardHistoryStore(4, 1, 60, 1, new SimpleMeterRegistry());
+
+        assertEquals(0, store.append(card(1), "M1", 100, 1_000).size());
+        store.append(card(1), "M2", 200, 2_000);
+        store.append(card(1), "M1", 300, 3_000);
+
+        CardHistoryStore.History history = store.append(card(1), "M3", 400, 4_000);
+        assertEquals(3, history.size());
+        assertEquals(300, history.amountCents(0));
+        assertEquals(200, history.amountCents(1));
+        assertEquals(100, history.amountCents(2));
+        assertEquals(3_000, history.timestamp(0));
+        assertEquals(history.merchant(0), history.merchant(2));
+        assertNotEquals(history.merchant(0), history.merchant(1));
+        assertEquals("M1".hashCode(), history.merchant(0));
+
+        // Ring keeps only the last four
+        history = store.append(card(1), "M1", 500, 5_000);
+        history = store.append(card(1), "M1", 600, 6_000);
+        assertEquals(4, history.size());
+        assertEquals(500, history.amountCents(0));
+        assertEquals(200, history.amountCents(3));
+    }
+
+    @Test
+    public void testIdleCardStartsOver() {
+        CardHistoryStore store = new CardHistoryStore(4, 1, 1, 1, new SimpleMeterRegistry());
+
+        store.append(card(1), "M1", 100, 0);
+        assertEquals(1, store.append(card(1), "M1", 100, 30_000).size());
+        assertEquals(0, store.append(card(1), "M1", 100, 200_000).size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedCardIsRecycled() {
+        CardHistoryStore.Stripe stripe = new CardHistoryStore.Stripe(2, 4);
+        CardHistoryStore.History history = new CardHistoryStore.History(4);
+
+        stripe.append(1, 0, 100, 0, Long.MAX_VALUE, history);
+        stripe.append(2, 0, 200, 0, Long.MAX_VALUE, history);
+        stripe.append(1, 0, 100, 1, Long.MAX_VALUE, history);   // 2 is now the eldest
+
+        assertTrue(stripe.append(3, 0, 300, 2, Long.MAX_VALUE, history));
+        assertTrue(stripe.find(1) >= 0);
+        assertEquals(-1, stripe.find(2));
+        assertTrue(stripe.find(3) >= 0);
+    }
+
+    @Test
+    public void testMatchesReferenceUnderChurn() {
+        int capacity = 64;
+        int ringSize = 3;
+        CardHistoryStore.Stripe stripe = new CardHistoryStore.Stripe(capacity, ringSize);
+        CardHistoryStore.History history = new CardHistoryStore.History(ringSize);
+        Map<Long, Deque<Long>> reference = new LinkedHashMap<>(16, 0.75f, true);
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            // Few distinct low bits, so probe runs collide and wrap
+            long key = ((long) random.nextInt(256) << 32) | random.nextInt(8) + 1;
+            long amount = random.nextInt(10_000);
+
+            Deque<Long> expected = reference.get(key);
+            if (expected == null) {
+                if (reference.size() == capacity) {
+                    Iterator<Long> eldest = reference.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+                expected = new ArrayDeque<>();
+                reference.put(key, expected);
+            }
+
+            stripe.append(key, 0, amount, i, Long.MAX_VALUE, history);
+
+            assertEquals(expected.size(), history.size());
+            Iterator<Long> newestFirst = expected.iterator();
+            for (int e = 0; e < history.size(); e++) {
+                assertEquals(newestFirst.next(), history.amountCents(e));
+            }
+
+            expected.addFirst(amount);
+            if (expected.size() > ringSize) {
+                expected.removeLast();
+            }
+        }
+        for (Long key : reference.keySet()) {
+            assertTrue(stripe.find(key) >= 0);
+        }
+    }
+
+    private static String card(int n) {
+        return String.format("%016x", n * 0x9E3779B97F4A7C15L) + "0".repeat(48);
+    }
+}
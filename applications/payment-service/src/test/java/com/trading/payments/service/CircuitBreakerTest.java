@@ -0,0 +1,39 @@
+package com.trading.payments.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensAfterConsecutiveFailuresAndClosesOnTrialSuccess() {
+        AtomicLong clock = new AtomicLong(1_000);
+        CircuitBreaker breaker = new CircuitBreaker(3, 5_000, clock::get);
+
+        assertFalse(breaker.recordFailure());
+        assertFalse(breaker.recordFailure());
+        breaker.recordSuccess();                       // resets the run
+        assertFalse(breaker.recordFailure());
+        assertFalse(breaker.recordFailure());
+        assertTrue(breaker.recordFailure());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.allowRequest());
+
+        // One trial after the open interval; it fails and the breaker stays open
+        clock.addAndGet(5_000);
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        breaker.recordFailure();
+        assertFalse(breaker.allowRequest());
+
+        clock.addAndGet(5_000);
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.recordSuccess());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.allowRequest());
+    }
+}
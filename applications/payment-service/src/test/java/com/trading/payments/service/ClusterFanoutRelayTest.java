@@ -0,0 +1,137 @@
+package com.trading.payments.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ClusterFanoutRelayTest {
+
+    private static final String CHANNEL = "payment:ws:fanout";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @SuppressWarnings("unchecked")
+    private ClusterFanoutRelay relay(String nodeId, StompEventPublisher publisher, BlockingQueue<byte[]> published) {
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        RedisConnection connection = mock(RedisConnection.class);
+        when(connection.publish(any(byte[].class), any(byte[].class))).thenAnswer(invocation -> {
+            published.add(invocation.getArgument(1));
+            return 1L;
+        });
+        when(redisTemplate.execute(any(RedisCallback.class)))
+            .thenAnswer(invocation -> ((RedisCallback<?>) invocation.getArgument(0)).doInRedis(connection));
+
+        ClusterFanoutRelay relay = new ClusterFanoutRelay(publisher, redisTemplate,
+            mock(RedisConnectionFactory.class), meterRegistry);
+        ReflectionTestUtils.setField(relay, "nodeId", nodeId);
+        ReflectionTestUtils.setField(relay, "channel", CHANNEL);
+        ReflectionTestUtils.setField(relay, "outboxCapacity", 100_000);
+        ReflectionTestUtils.setField(relay, "maxBatchSize", 64);
+        ReflectionTestUtils.setField(relay, "lingerMicros", 200L);
+        ReflectionTestUtils.setField(relay, "localDestinations", Set.of("/topic/dashboard/stats"));
+        relay.init();
+        return relay;
+    }
+
+    @Test
+    public void testConcurrentPublishersLoseNoEventsAtTheReceiver() throws Exception {
+        BlockingQueue<byte[]> frames = new LinkedBlockingQueue<>();
+        ClusterFanoutRelay sender = relay("node-a", mock(StompEventPublisher.class), frames);
+
+        Set<String> received = ConcurrentHashMap.newKeySet();
+        StompEventPublisher receiverPublisher = mock(StompEventPublisher.class);
+        when(receiverPublisher.deliverRemote(any(), any(), any(), any())).thenAnswer(invocation -> {
+            received.add(new String((byte[]) invocation.getArgument(2), StandardCharsets.UTF_8));
+            return 1;
+        });
+        ClusterFanoutRelay receiver = relay("node-b", receiverPublisher, new LinkedBlockingQueue<>());
+
+        ReflectionTestUtils.setField(sender, "running", true);
+        Thread flusher = new Thread(() -> ReflectionTestUtils.invokeMethod(sender, "runFlusher"));
+        flusher.start();
+
+        int threads = 8;
+        int eventsPerThread = 5000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> publishers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < eventsPerThread; i++) {
+                    byte[] body = (id + ":" + i).getBytes(StandardCharsets.UTF_8);
+                    sender.forward(new String[]{"/topic/transactions"}, null, body, null);
+                }
+            });
+            thread.start();
+            publishers.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : publishers) {
+            thread.join();
+        }
+
+        // Hand every published frame to the other node, in publish order as Redis would
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (received.size() < threads * eventsPerThread && System.nanoTime() < deadline) {
+            byte[] frame = frames.poll(100, TimeUnit.MILLISECONDS);
+            if (frame != null) {
+                ReflectionTestUtils.invokeMethod(receiver, "onMessage",
+                    new DefaultMessage(CHANNEL.getBytes(StandardCharsets.UTF_8), frame), null);
+            }
+        }
+        ReflectionTestUtils.setField(sender, "running", false);
+        flusher.join();
+
+        assertEquals(threads * eventsPerThread, received.size());
+        assertEquals(0, meterRegistry.get("payment.cluster.relay.dropped").tag("reason", "duplicate").counter().count());
+    }
+
+    @Test
+    public void testReplayedFrameIsDroppedAsDuplicate() throws Exception {
+        BlockingQueue<byte[]> frames = new LinkedBlockingQueue<>();
+        ClusterFanoutRelay sender = relay("node-a", mock(StompEventPublisher.class), frames);
+        StompEventPublisher receiverPublisher = mock(StompEventPublisher.class);
+        ClusterFanoutRelay receiver = relay("node-b", receiverPublisher, new LinkedBlockingQueue<>());
+
+        ReflectionTestUtils.setField(sender, "running", true);
+        Thread flusher = new Thread(() -> ReflectionTestUtils.invokeMethod(sender, "runFlusher"));
+        flusher.start();
+        sender.forward(new String[]{"/topic/transactions"}, "MERCHANT_001", "{}".getBytes(StandardCharsets.UTF_8),
+            new byte[]{1, 2, 3});
+        byte[] frame = frames.poll(5, TimeUnit.SECONDS);
+        ReflectionTestUtils.setField(sender, "running", false);
+        flusher.join();
+        assertNotNull(frame);
+
+        for (int i = 0; i < 2; i++) {
+            ReflectionTestUtils.invokeMethod(receiver, "onMessage",
+                new DefaultMessage(CHANNEL.getBytes(StandardCharsets.UTF_8), frame), null);
+        }
+        verify(receiverPublisher, times(1)).deliverRemote(any(), eq("MERCHANT_001"), any(), eq(new byte[]{1, 2, 3}));
+        assertEquals(1, meterRegistry.get("payment.cluster.relay.dropped").tag("reason", "duplicate").counter().count());
+    }
+}
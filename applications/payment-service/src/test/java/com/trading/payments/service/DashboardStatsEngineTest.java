@@ -0,0 +1,172 @@
+package com.trading.payments.service;
+
+import com.trading.payments.service.DashboardStatsEngine.LatencyHistogram;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class DashboardStatsEngineTest {
+
+    private final StompEventPublisher publisher = mock(StompEventPublisher.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private DashboardStatsEngine engine;
+
+    // Past the engine's start second, so tps divides by the full window
+    private final long now = System.currentTimeMillis() / 1000 + 2 * DashboardStatsEngine.WINDOW_SECONDS;
+
+    @BeforeEach
+    void setUp() {
+        engine = new DashboardStatsEngine(publisher, registry);
+        ReflectionTestUtils.setField(engine, "minRefreshIntervalMillis", 60_000L);
+        engine.init();
+    }
+
+    private void record(String merchantId, String status, boolean fraudAlert, long latencyMillis, long second) {
+        engine.record(merchantId, status, fraudAlert, TimeUnit.MILLISECONDS.toNanos(latencyMillis), second);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> window(Map<String, Object> snapshot, String name) {
+        return (Map<String, Object>) ((Map<String, Object>) snapshot.get("windows")).get(name);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> merchantWindow(Map<String, Object> snapshot, String merchantId, String name) {
+        Map<String, Object> merchants = (Map<String, Object>) snapshot.get("merchants");
+        return (Map<String, Object>) ((Map<String, Object>) merchants.get(merchantId)).get(name);
+    }
+
+    @Test
+    public void testHistogramIndexIsLinearThenLogLinear() {
+        for (int micros = 0; micros < LatencyHistogram.SUB_BUCKETS; micros++) {
+            assertEquals(micros, LatencyHistogram.indexOf(micros));
+        }
+        assertEquals(0, LatencyHistogram.indexOf(-5));
+        assertEquals(16, LatencyHistogram.indexOf(16));
+        assertEquals(31, LatencyHistogram.indexOf(31));
+        // Two microseconds per sub-bucket from 32
+        assertEquals(32, LatencyHistogram.indexOf(32));
+        assertEquals(32, LatencyHistogram.indexOf(33));
+        assertEquals(33, LatencyHistogram.indexOf(34));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+
+        int previous = 0;
+        for (long micros = 1; micros < (1L << LatencyHistogram.MAX_EXPONENT); micros += micros / 7 + 1) {
+            int index = LatencyHistogram.indexOf(micros);
+            assertTrue(index >= previous, "index decreased at " + micros);
+            assertTrue(index < LatencyHistogram.BUCKETS);
+            long value = LatencyHistogram.valueOf(index);
+            assertTrue(Math.abs(value - micros) <= micros / LatencyHistogram.SUB_BUCKETS,
+                micros + "us reads back as " + value + "us");
+            previous = index;
+        }
+    }
+
+    @Test
+    public void testPercentilesOfKnownLatencies() {
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        for (long millis = 1; millis <= 1000; millis++) {
+            counts[LatencyHistogram.indexOf(millis * 1000)]++;
+        }
+
+        assertEquals(500_000, LatencyHistogram.percentile(counts, 1000, 0.50), 500_000 / 16.0);
+        assertEquals(990_000, LatencyHistogram.percentile(counts, 1000, 0.99), 990_000 / 16.0);
+        assertEquals(1_000, LatencyHistogram.percentile(counts, 1000, 0.0), 1_000 / 16.0);
+        assertEquals(0, LatencyHistogram.percentile(counts, 0, 0.99));
+    }
+
+    @Test
+    public void testWindowsAggregateOnlyTheirOwnSeconds() {
+        // Last completed second: 100 payments at 1..100ms, a quarter declined, one fraud alert
+        for (int i = 1; i <= 100; i++) {
+            record("M1", i % 4 == 0 ? "DECLINED" : "APPROVED", i == 1, i, now - 1);
+        }
+        // Half a minute ago: 20 slow ones
+        for (int i = 0; i < 20; i++) {
+            record("M2", "APPROVED", true, 2_000, now - 30);
+        }
+        // Older than a minute, inside five
+        for (int i = 0; i < 30; i++) {
+            record("M2", "DECLINED", false, 5, now - 200);
+        }
+        // The current second is still filling and left out of every window
+        record("M1", "APPROVED", false, 50, now);
+
+        Map<String, Object> snapshot = engine.snapshot(now);
+        assertEquals(151L, snapshot.get("totalTransactions"));
+        assertEquals(21L, snapshot.get("fraudAlerts"));
+
+        Map<String, Object> oneSecond = window(snapshot, "1s");
+        assertEquals(100L, oneSecond.get("transactions"));
+        assertEquals(100.0, oneSecond.get("tps"));
+        assertEquals(0.75, oneSecond.get("approvalRate"));
+        assertEquals(0.01, oneSecond.get("fraudRate"));
+        assertEquals(50.0, (double) oneSecond.get("p50Ms"), 50.0 / 16);
+        assertEquals(99.0, (double) oneSecond.get("p99Ms"), 99.0 / 16);
+
+        Map<String, Object> oneMinute = window(snapshot, "1m");
+        assertEquals(120L, oneMinute.get("transactions"));
+        assertEquals(2.0, oneMinute.get("tps"));
+        assertEquals(95.0 / 120, (double) oneMinute.get("approvalRate"), 1e-9);
+        assertEquals(21.0 / 120, (double) oneMinute.get("fraudRate"), 1e-9);
+        assertEquals(2_000.0, (double) oneMinute.get("p99Ms"), 2_000.0 / 16);
+
+        Map<String, Object> fiveMinutes = window(snapshot, "5m");
+        assertEquals(150L, fiveMinutes.get("transactions"));
+        assertEquals(0.5, fiveMinutes.get("tps"));
+        assertEquals(95.0 / 150, (double) fiveMinutes.get("approvalRate"), 1e-9);
+
+        assertEquals(100L, merchantWindow(snapshot, "M1", "1m").get("transactions"));
+        assertEquals(20L, merchantWindow(snapshot, "M2", "1m").get("transactions"));
+        assertEquals(50L, merchantWindow(snapshot, "M2", "5m").get("transactions"));
+        assertEquals(0.4, merchantWindow(snapshot, "M2", "5m").get("fraudRate"));
+    }
+
+    @Test
+    public void testBucketsOlderThanTheLongestWindowAreExcluded() {
+        // Shares its ring slot with now - 1
+        record("M1", "APPROVED", false, 10, now - DashboardStatsEngine.WINDOW_SECONDS - 1);
+
+        Map<String, Object> later = engine.snapshot(now);
+        assertEquals(0L, window(later, "1s").get("transactions"));
+        assertEquals(0L, window(later, "5m").get("transactions"));
+        assertEquals(0L, merchantWindow(later, "M1", "5m").get("transactions"));
+        assertEquals(0.0, window(later, "5m").get("p99Ms"));
+
+        Map<String, Object> atTheTime = engine.snapshot(now - DashboardStatsEngine.WINDOW_SECONDS);
+        assertEquals(1L, window(atTheTime, "1s").get("transactions"));
+
+        // Recording into the recycled slot starts it over
+        record("M1", "DECLINED", false, 10, now - 1);
+        Map<String, Object> snapshot = engine.snapshot(now);
+        assertEquals(1L, window(snapshot, "5m").get("transactions"));
+        assertEquals(0.0, window(snapshot, "5m").get("approvalRate"));
+    }
+
+    @Test
+    public void testRefreshIsRateLimited() {
+        assertTrue(engine.requestRefresh());
+        assertFalse(engine.requestRefresh());
+        assertFalse(engine.requestRefresh());
+        verify(publisher, times(1)).publish(any(), eq("/topic/dashboard/stats"));
+        assertEquals(2, registry.get("payment.dashboard.refresh_throttled").counter().count());
+
+        // A scheduled push counts as the latest refresh too
+        engine.push();
+        assertFalse(engine.requestRefresh());
+        verify(publisher, times(2)).publish(any(), eq("/topic/dashboard/stats"));
+        assertEquals(3, registry.get("payment.dashboard.refresh_throttled").counter().count());
+
+        ReflectionTestUtils.setField(engine, "minRefreshIntervalMillis", 0L);
+        assertTrue(engine.requestRefresh());
+        verify(publisher, times(3)).publish(any(), eq("/topic/dashboard/stats"));
+    }
+}
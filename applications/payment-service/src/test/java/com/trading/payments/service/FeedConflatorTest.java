@@ -0,0 +1,113 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.PaymentResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class FeedConflatorTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    private final StompEventPublisher publisher = mock(StompEventPublisher.class);
+    private FeedConflator conflator;
+
+    @BeforeEach
+    void setUp() {
+        conflator = new FeedConflator(publisher, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(conflator, "intervalMillis", 250L);
+        ReflectionTestUtils.setField(conflator, "idleEvictMillis", 60_000L);
+        conflator.init();
+    }
+
+    private static PaymentResponse payment(String amount, String status) {
+        return PaymentResponse.builder()
+            .transactionId("tx")
+            .status(status)
+            .fraudScore(10)
+            .amount(new BigDecimal(amount))
+            .processedAt(Instant.ofEpochMilli(NOW))
+            .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> published() {
+        ArgumentCaptor<Supplier<?>> payloads = ArgumentCaptor.forClass(Supplier.class);
+        verify(publisher, atLeast(0)).publishKeyed(anyString(), payloads.capture(), any(String[].class));
+        return payloads.getAllValues().stream().map(supplier -> (Map<String, Object>) supplier.get()).toList();
+    }
+
+    private int symbols() {
+        return ((Map<?, ?>) ReflectionTestUtils.getField(conflator, "symbols")).size();
+    }
+
+    @Test
+    public void testPublishesAtMostOncePerIntervalAndCarriesTotalsOver() {
+        conflator.onPayment("M1", payment("10.00", "APPROVED"));
+        conflator.onPayment("M1", payment("20.00", "DECLINED"));
+        conflator.onPayment("M1", payment("5.50", "APPROVED"));
+        conflator.flush(NOW);
+
+        List<Map<String, Object>> updates = published();
+        assertEquals(1, updates.size());
+        assertEquals(3L, updates.get(0).get("volume"));
+        assertEquals(2L, updates.get(0).get("approved"));
+        assertEquals(new BigDecimal("35.50"), updates.get(0).get("notional"));
+        assertEquals(new BigDecimal("5.50"), updates.get(0).get("price"));
+        verify(publisher).publishKeyed(eq("M1"), any(), eq("/topic/feed/conflated"), eq("/topic/feed/conflated/merchant/M1"));
+
+        // Payments inside the interval accumulate instead of publishing
+        conflator.onPayment("M1", payment("1.00", "APPROVED"));
+        conflator.flush(NOW + 50);
+        conflator.onPayment("M1", payment("2.00", "DECLINED"));
+        conflator.flush(NOW + 249);
+        assertEquals(1, published().size());
+
+        conflator.flush(NOW + 250);
+        updates = published();
+        assertEquals(2, updates.size());
+        assertEquals(2L, updates.get(1).get("volume"));
+        assertEquals(1L, updates.get(1).get("approved"));
+        assertEquals(new BigDecimal("3.00"), updates.get(1).get("notional"));
+        assertEquals("DECLINED", updates.get(1).get("status"));
+
+        // Nothing new: nothing published, however much time passes
+        conflator.flush(NOW + 1_000);
+        assertEquals(2, published().size());
+    }
+
+    @Test
+    public void testIdleSymbolsAreEvicted() {
+        for (int i = 0; i < 100; i++) {
+            conflator.onPayment("M" + i, payment("1.00", "APPROVED"));
+        }
+        conflator.flush(NOW);
+        assertEquals(100, symbols());
+
+        conflator.onPayment("M0", payment("1.00", "APPROVED"));
+        conflator.flush(NOW + 30_000);
+        conflator.flush(NOW + 60_000);
+        assertEquals(1, symbols(), "only the merchant that traded since stays");
+
+        // An evicted merchant starts over with fresh totals
+        conflator.onPayment("M5", payment("7.00", "APPROVED"));
+        conflator.flush(NOW + 60_000);
+        List<Map<String, Object>> updates = published();
+        Map<String, Object> last = updates.get(updates.size() - 1);
+        assertEquals("M5", last.get("merchantId"));
+        assertEquals(1L, last.get("volume"));
+        assertEquals(new BigDecimal("7.00"), last.get("notional"));
+    }
+}
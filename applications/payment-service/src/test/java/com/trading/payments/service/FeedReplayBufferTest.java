@@ -0,0 +1,100 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.FeedSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FeedReplayBufferTest {
+
+    private final FeedReplayBuffer buffer = new FeedReplayBuffer(true, 64, 10, 4, 2, "node-a", new SimpleMeterRegistry());
+
+    private long append(String destination, String key, String payload) {
+        List<Long> sent = new ArrayList<>();
+        long seq = buffer.append(destination, key, payload.getBytes(StandardCharsets.UTF_8), sent::add);
+        assertEquals(List.of(seq), sent);
+        return seq;
+    }
+
+    private static List<String> payloads(FeedSnapshot snapshot) {
+        return snapshot.getEvents().stream().map(FeedSnapshot.Event::getPayload).toList();
+    }
+
+    @Test
+    public void testMerchantDestinationsAreSequencedFeedsOfTheirOwn() {
+        assertTrue(buffer.isSequenced("/topic/transactions/merchant/M1"));
+        assertTrue(buffer.isSequenced("/topic/feed/conflated/merchant/M1"));
+        assertFalse(buffer.isSequenced("/topic/transactions/merchant/"));
+        assertFalse(buffer.isSequenced("/topic/admin/critical"));
+
+        long first = append("/topic/transactions/merchant/M1", "M1", "{\"n\":1}");
+        long global = append("/topic/transactions", "M1", "{\"n\":1}");
+        append("/topic/transactions/merchant/M1", "M1", "{\"n\":2}");
+        append("/topic/transactions/merchant/M1", "M1", "{\"n\":3}");
+
+        FeedSnapshot since = buffer.since("transactions/merchant/M1", first, "node-a").orElseThrow();
+        assertTrue(since.isComplete());
+        assertEquals("/topic/transactions/merchant/M1", since.getDestination());
+        assertEquals("transactions/merchant/M1", since.getFeed());
+        assertEquals(List.of("{\"n\":2}", "{\"n\":3}"), payloads(since));
+        assertEquals(first + 2, since.getSeq());
+
+        // The global feed numbers its own events
+        FeedSnapshot globalSince = buffer.since("transactions", global - 1, "node-a").orElseThrow();
+        assertEquals(List.of("{\"n\":1}"), payloads(globalSince));
+
+        // Ring of merchant-capacity events: older seqs fall back to a snapshot
+        for (int i = 4; i <= 8; i++) {
+            append("/topic/transactions/merchant/M1", "M1", "{\"n\":" + i + "}");
+        }
+        FeedSnapshot reset = buffer.since("transactions/merchant/M1", first, "node-a").orElseThrow();
+        assertFalse(reset.isComplete());
+        assertEquals(List.of("{\"n\":5}", "{\"n\":6}", "{\"n\":7}", "{\"n\":8}"), payloads(reset));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedMerchantFeedIsDroppedAndResumesAsASnapshot() {
+        long m1 = append("/topic/fraud-alerts/merchant/M1", "M1", "{\"m\":1}");
+        append("/topic/fraud-alerts/merchant/M2", "M2", "{\"m\":2}");
+        append("/topic/fraud-alerts/merchant/M3", "M3", "{\"m\":3}");
+
+        FeedSnapshot dropped = buffer.since("fraud-alerts/merchant/M1", m1, "node-a").orElseThrow();
+        assertFalse(dropped.isComplete());
+        assertEquals(List.of(), dropped.getEvents());
+        assertEquals("/topic/fraud-alerts/merchant/M1", dropped.getDestination());
+
+        // A new log for the merchant never matches a seq handed out by the dropped one
+        long next = append("/topic/fraud-alerts/merchant/M1", "M1", "{\"m\":4}");
+        assertTrue(next > m1);
+        assertFalse(buffer.since("fraud-alerts/merchant/M1", m1, "node-a").orElseThrow().isComplete());
+        assertEquals(List.of("{\"m\":4}"), payloads(buffer.snapshot("fraud-alerts/merchant/M1").orElseThrow()));
+
+        // Reads do not create logs
+        FeedSnapshot unknown = buffer.snapshot("fraud-alerts/merchant/M9").orElseThrow();
+        assertEquals(List.of(), unknown.getEvents());
+        assertEquals(List.of("{\"m\":3}"), payloads(buffer.snapshot("fraud-alerts/merchant/M3").orElseThrow()));
+    }
+
+    @Test
+    public void testStatsSnapshotIsTheLatestPush() {
+        append("/topic/dashboard/stats", null, "{\"total\":1}");
+        long last = append("/topic/dashboard/stats", null, "{\"total\":2}");
+
+        FeedSnapshot snapshot = buffer.snapshot("stats").orElseThrow();
+        assertEquals(List.of("{\"total\":2}"), payloads(snapshot));
+        assertEquals(last, snapshot.getSeq());
+    }
+
+    @Test
+    public void testUnknownFeeds() {
+        assertTrue(buffer.snapshot("bogus").isEmpty());
+        assertTrue(buffer.snapshot("bogus/merchant/M1").isEmpty());
+        assertTrue(buffer.snapshot("transactions/merchant/").isEmpty());
+        assertTrue(buffer.since("risk-alerts/merchant/M1", 1, null).isEmpty());
+    }
+}
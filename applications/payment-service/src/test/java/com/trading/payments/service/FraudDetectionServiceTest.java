@@ -0,0 +1,117 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.PaymentRequest;
+import com.trading.payments.dto.VelocitySnapshot;
+import com.trading.payments.entity.Merchant;
+import com.trading.payments.repository.MerchantRepository;
+import com.trading.payments.repository.TransactionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class FraudDetectionServiceTest {
+
+    private final MerchantRepository merchantRepository = mock(MerchantRepository.class);
+    private final VelocityService velocityService = mock(VelocityService.class);
+    private final IpReputationService ipReputation = mock(IpReputationService.class);
+    private final BinIndex binIndex = mock(BinIndex.class);
+    private final ShadowEvaluationService shadow = mock(ShadowEvaluationService.class);
+
+    // Non-default spread thresholds, so the test fails if either side ignores the configuration
+    private final LiveFraudRules liveRules = new LiveFraudRules(3, 50);
+
+    private FraudDetectionService service;
+
+    @BeforeEach
+    public void setUp() {
+        service = new FraudDetectionService(mock(TransactionRepository.class), merchantRepository, velocityService,
+            new CardHistoryStore(16, 1, 60, 1, new SimpleMeterRegistry()), mock(CardBlocklist.class), ipReputation,
+            binIndex, mock(FraudModel.class), shadow, liveRules);
+        when(ipReputation.lookup(any())).thenReturn(IpPrefixTrie.NO_MATCH);
+        when(binIndex.lookup(any())).thenReturn(BinIndex.NO_MATCH);
+        when(shadow.isActive()).thenReturn(true);
+    }
+
+    @Test
+    public void testLiveRuleSetScoresLikeFraudDetection() {
+        RuleSetEvaluator.Compiled compiled = new RuleSetEvaluator.Compiled(liveRules.live());
+        RuleSetEvaluator.Inputs inputs = new RuleSetEvaluator.Inputs();
+        String[] amounts = {"10.00", "1000.00", "1000.01", "5000", "6000.00", "6000.50", "7000"};
+        long[] counts = {0, 4, 5};
+        long[] merchantCounts = {49, 50};
+        long[] spreads = {2, 3, 49, 50};
+        int checked = 0;
+
+        for (int riskLevel = 1; riskLevel <= 4; riskLevel++) {
+            String merchantId = "M" + riskLevel;
+            when(merchantRepository.findByMerchantId(merchantId))
+                .thenReturn(Optional.of(Merchant.builder().merchantId(merchantId).riskLevel(riskLevel).build()));
+            for (String amount : amounts) {
+                for (long count : counts) {
+                    for (long merchantCount : merchantCounts) {
+                        for (long spread : spreads) {
+                            VelocitySnapshot velocity = VelocitySnapshot.builder()
+                                .cardCount(count)
+                                .cardAmount(BigDecimal.valueOf(count * 1000))
+                                .merchantCount(merchantCount)
+                                .amountRepeats(count - 2)
+                                .distinctMerchantsForCard(spread)
+                                .distinctCardsForMerchant(spread)
+                                .available(true)
+                                .build();
+                            ShadowEvaluationService.Sample sample = evaluate(merchantId, new BigDecimal(amount), velocity);
+
+                            ShadowEvaluationService.fill(inputs, sample);
+                            assertEquals(Math.min(sample.rulePoints(), 100), RuleSetEvaluator.score(compiled, inputs),
+                                () -> "amount " + amount + ", velocity " + velocity + ", hour " + sample.hour());
+                            checked++;
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals(4 * amounts.length * counts.length * merchantCounts.length * spreads.length, checked);
+    }
+
+    @Test
+    public void testSpreadThresholdsComeFromTheConfiguration() {
+        when(merchantRepository.findByMerchantId("M1")).thenReturn(Optional.empty());
+        VelocitySnapshot velocity = VelocitySnapshot.builder()
+            .cardAmount(BigDecimal.ZERO)
+            .distinctMerchantsForCard(3)
+            .available(true)
+            .build();
+
+        ShadowEvaluationService.Sample sample = evaluate("M1", new BigDecimal("10.00"), velocity);
+
+        int offHours = RuleSetEvaluator.isOffHours(liveRules.live(), sample.hour()) ? 10 : 0;
+        assertEquals(25 + offHours, sample.rulePoints());
+        assertEquals(3L, liveRules.live().getMaxMerchantsPerCard());
+        assertEquals(50L, liveRules.live().getMaxCardsPerMerchant());
+    }
+
+    private ShadowEvaluationService.Sample evaluate(String merchantId, BigDecimal amount, VelocitySnapshot velocity) {
+        reset(shadow);
+        when(shadow.isActive()).thenReturn(true);
+        when(velocityService.record(anyString(), eq(merchantId), eq(amount))).thenReturn(velocity);
+
+        service.evaluateTransaction(PaymentRequest.builder()
+            .merchantId(merchantId)
+            .cardNumber("4111111111111111")
+            .amount(amount)
+            .customerIp("10.0.0.1")
+            .build());
+
+        ArgumentCaptor<ShadowEvaluationService.Sample> sample = ArgumentCaptor.forClass(ShadowEvaluationService.Sample.class);
+        verify(shadow).offer(sample.capture());
+        return sample.getValue();
+    }
+}
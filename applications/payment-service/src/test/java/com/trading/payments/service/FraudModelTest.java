@@ -0,0 +1,101 @@
+package com.trading.payments.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FraudModelTest {
+
+    private static final String TREES = """
+        kind gbdt
+        features card_count,amount_log
+        base -2.0
+        tree
+        0 split card_count 4.5 1 2
+        2 split amount_log 6.9 3 4
+        1 leaf -0.5
+        3 leaf 0.25
+        4 leaf 1.5
+        tree
+        0 leaf 0.1
+        """;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testScoresLogisticRegression() throws Exception {
+        Path file = dir.resolve("model.txt");
+        Files.writeString(file, """
+            # trained 2026-10-01
+            kind logistic
+            features merchant_risk_level,card_count
+            intercept -3.0
+            weight card_count 0.5
+            weight merchant_risk_level 0.25
+            """);
+        FraudModel model = new FraudModel(file.toString(), new SimpleMeterRegistry());
+        model.init();
+
+        double[] features = model.features();
+        features[FraudModel.CARD_COUNT] = 4;
+        features[FraudModel.MERCHANT_RISK_LEVEL] = 2;
+        features[FraudModel.AMOUNT] = 1_000_000;   // not in the model
+        assertEquals(FraudModel.sigmoid(-3.0 + 2.0 + 0.5), model.score(features), 1e-12);
+        assertEquals(0, model.features()[FraudModel.AMOUNT]);
+    }
+
+    @Test
+    public void testWalksFlattenedTrees() throws Exception {
+        FraudModel.Model trees = FraudModel.load(write(TREES));
+        double[] features = new double[FraudModel.FEATURE_NAMES.size()];
+
+        features[FraudModel.CARD_COUNT] = 2;
+        assertEquals(FraudModel.sigmoid(-2.0 - 0.5 + 0.1), trees.predict(features), 1e-12);
+
+        features[FraudModel.CARD_COUNT] = 5;
+        features[FraudModel.AMOUNT_LOG] = 6.0;
+        assertEquals(FraudModel.sigmoid(-2.0 + 0.25 + 0.1), trees.predict(features), 1e-12);
+
+        features[FraudModel.AMOUNT_LOG] = 6.9;
+        assertEquals(FraudModel.sigmoid(-2.0 + 1.5 + 0.1), trees.predict(features), 1e-12);
+    }
+
+    @Test
+    public void testRejectsMalformedModelsAndKeepsThePreviousOne() throws Exception {
+        assertThrows(IOException.class, () -> FraudModel.load(write(TREES.replace("2 split amount_log 6.9 3 4",
+            "2 split amount_log 6.9 1 4"))));   // child before parent
+        assertThrows(IOException.class, () -> FraudModel.load(write(TREES.replace("card_count,amount_log",
+            "card_count,amount_log,ip_country"))));
+        assertThrows(IOException.class, () -> FraudModel.load(write(TREES.replace("2 split amount_log", "2 split amount"))));
+
+        Path file = write(TREES);
+        FraudModel model = new FraudModel(file.toString(), new SimpleMeterRegistry());
+        model.init();
+        double[] features = model.features();
+        double before = model.score(features);
+
+        Files.writeString(file, "kind gbdt\nfeatures card_count\nbase 0\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        model.reload();
+        assertEquals(before, model.score(features));
+
+        Files.writeString(file, "kind logistic\nfeatures card_count\nintercept 0\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 2000));
+        model.reload();
+        assertEquals(0.5, model.score(features));
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = Files.createTempFile(dir, "model", ".txt");
+        Files.writeString(file, content);
+        return file;
+    }
+}
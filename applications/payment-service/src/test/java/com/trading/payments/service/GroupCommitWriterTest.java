@@ -0,0 +1,115 @@
+package com.trading.payments.service;
+
+import com.trading.payments.entity.Transaction;
+import com.trading.payments.repository.TransactionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class GroupCommitWriterTest {
+
+    private final TransactionRepository repository = mock(TransactionRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final ExecutorService callers = Executors.newFixedThreadPool(16);
+    private GroupCommitWriter writer;
+
+    private GroupCommitWriter start(int maxBatchSize, long maxWaitMicros) {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        writer = new GroupCommitWriter(repository, transactionManager, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(writer, "enabled", true);
+        ReflectionTestUtils.setField(writer, "maxBatchSize", maxBatchSize);
+        ReflectionTestUtils.setField(writer, "maxWaitMicros", maxWaitMicros);
+        ReflectionTestUtils.setField(writer, "writeTimeoutMillis", 2_000L);
+        writer.start();
+        return writer;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) {
+            writer.stop();
+        }
+        callers.shutdownNow();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testConcurrentWritesShareCommits() throws Exception {
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        AtomicInteger ids = new AtomicInteger();
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Transaction> batch = invocation.getArgument(0);
+            batchSizes.add(batch.size());
+            batch.forEach(t -> t.setId(ids.incrementAndGet()));
+            return new ArrayList<>(batch);
+        });
+        start(8, 20_000);
+
+        List<Future<Transaction>> results = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            Transaction transaction = Transaction.builder().transactionId("tx-" + i).build();
+            results.add(callers.submit(() -> writer.write(transaction)));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            Transaction saved = results.get(i).get();
+            assertEquals("tx-" + i, saved.getTransactionId());
+            assertNotNull(saved.getId());
+        }
+
+        assertEquals(32, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 8));
+        assertTrue(batchSizes.size() < 32, "expected shared commits, got " + batchSizes);
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedIndividuallyWithFreshIds() throws Exception {
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Transaction> batch = invocation.getArgument(0);
+            batch.forEach(t -> t.setId(99));      // assigned by the insert, then rolled back
+            throw new IllegalStateException("duplicate key");
+        });
+        when(repository.save(any(Transaction.class))).thenAnswer(invocation -> {
+            Transaction transaction = invocation.getArgument(0);
+            if ("bad".equals(transaction.getTransactionId())) {
+                throw new IllegalStateException("duplicate key");
+            }
+            assertNull(transaction.getId(), "stale id from the rolled-back batch");
+            transaction.setId(7);
+            return transaction;
+        });
+        start(2, 200_000);
+
+        Future<Transaction> good = callers.submit(() -> writer.write(Transaction.builder().transactionId("good").build()));
+        Future<Transaction> bad = callers.submit(() -> writer.write(Transaction.builder().transactionId("bad").build()));
+
+        assertEquals(7, good.get().getId());
+        Exception failure = assertThrows(Exception.class, bad::get);
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+    }
+
+    @Test
+    public void testWritesAfterStopAreRejected() {
+        start(8, 500);
+        writer.stop();
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+            () -> writer.write(Transaction.builder().transactionId("late").build()));
+        assertTrue(e.getMessage().contains("not running"));
+        verifyNoInteractions(repository);
+    }
+}
@@ -0,0 +1,128 @@
+package com.trading.payments.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IpReputationServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testParsesLikeInetAddress() throws Exception {
+        String[] valid = {
+            "0.0.0.0", "10.1.2.3", "255.255.255.255", "::", "::1", "1::", "2001:db8::8a2e:370:7334",
+            "2001:0db8:0000:0000:0000:ff00:0042:8329", "fe80::1%eth0", "::ffff:192.0.2.1", "64:ff9b::10.0.0.1",
+            "1:2:3:4:5:6:7::", "::2:3:4:5:6:7:8", "1:2:3:4:5:6:7:8"
+        };
+        long[] parsed = new long[2];
+        for (String address : valid) {
+            assertTrue(IpPrefixTrie.parse(address, 0, address.length(), parsed), address);
+            assertArrayEquals(expected(address.replaceFirst("%.*", "")), parsed, address);
+        }
+        String[] invalid = {
+            "", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "1.2.3.4.", "a.b.c.d", ":::", "1:::2", "1::2::3",
+            "12345::", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7", ":1:2:3:4:5:6:7", "1:2:3:4:5:6:7:", "::1.2.3",
+            "1:2:3:4:5:6:7:1.2.3.4", "not-an-ip"
+        };
+        for (String address : invalid) {
+            assertFalse(IpPrefixTrie.parse(address, 0, address.length(), parsed), address);
+        }
+    }
+
+    @Test
+    public void testLongestPrefixMatchesReferenceScan() throws Exception {
+        Random random = new Random(11);
+        IpPrefixTrie.Builder builder = new IpPrefixTrie.Builder();
+        List<long[]> ranges = new ArrayList<>();   // hi, lo, bit length, value
+        for (int i = 0; i < 2_000; i++) {
+            // A small address space, so ranges nest and share prefixes
+            String address = "10." + random.nextInt(4) + "." + random.nextInt(8) + "." + random.nextInt(256);
+            int len = 8 + random.nextInt(25);
+            builder.add(address + "/" + len, i);
+            long[] bits = expected(address);
+            ranges.add(new long[] { bits[0], bits[1], 96 + len, i });
+        }
+        builder.add("::/0", 999_999);
+        IpPrefixTrie trie = builder.build();
+
+        for (int i = 0; i < 20_000; i++) {
+            String address = "10." + random.nextInt(4) + "." + random.nextInt(8) + "." + random.nextInt(256);
+            long lo = expected(address)[1];
+            long best = 999_999;
+            long bestLen = -1;
+            for (long[] range : ranges) {
+                long mask = -1L << (128 - range[2]);
+                // Later duplicates of the same range replace earlier ones
+                if (range[2] >= bestLen && ((lo ^ range[1]) & mask) == 0) {
+                    best = range[3];
+                    bestLen = range[2];
+                }
+            }
+            assertEquals(best, trie.lookup(address), address);
+        }
+        assertEquals(999_999, trie.lookup("2001:db8::1"));
+        assertEquals(IpPrefixTrie.NO_MATCH, trie.lookup("garbage"));
+    }
+
+    @Test
+    public void testLoadsFileAndSwapsOnChange() throws Exception {
+        Path file = dir.resolve("ip-reputation.csv");
+        Files.writeString(file, """
+            # cidr,category,score
+            185.220.100.0/22,TOR,60
+            185.220.101.7,tor,0
+            2a0b:f4c0::/32,HOSTING,20
+            not a line
+            10.0.0.0/8,CUSTOM,5
+            """);
+        IpReputationService service = new IpReputationService(file.toString(), new SimpleMeterRegistry());
+        service.init();
+
+        assertEquals(4, service.size());
+        int match = service.lookup("185.220.102.1");
+        assertEquals(60, IpReputationService.score(match));
+        assertEquals(IpReputationService.Category.TOR, IpReputationService.category(match));
+        assertEquals(0, IpReputationService.score(service.lookup("185.220.101.7")));
+        assertEquals(IpReputationService.Category.HOSTING, IpReputationService.category(service.lookup("2a0b:f4c0:1::5")));
+        assertEquals(IpReputationService.Category.OTHER, IpReputationService.category(service.lookup("10.9.9.9")));
+        assertEquals(IpPrefixTrie.NO_MATCH, service.lookup("8.8.8.8"));
+        assertEquals(IpPrefixTrie.NO_MATCH, service.lookup(null));
+
+        Files.writeString(file, "8.8.8.0/24,PROXY,30\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        service.reload();
+        assertEquals(1, service.size());
+        assertEquals(30, IpReputationService.score(service.lookup("8.8.8.8")));
+        assertEquals(IpPrefixTrie.NO_MATCH, service.lookup("185.220.102.1"));
+    }
+
+    private static long[] expected(String address) throws Exception {
+        byte[] bytes = InetAddress.getByName(address).getAddress();
+        long hi = 0;
+        long lo = 0;
+        if (bytes.length == 4) {
+            lo = 0x0000_FFFF_0000_0000L;
+            for (int i = 0; i < 4; i++) {
+                lo |= (long) (bytes[i] & 0xFF) << (24 - 8 * i);
+            }
+        } else {
+            for (int i = 0; i < 8; i++) {
+                hi = (hi << 8) | (bytes[i] & 0xFF);
+                lo = (lo << 8) | (bytes[i + 8] & 0xFF);
+            }
+        }
+        return new long[] { hi, lo };
+    }
+}
@@ -0,0 +1,170 @@
+package com.trading.payments.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.trading.payments.dto.JournalEntry;
+import com.trading.payments.entity.Transaction;
+import com.trading.payments.repository.TransactionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class JournalReplayServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final TransactionRepository transactionRepository = mock(TransactionRepository.class);
+    private final RiskManagementService riskService = mock(RiskManagementService.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    // Transaction ids committed to the mocked Postgres, in order
+    private final List<String> committed = new CopyOnWriteArrayList<>();
+    private volatile Set<String> rejectedIds = Set.of();
+    private volatile boolean databaseDown;
+
+    private TransactionJournal journal;
+    private JournalReplayService replayService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        journal = new TransactionJournal(objectMapper, registry);
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", dir.toString());
+        ReflectionTestUtils.setField(journal, "segmentSize", 1024);
+        journal.open();
+
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(transactionRepository.findExistingTransactionIds(anyCollection()))
+            .thenAnswer(invocation -> Set.copyOf(committed));
+        when(transactionRepository.saveAll(anyIterable())).thenAnswer(invocation -> {
+            if (databaseDown) {
+                throw new CannotGetJdbcConnectionException("connection refused");
+            }
+            List<Transaction> transactions = new ArrayList<>();
+            ((Iterable<Transaction>) invocation.getArgument(0)).forEach(transactions::add);
+            if (transactions.stream().anyMatch(t -> rejectedIds.contains(t.getTransactionId()))) {
+                throw new DataIntegrityViolationException("violates check constraint");
+            }
+            transactions.forEach(t -> committed.add(t.getTransactionId()));
+            return transactions;
+        });
+
+        replayService = new JournalReplayService(journal, transactionRepository, riskService, transactionManager, registry);
+        ReflectionTestUtils.setField(replayService, "batchSize", 4);
+        ReflectionTestUtils.setField(replayService, "idleMillis", 60_000L);
+        ReflectionTestUtils.setField(replayService, "retryMillis", 60_000L);
+        ReflectionTestUtils.setField(replayService, "drainTimeoutMillis", 5_000L);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        journal.close();
+    }
+
+    private static JournalEntry entry(int i) {
+        return JournalEntry.builder()
+            .transactionId("tx-" + i)
+            .merchantId("merchant-1")
+            .amount(BigDecimal.valueOf(10 + i))
+            .currency("USD")
+            .status("approved")
+            .createdAt(LocalDateTime.of(2026, 1, 1, 12, 0))
+            .positionDate(LocalDate.of(2026, 1, 1))
+            .build();
+    }
+
+    private void replayAll() throws Exception {
+        TransactionJournal.Position position = journal.startPosition();
+        for (TransactionJournal.Position next = replayService.replay(position); !next.equals(position);
+             next = replayService.replay(position)) {
+            position = next;
+        }
+    }
+
+    @Test
+    public void testRejectedEntryIsDeadLetteredAndTheRestReplayed() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            journal.append(entry(i));
+        }
+        rejectedIds = Set.of("tx-5");
+        replayService.start();
+        replayService.stop();
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            if (i != 5) {
+                expected.add("tx-" + i);
+            }
+        }
+        assertEquals(expected, committed);
+        verify(riskService, times(9)).applyPosition(eq("merchant-1"), any(Transaction.class), eq(LocalDate.of(2026, 1, 1)));
+
+        List<String> deadLetters = Files.readAllLines(dir.resolve("dead-letter.jsonl"));
+        assertEquals(1, deadLetters.size());
+        assertEquals("tx-5", objectMapper.readTree(deadLetters.get(0)).get("entry").get("transactionId").asText());
+        assertEquals(1, registry.get("payment.journal.dead_lettered").counter().count());
+        assertEquals(9, registry.get("payment.journal.replayed").counter().count());
+
+        // Checkpointed past it: a restart does not replay or dead-letter it again
+        assertTrue(journal.read(journal.startPosition(), 100).entries().isEmpty());
+    }
+
+    @Test
+    public void testUnreachableDatabaseRetriesWithoutDeadLettering() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            journal.append(entry(i));
+        }
+        ReflectionTestUtils.setField(replayService, "transactionTemplate", new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(replayService, "replayedCounter", registry.counter("payment.journal.replayed"));
+
+        databaseDown = true;
+        TransactionJournal.Position start = journal.startPosition();
+        assertThrows(CannotGetJdbcConnectionException.class, () -> replayService.replay(start));
+        assertEquals(start, journal.startPosition());
+        assertFalse(Files.exists(dir.resolve("dead-letter.jsonl")));
+
+        databaseDown = false;
+        replayAll();
+        assertEquals(List.of("tx-0", "tx-1", "tx-2", "tx-3", "tx-4", "tx-5"), committed);
+    }
+
+    @Test
+    public void testStopDrainsEntriesTheReplayerHasNotPolledYet() throws Exception {
+        replayService.start();
+        // The replayer finds the journal empty and parks for idle-millis (a minute here)
+        Thread.sleep(200);
+        for (int i = 0; i < 7; i++) {
+            journal.append(entry(i));
+        }
+
+        replayService.stop();
+
+        assertEquals(List.of("tx-0", "tx-1", "tx-2", "tx-3", "tx-4", "tx-5", "tx-6"), committed);
+        assertTrue(journal.read(journal.startPosition(), 100).entries().isEmpty());
+    }
+}
@@ -0,0 +1,95 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.VelocitySnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalVelocityStoreTest {
+
+    private static final long MINUTE = 60_000;
+    private static final long NOW = 1_000 * 24 * 60 * MINUTE;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private LocalVelocityStore store(int stripes, int maxCards, int maxJournal) {
+        return new LocalVelocityStore(60, 10, 24, 60, 10, stripes, 64, maxCards, maxJournal, registry);
+    }
+
+    @Test
+    public void testReturnsCountersBeforeEachPayment() {
+        LocalVelocityStore store = store(4, 1_000, 1_000);
+
+        VelocitySnapshot first = store.record("card-1", "m1", 10_000, NOW);
+        assertEquals(0, first.getCardCount());
+        assertEquals(1, first.getDistinctMerchantsForCard());
+        assertTrue(first.isAvailable());
+        assertTrue(first.isLocal());
+
+        store.record("card-1", "m2", 10_000, NOW + MINUTE);
+        store.record("card-2", "m1", 500, NOW + 2 * MINUTE);
+        VelocitySnapshot fourth = store.record("card-1", "m1", 10_000, NOW + 3 * MINUTE);
+        assertEquals(2, fourth.getCardCount());
+        assertEquals(new BigDecimal("200.00"), fourth.getCardAmount());
+        assertEquals(2, fourth.getAmountRepeats());
+        assertEquals(2, fourth.getDistinctMerchantsForCard());
+        assertEquals(2, fourth.getMerchantCount());
+        assertEquals(2, fourth.getDistinctCardsForMerchant());
+
+        // The first card payment leaves the card window, the first merchant payment the merchant window
+        VelocitySnapshot later = store.record("card-1", "m1", 10_000, NOW + 61 * MINUTE);
+        assertEquals(2, later.getCardCount());
+        assertEquals(0, later.getMerchantCount());
+    }
+
+    @Test
+    public void testCardsBeyondTheCapDropTheLeastRecentlyUsed() {
+        LocalVelocityStore store = store(1, 3, 1_000);
+
+        store.record("card-a", "m1", 100, NOW);
+        store.record("card-b", "m1", 100, NOW + 1);
+        store.record("card-c", "m1", 100, NOW + 2);
+        store.record("card-a", "m1", 100, NOW + 3);      // card-a is now the most recently used
+        store.record("card-d", "m1", 100, NOW + 4);      // over the cap: card-b goes
+
+        assertEquals(3, store.cards());
+        assertEquals(1, store.evictedCards());
+        assertEquals(1, registry.get("payment.fraud.velocity.fallback.cards_evicted").functionCounter().count());
+        assertEquals(2, store.record("card-a", "m1", 100, NOW + 5).getCardCount());
+        assertEquals(0, store.record("card-b", "m1", 100, NOW + 6).getCardCount());
+        assertEquals(3, store.cards());
+
+        // Bounded however many distinct cards an outage sees
+        for (int i = 0; i < 10_000; i++) {
+            store.record("card-" + i, "m1", 100, NOW + 10 + i);
+        }
+        assertEquals(3, store.cards());
+    }
+
+    @Test
+    public void testJournalIsBoundedAndDrainsOldestFirst() {
+        LocalVelocityStore store = store(4, 1_000, 3);
+        store.record("card-1", "m1", 100, NOW - 25 * 60 * MINUTE);    // older than every window
+        for (int i = 1; i <= 4; i++) {
+            store.record("card-" + i, "m1", 100 * i, NOW + i);
+        }
+
+        assertEquals(3, store.journalSize());
+        assertEquals(2, registry.get("payment.fraud.velocity.fallback.journal_dropped").counter().count());
+
+        List<LocalVelocityStore.Payment> drained = store.drainJournal(2, NOW + 10);
+        assertEquals(List.of("card-2", "card-3"), drained.stream().map(LocalVelocityStore.Payment::cardHash).toList());
+        store.requeue(drained.subList(1, 2));
+        assertEquals(List.of("card-3", "card-4"),
+            store.drainJournal(10, NOW + 10).stream().map(LocalVelocityStore.Payment::cardHash).toList());
+
+        // Payments past the longest window are not worth replaying
+        store.record("card-5", "m1", 100, NOW);
+        assertTrue(store.drainJournal(10, NOW + 25 * 60 * MINUTE).isEmpty());
+        assertEquals(0, store.journalSize());
+    }
+}
@@ -0,0 +1,95 @@
+package com.trading.payments.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaymentEventBusTest {
+
+    @Test
+    public void testRingRejectsWhenFull() {
+        PaymentEventBus.EventRing ring = new PaymentEventBus.EventRing(4);
+        Runnable event = () -> { };
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(event));
+        }
+        assertFalse(ring.offer(event));
+        assertEquals(4, ring.size());
+
+        assertSame(event, ring.poll());
+        assertTrue(ring.offer(event));
+    }
+
+    @Test
+    public void testRingPreservesOrder() {
+        PaymentEventBus.EventRing ring = new PaymentEventBus.EventRing(8);
+        Runnable[] events = new Runnable[8];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = () -> { };
+            ring.offer(events[i]);
+        }
+        for (Runnable expected : events) {
+            assertSame(expected, ring.poll());
+        }
+        assertNull(ring.poll());
+    }
+
+    @Test
+    public void testRingConcurrentProducersLoseNothing() throws Exception {
+        PaymentEventBus.EventRing ring = new PaymentEventBus.EventRing(1024);
+        int producers = 4;
+        int perProducer = 50_000;
+        AtomicInteger consumed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(producers);
+        Runnable event = () -> { };
+
+        for (int p = 0; p < producers; p++) {
+            new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ring.offer(event)) {
+                        Thread.onSpinWait();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+
+        while (done.getCount() > 0 || ring.size() > 0) {
+            if (ring.poll() != null) {
+                consumed.incrementAndGet();
+            }
+        }
+
+        assertEquals(producers * perProducer, consumed.get());
+    }
+
+    @Test
+    public void testPublishWakesAConsumerParkedAtTheLongestBackoff() throws Exception {
+        PaymentEventBus bus = new PaymentEventBus(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(bus, "capacity", 16);
+        ReflectionTestUtils.setField(bus, "consumers", 1);
+        ReflectionTestUtils.setField(bus, "batchSize", 16);
+        ReflectionTestUtils.setField(bus, "overflowPolicy", PaymentEventBus.OverflowPolicy.DROP_OLDEST);
+        // Parks a minute at a time straight away, so only the publisher can wake it in time
+        ReflectionTestUtils.setField(bus, "idleParkMicros", 60_000_000L);
+        ReflectionTestUtils.setField(bus, "idleParkMaxMicros", 60_000_000L);
+        bus.start();
+        try {
+            for (int i = 0; i < 3; i++) {
+                Thread.sleep(100);
+                CountDownLatch delivered = new CountDownLatch(1);
+                assertTrue(bus.publish(delivered::countDown));
+                assertTrue(delivered.await(5, TimeUnit.SECONDS), "event " + i + " not delivered");
+            }
+        } finally {
+            bus.stop();
+        }
+    }
+}
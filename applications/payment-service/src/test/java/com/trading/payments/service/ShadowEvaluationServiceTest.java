@@ -0,0 +1,235 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.BacktestReport;
+import com.trading.payments.dto.BacktestRequest;
+import com.trading.payments.dto.FraudRuleSet;
+import com.trading.payments.dto.ShadowStatus;
+import com.trading.payments.dto.VelocitySnapshot;
+import com.trading.payments.entity.Merchant;
+import com.trading.payments.repository.MerchantRepository;
+import com.trading.payments.repository.MerchantRiskProfileRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ShadowEvaluationServiceTest {
+
+    private static final long MINUTE = 60_000;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final LiveFraudRules liveRules = new LiveFraudRules(3, 4);
+    private ShadowEvaluationService shadow;
+
+    private ShadowEvaluationService start(int queueCapacity, int workers) {
+        shadow = new ShadowEvaluationService(registry, liveRules);
+        ReflectionTestUtils.setField(shadow, "enabled", true);
+        ReflectionTestUtils.setField(shadow, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(shadow, "workers", workers);
+        ReflectionTestUtils.setField(shadow, "modelPath", "");
+        shadow.init();
+        return shadow;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (shadow != null) {
+            shadow.stop();
+        }
+    }
+
+    @Test
+    public void testFullQueueDropsAndCounts() {
+        start(2, 0);
+        shadow.setRuleSets(List.of(FraudRuleSet.builder().name("strict").declineThreshold(20).build()));
+        assertTrue(shadow.isActive());
+
+        for (int i = 0; i < 5; i++) {
+            shadow.offer(sample(i));
+        }
+
+        ShadowStatus status = shadow.status();
+        assertEquals(2, status.getQueued());
+        assertEquals(3, status.getDropped());
+        assertEquals(3, registry.get("payment.fraud.shadow.dropped").counter().count());
+    }
+
+    @Test
+    public void testRejectsMerchantLimitScale() {
+        start(16, 0);
+        assertThrows(IllegalArgumentException.class, () -> shadow.setRuleSets(
+            List.of(FraudRuleSet.builder().name("loose-limits").merchantLimitScale(2).build())));
+        assertFalse(shadow.isActive());
+    }
+
+    @Test
+    public void testReplacingRuleSetsWhileEvaluatingKeepsRegisteredMeters() throws Exception {
+        start(100_000, 2);
+        AtomicBoolean offering = new AtomicBoolean(true);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; offering.get(); i++) {
+                shadow.offer(sample(i));
+            }
+        });
+        producer.start();
+        for (int i = 0; i < 200; i++) {
+            // The same name every time, so each replacement re-registers meters under it
+            shadow.setRuleSets(List.of(
+                FraudRuleSet.builder().name("strict").declineThreshold(20 + i % 2).build()));
+        }
+        offering.set(false);
+        producer.join();
+        awaitDrained();
+
+        ShadowStatus.CandidateStatus strict = shadow.status().getCandidates().get(0);
+        double registered = registry.find("payment.fraud.shadow.decisions").tag("candidate", "strict").counters()
+            .stream().mapToDouble(Counter::count).sum();
+        assertEquals(strict.getEvaluated(), (long) registered);
+        assertEquals(3, registry.find("payment.fraud.shadow.decisions").counters().size());
+        assertEquals(RuleSetEvaluator.RULES.size(), registry.find("payment.fraud.shadow.rule.latency").timers().size());
+        assertEquals(RuleSetEvaluator.RULES, List.copyOf(strict.getMeanRuleLatencyMicros().keySet()));
+    }
+
+    @Test
+    public void testShadowDecisionsMatchBacktest() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:shadow;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("""
+            CREATE TABLE transactions (
+                id BIGINT PRIMARY KEY, transaction_id VARCHAR(64), merchant_id VARCHAR(64),
+                card_number_hash VARCHAR(64), amount DECIMAL(19, 2), status VARCHAR(20), created_at TIMESTAMP)
+            """);
+        MerchantRepository merchantRepository = mock(MerchantRepository.class);
+        when(merchantRepository.findAll()).thenReturn(List.of(Merchant.builder().merchantId("M1").riskLevel(3).build()));
+        MerchantRiskProfileRepository riskProfileRepository = mock(MerchantRiskProfileRepository.class);
+        BacktestService backtest = new BacktestService(jdbcTemplate, new DataSourceTransactionManager(dataSource),
+            merchantRepository, riskProfileRepository, liveRules, 50, 10, 64, 2, 64, 5, 20, 60, 10, 24, 60, 10);
+
+        try {
+            // Rows in time order with distinct timestamps, so replay order is insertion order
+            Random random = new Random(11);
+            String[] amounts = {"12.00", "250.00", "1200.00", "3000.00", "6000.00"};
+            LocalDateTime start = LocalDateTime.of(2026, 3, 1, 21, 0);
+            int n = 400;
+            String[] merchants = new String[n];
+            String[] cards = new String[n];
+            BigDecimal[] values = new BigDecimal[n];
+            LocalDateTime[] times = new LocalDateTime[n];
+            for (int i = 0; i < n; i++) {
+                merchants[i] = "M" + random.nextInt(3);
+                cards[i] = "card-" + random.nextInt(20);
+                values[i] = new BigDecimal(amounts[random.nextInt(amounts.length)]);
+                times[i] = start.plusSeconds(30L * i + random.nextInt(30));
+                jdbcTemplate.update("INSERT INTO transactions VALUES (?, ?, ?, ?, ?, 'approved', ?)", i + 1, "tx-" + i,
+                    merchants[i], cards[i], values[i], Timestamp.valueOf(times[i]));
+            }
+
+            List<FraudRuleSet> candidates = List.of(
+                FraudRuleSet.builder().name("strict").cardVelocityCount(2).declineThreshold(30).build(),
+                FraudRuleSet.builder().name("loose").highAmount(BigDecimal.valueOf(10_000)).declineThreshold(60).build());
+            String id = backtest.submit(BacktestRequest.builder()
+                .from(start).to(times[n - 1].plusSeconds(1)).candidates(candidates).build()).getId();
+
+            // The live path's view of the same payments: velocity before each one, live rules, no other points
+            start(n, 2);
+            shadow.setRuleSets(candidates);
+            VelocityWindows windows = new VelocityWindows(60 * MINUTE, 10 * MINUTE, 24 * 60 * MINUTE,
+                60 * MINUTE, 10 * MINUTE, 64);
+            RuleSetEvaluator.Compiled live = new RuleSetEvaluator.Compiled(liveRules.live());
+            RuleSetEvaluator.Inputs inputs = new RuleSetEvaluator.Inputs();
+            long[] card = new long[4];
+            long[] merchant = new long[2];
+            for (int i = 0; i < n; i++) {
+                long cardKey = CardBlocklist.fingerprint(cards[i]);
+                long time = Timestamp.valueOf(times[i]).getTime();
+                long cents = values[i].movePointRight(2).longValue();
+                windows.recordCard(cardKey, merchants[i].hashCode(), cents, time, card);
+                windows.recordMerchant(merchants[i], cardKey, time, merchant);
+                VelocitySnapshot velocity = VelocitySnapshot.builder()
+                    .cardCount(card[VelocityWindows.CARD_COUNT])
+                    .cardAmount(BigDecimal.valueOf(card[VelocityWindows.CARD_AMOUNT_CENTS], 2))
+                    .merchantCount(merchant[VelocityWindows.MERCHANT_COUNT])
+                    .amountRepeats(card[VelocityWindows.AMOUNT_REPEATS])
+                    .distinctMerchantsForCard(card[VelocityWindows.DISTINCT_MERCHANTS])
+                    .distinctCardsForMerchant(merchant[VelocityWindows.DISTINCT_CARDS])
+                    .available(true)
+                    .build();
+                int riskLevel = merchants[i].equals("M1") ? 3 : 0;
+                ShadowEvaluationService.Sample sample = new ShadowEvaluationService.Sample(values[i], cents, riskLevel,
+                    times[i].getHour(), velocity, 0, 0, 0, false, System.nanoTime());
+                ShadowEvaluationService.fill(inputs, sample);
+                int rulePoints = RuleSetEvaluator.score(live, inputs);
+                shadow.offer(new ShadowEvaluationService.Sample(values[i], cents, riskLevel, times[i].getHour(),
+                    velocity, rulePoints, 0, 0, live.approves(rulePoints), System.nanoTime()));
+            }
+            awaitDrained();
+
+            BacktestReport report = awaitReport(backtest, id);
+            assertEquals(BacktestReport.Status.COMPLETED, report.getStatus(), report.getError());
+            assertEquals(n, report.getTransactions());
+            List<ShadowStatus.CandidateStatus> statuses = shadow.status().getCandidates();
+            for (int k = 0; k < candidates.size(); k++) {
+                BacktestReport.RuleSetResult result = report.getResults().get(k + 1);
+                ShadowStatus.CandidateStatus status = statuses.get(k);
+                assertEquals(result.getName(), status.getName());
+                assertEquals(n, status.getEvaluated());
+                assertEquals(result.getNewlyApproved(), status.getNewlyApproved(), status.getName());
+                assertEquals(result.getNewlyDeclined(), status.getNewlyDeclined(), status.getName());
+            }
+            assertTrue(statuses.get(0).getNewlyDeclined() > 0);
+            assertTrue(statuses.get(1).getNewlyApproved() > 0);
+        } finally {
+            backtest.shutdown();
+            jdbcTemplate.execute("DROP TABLE transactions");
+        }
+    }
+
+    private static ShadowEvaluationService.Sample sample(int i) {
+        VelocitySnapshot velocity = VelocitySnapshot.builder().cardCount(i % 7).cardAmount(BigDecimal.ZERO).available(true).build();
+        return new ShadowEvaluationService.Sample(BigDecimal.TEN, 1_000, 1, 12, velocity, 0, 0, 0, true, System.nanoTime());
+    }
+
+    private void awaitDrained() throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            ShadowStatus status = shadow.status();
+            long evaluated = status.getCandidates().stream().mapToLong(ShadowStatus.CandidateStatus::getEvaluated).sum();
+            // A polled sample is not queued any more but may still be under evaluation
+            if (status.getQueued() == 0 && evaluated > 0) {
+                Thread.sleep(50);
+                if (shadow.status().getCandidates().stream().mapToLong(ShadowStatus.CandidateStatus::getEvaluated).sum() == evaluated) {
+                    return;
+                }
+            }
+            Thread.sleep(20);
+        }
+        fail("Shadow queue did not drain");
+    }
+
+    private static BacktestReport awaitReport(BacktestService backtest, String id) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            BacktestReport report = backtest.report(id).orElseThrow();
+            if (report.getStatus() == BacktestReport.Status.COMPLETED || report.getStatus() == BacktestReport.Status.FAILED) {
+                return report;
+            }
+            Thread.sleep(20);
+        }
+        fail("Backtest did not finish");
+        return null;
+    }
+}
@@ -0,0 +1,149 @@
+package com.trading.payments.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StompEventPublisherTest {
+
+    private static final String TRANSACTIONS = "/topic/transactions";
+
+    private SimpleBrokerMessageHandler broker;
+    private StompEventPublisher publisher;
+    private final Map<String, List<Long>> seqsByDestination = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        ExecutorSubscribableChannel clientInbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        clientOutbound.subscribe(this::record);
+
+        broker = new SimpleBrokerMessageHandler(clientInbound, clientOutbound, brokerChannel, List.of("/topic"));
+        broker.start();
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        FeedReplayBuffer replayBuffer = new FeedReplayBuffer(true, 4096, 100, 128, 256, "test", meterRegistry);
+        publisher = new StompEventPublisher(new SimpMessagingTemplate(brokerChannel), broker, new ObjectMapper(),
+            replayBuffer, meterRegistry, 16);
+
+        subscribe("session-plain", TRANSACTIONS);
+        subscribe("session-deflate", StompEventPublisher.deflateVariant(TRANSACTIONS));
+        subscribe("session-binary", "/topic/bin/transactions");
+    }
+
+    @AfterEach
+    void tearDown() {
+        broker.stop();
+    }
+
+    private void subscribe(String sessionId, String destination) {
+        SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        connect.setSessionId(sessionId);
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId(sessionId);
+        subscribe.setSubscriptionId("sub-0");
+        subscribe.setDestination(destination);
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+    }
+
+    private void record(Message<?> message) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (accessor.getMessageType() != SimpMessageType.MESSAGE) {
+            return;
+        }
+        String seq = accessor.getFirstNativeHeader(StompEventPublisher.SEQ_HEADER);
+        List<Long> seqs = seqsByDestination.computeIfAbsent(accessor.getDestination(), d -> new ArrayList<>());
+        synchronized (seqs) {
+            seqs.add(seq != null ? Long.parseLong(seq) : -1);
+        }
+    }
+
+    @Test
+    public void testConcurrentPublishersDeliverInSequenceOrder() throws Exception {
+        int threads = 8;
+        int eventsPerThread = 2000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> publishers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < eventsPerThread; i++) {
+                    String payload = "{\"publisher\":" + id + ",\"event\":" + i + ",\"padding\":\"0123456789\"}";
+                    publisher.publish(() -> Map.of("payload", payload), TRANSACTIONS);
+                }
+            });
+            thread.start();
+            publishers.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : publishers) {
+            thread.join();
+        }
+
+        for (String destination : List.of(TRANSACTIONS, StompEventPublisher.deflateVariant(TRANSACTIONS))) {
+            List<Long> seqs = seqsByDestination.get(destination);
+            assertEquals(threads * eventsPerThread, seqs.size(), destination);
+            for (int i = 1; i < seqs.size(); i++) {
+                assertEquals(seqs.get(i - 1) + 1, seqs.get(i), destination + " frame " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryVariantCarriesTheJsonEventsSeq() {
+        for (int i = 0; i < 10; i++) {
+            byte[] frame = {BinaryFeedCodec.TRANSACTION, (byte) i};
+            publisher.publishWithBinary("MERCHANT_001", () -> Map.of("event", 1), () -> frame,
+                TRANSACTIONS, "/topic/transactions/merchant/MERCHANT_001");
+        }
+
+        List<Long> json = seqsByDestination.get(TRANSACTIONS);
+        assertEquals(10, json.size());
+        assertEquals(json, seqsByDestination.get("/topic/bin/transactions"));
+        assertTrue(json.stream().allMatch(seq -> seq > 0));
+    }
+
+    @Test
+    public void testBinaryFrameIsNotEncodedWithoutSubscribers() {
+        publisher.publishWithBinary(null, () -> Map.of("event", 1), () -> {
+            throw new AssertionError("binary frame encoded for nobody");
+        }, "/topic/fraud-alerts");
+        assertEquals(List.of(), seqsByDestination.getOrDefault("/topic/bin/fraud-alerts", List.of()));
+    }
+
+    @Test
+    public void testVariantDestinations() {
+        assertEquals("/topic/deflate/feed/live", StompEventPublisher.deflateVariant("/topic/feed/live"));
+        assertSame(StompEventPublisher.deflateVariant("/topic/feed/live"), StompEventPublisher.deflateVariant("/topic/feed/live"));
+        assertEquals("/topic/bin/risk/positions", StompEventPublisher.binaryVariant("/topic/risk/positions"));
+        assertNull(StompEventPublisher.deflateVariant("/topic/bin/transactions"));
+        assertNull(StompEventPublisher.deflateVariant("/topic/deflate/transactions"));
+        assertNull(StompEventPublisher.binaryVariant("/topic/deflate/transactions"));
+        assertNull(StompEventPublisher.deflateVariant("/queue/errors"));
+    }
+}
@@ -0,0 +1,93 @@
+package com.trading.payments.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionExportServiceTest {
+
+    private static final LocalDateTime NOON = LocalDateTime.of(2026, 3, 1, 12, 0);
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:export;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("""
+            CREATE TABLE transactions (
+                id BIGINT PRIMARY KEY, transaction_id VARCHAR(64), merchant_id VARCHAR(64),
+                amount DECIMAL(19, 2), currency VARCHAR(3), status VARCHAR(20), fraud_score INT,
+                payment_method VARCHAR(40), customer_ip VARCHAR(64), created_at TIMESTAMP)
+            """);
+        exportService = new TransactionExportService(jdbcTemplate,
+            new DataSourceTransactionManager(dataSource), new ObjectMapper());
+        ReflectionTestUtils.setField(exportService, "pageSize", 3);
+        ReflectionTestUtils.setField(exportService, "fetchSize", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP TABLE transactions");
+    }
+
+    private void insert(long id, String transactionId, String paymentMethod, LocalDateTime createdAt) {
+        jdbcTemplate.update("INSERT INTO transactions VALUES (?, ?, 'm1', 12.50, 'USD', 'approved', 10, ?, '10.0.0.1', ?)",
+            id, transactionId, paymentMethod, Timestamp.valueOf(createdAt));
+    }
+
+    private String export(TransactionExportService.Format format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.export("m1", NOON.minusHours(1), NOON.plusHours(1), format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testKeysetPagesDoNotSkipOrRepeatRowsWithEqualTimestamps() throws Exception {
+        // Pages of 3 split a run of 7 rows sharing created_at; ids are inserted out of order
+        long[] ids = {5, 1, 7, 3, 2, 6, 4};
+        for (long id : ids) {
+            insert(id, "tx-" + id, "card", NOON);
+        }
+        insert(8, "tx-8", "card", NOON.plusMinutes(1));
+        insert(9, "tx-9", "card", NOON.minusMinutes(1));
+
+        List<String> exported = new ArrayList<>();
+        for (String line : export(TransactionExportService.Format.CSV).split("\n")) {
+            if (!line.startsWith("id,")) {
+                exported.add(line.split(",")[1]);
+            }
+        }
+        assertEquals(List.of("tx-9", "tx-1", "tx-2", "tx-3", "tx-4", "tx-5", "tx-6", "tx-7", "tx-8"), exported);
+    }
+
+    @Test
+    public void testCsvQuotesFieldsWithSeparatorsQuotesAndLineBreaks() throws Exception {
+        insert(1, "tx-1", "card, \"gold\"", NOON);
+        insert(2, "tx-2", "multi\nline", NOON);
+        insert(3, "tx-3", "carriage\rreturn", NOON);
+        insert(4, "tx-4", "plain", NOON);
+
+        String csv = export(TransactionExportService.Format.CSV);
+        assertTrue(csv.contains(",\"card, \"\"gold\"\"\","), csv);
+        assertTrue(csv.contains(",\"multi\nline\","), csv);
+        assertTrue(csv.contains(",\"carriage\rreturn\","), csv);
+        assertTrue(csv.contains(",plain,"), csv);
+    }
+}
@@ -0,0 +1,199 @@
+package com.trading.payments.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.trading.payments.dto.JournalEntry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private TransactionJournal open(int segmentSize) throws IOException {
+        TransactionJournal journal = new TransactionJournal(objectMapper, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", dir.toString());
+        ReflectionTestUtils.setField(journal, "segmentSize", segmentSize);
+        journal.open();
+        return journal;
+    }
+
+    private static JournalEntry entry(int i) {
+        return JournalEntry.builder()
+            .transactionId("tx-" + i)
+            .merchantId("merchant-1")
+            .amount(BigDecimal.valueOf(10 + i))
+            .currency("USD")
+            .status("approved")
+            .createdAt(LocalDateTime.of(2026, 1, 1, 12, 0))
+            .positionDate(LocalDate.of(2026, 1, 1))
+            .build();
+    }
+
+    private static List<String> ids(List<JournalEntry> entries) {
+        return entries.stream().map(JournalEntry::getTransactionId).toList();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.toString().endsWith(".journal")).sorted().toList();
+        }
+    }
+
+    @Test
+    public void testRotatesSegmentsAndReadsAcrossThem() throws Exception {
+        TransactionJournal journal = open(1024);
+        for (int i = 0; i < 20; i++) {
+            journal.append(entry(i));
+        }
+        assertTrue(segments().size() > 2, "expected several segments, got " + segments());
+
+        TransactionJournal.ReadResult first = journal.read(journal.startPosition(), 7);
+        assertEquals(List.of("tx-0", "tx-1", "tx-2", "tx-3", "tx-4", "tx-5", "tx-6"), ids(first.entries()));
+        journal.acknowledge(first.next(), first.entries().size());
+
+        TransactionJournal.ReadResult rest = journal.read(first.next(), 100);
+        List<String> expected = new ArrayList<>();
+        for (int i = 7; i < 20; i++) {
+            expected.add("tx-" + i);
+        }
+        assertEquals(expected, ids(rest.entries()));
+
+        // Segments wholly behind the checkpoint are deleted, the active one stays
+        journal.acknowledge(rest.next(), rest.entries().size());
+        assertEquals(1, segments().size());
+        journal.close();
+    }
+
+    @Test
+    public void testResumesFromCheckpointAfterRestart() throws Exception {
+        TransactionJournal journal = open(4096);
+        for (int i = 0; i < 5; i++) {
+            journal.append(entry(i));
+        }
+        TransactionJournal.ReadResult read = journal.read(journal.startPosition(), 2);
+        journal.acknowledge(read.next(), read.entries().size());
+        journal.close();
+
+        TransactionJournal restarted = open(4096);
+        restarted.append(entry(5));
+
+        TransactionJournal.ReadResult replay = restarted.read(restarted.startPosition(), 100);
+        assertEquals(List.of("tx-2", "tx-3", "tx-4", "tx-5"), ids(replay.entries()));
+        restarted.close();
+    }
+
+    @Test
+    public void testTornLastRecordEndsItsSegment() throws Exception {
+        TransactionJournal journal = open(4096);
+        for (int i = 0; i < 3; i++) {
+            journal.append(entry(i));
+        }
+        journal.close();
+
+        // Crash mid-append: the length made it to disk, the payload did not match its CRC
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int offset = 0;
+            while (buffer.getInt(offset) > 0) {
+                offset += 8 + buffer.getInt(offset);
+            }
+            buffer.putInt(offset + 4, 12345);
+            buffer.put(offset + 8, "{\"transactionId\":\"to".getBytes());
+            buffer.putInt(offset, 200);
+        }
+
+        TransactionJournal restarted = open(4096);
+        restarted.append(entry(3));
+
+        TransactionJournal.ReadResult replay = restarted.read(restarted.startPosition(), 100);
+        assertEquals(List.of("tx-0", "tx-1", "tx-2", "tx-3"), ids(replay.entries()));
+        restarted.close();
+    }
+
+    @Test
+    public void testIdlePollsReuseOneMappingPerSegment() throws Exception {
+        TransactionJournal journal = open(1024);
+        journal.append(entry(0));
+
+        TransactionJournal.ReadResult first = journal.read(journal.startPosition(), 100);
+        Object mapping = ReflectionTestUtils.getField(journal, "readBuffer");
+        for (int i = 0; i < 100; i++) {
+            assertTrue(journal.read(first.next(), 100).entries().isEmpty());
+        }
+        assertSame(mapping, ReflectionTestUtils.getField(journal, "readBuffer"));
+
+        // Appends to the active segment are visible through the mapping it already has
+        journal.append(entry(1));
+        assertEquals(List.of("tx-1"), ids(journal.read(first.next(), 100).entries()));
+        assertSame(mapping, ReflectionTestUtils.getField(journal, "readBuffer"));
+
+        // Moving on to the next segment replaces it
+        for (int i = 2; i < 20; i++) {
+            journal.append(entry(i));
+        }
+        TransactionJournal.ReadResult rest = journal.read(first.next(), 100);
+        assertEquals(19, rest.entries().size());
+        journal.acknowledge(rest.next(), rest.entries().size());
+        assertNotSame(mapping, ReflectionTestUtils.getField(journal, "readBuffer"));
+        journal.close();
+    }
+
+    @Test
+    public void testUnparseableRecordIsReturnedAndDeadLettered() throws Exception {
+        TransactionJournal journal = open(4096);
+        journal.append(entry(0));
+        journal.close();
+
+        // Intact record, CRC and all, whose payload is not an entry
+        byte[] payload = "{\"transactionId\":[1,2]}".getBytes();
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int offset = 8 + buffer.getInt(0);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            buffer.putInt(offset + 4, (int) crc.getValue());
+            buffer.put(offset + 8, payload);
+            buffer.putInt(offset, payload.length);
+        }
+
+        TransactionJournal restarted = open(4096);
+        restarted.append(entry(1));
+        TransactionJournal.ReadResult replay = restarted.read(restarted.startPosition(), 100);
+        assertEquals(List.of("tx-0", "tx-1"), ids(replay.entries()));
+        assertEquals(1, replay.unreadable().size());
+        assertArrayEquals(payload, replay.unreadable().get(0).payload());
+
+        restarted.deadLetter(replay.unreadable().get(0));
+        restarted.deadLetter(entry(7), "duplicate key");
+        List<String> deadLetters = Files.readAllLines(dir.resolve("dead-letter.jsonl"));
+        assertEquals(2, deadLetters.size());
+        assertArrayEquals(payload, Base64.getDecoder().decode(objectMapper.readTree(deadLetters.get(0)).get("payload").asText()));
+        assertEquals("tx-7", objectMapper.readTree(deadLetters.get(1)).get("entry").get("transactionId").asText());
+        restarted.close();
+    }
+}
@@ -0,0 +1,122 @@
+package com.trading.payments.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.trading.payments.dto.TransactionStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TransactionStatusCacheTest {
+
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+    private final RedisStringCommands stringCommands = mock(RedisStringCommands.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final Set<String> writtenKeys = ConcurrentHashMap.newKeySet();
+    private volatile CountDownLatch redisBlocked = new CountDownLatch(0);
+    private TransactionStatusCache cache;
+
+    private TransactionStatusCache cache(int localMaxEntries, int writeQueueCapacity) {
+        RedisConnection connection = mock(RedisConnection.class);
+        when(connection.stringCommands()).thenReturn(stringCommands);
+        when(stringCommands.set(any(byte[].class), any(byte[].class), any(Expiration.class), any()))
+            .thenAnswer(invocation -> writtenKeys.add(new String((byte[]) invocation.getArgument(0), StandardCharsets.UTF_8)));
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            redisBlocked.await();
+            ((RedisCallback<?>) invocation.getArgument(0)).doInRedis(connection);
+            return List.of();
+        });
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        cache = new TransactionStatusCache(redisTemplate, new ObjectMapper().findAndRegisterModules(), meterRegistry);
+        ReflectionTestUtils.setField(cache, "localMaxEntries", localMaxEntries);
+        ReflectionTestUtils.setField(cache, "localStripes", 4);
+        ReflectionTestUtils.setField(cache, "redisTtlSeconds", 900L);
+        ReflectionTestUtils.setField(cache, "writeQueueCapacity", writeQueueCapacity);
+        ReflectionTestUtils.setField(cache, "writeBatchSize", 64);
+        cache.init();
+        return cache;
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        redisBlocked.countDown();
+        cache.stop();
+    }
+
+    private static TransactionStatus status(String transactionId) {
+        return TransactionStatus.builder()
+            .transactionId(transactionId)
+            .status("APPROVED")
+            .amount(new BigDecimal("10.00"))
+            .fraudScore(5)
+            .build();
+    }
+
+    @Test
+    public void testPutIsServedLocallyAndWrittenBehindToRedis() throws Exception {
+        cache(1000, 100);
+        for (int i = 0; i < 50; i++) {
+            cache.put(status("tx-" + i));
+        }
+
+        assertEquals("APPROVED", cache.get("tx-7").orElseThrow().getStatus());
+        verify(valueOperations, never()).get(anyString());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writtenKeys.size() < 50 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(50, writtenKeys.size());
+        assertTrue(writtenKeys.contains("txn_status:tx-49"));
+    }
+
+    @Test
+    public void testFullWriteQueueDropsAndCountsWithoutBlocking() throws Exception {
+        redisBlocked = new CountDownLatch(1);
+        cache(1000, 2);
+        long start = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            cache.put(status("tx-" + i));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+        // One status is with the blocked writer, two are queued, the rest were dropped from Redis only
+        double dropped = meterRegistry.get("payment.status_cache.redis_writes_dropped").counter().count();
+        assertTrue(dropped >= 17, "dropped " + dropped);
+        assertTrue(cache.get("tx-19").isPresent());
+    }
+
+    @Test
+    public void testLocalEntriesAreBoundedPerStripe() {
+        cache(40, 1000);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(status("tx-" + i));
+        }
+        double size = meterRegistry.get("payment.status_cache.local_size").gauge().value();
+        assertTrue(size <= 40, "local size " + size);
+        assertTrue(size > 0);
+    }
+}
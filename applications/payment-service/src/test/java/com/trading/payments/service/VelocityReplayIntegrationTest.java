@@ -0,0 +1,101 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.VelocitySnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Replays locally counted payments through the real redis/velocity.lua and
+ * checks each counter only takes the payments still inside its window.
+ */
+@Testcontainers
+public class VelocityReplayIntegrationTest {
+
+    private static final long MINUTE = 60_000;
+
+    @Container
+    static GenericContainer<?> redis = new GenericContainer<>("redis:7-alpine")
+            .withExposedPorts(6379);
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private LocalVelocityStore localStore;
+    private VelocityService velocityService;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = new LettuceConnectionFactory(
+            new RedisStandaloneConfiguration(redis.getHost(), redis.getFirstMappedPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        localStore = new LocalVelocityStore(60, 10, 24, 60, 10, 4, 64, 1_000, 1_000, registry);
+        velocityService = new VelocityService(redisTemplate, localStore, registry);
+        ReflectionTestUtils.setField(velocityService, "cardWindowMinutes", 60L);
+        ReflectionTestUtils.setField(velocityService, "merchantWindowMinutes", 10L);
+        ReflectionTestUtils.setField(velocityService, "amountPatternWindowHours", 24L);
+        ReflectionTestUtils.setField(velocityService, "maxAmountsPerCard", 32);
+        ReflectionTestUtils.setField(velocityService, "cardSpreadWindowMinutes", 60L);
+        ReflectionTestUtils.setField(velocityService, "merchantSpreadWindowMinutes", 10L);
+        ReflectionTestUtils.setField(velocityService, "spreadSlices", 6);
+        ReflectionTestUtils.setField(velocityService, "failureThreshold", 5);
+        ReflectionTestUtils.setField(velocityService, "openMillis", 5_000L);
+        ReflectionTestUtils.setField(velocityService, "replayBatchSize", 500);
+        ReflectionTestUtils.setField(velocityService, "replayMaxPerTick", 5_000);
+        velocityService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    public void testReplayedPaymentsOnlyCountInTheWindowsTheyAreStillIn() {
+        long now = System.currentTimeMillis();
+        localStore.record("card-1", "m1", 10_000, now - 120 * MINUTE);   // past the card and spread windows
+        localStore.record("card-1", "m1", 20_000, now - 30 * MINUTE);    // past the merchant windows only
+        localStore.record("card-1", "m1", 30_000, now - MINUTE);
+
+        velocityService.replayLocalPayments();
+
+        assertEquals(0, localStore.journalSize());
+        assertEquals("2", redisTemplate.opsForValue().get("card_velocity:card-1"));
+        assertEquals("50000", redisTemplate.opsForValue().get("card_amount_cents:card-1"));
+        assertEquals("1", redisTemplate.opsForValue().get("merchant_velocity:m1"));
+
+        // Kept for the rest of the newest payment's window, not a full window from the replay
+        long cardTtl = redisTemplate.getExpire("card_velocity:card-1", TimeUnit.MILLISECONDS);
+        assertTrue(cardTtl > 58 * MINUTE && cardTtl <= 59 * MINUTE, "card TTL " + cardTtl);
+        long merchantTtl = redisTemplate.getExpire("merchant_velocity:m1", TimeUnit.MILLISECONDS);
+        assertTrue(merchantTtl > 8 * MINUTE && merchantTtl <= 9 * MINUTE, "merchant TTL " + merchantTtl);
+        long oldSlice = (now - 120 * MINUTE) / (10 * MINUTE);
+        assertFalse(redisTemplate.hasKey("card_merchants:card-1:" + oldSlice));
+        long merchantSlice = (now - 30 * MINUTE) / (10 * MINUTE / 6);
+        assertFalse(redisTemplate.hasKey("merchant_cards:m1:" + merchantSlice));
+
+        VelocitySnapshot snapshot = velocityService.record("card-1", "m1", new BigDecimal("10.00"));
+        assertFalse(snapshot.isLocal());
+        assertEquals(2, snapshot.getCardCount());
+        assertEquals(new BigDecimal("500.00"), snapshot.getCardAmount());
+        assertEquals(1, snapshot.getMerchantCount());
+        assertEquals(1, snapshot.getDistinctMerchantsForCard());
+    }
+}
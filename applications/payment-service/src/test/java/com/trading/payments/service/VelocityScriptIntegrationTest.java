@@ -0,0 +1,193 @@
+package com.trading.payments.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs redis/velocity.lua against a real Redis at chosen payment times and
+ * checks the counters it returns.
+ */
+@Testcontainers
+public class VelocityScriptIntegrationTest {
+
+    private static final long SECOND = 1_000;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 3_600_000;
+    private static final long DAY = 24 * HOUR;
+    // Start of an amount pattern window (window-hours 24)
+    private static final long WINDOW = 20_000 * DAY;
+
+    private static final int AMOUNT_REPEATS = 3;
+    private static final int DISTINCT_MERCHANTS = 4;
+    private static final int DISTINCT_CARDS = 5;
+
+    @Container
+    static GenericContainer<?> redis = new GenericContainer<>("redis:7-alpine")
+            .withExposedPorts(6379);
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private VelocityService velocityService;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = new LettuceConnectionFactory(
+            new RedisStandaloneConfiguration(redis.getHost(), redis.getFirstMappedPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LocalVelocityStore localStore = new LocalVelocityStore(60, 10, 24, 60, 10, 4, 64, 1_000, 1_000, registry);
+        velocityService = new VelocityService(redisTemplate, localStore, registry);
+        ReflectionTestUtils.setField(velocityService, "cardWindowMinutes", 60L);
+        ReflectionTestUtils.setField(velocityService, "merchantWindowMinutes", 10L);
+        ReflectionTestUtils.setField(velocityService, "amountPatternWindowHours", 24L);
+        ReflectionTestUtils.setField(velocityService, "maxAmountsPerCard", 3);
+        ReflectionTestUtils.setField(velocityService, "cardSpreadWindowMinutes", 60L);
+        ReflectionTestUtils.setField(velocityService, "merchantSpreadWindowMinutes", 10L);
+        ReflectionTestUtils.setField(velocityService, "spreadSlices", 6);
+        ReflectionTestUtils.setField(velocityService, "failureThreshold", 5);
+        ReflectionTestUtils.setField(velocityService, "openMillis", 5_000L);
+        ReflectionTestUtils.setField(velocityService, "replayBatchSize", 500);
+        ReflectionTestUtils.setField(velocityService, "replayMaxPerTick", 5_000);
+        velocityService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    // A live payment at time {@code at}; returns the counters as of just before it
+    private List<?> pay(String card, String merchant, long cents, long at) {
+        return velocityService.execute(card, merchant, cents, at, at);
+    }
+
+    private long repeats(String card, long cents, long at) {
+        return ((Number) pay(card, "m1", cents, at).get(AMOUNT_REPEATS)).longValue();
+    }
+
+    private static long at(List<?> result, int index) {
+        return ((Number) result.get(index)).longValue();
+    }
+
+    private Set<Object> trackedAmounts(String card) {
+        return redisTemplate.opsForHash().keys("amount_pattern:" + card);
+    }
+
+    @Test
+    public void testRepeatsWithinAWindow() {
+        assertEquals(0, repeats("card-1", 1_000, WINDOW + HOUR));
+        assertEquals(1, repeats("card-1", 1_000, WINDOW + 2 * HOUR));
+        assertEquals(2, repeats("card-1", 1_000, WINDOW + 3 * HOUR));
+        assertEquals(0, repeats("card-1", 2_000, WINDOW + 3 * HOUR));
+        assertEquals(0, repeats("card-2", 1_000, WINDOW + 3 * HOUR));
+
+        assertEquals("20000:3:0", redisTemplate.opsForHash().get("amount_pattern:card-1", "1000"));
+        long ttl = redisTemplate.getExpire("amount_pattern:card-1");
+        assertTrue(ttl > 47 * 3600 && ttl <= 48 * 3600, "hash TTL " + ttl);
+    }
+
+    @Test
+    public void testRolloverWeighsThePreviousWindowByItsOverlap() {
+        for (int i = 1; i <= 3; i++) {
+            repeats("card-1", 1_000, WINDOW + i * HOUR);
+        }
+
+        // A quarter into the next window: 0 + 3 * 0.75
+        assertEquals(2, repeats("card-1", 1_000, WINDOW + DAY + 6 * HOUR));
+        assertEquals("20001:1:3", redisTemplate.opsForHash().get("amount_pattern:card-1", "1000"));
+        // Three quarters in: 1 + 3 * 0.25
+        assertEquals(1, repeats("card-1", 1_000, WINDOW + DAY + 18 * HOUR));
+
+        // Two windows on, nothing of either is left in the sliding window
+        assertEquals(0, repeats("card-1", 1_000, WINDOW + 3 * DAY + HOUR));
+        assertEquals("20003:1:0", redisTemplate.opsForHash().get("amount_pattern:card-1", "1000"));
+    }
+
+    @Test
+    public void testFullHashEvictsStaleAmountsOrLeavesTheNewOneUntracked() {
+        // max-amounts-per-card is 3
+        for (long cents : new long[]{100, 200, 300}) {
+            assertEquals(0, repeats("card-1", cents, WINDOW + HOUR));
+        }
+
+        // Full and nothing stale: the new amount is not tracked and never repeats
+        assertEquals(0, repeats("card-1", 400, WINDOW + 2 * HOUR));
+        assertEquals(0, repeats("card-1", 400, WINDOW + 3 * HOUR));
+        assertEquals(Set.of("100", "200", "300"), trackedAmounts("card-1"));
+        // Tracked amounts keep counting
+        assertEquals(1, repeats("card-1", 100, WINDOW + 3 * HOUR));
+
+        // 100 is seen again in the next window, 200 and 300 are not
+        repeats("card-1", 100, WINDOW + DAY + HOUR);
+
+        // Two windows on, only amounts with nothing in the current or previous window go
+        assertEquals(0, repeats("card-1", 400, WINDOW + 2 * DAY + HOUR));
+        assertEquals(Set.of("100", "400"), trackedAmounts("card-1"));
+        assertEquals(1, repeats("card-1", 400, WINDOW + 2 * DAY + 2 * HOUR));
+    }
+
+    @Test
+    public void testDistinctMerchantsPerCardOverSlidingSlices() {
+        // Card spread window 60 minutes in 6 slices of 10 minutes
+        long start = WINDOW + HOUR;
+        for (int m = 1; m <= 5; m++) {
+            assertEquals(m, at(pay("card-1", "m" + m, 100, start), DISTINCT_MERCHANTS));
+        }
+        assertEquals(5, at(pay("card-1", "m1", 100, start + MINUTE), DISTINCT_MERCHANTS));
+        // Other cards do not count
+        assertEquals(1, at(pay("card-2", "m1", 100, start), DISTINCT_MERCHANTS));
+
+        // Half a window later, the earlier slice still counts
+        assertEquals(6, at(pay("card-1", "m6", 100, start + 30 * MINUTE), DISTINCT_MERCHANTS));
+
+        // Seven slices on, the first slice has left the window; m6's has not
+        assertEquals(2, at(pay("card-1", "m1", 100, start + 70 * MINUTE), DISTINCT_MERCHANTS));
+
+        long slice = start / (10 * MINUTE);
+        assertTrue(redisTemplate.hasKey("card_merchants:card-1:" + slice));
+        long ttl = redisTemplate.getExpire("card_merchants:card-1:" + slice);
+        assertTrue(ttl > 119 * 60 && ttl <= 120 * 60, "slice TTL " + ttl);
+    }
+
+    @Test
+    public void testDistinctCardsPerMerchantOverSlidingSlices() {
+        // Merchant spread window 10 minutes in 6 slices of 100 seconds
+        long start = WINDOW + HOUR;
+        for (int c = 1; c <= 4; c++) {
+            assertEquals(c, at(pay("card-" + c, "m1", 100, start), DISTINCT_CARDS));
+        }
+        assertEquals(4, at(pay("card-2", "m1", 100, start + SECOND), DISTINCT_CARDS));
+        assertEquals(1, at(pay("card-1", "m2", 100, start), DISTINCT_CARDS));
+
+        assertEquals(5, at(pay("card-5", "m1", 100, start + 5 * MINUTE), DISTINCT_CARDS));
+
+        // 700 seconds on, only card-5's slice and the current one are in the window
+        assertEquals(2, at(pay("card-1", "m1", 100, start + 700 * SECOND), DISTINCT_CARDS));
+
+        // Approximate beyond the exact range of the sparse encoding, within a few percent
+        long busy = start + 2 * HOUR;
+        long distinct = 0;
+        for (int c = 0; c < 5_000; c++) {
+            distinct = at(pay("busy-" + c, "m3", 100, busy), DISTINCT_CARDS);
+        }
+        assertEquals(5_000, distinct, 5_000 * 0.03);
+    }
+}
@@ -0,0 +1,108 @@
+package com.trading.payments.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class VelocityServiceTest {
+
+    private static final long MINUTE = 60_000;
+
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final LocalVelocityStore localStore =
+        new LocalVelocityStore(60, 10, 24, 60, 10, 4, 64, 1_000, 1_000, registry);
+    private VelocityService velocityService;
+
+    @BeforeEach
+    public void setUp() {
+        velocityService = new VelocityService(redisTemplate, localStore, registry);
+        ReflectionTestUtils.setField(velocityService, "cardWindowMinutes", 60L);
+        ReflectionTestUtils.setField(velocityService, "merchantWindowMinutes", 10L);
+        ReflectionTestUtils.setField(velocityService, "amountPatternWindowHours", 24L);
+        ReflectionTestUtils.setField(velocityService, "maxAmountsPerCard", 32);
+        ReflectionTestUtils.setField(velocityService, "cardSpreadWindowMinutes", 60L);
+        ReflectionTestUtils.setField(velocityService, "merchantSpreadWindowMinutes", 10L);
+        ReflectionTestUtils.setField(velocityService, "spreadSlices", 6);
+        ReflectionTestUtils.setField(velocityService, "failureThreshold", 2);
+        ReflectionTestUtils.setField(velocityService, "openMillis", 0L);
+        ReflectionTestUtils.setField(velocityService, "replayBatchSize", 2);
+        ReflectionTestUtils.setField(velocityService, "replayMaxPerTick", 3);
+        velocityService.init();
+    }
+
+    private void redisDown() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+            .thenThrow(new RedisConnectionFailureException("down"));
+    }
+
+    private void redisUp() {
+        reset(redisTemplate);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+            .thenReturn(List.of(0L, 0L, 0L, 0L, 1L, 1L));
+    }
+
+    @Test
+    public void testOutagePaymentsAreReplayedAFewPerTickWithTheirTimestamps() {
+        redisDown();
+        for (int i = 0; i < 7; i++) {
+            assertTrue(velocityService.record("card-" + i % 2, "m1", BigDecimal.TEN).isLocal());
+        }
+        assertEquals(7, localStore.journalSize());
+
+        // The next call is the breaker's trial; it succeeds and closes the breaker
+        redisUp();
+        assertFalse(velocityService.record("card-0", "m1", BigDecimal.TEN).isLocal());
+        clearInvocations(redisTemplate);
+
+        velocityService.replayLocalPayments();
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(redisTemplate, times(3)).execute(any(RedisScript.class), anyList(), args.capture());
+        assertEquals(4, localStore.journalSize());
+        assertEquals(2, localStore.cards(), "local counters are kept until the journal is empty");
+        for (Object[] call : args.getAllValues()) {
+            long paymentTime = Long.parseLong((String) call[1]);
+            long now = Long.parseLong((String) call[11]);
+            assertTrue(now >= paymentTime && now - paymentTime < MINUTE);
+        }
+
+        velocityService.replayLocalPayments();
+        velocityService.replayLocalPayments();
+        assertEquals(0, localStore.journalSize());
+        assertEquals(0, localStore.cards());
+        assertEquals(7, registry.get("payment.fraud.velocity.fallback.replayed").counter().count());
+    }
+
+    @Test
+    public void testFailedReplayKeepsTheRestForTheNextRun() {
+        redisDown();
+        for (int i = 0; i < 3; i++) {
+            velocityService.record("card-" + i, "m1", BigDecimal.TEN);
+        }
+        redisUp();
+        velocityService.record("card-0", "m1", BigDecimal.TEN);
+
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+            .thenReturn(List.of(0L, 0L, 0L, 0L, 1L, 1L))
+            .thenThrow(new RedisConnectionFailureException("down again"));
+        velocityService.replayLocalPayments();
+
+        assertEquals(2, localStore.journalSize());
+        assertEquals(3, localStore.cards());
+        assertEquals(List.of("card-1", "card-2"), localStore.drainJournal(10, System.currentTimeMillis()).stream()
+            .map(LocalVelocityStore.Payment::cardHash).toList());
+    }
+}
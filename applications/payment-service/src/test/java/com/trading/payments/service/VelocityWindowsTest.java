@@ -0,0 +1,94 @@
+package com.trading.payments.service;
+
+import com.trading.payments.dto.FraudRuleSet;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VelocityWindowsTest {
+
+    private static final long MINUTE = 60_000;
+
+    @Test
+    public void testSlidingWindowsMatchVelocityCounters() {
+        VelocityWindows windows = new VelocityWindows(60 * MINUTE, 10 * MINUTE, 24 * 60 * MINUTE,
+            60 * MINUTE, 10 * MINUTE, 256);
+        long[] card = new long[4];
+        long[] merchant = new long[2];
+
+        windows.recordCard(1, "m1".hashCode(), 10_000, 0, card);
+        assertArrayEquals(new long[] {0, 0, 0, 1}, card);
+        windows.recordCard(1, "m2".hashCode(), 10_000, 30 * MINUTE, card);
+        assertArrayEquals(new long[] {1, 10_000, 1, 2}, card);
+        windows.recordCard(1, "m1".hashCode(), 5_000, 45 * MINUTE, card);
+        assertArrayEquals(new long[] {2, 20_000, 0, 2}, card);
+
+        // The first payment leaves the card and spread windows but not the amount-pattern one
+        windows.recordCard(1, "m3".hashCode(), 10_000, 61 * MINUTE, card);
+        assertArrayEquals(new long[] {2, 15_000, 2, 3}, card);
+
+        windows.recordMerchant("m1", 1, 0, merchant);
+        windows.recordMerchant("m1", 2, 5 * MINUTE, merchant);
+        assertArrayEquals(new long[] {1, 2}, merchant);
+        windows.recordMerchant("m1", 1, 11 * MINUTE, merchant);
+        assertArrayEquals(new long[] {1, 2}, merchant);
+
+        windows.evictIdle(62 * MINUTE + 24 * 60 * MINUTE);
+        assertEquals(0, windows.cards());
+        assertEquals(0, windows.merchants());
+    }
+
+    @Test
+    public void testHotMerchantWindowsAreSlicedAndSketched() {
+        VelocityWindows windows = new VelocityWindows(60 * MINUTE, 10 * MINUTE, 24 * 60 * MINUTE,
+            60 * MINUTE, 10 * MINUTE, 256);
+        long[] merchant = new long[2];
+
+        // 50,000 payments from 5,000 cards over nine minutes
+        for (int i = 0; i < 50_000; i++) {
+            windows.recordMerchant("hot", i % 5_000, i * 9 * MINUTE / 50_000, merchant);
+        }
+        assertEquals(49_999, merchant[VelocityWindows.MERCHANT_COUNT]);
+        assertEquals(5_000, merchant[VelocityWindows.DISTINCT_CARDS], 5_000 * 3 * 0.0325);
+
+        // Windows move a slice at a time: ten seconds for the count, 100 for distinct cards
+        windows.recordMerchant("hot", 1_000_000, 15 * MINUTE, merchant);
+        long expected = 0;
+        for (int i = 0; i < 50_000; i++) {
+            if (i * 9 * MINUTE / 50_000 >= 5 * MINUTE + 10_000) {
+                expected++;
+            }
+        }
+        assertEquals(expected, merchant[VelocityWindows.MERCHANT_COUNT]);
+        assertTrue(merchant[VelocityWindows.DISTINCT_CARDS] > 4_500);
+
+        windows.recordMerchant("hot", 1_000_001, 30 * MINUTE, merchant);
+        assertArrayEquals(new long[] {0, 1}, merchant);
+    }
+
+    @Test
+    public void testRuleSetThresholdsAndScaledLimits() {
+        LiveFraudRules liveRules = new LiveFraudRules(5, 200);
+        RuleSetEvaluator.Compiled live = new RuleSetEvaluator.Compiled(liveRules.live());
+        RuleSetEvaluator.Inputs in = new RuleSetEvaluator.Inputs();
+        in.amountCents = 600_000;    // high and round
+        in.hour = 2;                 // off hours
+        assertEquals(25 + 30 + 25 + 10, RuleSetEvaluator.score(live, in));
+        assertFalse(live.approves(90));
+
+        RuleSetEvaluator.Compiled lenient = new RuleSetEvaluator.Compiled(liveRules.resolve(FraudRuleSet.builder()
+            .name("lenient").highAmount(BigDecimal.valueOf(10_000)).cardAmountLimit(BigDecimal.valueOf(10_000)).build()));
+        assertEquals(30 + 10, RuleSetEvaluator.score(lenient, in));
+        assertTrue(lenient.approves(40));
+
+        in.hasLimits = true;
+        in.maxSingleCents = 500_000;
+        in.dailyLimitCents = Long.MAX_VALUE;
+        in.countLimit = Long.MAX_VALUE;
+        assertEquals(RuleSetEvaluator.BLOCKED, RuleSetEvaluator.score(live, in));
+
+        assertThrows(IllegalArgumentException.class, () -> new RuleSetEvaluator.Compiled(FraudRuleSet.builder().build()));
+    }
+}
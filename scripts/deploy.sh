@@ -273,7 +273,7 @@ deploy_applications() {
     if [ -d "$K8S_DIR/apps/payment-service" ]; then
         log_info "Deploying Payment Service..."
         kubectl apply -f "$K8S_DIR/apps/payment-service/"
-        kubectl rollout status deployment/payment-service -n payment-platform --timeout=600s
+        kubectl rollout status statefulset/payment-service -n payment-platform --timeout=600s
     fi
     
     log_success "Applications deployed successfully"